@@ -72,6 +72,16 @@ import org.xipki.util.TripleState;
  * # Default is false
  * fullcrl.extended.nextupdate=&lt;'true'|'false'&gt;
  *
+ * # If set to true, the full CRL is generated incrementally from a sorted file of the revoked
+ * # certificates, merged with the certificates changed since the last full CRL, instead of
+ * # reading all revoked certificates from the database.
+ * # Default is false
+ * fullcrl.segment=&lt;'true'|'false'&gt;
+ *
+ * # Number of incrementally generated full CRLs after which the sorted file is rebuilt from
+ * # the database. Default is 30
+ * fullcrl.segment.rebuild.intervals=&lt;integer&gt;
+ *
  * # Whether only user certificates are considered in CRL
  * # Default is false
  * user.certs.only=&lt;'true'|'false'&gt;
@@ -157,6 +167,11 @@ public class CrlControl {
 
   public static final String KEY_FULLCRL_EXTENDED_NEXTUPDATE = "fullcrl.extended.nextupdate";
 
+  public static final String KEY_FULLCRL_SEGMENT = "fullcrl.segment";
+
+  public static final String KEY_FULLCRL_SEGMENT_REBUILD_INTERVALS =
+      "fullcrl.segment.rebuild.intervals";
+
   public static final String KEY_ONLY_CONTAINS_USERCERTS = "user.certs.only";
 
   public static final String KEY_ONLY_CONTAINS_CACERTS = "ca.certs.only";
@@ -179,6 +194,10 @@ public class CrlControl {
 
   private boolean extendedNextUpdate;
 
+  private boolean fullCrlSegment;
+
+  private int fullCrlSegmentRebuildIntervals = 30;
+
   private HourMinute intervalDayTime;
 
   private boolean onlyContainsUserCerts;
@@ -233,6 +252,9 @@ public class CrlControl {
     this.fullCrlIntervals = getInteger(props, KEY_FULLCRL_INTERVALS, 1);
     this.deltaCrlIntervals = getInteger(props, KEY_DELTACRL_INTERVALS, 0);
     this.extendedNextUpdate = getBoolean(props, KEY_FULLCRL_EXTENDED_NEXTUPDATE, false);
+    this.fullCrlSegment = getBoolean(props, KEY_FULLCRL_SEGMENT, false);
+    this.fullCrlSegmentRebuildIntervals =
+        getInteger(props, KEY_FULLCRL_SEGMENT_REBUILD_INTERVALS, 30);
     this.overlapMinutes = getInteger(props, KEY_OVERLAP_MINUTES, 60);
     if (this.overlapMinutes < 60) {
       // corrected to the minimal value 60 minutes
@@ -273,6 +295,11 @@ public class CrlControl {
     pairs.putPair(KEY_FULLCRL_INTERVALS, Integer.toString(fullCrlIntervals));
     pairs.putPair(KEY_FULLCRL_EXTENDED_NEXTUPDATE, Boolean.toString(extendedNextUpdate));
     pairs.putPair(KEY_DELTACRL_INTERVALS, Integer.toString(deltaCrlIntervals));
+    if (fullCrlSegment) {
+      pairs.putPair(KEY_FULLCRL_SEGMENT, Boolean.toString(fullCrlSegment));
+      pairs.putPair(KEY_FULLCRL_SEGMENT_REBUILD_INTERVALS,
+          Integer.toString(fullCrlSegmentRebuildIntervals));
+    }
     pairs.putPair(KEY_INTERVAL_TIME, intervalDayTime.toString());
 
     if (CollectionUtil.isNonEmpty(extensionOids)) {
@@ -309,6 +336,8 @@ public class CrlControl {
         "\n  delta CRL intervals: ", deltaCrlIntervals,
         "\n  overlap: ", overlapMinutes, " minutes",
         "\n  use extended nextUpdate: ", extendedNextUpdate,
+        "\n  incremental full CRL: ", fullCrlSegment,
+        (fullCrlSegment ? ", rebuild after " + fullCrlSegmentRebuildIntervals + " CRLs" : ""),
         "\n  only user certificates: ", onlyContainsUserCerts,
         "\n  only CA certificates: ", onlyContainsCaCerts,
         "\n  exclude reason: ", excludeReason,
@@ -354,6 +383,14 @@ public class CrlControl {
     return extendedNextUpdate;
   }
 
+  public boolean isFullCrlSegment() {
+    return fullCrlSegment;
+  }
+
+  public int getFullCrlSegmentRebuildIntervals() {
+    return fullCrlSegmentRebuildIntervals;
+  }
+
   public boolean isOnlyContainsUserCerts() {
     return onlyContainsUserCerts;
   }
@@ -391,6 +428,11 @@ public class CrlControl {
       throw new InvalidConfException(
           "deltaCRLIntervals may not be less than 0: " + deltaCrlIntervals);
     }
+
+    if (fullCrlSegmentRebuildIntervals < 1) {
+      throw new InvalidConfException("fullCRLSegmentRebuildIntervals may not be less than 1: "
+          + fullCrlSegmentRebuildIntervals);
+    }
   }
 
   @Override
@@ -411,6 +453,8 @@ public class CrlControl {
         || xipkiCertsetIncluded != obj2.xipkiCertsetIncluded
         || xipkiCertsetCertIncluded != obj2.xipkiCertsetCertIncluded
         || extendedNextUpdate != obj2.extendedNextUpdate
+        || fullCrlSegment != obj2.fullCrlSegment
+        || fullCrlSegmentRebuildIntervals != obj2.fullCrlSegmentRebuildIntervals
         || fullCrlIntervals != obj2.fullCrlIntervals
         || includeExpiredCerts != obj2.includeExpiredCerts
         || onlyContainsCaCerts != obj2.onlyContainsCaCerts
@@ -18,6 +18,8 @@
 package org.xipki.ca.api.publisher;
 
 import java.io.Closeable;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.util.Map;
 
@@ -26,6 +28,7 @@ import org.xipki.ca.api.CertificateInfo;
 import org.xipki.password.PasswordResolver;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.X509Cert;
+import org.xipki.security.util.X509Util;
 import org.xipki.util.FileOrValue;
 
 /**
@@ -128,6 +131,28 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean crlAdded(X509Cert caCert, X509CRL crl);
 
+  /**
+   * Publishes a CRL in the DER encoded form. This implementation parses the CRL and calls
+   * {@link #crlAdded(X509Cert, X509CRL)}. Since parsing a large CRL is expensive, publishers
+   * which do not need the parsed CRL should overwrite this method.
+   *
+   * @param caCert
+   *          CA certificate. Must not be {@code null}.
+   * @param encodedCrl
+   *          DER encoded CRL to be published. Must not be {@code null}.
+   * @return whether the CRL is published.
+   * @since 5.3.0
+   */
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    X509CRL crl;
+    try {
+      crl = X509Util.parseCrl(encodedCrl);
+    } catch (CRLException | CertificateException ex) {
+      throw new IllegalArgumentException("invalid CRL: " + ex.getMessage(), ex);
+    }
+    return crlAdded(caCert, crl);
+  }
+
   /**
    * Publishes the revocation of a CA.
    *
@@ -17,12 +17,15 @@
 
 package org.xipki.ca.mgmt.db.port;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.HashAlgo;
+import org.xipki.util.Base64;
 import org.xipki.util.StringUtil;
 
 /**
@@ -44,9 +47,39 @@ abstract class AbstractOcspCertstoreDbImporter extends DbPorter {
 
   protected static final String SQL_DEL_CERT = "DELETE FROM CERT WHERE ID>?";
 
+  // whether the column ISSUER.CERT is binary, otherwise Base64 encoded text.
+  private final boolean binaryCert;
+
+  // whether the column CERT.HASH is binary, otherwise Base64 encoded text.
+  private final boolean binaryCertHash;
+
   AbstractOcspCertstoreDbImporter(DataSourceWrapper datasource, String srcDir, AtomicBoolean stopMe)
       throws Exception {
     super(datasource, srcDir, stopMe);
+    this.binaryCert = datasource.isBinaryColumn(null, "ISSUER", "CERT");
+    this.binaryCertHash = datasource.isBinaryColumn(null, "CERT", "HASH");
+    if (binaryCert || binaryCertHash) {
+      System.out.println("target database has binary columns: ISSUER.CERT " + binaryCert
+          + ", CERT.HASH " + binaryCertHash);
+    }
+  }
+
+  protected void setIssuerCert(PreparedStatement ps, int index, byte[] encodedCert)
+      throws SQLException {
+    if (binaryCert) {
+      ps.setBytes(index, encodedCert);
+    } else {
+      ps.setString(index, Base64.encodeToString(encodedCert));
+    }
+  }
+
+  protected void setCertHash(PreparedStatement ps, int index, String b64CertHash)
+      throws SQLException {
+    if (!binaryCertHash) {
+      ps.setString(index, b64CertHash);
+    } else {
+      ps.setBytes(index, (b64CertHash == null) ? null : Base64.decode(b64CertHash));
+    }
   }
 
   protected String sha1(byte[] data) {
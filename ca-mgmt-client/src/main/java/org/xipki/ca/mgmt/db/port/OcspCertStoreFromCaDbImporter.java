@@ -45,7 +45,6 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
-import org.xipki.util.Base64;
 import org.xipki.util.ConfPairs;
 import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
@@ -241,7 +240,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
       ps.setLong(idx++, cert.getTBSCertificate().getEndDate().getDate().getTime() / 1000);
       ps.setString(idx++, HashAlgo.SHA1.base64Hash(encodedCert));
       ps.setString(idx++, issuer.getRevInfo());
-      ps.setString(idx++, Base64.encodeToString(encodedCert));
+      setIssuerCert(ps, idx++, encodedCert);
 
       ps.execute();
     } catch (SQLException ex) {
@@ -416,7 +415,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
               setLong(psCert, idx++, cert.getRt());
               setLong(psCert, idx++, cert.getRit());
 
-              psCert.setString(idx++, certhash);
+              setCertHash(psCert, idx++, certhash);
               psCert.setString(idx++, subject);
 
               psCert.addBatch();
@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.util.Args;
+import org.xipki.util.Base64;
 import org.xipki.util.IoUtil;
 import org.xipki.util.ProcessLog;
 import org.xipki.util.StringUtil;
@@ -64,6 +65,12 @@ class OcspCertstoreDbExporter extends DbPorter {
 
   private final boolean resume;
 
+  // whether the column ISSUER.CERT is binary, otherwise Base64 encoded text.
+  private final boolean binaryCert;
+
+  // whether the column CERT.HASH is binary, otherwise Base64 encoded text.
+  private final boolean binaryCertHash;
+
   OcspCertstoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
       int numCertsPerSelect, boolean resume, AtomicBoolean stopMe) throws Exception {
     super(datasource, baseDir, stopMe);
@@ -78,6 +85,8 @@ class OcspCertstoreDbExporter extends DbPorter {
       }
     }
     this.resume = resume;
+    this.binaryCert = datasource.isBinaryColumn(null, "ISSUER", "CERT");
+    this.binaryCertHash = datasource.isBinaryColumn(null, "CERT", "HASH");
   } // constructor
 
   public void export() throws Exception {
@@ -146,7 +155,10 @@ class OcspCertstoreDbExporter extends DbPorter {
         issuer.setId(id);
 
         String certFileName = "issuer-conf/cert-issuer-" + id;
-        IoUtil.save(new File(baseDir, certFileName), StringUtil.toUtf8Bytes(rs.getString("CERT")));
+        // the exported certificate is always Base64 encoded.
+        String b64Cert = binaryCert ? Base64.encodeToString(rs.getBytes("CERT"))
+            : rs.getString("CERT");
+        IoUtil.save(new File(baseDir, certFileName), StringUtil.toUtf8Bytes(b64Cert));
         issuer.setCertFile(certFileName);
         issuer.setRevInfo(rs.getString("REV_INFO"));
 
@@ -289,7 +301,14 @@ class OcspCertstoreDbExporter extends DbPorter {
             }
           }
 
-          String hash = rs.getString("HASH");
+          String hash;
+          if (binaryCertHash) {
+            byte[] binHash = rs.getBytes("HASH");
+            hash = (binHash == null) ? null : Base64.encodeToString(binHash);
+          } else {
+            hash = rs.getString("HASH");
+          }
+
           if (hash != null) {
             cert.setHash(hash);
           }
@@ -151,7 +151,7 @@ class OcspCertstoreDbImporter extends AbstractOcspCertstoreDbImporter {
           ps.setLong(idx++, cert.getTBSCertificate().getEndDate().getDate().getTime() / 1000);
           ps.setString(idx++, sha1(encodedCert));
           ps.setString(idx++, issuer.getRevInfo());
-          ps.setString(idx++, b64Cert);
+          setIssuerCert(ps, idx++, encodedCert);
 
           ps.execute();
         } catch (SQLException ex) {
@@ -299,7 +299,7 @@ class OcspCertstoreDbImporter extends AbstractOcspCertstoreDbImporter {
           setInt(psCert, idx++, cert.getRr());
           setLong(psCert, idx++, cert.getRt());
           setLong(psCert, idx++, cert.getRit());
-          psCert.setString(idx++, cert.getHash());
+          setCertHash(psCert, idx++, cert.getHash());
           psCert.setString(idx++, cert.getSubject());
           psCert.addBatch();
         } catch (SQLException ex) {
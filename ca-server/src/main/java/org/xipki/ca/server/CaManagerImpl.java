@@ -27,6 +27,7 @@ import java.math.BigInteger;
 import java.net.SocketException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
@@ -43,6 +44,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
@@ -276,6 +279,14 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  // signs the certificates of the batch requests concurrently.
+  private ExecutorService certIssuanceExecutor;
+
+  // the CT log servers are called via HTTP in the threads of this executor.
+  private ExecutorService ctLogExecutor;
+
+  private final int certIssuanceParallelism = Runtime.getRuntime().availableProcessors();
+
   private final Map<String, CmpResponder> cmpResponders = new ConcurrentHashMap<>();
 
   private final Map<String, ScepResponder> scepResponders = new ConcurrentHashMap<>();
@@ -431,12 +442,21 @@ public class CaManagerImpl implements CaManager, Closeable {
     final long epoch = DateUtil.parseUtcTimeyyyyMMdd("20100101").getTime();
     UniqueIdGenerator idGen = new UniqueIdGenerator(epoch, shardId);
 
+    if (this.certstore != null) {
+      this.certstore.close();
+    }
+
     try {
       this.certstore = new CertStore(datasource, idGen);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
 
+    CaServerConf.GroupCommit groupCommit = caServerConf.getGroupCommit();
+    if (groupCommit.isEnabled()) {
+      certstore.enableGroupCommit(groupCommit.getMaxSize(), groupCommit.getMaxDelay());
+    }
+
     initCaAliases();
     initCertprofiles();
     initPublishers();
@@ -594,6 +614,8 @@ public class CaManagerImpl implements CaManager, Closeable {
 
       scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(10);
       scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
+      certIssuanceExecutor = Executors.newFixedThreadPool(certIssuanceParallelism);
+      ctLogExecutor = Executors.newFixedThreadPool(4 * certIssuanceParallelism);
 
       List<String> startedCaNames = new LinkedList<>();
       List<String> failedCaNames = new LinkedList<>();
@@ -792,6 +814,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
+    if (certstore != null) {
+      // writes the pending certificates
+      certstore.close();
+    }
+
     if (datasource != null) {
       try {
         datasource.close();
@@ -831,6 +858,22 @@ public class CaManagerImpl implements CaManager, Closeable {
     return scheduledThreadPoolExecutor;
   }
 
+  public ExecutorService getCertIssuanceExecutor() {
+    return certIssuanceExecutor;
+  }
+
+  public ExecutorService getCtLogExecutor() {
+    return ctLogExecutor;
+  }
+
+  /**
+   * Gets the maximal number of the signing tasks of one batch in the executors.
+   * @return the maximal number of the signing tasks of one batch.
+   */
+  public int getCertIssuanceParallelism() {
+    return certIssuanceParallelism;
+  }
+
   @Override
   public Set<String> getCertprofileNames() {
     return certprofileDbEntries.keySet();
@@ -2005,6 +2048,16 @@ public class CaManagerImpl implements CaManager, Closeable {
   } // method clearPublishQueue
 
   private void shutdownScheduledThreadPoolExecutor() {
+    if (certIssuanceExecutor != null) {
+      certIssuanceExecutor.shutdown();
+      certIssuanceExecutor = null;
+    }
+
+    if (ctLogExecutor != null) {
+      ctLogExecutor.shutdown();
+      ctLogExecutor = null;
+    }
+
     if (scheduledThreadPoolExecutor == null) {
       return;
     }
@@ -2376,8 +2429,9 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     X509Ca ca = getX509Ca(caName);
     try {
-      return ca.generateCrlOnDemand(CaAuditConstants.MSGID_ca_mgmt);
-    } catch (OperationException ex) {
+      EncodedCrl crl = ca.generateCrlOnDemand(CaAuditConstants.MSGID_ca_mgmt);
+      return (crl == null) ? null : X509Util.parseCrl(crl.getEncoded());
+    } catch (OperationException | CRLException | CertificateException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
   } // method generateCrlOnDemand
@@ -111,6 +111,60 @@ public class CaServerConf extends ValidatableConf {
 
   }
 
+  /**
+   * Group commit of the issued certificates.
+   */
+  public static class GroupCommit extends ValidatableConf {
+
+    private boolean enabled = true;
+
+    /**
+     * maximal number of certificates in one transaction.
+     */
+    private int maxSize = 100;
+
+    /**
+     * maximal time in milliseconds to wait for more certificates before the transaction is
+     * started. 0 to start it as soon as the previous one is committed.
+     */
+    private int maxDelay = 0;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    public int getMaxDelay() {
+      return maxDelay;
+    }
+
+    public void setMaxDelay(int maxDelay) {
+      this.maxDelay = maxDelay;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxSize < 1) {
+        throw new InvalidConfException("maxSize must not be less than 1: " + maxSize);
+      }
+      if (maxDelay < 0) {
+        throw new InvalidConfException("maxDelay must not be negative: " + maxDelay);
+      }
+    }
+
+  } // class GroupCommit
+
   private AuditConf audit;
 
   private SecurityConf security;
@@ -130,6 +184,15 @@ public class CaServerConf extends ValidatableConf {
 
   private List<DataSourceConf> datasources;
 
+  /**
+   * Directory of the sorted files of the revoked certificates, from which the full CRLs of
+   * the CAs with CRL control fullcrl.segment=true are generated. Default is
+   * xipki/ca/crlsegment.
+   */
+  private String crlSegmentDir;
+
+  private GroupCommit groupCommit;
+
   private List<SslContext> sslContexts;
 
   /**
@@ -176,6 +239,22 @@ public class CaServerConf extends ValidatableConf {
     this.datasources = datasources;
   }
 
+  public String getCrlSegmentDir() {
+    return crlSegmentDir == null ? "xipki/ca/crlsegment" : crlSegmentDir;
+  }
+
+  public void setCrlSegmentDir(String crlSegmentDir) {
+    this.crlSegmentDir = crlSegmentDir;
+  }
+
+  public GroupCommit getGroupCommit() {
+    return groupCommit == null ? new GroupCommit() : groupCommit;
+  }
+
+  public void setGroupCommit(GroupCommit groupCommit) {
+    this.groupCommit = groupCommit;
+  }
+
   public List<SslContext> getSslContexts() {
     return sslContexts;
   }
@@ -260,6 +339,7 @@ public class CaServerConf extends ValidatableConf {
     notEmpty(datasources, "datasources");
     validate(remoteMgmt);
     validate(security);
+    validate(groupCommit);
   }
 
 }
@@ -0,0 +1,239 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_FAILURE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.OperationException;
+import org.xipki.util.Args;
+
+/**
+ * Pipeline of the generation of certificates in batch: the certificates are prepared in the
+ * current thread and signed concurrently, then all of them are saved in one database
+ * transaction. If any certificate fails, no certificate is saved.
+ *
+ * <p>The executors are shared by all CAs. The signing with CT log, which blocks on the
+ * HTTP calls, is executed by its own executor, and each batch has at most
+ * {@code maxOutstanding} signing tasks in the executors, so that a large batch does not
+ * starve the requests of other CAs.
+ *
+ * @param <T> type of the certificate template.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CertBatchPipeline<T> {
+
+  /**
+   * Handler of the stages of the pipeline.
+   *
+   * @param <T> type of the certificate template.
+   */
+  public interface Handler<T> {
+
+    /**
+     * Prepares the certificate in the current thread, e.g. checks the certificates in
+     * process and builds the extensions.
+     * @param index index of the template in the batch.
+     * @param template the certificate template.
+     * @throws OperationException if the certificate could not be prepared.
+     */
+    void prepare(int index, T template) throws OperationException;
+
+    /**
+     * Whether the signing blocks, e.g. on the HTTP calls to the CT log servers.
+     * @param template the prepared certificate template.
+     * @return whether the signing blocks.
+     */
+    boolean isBlockingSign(T template);
+
+    /**
+     * Signs the prepared certificate, may be called in any thread.
+     * @param index index of the template in the batch.
+     * @param template the prepared certificate template.
+     * @return the signed certificate.
+     * @throws OperationException if the certificate could not be signed.
+     */
+    CertificateInfo sign(int index, T template) throws OperationException;
+
+    /**
+     * Saves all certificates in a single transaction, either all or none of them are saved.
+     * @param certInfos the certificates.
+     * @throws OperationException if the certificates could not be saved.
+     */
+    void save(List<CertificateInfo> certInfos) throws OperationException;
+
+    /**
+     * Releases the template passed to {@link #prepare(int, Object)}, also if the preparation
+     * failed. Called after all signing tasks of the batch have been finished.
+     * @param index index of the template in the batch.
+     * @param template the certificate template.
+     * @param successful whether all certificates of the batch are saved.
+     */
+    void release(int index, T template, boolean successful);
+
+  } // interface Handler
+
+  private final ExecutorService signExecutor;
+
+  private final ExecutorService blockingSignExecutor;
+
+  private final int maxOutstanding;
+
+  /**
+   * Constructor.
+   * @param signExecutor executor of the signing tasks, {@code null} to sign in the current
+   *          thread.
+   * @param blockingSignExecutor executor of the blocking signing tasks, {@code null} to sign
+   *          in the current thread.
+   * @param maxOutstanding maximal number of signing tasks of one batch in the executors.
+   */
+  public CertBatchPipeline(ExecutorService signExecutor, ExecutorService blockingSignExecutor,
+      int maxOutstanding) {
+    this.signExecutor = signExecutor;
+    this.blockingSignExecutor = blockingSignExecutor;
+    this.maxOutstanding = Args.positive(maxOutstanding, "maxOutstanding");
+  }
+
+  /**
+   * Generates the certificates.
+   * @param templates the certificate templates.
+   * @param handler the handler of the stages.
+   * @return the saved certificates, in the order of the templates.
+   * @throws OperationExceptionWithIndex if any certificate could not be generated, or if the
+   *           certificates could not be saved (index 0).
+   */
+  public List<CertificateInfo> execute(List<T> templates, final Handler<T> handler)
+      throws OperationExceptionWithIndex {
+    Args.notEmpty(templates, "templates");
+    Args.notNull(handler, "handler");
+
+    final int n = templates.size();
+    List<Future<CertificateInfo>> futures = new ArrayList<>(n);
+    List<CertificateInfo> certInfos = new ArrayList<>(n);
+    OperationExceptionWithIndex exception = null;
+    int numPrepared = 0;
+    // number of the finished signing tasks
+    int numSigned = 0;
+
+    try {
+      for (int i = 0; i < n && exception == null; i++) {
+        final int index = i;
+        final T template = templates.get(i);
+        numPrepared++;
+        try {
+          handler.prepare(index, template);
+        } catch (OperationException ex) {
+          exception = new OperationExceptionWithIndex(index, ex);
+          break;
+        }
+
+        Callable<CertificateInfo> signTask = new Callable<CertificateInfo>() {
+          @Override
+          public CertificateInfo call() throws Exception {
+            return handler.sign(index, template);
+          }
+        };
+
+        futures.add(submit(handler.isBlockingSign(template)
+            ? blockingSignExecutor : signExecutor, signTask));
+
+        // wait for the oldest signing task before the next one is submitted.
+        if (futures.size() - numSigned >= maxOutstanding) {
+          exception = await(futures, numSigned++, certInfos);
+        }
+      }
+
+      // wait for all signing tasks, also after a failure, since the templates are in process.
+      for (; numSigned < futures.size(); numSigned++) {
+        OperationExceptionWithIndex ex = await(futures, numSigned, certInfos);
+        if (exception == null) {
+          exception = ex;
+        }
+      }
+
+      if (exception == null) {
+        // the batch is saved atomically, the failed request cannot be identified.
+        try {
+          handler.save(certInfos);
+        } catch (OperationException ex) {
+          exception = new OperationExceptionWithIndex(0, ex);
+        }
+      }
+
+      if (exception != null) {
+        throw exception;
+      }
+
+      return certInfos;
+    } finally {
+      for (int i = 0; i < numPrepared; i++) {
+        handler.release(i, templates.get(i), exception == null);
+      }
+    }
+  } // method execute
+
+  private static Future<CertificateInfo> submit(ExecutorService executor,
+      Callable<CertificateInfo> task) {
+    if (executor != null) {
+      try {
+        return executor.submit(task);
+      } catch (RejectedExecutionException ex) {
+        // the executor is shut down, e.g. by the restart of the CA system.
+      }
+    }
+
+    FutureTask<CertificateInfo> future = new FutureTask<>(task);
+    future.run();
+    return future;
+  }
+
+  /**
+   * Waits for the signing task, the signed certificate is added to the certInfos.
+   * @return the exception if the signing task failed, {@code null} otherwise.
+   */
+  private static OperationExceptionWithIndex await(List<Future<CertificateInfo>> futures,
+      int index, List<CertificateInfo> certInfos) {
+    Future<CertificateInfo> future = futures.get(index);
+    try {
+      certInfos.add(future.get());
+      return null;
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      return new OperationExceptionWithIndex(index, (cause instanceof OperationException)
+          ? (OperationException) cause : new OperationException(SYSTEM_FAILURE, cause));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      return new OperationExceptionWithIndex(index,
+          new OperationException(SYSTEM_FAILURE, "interrupted"));
+    }
+  } // method await
+
+}
@@ -37,6 +37,9 @@ public class CertRevInfoWithSerial extends CertRevocationInfo
 
   private final BigInteger serial;
 
+  // notAfter of the certificate, may be null if not retrieved.
+  private Date notAfter;
+
   public CertRevInfoWithSerial(long id, BigInteger serial, CrlReason reason,
       Date revocationTime, Date invalidityTime) {
     super(reason, revocationTime, invalidityTime);
@@ -59,6 +62,14 @@ public class CertRevInfoWithSerial extends CertRevocationInfo
     return id;
   }
 
+  public Date getNotAfter() {
+    return notAfter;
+  }
+
+  public void setNotAfter(Date notAfter) {
+    this.notAfter = notAfter;
+  }
+
   @Override
   public int compareTo(CertRevInfoWithSerial other) {
     return serial.compareTo(other.serial);
@@ -0,0 +1,523 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import static org.xipki.ca.api.OperationException.ErrorCode.CRL_FAILURE;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.api.mgmt.CrlControl;
+import org.xipki.ca.server.store.CertStore;
+import org.xipki.ca.server.store.CertStore.RevokedCertHandler;
+import org.xipki.util.Args;
+import org.xipki.util.StringUtil;
+
+/**
+ * File containing the revoked certificates of the last full CRL of a CA, sorted by the
+ * serial number. The next full CRL is generated by merging this file with the certificates
+ * changed since then, instead of reading all revoked certificates from the database.
+ *
+ * <p>The changed certificates are those in the table DELTACRL_CACHE, and those consumed by
+ * the delta CRLs generated since the last full CRL, which are kept in the changes file
+ * {@code <ca name>.crlsegment.changes}. After a configured number of incremental generations,
+ * or if the file does not match the last full CRL, the file is rebuilt from the database.
+ *
+ * <p>Format: the header lines are {@code #CRLNUMBER=<crl number>},
+ * {@code #FILTER=<include expired>,<only CA certs>,<only user certs>} and
+ * {@code #INCREMENTS=<number of incremental generations>}, each of the following lines is
+ * {@code <hex serial number>;<revocation time>;<reason code>;<invalidity time>;<not after>},
+ * where the times are in seconds since January 1, 1970, 00:00:00 GMT, and 0 for absent
+ * invalidity time.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public final class CrlSegment {
+
+  /**
+   * Loads the current revocation information of a changed certificate.
+   */
+  public interface RevokedCertLoader {
+
+    /**
+     * Loads the revocation information.
+     * @param serial the serial number.
+     * @return the revocation information, or {@code null} if the certificate is not revoked
+     *         or not covered by the CRL.
+     * @throws OperationException if the revocation information could not be loaded.
+     */
+    CertRevInfoWithSerial load(BigInteger serial) throws OperationException;
+
+  } // interface RevokedCertLoader
+
+  /**
+   * Reads the entries of a segment file in the order of serial number.
+   */
+  public static class Reader implements Closeable {
+
+    private final BufferedReader reader;
+
+    private final long crlNumber;
+
+    private final String filter;
+
+    private final int increments;
+
+    public Reader(File file) throws IOException {
+      this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+      try {
+        this.crlNumber = Long.parseLong(readHeader(reader, CRLNUMBER_PREFIX));
+        this.filter = readHeader(reader, FILTER_PREFIX);
+        this.increments = Integer.parseInt(readHeader(reader, INCREMENTS_PREFIX));
+      } catch (IOException | NumberFormatException ex) {
+        reader.close();
+        throw new IOException("invalid segment file " + file.getPath());
+      }
+    }
+
+    /**
+     * Reads the next entry.
+     * @return the next entry, or {@code null} if no more entry is available.
+     * @throws IOException if the file could not be read.
+     */
+    public CertRevInfoWithSerial next() throws IOException {
+      String line = reader.readLine();
+      return (line == null) ? null : parseLine(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+
+  } // class Reader
+
+  /**
+   * Writes the not expired entries to the segment and passes them to the handler.
+   */
+  private static class SegmentWriter implements RevokedCertHandler {
+
+    private final BufferedWriter writer;
+
+    private final RevokedCertHandler handler;
+
+    private final long notExpireAtSec;
+
+    private long count;
+
+    SegmentWriter(BufferedWriter writer, RevokedCertHandler handler, long notExpireAtSec) {
+      this.writer = writer;
+      this.handler = handler;
+      this.notExpireAtSec = notExpireAtSec;
+    }
+
+    @Override
+    public void handle(CertRevInfoWithSerial revInfo) throws OperationException {
+      long notAfter = revInfo.getNotAfter().getTime() / 1000;
+      if (notAfter <= notExpireAtSec) {
+        return;
+      }
+
+      Date invalidityTime = revInfo.getInvalidityTime();
+      try {
+        writer.write(revInfo.getSerial().toString(16));
+        writer.write(';');
+        writer.write(Long.toString(revInfo.getRevocationTime().getTime() / 1000));
+        writer.write(';');
+        writer.write(Integer.toString(revInfo.getReason().getCode()));
+        writer.write(';');
+        writer.write(Long.toString(invalidityTime == null ? 0 : invalidityTime.getTime() / 1000));
+        writer.write(';');
+        writer.write(Long.toString(notAfter));
+        writer.newLine();
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, "could not write CRL segment: "
+            + ex.getMessage());
+      }
+
+      handler.handle(revInfo);
+      count++;
+    } // method handle
+
+  } // class SegmentWriter
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlSegment.class);
+
+  private static final String CRLNUMBER_PREFIX = "#CRLNUMBER=";
+
+  private static final String FILTER_PREFIX = "#FILTER=";
+
+  private static final String INCREMENTS_PREFIX = "#INCREMENTS=";
+
+  private final File file;
+
+  private final File changesFile;
+
+  private final File tmpFile;
+
+  private final String caName;
+
+  public CrlSegment(File dir, String caName) {
+    Args.notNull(dir, "dir");
+    this.caName = Args.toNonBlankLower(caName, "caName");
+    this.file = new File(dir, this.caName + ".crlsegment");
+    this.changesFile = new File(dir, this.caName + ".crlsegment.changes");
+    this.tmpFile = new File(dir, this.caName + ".crlsegment.tmp");
+  }
+
+  /**
+   * Records the certificates consumed by a delta CRL, so that they will be considered in the
+   * next full CRL.
+   * @param serials the serial numbers of the changed certificates.
+   */
+  void addChanges(List<BigInteger> serials) {
+    if (serials.isEmpty() || !file.exists()) {
+      return;
+    }
+
+    try {
+      long crlNumber;
+      try (Reader reader = new Reader(file)) {
+        crlNumber = reader.crlNumber;
+      }
+
+      boolean append = changesFile.exists() && crlNumber == readChangesCrlNumber();
+      try (BufferedWriter writer = append
+          ? Files.newBufferedWriter(changesFile.toPath(), StandardCharsets.UTF_8,
+              StandardOpenOption.APPEND)
+          : Files.newBufferedWriter(changesFile.toPath(), StandardCharsets.UTF_8)) {
+        if (!append) {
+          writer.write(CRLNUMBER_PREFIX);
+          writer.write(Long.toString(crlNumber));
+          writer.newLine();
+        }
+
+        for (BigInteger serial : serials) {
+          writer.write(serial.toString(16));
+          writer.newLine();
+        }
+      }
+    } catch (IOException ex) {
+      LOG.warn("could not record changes for the CRL segment of CA {}, will be rebuilt: {}",
+          caName, ex.getMessage());
+      delete();
+    }
+  } // method addChanges
+
+  /**
+   * Passes the revoked certificates of the full CRL to the handler in the order of serial
+   * number, and writes them to a temporary file which becomes the new segment by
+   * {@link #commit(boolean)}.
+   *
+   * @param certstore the certificate store.
+   * @param ca the CA.
+   * @param control the CRL control.
+   * @param notExpireAt the certificates expired at this time are not included.
+   * @param rebuildIntervals maximal number of incremental generations before the segment is
+   *          rebuilt from the database.
+   * @param crlNumber the number of the full CRL to be generated.
+   * @param handler the handler of the revoked certificates.
+   * @return number of the revoked certificates.
+   * @throws OperationException if the entries could not be read or written.
+   */
+  long write(CertStore certstore, NameId ca, CrlControl control, Date notExpireAt,
+      int rebuildIntervals, BigInteger crlNumber, RevokedCertHandler handler)
+      throws OperationException {
+    final long start = System.currentTimeMillis();
+    final boolean onlyCaCerts = control.isOnlyContainsCaCerts();
+    final boolean onlyUserCerts = control.isOnlyContainsUserCerts();
+    final String filter = control.isIncludeExpiredCerts() + "," + onlyCaCerts + ","
+        + onlyUserCerts;
+
+    Reader reader = openSegment(certstore.getMaxFullCrlNumber(ca), filter, rebuildIntervals);
+    try {
+      File dir = file.getParentFile();
+      if (dir != null && !dir.exists()) {
+        dir.mkdirs();
+      }
+
+      SegmentWriter segmentWriter;
+      try (BufferedWriter writer = newWriter(crlNumber, filter,
+          (reader == null) ? 0 : reader.increments + 1)) {
+        segmentWriter = new SegmentWriter(writer, handler, notExpireAt.getTime() / 1000);
+        if (reader == null) {
+          certstore.readRevokedCerts(ca, notExpireAt, onlyCaCerts, onlyUserCerts,
+              segmentWriter);
+        } else {
+          merge(reader, certstore, ca, onlyCaCerts, onlyUserCerts, segmentWriter);
+        }
+      }
+
+      long count = segmentWriter.count;
+
+      LOG.info("read {} revoked certificates of CA {} ({}) in {} ms", count, caName,
+          (reader == null) ? "rebuilt" : "incremental", System.currentTimeMillis() - start);
+      return count;
+    } catch (IOException | RuntimeException ex) {
+      // the segment will be rebuilt in the next generation.
+      delete();
+      throw new OperationException(CRL_FAILURE, "could not process CRL segment: "
+          + ex.getMessage());
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close reader: {}", ex.getMessage());
+        }
+      }
+    }
+  } // method write
+
+  /**
+   * Replaces the segment by the one written in {@link #write}, must be called after the CRL
+   * has been stored.
+   *
+   * <p>If the CRL could not be stored, the segment is deleted: the DELTACRL_CACHE is cleared
+   * although the changes merged into the CRL are not in any stored CRL, hence neither the
+   * old nor the new segment matches the database, and the next full CRL must be rebuilt from
+   * the database.
+   *
+   * @param crlStored whether the CRL has been stored.
+   */
+  public void commit(boolean crlStored) {
+    if (!crlStored) {
+      LOG.warn("CRL of CA {} is not stored, the CRL segment will be rebuilt", caName);
+      delete();
+      return;
+    }
+
+    try {
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.deleteIfExists(changesFile.toPath());
+    } catch (IOException ex) {
+      LOG.warn("could not commit the CRL segment of CA {}, will be rebuilt: {}", caName,
+          ex.getMessage());
+      delete();
+    }
+  }
+
+  /**
+   * Deletes the temporary file, if present.
+   */
+  void abort() {
+    deleteFile(tmpFile);
+  }
+
+  private void delete() {
+    deleteFile(tmpFile);
+    deleteFile(file);
+    deleteFile(changesFile);
+  }
+
+  /**
+   * Opens the segment if it can be used to generate the next full CRL.
+   * @return the reader of the segment, or {@code null} if the segment needs to be rebuilt.
+   */
+  private Reader openSegment(long maxFullCrlNumber, String filter, int rebuildIntervals) {
+    if (!file.exists()) {
+      LOG.info("build CRL segment of CA {}", caName);
+      return null;
+    }
+
+    Reader reader = null;
+    String reason = null;
+    try {
+      reader = new Reader(file);
+      if (reader.crlNumber != maxFullCrlNumber) {
+        reason = "not of the last full CRL";
+      } else if (!filter.equals(reader.filter)) {
+        reason = "filter changed";
+      } else if (reader.increments + 1 >= rebuildIntervals) {
+        reason = "periodic rebuild";
+      } else if (changesFile.exists() && readChangesCrlNumber() != reader.crlNumber) {
+        reason = "changes not of the last full CRL";
+      }
+    } catch (IOException ex) {
+      reason = ex.getMessage();
+    }
+
+    if (reason == null) {
+      return reader;
+    }
+
+    LOG.info("rebuild CRL segment of CA {}: {}", caName, reason);
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close reader: {}", ex.getMessage());
+      }
+    }
+    return null;
+  } // method openSegment
+
+  private void merge(Reader reader, final CertStore certstore, final NameId ca,
+      final boolean onlyCaCerts, final boolean onlyUserCerts, SegmentWriter writer)
+      throws IOException, OperationException {
+    TreeSet<BigInteger> changes = readChanges();
+    changes.addAll(certstore.getSerialsOfDeltaCrlCache(ca));
+
+    merge(reader, changes, new RevokedCertLoader() {
+      @Override
+      public CertRevInfoWithSerial load(BigInteger serial) throws OperationException {
+        return certstore.getRevokedCert(ca, serial, onlyCaCerts, onlyUserCerts);
+      }
+    }, writer);
+
+    LOG.debug("merged {} changed certificates into the CRL segment of CA {}", changes.size(),
+        caName);
+  } // method merge
+
+  /**
+   * Merges the entries of the segment with the changed certificates, and passes the result
+   * to the handler in the order of serial number.
+   * @param reader the reader of the segment.
+   * @param changes the serial numbers of the changed certificates.
+   * @param loader the loader of the current revocation information of changed certificates.
+   * @param handler the handler of the merged entries.
+   * @throws IOException if the segment could not be read.
+   * @throws OperationException if the handler or loader failed.
+   */
+  public static void merge(Reader reader, TreeSet<BigInteger> changes,
+      RevokedCertLoader loader, RevokedCertHandler handler) throws IOException, OperationException {
+    Iterator<BigInteger> changesIt = changes.iterator();
+    BigInteger changed = changesIt.hasNext() ? changesIt.next() : null;
+    CertRevInfoWithSerial entry = reader.next();
+
+    while (entry != null || changed != null) {
+      int diff = (entry == null) ? 1 : (changed == null) ? -1
+          : entry.getSerial().compareTo(changed);
+      if (diff < 0) {
+        handler.handle(entry);
+        entry = reader.next();
+        continue;
+      }
+
+      if (diff == 0) {
+        // replaced by the current revocation information.
+        entry = reader.next();
+      }
+
+      CertRevInfoWithSerial revInfo = loader.load(changed);
+      if (revInfo != null) {
+        handler.handle(revInfo);
+      }
+      changed = changesIt.hasNext() ? changesIt.next() : null;
+    }
+  } // method merge
+
+  private long readChangesCrlNumber() throws IOException {
+    try (BufferedReader reader =
+        Files.newBufferedReader(changesFile.toPath(), StandardCharsets.UTF_8)) {
+      return Long.parseLong(readHeader(reader, CRLNUMBER_PREFIX));
+    } catch (NumberFormatException ex) {
+      throw new IOException("invalid changes file " + changesFile.getPath());
+    }
+  }
+
+  private TreeSet<BigInteger> readChanges() throws IOException {
+    TreeSet<BigInteger> changes = new TreeSet<>();
+    if (!changesFile.exists()) {
+      return changes;
+    }
+
+    try (BufferedReader reader =
+        Files.newBufferedReader(changesFile.toPath(), StandardCharsets.UTF_8)) {
+      readHeader(reader, CRLNUMBER_PREFIX);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          changes.add(new BigInteger(line, 16));
+        }
+      }
+    } catch (NumberFormatException ex) {
+      throw new IOException("invalid changes file " + changesFile.getPath());
+    }
+    return changes;
+  } // method readChanges
+
+  private BufferedWriter newWriter(BigInteger crlNumber, String filter, int increments)
+      throws IOException {
+    BufferedWriter writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8);
+    writer.write(CRLNUMBER_PREFIX);
+    writer.write(crlNumber.toString());
+    writer.newLine();
+    writer.write(FILTER_PREFIX);
+    writer.write(filter);
+    writer.newLine();
+    writer.write(INCREMENTS_PREFIX);
+    writer.write(Integer.toString(increments));
+    writer.newLine();
+    return writer;
+  }
+
+  private static String readHeader(BufferedReader reader, String prefix) throws IOException {
+    String line = reader.readLine();
+    if (line == null || !line.startsWith(prefix)) {
+      throw new IOException("missing header " + prefix);
+    }
+    return line.substring(prefix.length());
+  }
+
+  private static CertRevInfoWithSerial parseLine(String line) throws IOException {
+    List<String> tokens = StringUtil.split(line, ";");
+    if (tokens.size() != 5) {
+      throw new IOException("invalid line in segment: " + line);
+    }
+
+    try {
+      BigInteger serial = new BigInteger(tokens.get(0), 16);
+      Date revocationTime = new Date(Long.parseLong(tokens.get(1)) * 1000);
+      int reason = Integer.parseInt(tokens.get(2));
+      long rit = Long.parseLong(tokens.get(3));
+      Date invalidityTime = (rit == 0) ? null : new Date(rit * 1000);
+      CertRevInfoWithSerial revInfo =
+          new CertRevInfoWithSerial(0, serial, reason, revocationTime, invalidityTime);
+      revInfo.setNotAfter(new Date(Long.parseLong(tokens.get(4)) * 1000));
+      return revInfo;
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("invalid line in segment: " + line);
+    }
+  } // method parseLine
+
+  private static void deleteFile(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("could not delete file {}", file.getPath());
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+import org.xipki.util.StringUtil;
+
+/**
+ * DER encoded CRL with the metadata required to serve it without parsing, e.g. for the
+ * HTTP headers ETag and Last-Modified.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public final class EncodedCrl {
+
+  private final byte[] encoded;
+
+  private final BigInteger crlNumber;
+
+  private final boolean deltaCrl;
+
+  private final Date thisUpdate;
+
+  private final String etag;
+
+  private final String lastModified;
+
+  // parsed on demand
+  private volatile CertificateList crl;
+
+  EncodedCrl(byte[] encoded, BigInteger crlNumber, boolean deltaCrl, Date thisUpdate) {
+    this.encoded = Args.notNull(encoded, "encoded");
+    this.crlNumber = Args.notNull(crlNumber, "crlNumber");
+    this.deltaCrl = deltaCrl;
+    this.thisUpdate = Args.notNull(thisUpdate, "thisUpdate");
+    // RFC 5019-like ETag: ASCII HEX representation of the SHA1 hash of the CRL.
+    this.etag = StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encoded), "\"");
+    this.lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+        ZonedDateTime.ofInstant(thisUpdate.toInstant(), ZoneOffset.UTC));
+  }
+
+  /**
+   * Parses the encoded CRL, e.g. read from the database.
+   * @param encoded DER encoded CRL.
+   * @return the parsed CRL.
+   * @throws IllegalArgumentException if the CRL is invalid.
+   */
+  static EncodedCrl getInstance(byte[] encoded) {
+    CertificateList crl = CertificateList.getInstance(encoded);
+    Extensions extns = crl.getTBSCertList().getExtensions();
+    if (extns == null) {
+      throw new IllegalArgumentException("CRL does not contain extensions");
+    }
+
+    Extension extn = extns.getExtension(Extension.cRLNumber);
+    if (extn == null) {
+      throw new IllegalArgumentException("CRL does not contain extension cRLNumber");
+    }
+
+    BigInteger crlNumber = ASN1Integer.getInstance(extn.getParsedValue()).getPositiveValue();
+    boolean deltaCrl = extns.getExtension(Extension.deltaCRLIndicator) != null;
+    EncodedCrl ret = new EncodedCrl(encoded, crlNumber, deltaCrl,
+        crl.getThisUpdate().getDate());
+    ret.crl = crl;
+    return ret;
+  } // method getInstance
+
+  /**
+   * Returns the DER encoded CRL. The returned array is shared and must not be modified.
+   * @return the DER encoded CRL.
+   */
+  public byte[] getEncoded() {
+    return encoded;
+  }
+
+  public BigInteger getCrlNumber() {
+    return crlNumber;
+  }
+
+  public boolean isDeltaCrl() {
+    return deltaCrl;
+  }
+
+  public Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  /**
+   * Returns the value of the HTTP header ETag.
+   * @return the quoted hex SHA-1 fingerprint of the CRL.
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * Returns the value of the HTTP header Last-Modified.
+   * @return the thisUpdate of the CRL in the format of RFC 1123.
+   */
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  public CertificateList getCrl() {
+    CertificateList ret = crl;
+    if (ret == null) {
+      ret = CertificateList.getInstance(encoded);
+      crl = ret;
+    }
+    return ret;
+  }
+
+}
@@ -73,6 +73,10 @@ class IdentifiedCertPublisher implements Closeable {
     return certPublisher.crlAdded(caCert, crl);
   }
 
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    return certPublisher.crlAdded(caCert, encodedCrl);
+  }
+
   public MgmtEntry.Publisher getDbEntry() {
     return entry;
   }
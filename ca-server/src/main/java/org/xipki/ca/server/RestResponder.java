@@ -23,7 +23,6 @@ import static org.xipki.audit.AuditStatus.FAILED;
 
 import java.io.EOFException;
 import java.math.BigInteger;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.HashMap;
@@ -109,6 +108,8 @@ public class RestResponder {
 
   private static final int OK = 200;
 
+  private static final int NOT_MODIFIED = 304;
+
   private static final int BAD_REQUEST = 400;
 
   private static final int UNAUTHORIZED = 401;
@@ -411,15 +412,24 @@ public class RestResponder {
           }
         }
 
-        X509CRL crl = ca.getCrl(crlNumber);
+        EncodedCrl crl = ca.getEncodedCrl(crlNumber);
         if (crl == null) {
           String message = "could not get CRL";
           LOG.warn(message);
           throw new HttpRespAuditException(INTERNAL_SERVER_ERROR, message, INFO, FAILED);
         }
 
-        respCt = RestAPIConstants.CT_pkix_crl;
-        respBytes = crl.getEncoded();
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RestAPIConstants.HEADER_PKISTATUS, RestAPIConstants.PKISTATUS_accepted);
+        headers.put("ETag", crl.getEtag());
+        headers.put("Last-Modified", crl.getLastModified());
+
+        String ifNoneMatch = httpRetriever.getHeader("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(crl.getEtag())) {
+          return new RestResponse(NOT_MODIFIED, null, headers, null);
+        }
+
+        return new RestResponse(OK, RestAPIConstants.CT_pkix_crl, headers, crl.getEncoded());
       } else if (RestAPIConstants.CMD_new_crl.equalsIgnoreCase(command)) {
         try {
           requestor.assertPermitted(PermissionConstants.GEN_CRL);
@@ -427,7 +437,7 @@ public class RestResponder {
           throw new OperationException(ErrorCode.NOT_PERMITTED, ex.getMessage());
         }
 
-        X509CRL crl = ca.generateCrlOnDemand(msgId);
+        EncodedCrl crl = ca.generateCrlOnDemand(msgId);
         if (crl == null) {
           String message = "could not generate CRL";
           LOG.warn(message);
@@ -28,10 +28,13 @@ import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_UNAVAILABLE;
 import static org.xipki.ca.api.OperationException.ErrorCode.UNKNOWN_CERT;
 import static org.xipki.ca.api.OperationException.ErrorCode.UNKNOWN_CERT_PROFILE;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
@@ -104,8 +107,6 @@ import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.cert.CertIOException;
-import org.bouncycastle.cert.X509CRLHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.crypto.RuntimeCryptoException;
 import org.slf4j.Logger;
@@ -143,10 +144,12 @@ import org.xipki.ca.api.profile.ExtensionValues;
 import org.xipki.ca.api.profile.KeypairGenControl;
 import org.xipki.ca.server.cmp.CmpRequestorInfo;
 import org.xipki.ca.server.store.CertStore;
+import org.xipki.ca.server.store.CertStore.RevokedCertHandler;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.CrlReason;
+import org.xipki.security.CrlStreamBuilder;
 import org.xipki.security.CtLog.SignedCertificateTimestampList;
 import org.xipki.security.EdECConstants;
 import org.xipki.security.FpIdCalculator;
@@ -165,6 +168,7 @@ import org.xipki.util.CollectionUtil;
 import org.xipki.util.CompareUtil;
 import org.xipki.util.DateUtil;
 import org.xipki.util.HealthCheckResult;
+import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 import org.xipki.util.Validity;
@@ -194,6 +198,12 @@ public class X509Ca implements Closeable {
     private String grantedSubjectText;
     private long fpSubject;
 
+    // state of the issuance
+    private boolean keyInProcess;
+    private boolean subjectInProcess;
+    private X509v3CertificateBuilder certBuilder;
+    private ExtensionControl extnSctCtrl;
+
     public GrantedCertTemplate(Extensions extensions, IdentifiedCertprofile certprofile,
         Date grantedNotBefore, Date grantedNotAfter, X500Name requestedSubject,
         SubjectPublicKeyInfo grantedPublicKey, long fpPublicKey, PrivateKeyInfo privateKey,
@@ -382,10 +392,136 @@ public class X509Ca implements Closeable {
 
   } // class SuspendedCertsRevoker
 
+  /**
+   * Writes the revoked certificates to the CRL as they are read from the database.
+   */
+  private class CrlEntryWriter implements RevokedCertHandler {
+
+    private final CrlStreamBuilder crlBuilder;
+
+    private final boolean indirectCrl;
+
+    private boolean isFirstCrlEntry = true;
+
+    CrlEntryWriter(CrlStreamBuilder crlBuilder, boolean indirectCrl) {
+      this.crlBuilder = crlBuilder;
+      this.indirectCrl = indirectCrl;
+    }
+
+    @Override
+    public void handle(CertRevInfoWithSerial revInfo) throws OperationException {
+      CrlControl crlControl = caInfo.getCrlControl();
+      CrlReason reason = revInfo.getReason();
+      if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+        reason = CrlReason.UNSPECIFIED;
+      }
+
+      Date revocationTime = revInfo.getRevocationTime();
+      Date invalidityTime = revInfo.getInvalidityTime();
+
+      switch (crlControl.getInvalidityDateMode()) {
+        case forbidden:
+          invalidityTime = null;
+          break;
+        case optional:
+          break;
+        case required:
+          if (invalidityTime == null) {
+            invalidityTime = revocationTime;
+          }
+          break;
+        default:
+          throw new IllegalStateException(
+              "unknown TripleState " + crlControl.getInvalidityDateMode());
+      }
+
+      BigInteger serial = revInfo.getSerial();
+      LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
+
+      try {
+        if (!indirectCrl || !isFirstCrlEntry) {
+          crlBuilder.addCrlEntry(serial, revocationTime, reason.getCode(), invalidityTime);
+          return;
+        }
+
+        List<Extension> extensions = new ArrayList<>(3);
+        if (reason != CrlReason.UNSPECIFIED) {
+          Extension ext = createReasonExtension(reason.getCode());
+          extensions.add(ext);
+        }
+        if (invalidityTime != null) {
+          Extension ext = createInvalidityDateExtension(invalidityTime);
+          extensions.add(ext);
+        }
+
+        Extension ext = createCertificateIssuerExtension(
+            caInfo.getPublicCaInfo().getX500Subject());
+        extensions.add(ext);
+
+        crlBuilder.addCrlEntry(serial, revocationTime,
+            new Extensions(extensions.toArray(new Extension[0])));
+        isFirstCrlEntry = false;
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, "IOException: " + ex.getMessage());
+      }
+    } // method handle
+
+  } // class CrlEntryWriter
+
+  /**
+   * The cached latest full and delta CRLs.
+   */
+  private static class CrlCache {
+
+    private final EncodedCrl current;
+
+    private final EncodedCrl fullCrl;
+
+    private final EncodedCrl deltaCrl;
+
+    // time in milliseconds after which the slave instance checks the database again.
+    private final long validUntil;
+
+    CrlCache(EncodedCrl fullCrl, EncodedCrl deltaCrl, long validUntil) {
+      this.fullCrl = fullCrl;
+      this.deltaCrl = deltaCrl;
+      this.validUntil = validUntil;
+      if (fullCrl == null) {
+        this.current = deltaCrl;
+      } else if (deltaCrl == null) {
+        this.current = fullCrl;
+      } else {
+        this.current = deltaCrl.getThisUpdate().before(fullCrl.getThisUpdate())
+            ? fullCrl : deltaCrl;
+      }
+    }
+
+    CrlCache update(EncodedCrl crl, long validUntil) {
+      return crl.isDeltaCrl() ? new CrlCache(fullCrl, crl, validUntil)
+          : new CrlCache(crl, deltaCrl, validUntil);
+    }
+
+    EncodedCrl get(BigInteger crlNumber) {
+      if (crlNumber == null) {
+        return current;
+      } else if (fullCrl != null && fullCrl.getCrlNumber().equals(crlNumber)) {
+        return fullCrl;
+      } else if (deltaCrl != null && deltaCrl.getCrlNumber().equals(crlNumber)) {
+        return deltaCrl;
+      } else {
+        return null;
+      }
+    }
+
+  } // class CrlCache
+
   private static final TimeZone TIMEZONE_UTC = TimeZone.getTimeZone("UTC");
 
   private static final long MS_PER_SECOND = 1000L;
 
+  // lifetime in milliseconds of the cached CRLs in the slave instance.
+  private static final long CRL_CACHE_SLAVE_TTL = 60 * 1000L;
+
   private static final long MS_PER_MINUTE = 60000L;
 
   private static final long MS_PER_10MINUTES = 300000L;
@@ -421,6 +557,11 @@ public class X509Ca implements Closeable {
 
   private AtomicBoolean crlGenInProcess = new AtomicBoolean(false);
 
+  // null if not loaded from the database, guarded by crlCacheLock for modification.
+  private volatile CrlCache crlCache;
+
+  private final Object crlCacheLock = new Object();
+
   private ScheduledFuture<?> crlGenerationService;
 
   private ScheduledFuture<?> expiredCertsRemover;
@@ -598,32 +739,17 @@ public class X509Ca implements Closeable {
   }
 
   public X509CRL getCrl(BigInteger crlNumber) throws OperationException {
-    LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
-    boolean successful = false;
+    EncodedCrl encodedCrl = getEncodedCrl(crlNumber);
+    if (encodedCrl == null) {
+      return null;
+    }
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
-        return null;
-      }
-
-      try {
-        X509CRL crl = X509Util.parseCrl(encodedCrl);
-        successful = true;
-        if (LOG.isInfoEnabled()) {
-          String timeStr = new Time(crl.getThisUpdate()).getTime();
-          LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(), timeStr);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
-      } catch (RuntimeException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
-      }
-    } finally {
-      if (!successful) {
-        LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
-      }
+      return X509Util.parseCrl(encodedCrl.getEncoded());
+    } catch (CRLException | CertificateException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
     }
   } // method getCrl
 
@@ -632,32 +758,102 @@ public class X509Ca implements Closeable {
   }
 
   public CertificateList getBcCrl(BigInteger crlNumber) throws OperationException {
+    EncodedCrl encodedCrl = getEncodedCrl(crlNumber);
+    try {
+      return (encodedCrl == null) ? null : encodedCrl.getCrl();
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    }
+  } // method getBcCrl
+
+  /**
+   * Gets the encoded CRL. The latest full and delta CRLs are served from the memory.
+   * @param crlNumber the CRL number, {@code null} for the current CRL.
+   * @return the encoded CRL, or {@code null} if not available.
+   * @throws OperationException if the CRL could not be read.
+   * @since 5.3.0
+   */
+  public EncodedCrl getEncodedCrl(BigInteger crlNumber) throws OperationException {
     LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
     boolean successful = false;
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
+      CrlCache cache = getCrlCache();
+      EncodedCrl crl = (cache == null) ? null : cache.get(crlNumber);
+      if (crl == null && crlNumber != null) {
+        // older CRL, not cached.
+        byte[] encoded = certstore.getEncodedCrl(caIdent, crlNumber);
+        if (encoded != null) {
+          crl = EncodedCrl.getInstance(encoded);
+        }
+      }
+
+      if (crl == null) {
         return null;
       }
 
-      try {
-        CertificateList crl = CertificateList.getInstance(encodedCrl);
-        successful = true;
-        if (LOG.isInfoEnabled()) {
-          LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(),
-              crl.getThisUpdate().getTime());
-        }
-        return crl;
-      } catch (RuntimeException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
+      successful = true;
+      if (LOG.isInfoEnabled()) {
+        LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(),
+            new Time(crl.getThisUpdate()).getTime());
       }
+      return crl;
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
     } finally {
       if (!successful) {
         LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
       }
     }
-  } // method getCrl
+  } // method getEncodedCrl
+
+  private CrlCache getCrlCache() throws OperationException {
+    CrlCache cache = crlCache;
+    if (cache != null && (masterMode || System.currentTimeMillis() < cache.validUntil)) {
+      return cache;
+    }
+
+    synchronized (crlCacheLock) {
+      cache = crlCache;
+      long now = System.currentTimeMillis();
+      if (cache != null && (masterMode || now < cache.validUntil)) {
+        return cache;
+      }
+
+      // the CRLs are generated by the master instance.
+      long validUntil = now + CRL_CACHE_SLAVE_TTL;
+      if (cache != null && cache.current != null
+          && cache.current.getCrlNumber().longValue() == certstore.getMaxCrlNumber(caIdent)) {
+        cache = new CrlCache(cache.fullCrl, cache.deltaCrl, validUntil);
+      } else {
+        byte[] encoded = certstore.getEncodedCrl(caIdent, null);
+        if (encoded == null) {
+          // do not cache the absence of CRL.
+          return null;
+        }
+        EncodedCrl crl = EncodedCrl.getInstance(encoded);
+        cache = (cache == null) ? new CrlCache(null, null, validUntil).update(crl, validUntil)
+            : cache.update(crl, validUntil);
+      }
+
+      crlCache = cache;
+      return cache;
+    }
+  } // method getCrlCache
+
+  private void updateCrlCache(EncodedCrl crl) {
+    synchronized (crlCacheLock) {
+      CrlCache cache = crlCache;
+      long validUntil = System.currentTimeMillis() + CRL_CACHE_SLAVE_TTL;
+      if (crl == null) {
+        crlCache = null;
+      } else if (cache == null) {
+        crlCache = new CrlCache(null, null, validUntil).update(crl, validUntil);
+      } else {
+        crlCache = cache.update(crl, validUntil);
+      }
+    }
+  } // method updateCrlCache
 
   private void cleanupCrlsWithoutException(String msgId) throws OperationException {
     try {
@@ -689,7 +885,7 @@ public class X509Ca implements Closeable {
     }
   } // method cleanupCrls
 
-  public X509CRL generateCrlOnDemand(String msgId) throws OperationException {
+  public EncodedCrl generateCrlOnDemand(String msgId) throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
       throw new OperationException(NOT_PERMITTED, "CA could not generate CRL");
@@ -715,7 +911,7 @@ public class X509Ca implements Closeable {
           + intervals * MS_PER_DAY);
 
       long maxIdOfDeltaCrlCache = certstore.getMaxIdOfDeltaCrlCache(caIdent);
-      X509CRL crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
+      EncodedCrl crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
       if (crl == null) {
         return null;
       }
@@ -731,12 +927,12 @@ public class X509Ca implements Closeable {
     }
   } // method generateCrlOnDemand
 
-  private X509CRL generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate, String msgId)
+  private EncodedCrl generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate, String msgId)
       throws OperationException {
     boolean successful = false;
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_crl, msgId);
     try {
-      X509CRL crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
+      EncodedCrl crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
       successful = true;
       return crl;
     } finally {
@@ -744,7 +940,7 @@ public class X509Ca implements Closeable {
     }
   }
 
-  private X509CRL generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+  private EncodedCrl generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
       AuditEvent event, String msgId) throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
@@ -775,36 +971,81 @@ public class X509Ca implements Closeable {
       boolean indirectCrl = (crlSigner != null);
       X500Name crlIssuer = indirectCrl ? crlSigner.getSubjectAsX500Name() : pci.getX500Subject();
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
+      CrlStreamBuilder crlBuilder;
+      try {
+        crlBuilder = new CrlStreamBuilder(crlIssuer, thisUpdate, null);
+      } catch (IOException ex) {
+        throw new OperationException(SYSTEM_FAILURE, "IOException: " + ex.getMessage());
+      }
+
+      try {
+        EncodedCrl crl = generateCrl1(crlBuilder, crlSigner, crlIssuer, deltaCrl, thisUpdate,
+            nextUpdate, event, msgId);
+        successful = true;
+        return crl;
+      } finally {
+        crlBuilder.close();
       }
+    } finally {
+      if (!successful) {
+        LOG.info("    FAILED generateCrl: ca={}", caIdent.getName());
+      }
+    }
+  } // method generateCrl0
 
-      final int numEntries = 100;
+  private EncodedCrl generateCrl1(CrlStreamBuilder crlBuilder, SignerEntryWrapper crlSigner,
+      X500Name crlIssuer, boolean deltaCrl, Date thisUpdate, Date nextUpdate, AuditEvent event,
+      String msgId) throws OperationException {
+    CrlControl control = caInfo.getCrlControl();
+    boolean indirectCrl = (crlSigner != null);
 
-      Date notExpireAt;
-      if (control.isIncludeExpiredCerts()) {
-        notExpireAt = new Date(0);
-      } else {
-        // 10 minutes buffer
-        notExpireAt = new Date(thisUpdate.getTime() - 600L * MS_PER_SECOND);
+    if (nextUpdate != null) {
+      crlBuilder.setNextUpdate(nextUpdate);
+    }
+
+    Date notExpireAt;
+    if (control.isIncludeExpiredCerts()) {
+      notExpireAt = new Date(0);
+    } else {
+      // 10 minutes buffer
+      notExpireAt = new Date(thisUpdate.getTime() - 600L * MS_PER_SECOND);
+    }
+
+    BigInteger crlNumber = caInfo.nextCrlNumber();
+    event.addEventData(CaAuditConstants.NAME_crl_number, crlNumber);
+
+    CrlEntryWriter entryWriter = new CrlEntryWriter(crlBuilder, indirectCrl);
+    CrlSegment crlSegment = control.isFullCrlSegment() ? newCrlSegment() : null;
+
+    try {
+      return generateCrl2(crlBuilder, crlSigner, crlIssuer, deltaCrl, notExpireAt, crlNumber,
+          entryWriter, crlSegment, msgId);
+    } finally {
+      if (crlSegment != null) {
+        crlSegment.abort();
       }
+    }
+  } // method generateCrl1
+
+  private EncodedCrl generateCrl2(CrlStreamBuilder crlBuilder, SignerEntryWrapper crlSigner,
+      X500Name crlIssuer, boolean deltaCrl, Date notExpireAt, BigInteger crlNumber,
+      CrlEntryWriter entryWriter, CrlSegment crlSegment, String msgId)
+      throws OperationException {
+    CrlControl control = caInfo.getCrlControl();
+    PublicCaInfo pci = caInfo.getPublicCaInfo();
+    boolean indirectCrl = (crlSigner != null);
 
+    if (deltaCrl) {
+      // the delta CRL contains only the few certificates changed since the last full CRL.
+      final int numEntries = 100;
       long startId = 1;
 
-      // we have to cache the serial entries to sort them
       List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
-
       List<CertRevInfoWithSerial> revInfos;
 
       do {
-        if (deltaCrl) {
-          revInfos = certstore.getCertsForDeltaCrl(caIdent, startId, numEntries,
-              control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
-        } else {
-          revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, startId, numEntries,
-              control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
-        }
+        revInfos = certstore.getCertsForDeltaCrl(caIdent, startId, numEntries,
+            control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
         allRevInfos.addAll(revInfos);
 
         long maxId = 1;
@@ -816,164 +1057,143 @@ public class X509Ca implements Closeable {
         startId = maxId + 1;
       } while (revInfos.size() >= numEntries); // end do
 
-      if (revInfos != null) { // free the memory
-        revInfos.clear();
-      }
-
       // sort the list by SerialNumber ASC
       Collections.sort(allRevInfos);
 
-      boolean isFirstCrlEntry = true;
-      CrlControl crlControl = caInfo.getCrlControl();
-
       for (CertRevInfoWithSerial revInfo : allRevInfos) {
-        CrlReason reason = revInfo.getReason();
-        if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-          reason = CrlReason.UNSPECIFIED;
-        }
+        entryWriter.handle(revInfo);
+      }
 
-        Date revocationTime = revInfo.getRevocationTime();
-        Date invalidityTime = revInfo.getInvalidityTime();
+      if (crlSegment != null) {
+        // the DELTACRL_CACHE will be cleared, keep the changes for the next full CRL.
+        crlSegment.addChanges(certstore.getSerialsOfDeltaCrlCache(caIdent));
+      }
+    } else if (crlSegment != null) {
+      crlSegment.write(certstore, caIdent, control, notExpireAt,
+          control.getFullCrlSegmentRebuildIntervals(), crlNumber, entryWriter);
+    } else {
+      // the revoked certificates are read ordered by SerialNumber ASC.
+      certstore.readRevokedCerts(caIdent, notExpireAt, control.isOnlyContainsCaCerts(),
+          control.isOnlyContainsUserCerts(), entryWriter);
+    }
 
-        switch (crlControl.getInvalidityDateMode()) {
-          case forbidden:
-            invalidityTime = null;
-            break;
-          case optional:
-            break;
-          case required:
-            if (invalidityTime == null) {
-              invalidityTime = revocationTime;
-            }
-            break;
-          default:
-            throw new IllegalStateException(
-                "unknown TripleState " + crlControl.getInvalidityDateMode());
-        }
+    boolean onlyUserCerts = control.isOnlyContainsUserCerts();
+    boolean onlyCaCerts = control.isOnlyContainsCaCerts();
+    if (onlyUserCerts && onlyCaCerts) {
+      throw new IllegalStateException(
+          "should not reach here, onlyUserCerts and onlyCACerts are both true");
+    }
 
-        BigInteger serial = revInfo.getSerial();
-        LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
+    try {
+      // AuthorityKeyIdentifier
+      byte[] akiValues = indirectCrl
+          ? X509Util.extractSki(crlSigner.getSigner().getCertificate())
+          : pci.getSubjectKeyIdentifer();
+      AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(akiValues);
+      crlBuilder.addExtension(Extension.authorityKeyIdentifier, false, aki);
 
-        if (!indirectCrl || !isFirstCrlEntry) {
-          if (invalidityTime != null) {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(),
-                invalidityTime);
-          } else {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
-          }
-          continue;
-        }
+      // add extension CRL Number
+      crlBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
 
-        List<Extension> extensions = new ArrayList<>(3);
-        if (reason != CrlReason.UNSPECIFIED) {
-          Extension ext = createReasonExtension(reason.getCode());
-          extensions.add(ext);
-        }
-        if (invalidityTime != null) {
-          Extension ext = createInvalidityDateExtension(invalidityTime);
-          extensions.add(ext);
-        }
+      // IssuingDistributionPoint
+      if (onlyUserCerts || onlyCaCerts || indirectCrl) {
+        IssuingDistributionPoint idp = new IssuingDistributionPoint(
+            (DistributionPointName) null, // distributionPoint,
+            onlyUserCerts, // onlyContainsUserCerts,
+            onlyCaCerts, // onlyContainsCACerts,
+            (ReasonFlags) null, // onlySomeReasons,
+            indirectCrl, // indirectCRL,
+            false); // onlyContainsAttributeCerts
 
-        Extension ext = createCertificateIssuerExtension(pci.getX500Subject());
-        extensions.add(ext);
+        crlBuilder.addExtension(Extension.issuingDistributionPoint, true, idp);
+      }
 
-        crlBuilder.addCRLEntry(serial, revocationTime,
-            new Extensions(extensions.toArray(new Extension[0])));
-        isFirstCrlEntry = false;
+      // freshestCRL
+      List<String> deltaCrlUris = pci.getCaUris().getDeltaCrlUris();
+      if (control.getDeltaCrlIntervals() > 0 && CollectionUtil.isNonEmpty(deltaCrlUris)) {
+        CRLDistPoint cdp = CaUtil.createCrlDistributionPoints(deltaCrlUris, pci.getX500Subject(),
+            crlIssuer);
+        crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
       }
+    } catch (IOException | CertificateEncodingException ex) {
+      LogUtil.error(LOG, ex, "crlBuilder.addExtension");
+      throw new OperationException(INVALID_EXTENSION, ex);
+    }
 
-      allRevInfos.clear(); // free the memory
+    addXipkiCertset(crlBuilder, deltaCrl, control, notExpireAt, onlyCaCerts, onlyUserCerts);
 
-      BigInteger crlNumber = caInfo.nextCrlNumber();
-      event.addEventData(CaAuditConstants.NAME_crl_number, crlNumber);
+    @SuppressWarnings("resource")
+    ConcurrentContentSigner concurrentSigner = (crlSigner == null)
+        ? caInfo.getSigner(null) : crlSigner.getSigner();
 
-      boolean onlyUserCerts = crlControl.isOnlyContainsUserCerts();
-      boolean onlyCaCerts = crlControl.isOnlyContainsCaCerts();
-      if (onlyUserCerts && onlyCaCerts) {
-        throw new IllegalStateException(
-            "should not reach here, onlyUserCerts and onlyCACerts are both true");
-      }
+    ConcurrentBagEntrySigner signer0;
+    try {
+      signer0 = concurrentSigner.borrowSigner();
+    } catch (NoIdleSignerException ex) {
+      throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
+    }
 
-      try {
-        // AuthorityKeyIdentifier
-        byte[] akiValues = indirectCrl
-            ? X509Util.extractSki(crlSigner.getSigner().getCertificate())
-            : pci.getSubjectKeyIdentifer();
-        AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(akiValues);
-        crlBuilder.addExtension(Extension.authorityKeyIdentifier, false, aki);
-
-        // add extension CRL Number
-        crlBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
-
-        // IssuingDistributionPoint
-        if (onlyUserCerts || onlyCaCerts || indirectCrl) {
-          IssuingDistributionPoint idp = new IssuingDistributionPoint(
-              (DistributionPointName) null, // distributionPoint,
-              onlyUserCerts, // onlyContainsUserCerts,
-              onlyCaCerts, // onlyContainsCACerts,
-              (ReasonFlags) null, // onlySomeReasons,
-              indirectCrl, // indirectCRL,
-              false); // onlyContainsAttributeCerts
-
-          crlBuilder.addExtension(Extension.issuingDistributionPoint, true, idp);
-        }
+    LOG.info("signing CRL with {} entries: ca={}, crlNumber={}", crlBuilder.getNumEntries(),
+        caIdent.getName(), crlNumber);
 
-        // freshestCRL
-        List<String> deltaCrlUris = pci.getCaUris().getDeltaCrlUris();
-        if (control.getDeltaCrlIntervals() > 0 && CollectionUtil.isNonEmpty(deltaCrlUris)) {
-          CRLDistPoint cdp = CaUtil.createCrlDistributionPoints(deltaCrlUris, pci.getX500Subject(),
-              crlIssuer);
-          crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
+    // the CRL is streamed into a temporary file, so that the generation does not hold the
+    // whole CRL or its entries in the memory.
+    File crlFile = null;
+    try {
+      try {
+        crlFile = File.createTempFile("crl-", ".der");
+        try (OutputStream out = new BufferedOutputStream(
+            Files.newOutputStream(crlFile.toPath()), 64 * 1024)) {
+          crlBuilder.build(signer0.value(), out);
         }
-      } catch (CertIOException | CertificateEncodingException ex) {
-        LogUtil.error(LOG, ex, "crlBuilder.addExtension");
-        throw new OperationException(INVALID_EXTENSION, ex);
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, "IOException: " + ex.getMessage());
+      } finally {
+        concurrentSigner.requiteSigner(signer0);
       }
 
-      addXipkiCertset(crlBuilder, deltaCrl, control, notExpireAt, onlyCaCerts, onlyUserCerts);
+      // thisUpdate is encoded in seconds.
+      Date thisUpdate = new Date(crlBuilder.getThisUpdate().getTime() / 1000 * 1000);
 
-      @SuppressWarnings("resource")
-      ConcurrentContentSigner concurrentSigner = (crlSigner == null)
-          ? caInfo.getSigner(null) : crlSigner.getSigner();
+      caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
+      caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
+      // the CRL contains no extension deltaCRLIndicator, hence no base CRL number.
+      boolean published = storeCrl(crlNumber, null, thisUpdate, crlBuilder.getNextUpdate(),
+          crlFile);
 
-      ConcurrentBagEntrySigner signer0;
+      // the encoded CRL is read once with the exact size, it is never parsed here.
+      EncodedCrl crl;
       try {
-        signer0 = concurrentSigner.borrowSigner();
-      } catch (NoIdleSignerException ex) {
-        throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
+        crl = new EncodedCrl(IoUtil.read(crlFile), crlNumber, deltaCrl, thisUpdate);
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, "IOException: " + ex.getMessage());
       }
 
-      X509CRLHolder crlHolder;
-      try {
-        crlHolder = crlBuilder.build(signer0.value());
-      } finally {
-        concurrentSigner.requiteSigner(signer0);
+      if (published) {
+        publishCrl(crl);
       }
 
-      try {
-        X509CRL crl = X509Util.toX509Crl(crlHolder.toASN1Structure());
-        caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
-        caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
-        publishCrl(crl);
+      if (crlSegment != null && !deltaCrl) {
+        // the segment must match the stored full CRL, it is deleted if the CRL is not stored.
+        crlSegment.commit(published);
+      }
+      // the cached CRL must match the stored one.
+      updateCrlCache(published ? crl : null);
 
-        successful = true;
-        LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
-            crlNumber, crl.getThisUpdate());
+      LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
+          crlNumber, thisUpdate);
 
-        if (!deltaCrl) {
-          // clean up the CRL
-          cleanupCrlsWithoutException(msgId);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(CRL_FAILURE, ex);
+      if (!deltaCrl) {
+        // clean up the CRL
+        cleanupCrlsWithoutException(msgId);
       }
+      return crl;
     } finally {
-      if (!successful) {
-        LOG.info("    FAILED generateCrl: ca={}", caIdent.getName());
+      if (crlFile != null && !crlFile.delete()) {
+        LOG.warn("could not delete file {}", crlFile.getPath());
       }
     }
-  } // method generateCrl
+  } // method generateCrl2
 
   /**
    * Add XiPKI extension CrlCertSet.
@@ -987,7 +1207,7 @@ public class X509Ca implements Closeable {
    *         }
    * </pre>
    */
-  private void addXipkiCertset(X509v2CRLBuilder crlBuilder, boolean deltaCrl, CrlControl control,
+  private void addXipkiCertset(CrlStreamBuilder crlBuilder, boolean deltaCrl, CrlControl control,
       Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
     if (deltaCrl || !control.isXipkiCertsetIncluded()) {
       return;
@@ -1034,8 +1254,8 @@ public class X509Ca implements Closeable {
     try {
       crlBuilder.addExtension(ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset,
           false, new DERSet(vector));
-    } catch (CertIOException ex) {
-      throw new OperationException(INVALID_EXTENSION, "CertIOException: " + ex.getMessage());
+    } catch (IOException ex) {
+      throw new OperationException(INVALID_EXTENSION, "IOException: " + ex.getMessage());
     }
   }
 
@@ -1072,6 +1292,14 @@ public class X509Ca implements Closeable {
       return 1;
     }
 
+    return publishCertToPublishers(certInfo);
+  } // method publishCertificate0
+
+  /**
+   * Publishes the saved certificate to the publishers.
+   * @return 0 if successful, 2 if the certificate could not be added to the PublishQueue.
+   */
+  private int publishCertToPublishers(CertificateInfo certInfo) {
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publisher.isAsyn()) {
         boolean successful;
@@ -1098,7 +1326,7 @@ public class X509Ca implements Closeable {
     } // end for
 
     return 0;
-  } // method publishCertificate0
+  } // method publishCertToPublishers
 
   public boolean republishCerts(List<String> publisherNames, int numThreads) {
     List<IdentifiedCertPublisher> publishers;
@@ -1259,25 +1487,27 @@ public class X509Ca implements Closeable {
     return true;
   } // method publishCertsInQueue
 
-  private boolean publishCrl(X509CRL crl) {
+  private boolean storeCrl(BigInteger crlNumber, BigInteger baseCrlNumber, Date thisUpdate,
+      Date nextUpdate, File crlFile) {
     try {
-      certstore.addCrl(caIdent, crl);
+      certstore.addCrl(caIdent, crlNumber, baseCrlNumber, thisUpdate, nextUpdate, crlFile);
+      return true;
     } catch (Exception ex) {
       LOG.error("could not add CRL ca={}, thisUpdate={}: {}, ",
-          caIdent.getName(), crl.getThisUpdate(), ex.getMessage());
+          caIdent.getName(), thisUpdate, ex.getMessage());
       LOG.debug("Exception", ex);
       return false;
     }
+  } // method storeCrl
 
+  private void publishCrl(EncodedCrl crl) {
     for (IdentifiedCertPublisher publisher : publishers()) {
       try {
-        publisher.crlAdded(caCert, crl);
+        publisher.crlAdded(caCert, crl.getEncoded());
       } catch (RuntimeException ex) {
         LogUtil.error(LOG, ex, "could not publish CRL to the publisher " + publisher.getIdent());
       }
     } // end for
-
-    return true;
   } // method publishCrl
 
   public CertWithRevocationInfo revokeCert(BigInteger serialNumber, CrlReason reason,
@@ -1396,6 +1626,12 @@ public class X509Ca implements Closeable {
     }
 
     certstore.removeCert(caIdent, serialNumber);
+
+    CrlControl control = caInfo.getCrlControl();
+    if (control != null && control.isFullCrlSegment() && certWithRevInfo.isRevoked()) {
+      // the removed certificate must be removed from the CRL segment.
+      certstore.publishToDeltaCrlCache(caIdent, serialNumber);
+    }
     return certToRemove;
   } // method removeCertificate0
 
@@ -1570,10 +1806,20 @@ public class X509Ca implements Closeable {
       return false;
     }
 
+    if (control.isFullCrlSegment()) {
+      // the changes are required to maintain the CRL segment.
+      return true;
+    }
+
     int deltaCrlInterval = control.getDeltaCrlIntervals();
     return deltaCrlInterval != 0 && deltaCrlInterval < control.getFullCrlIntervals();
   } // method shouldPublishToDeltaCrlCache
 
+  private CrlSegment newCrlSegment() {
+    String dir = IoUtil.expandFilepath(caManager.getCaServerConf().getCrlSegmentDir());
+    return new CrlSegment(new File(dir), caIdent.getName());
+  }
+
   public void revokeCa(CertRevocationInfo revocationInfo, String msgId) throws OperationException {
     Args.notNull(revocationInfo, "revocationInfo");
     caInfo.setRevocationInfo(revocationInfo);
@@ -1681,62 +1927,129 @@ public class X509Ca implements Closeable {
       }
     }
 
-    List<CertificateInfo> certInfos = new ArrayList<>(n);
-    OperationExceptionWithIndex exception = null;
-
-    for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
-      }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
-          caIdent.getName(), certprofilIdent.getName(), subjectText);
-
+    if (n == 1) {
+      GrantedCertTemplate gct = gcts.get(0);
+      logStartGenerateCert(gct);
       boolean successful = false;
       try {
         CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
         successful = true;
-        certInfos.add(certInfo);
-
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
-              LogUtil.formatCsn(cert.getCert().getSerialNumber()));
-        }
+        logSuccessfulGenerateCert(certInfo);
+        return Arrays.asList(certInfo);
       } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
+        OperationExceptionWithIndex ex2 = new OperationExceptionWithIndex(0, ex);
+        LogUtil.warn(LOG, ex2);
+        throw ex2;
       } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, th));
+        OperationExceptionWithIndex ex2 =
+            new OperationExceptionWithIndex(0, new OperationException(SYSTEM_FAILURE, th));
+        LogUtil.warn(LOG, ex2);
+        throw ex2;
       } finally {
         if (!successful) {
-          LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent.getName(), certprofilIdent.getName(), subjectText);
+          logFailedGenerateCert(gct);
         }
       }
     }
 
-    if (exception != null) {
-      LOG.error("could not generate certificate for request[{}], reverted all generated"
-          + " certificates", exception.getIndex());
-      // delete generated certificates
-      for (CertificateInfo m : certInfos) {
-        BigInteger serial = m.getCert().getCert().getSerialNumber();
-        try {
-          removeCert(serial, msgId);
-        } catch (Throwable thr) {
-          LogUtil.error(LOG, thr, "could not delete certificate serial=" + serial);
-        }
-      }
+    return generateCertsInBatch(gcts, requestor, reqType, transactionId, msgId);
+  } // method generateCerts
+
+  /**
+   * Generates the certificates in a pipeline: the certificates are prepared (extensions) in
+   * the current thread and signed concurrently by the signers of the CA, then all of them
+   * are saved in one database transaction.
+   */
+  private List<CertificateInfo> generateCertsInBatch(List<GrantedCertTemplate> gcts,
+      final RequestorInfo requestor, final RequestType reqType, final byte[] transactionId,
+      final String msgId) throws OperationExceptionWithIndex {
+    final int n = gcts.size();
+    final List<AuditEvent> events = new ArrayList<>(n);
+
+    CertBatchPipeline.Handler<GrantedCertTemplate> handler =
+        new CertBatchPipeline.Handler<GrantedCertTemplate>() {
+
+          @Override
+          public void prepare(int index, GrantedCertTemplate gct) throws OperationException {
+            logStartGenerateCert(gct);
+            AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_cert, msgId);
+            events.add(event);
+            prepareCert(gct, event);
+          }
 
-      LogUtil.warn(LOG, exception);
-      throw exception;
+          @Override
+          public boolean isBlockingSign(GrantedCertTemplate gct) {
+            // the CT log servers are called via HTTP
+            return gct.extnSctCtrl != null;
+          }
+
+          @Override
+          public CertificateInfo sign(int index, GrantedCertTemplate gct)
+              throws OperationException {
+            return signCert(gct, requestor, reqType, transactionId);
+          }
+
+          @Override
+          public void save(List<CertificateInfo> certInfos) throws OperationException {
+            certstore.addCerts(certInfos);
+          }
+
+          @Override
+          public void release(int index, GrantedCertTemplate gct, boolean successful) {
+            releaseInProcess(gct);
+            if (!successful) {
+              logFailedGenerateCert(gct);
+            }
+            finish(events.get(index), successful);
+          }
+
+        };
+
+    CertBatchPipeline<GrantedCertTemplate> pipeline = new CertBatchPipeline<>(
+        caManager.getCertIssuanceExecutor(), caManager.getCtLogExecutor(),
+        caManager.getCertIssuanceParallelism());
+
+    List<CertificateInfo> certInfos;
+    try {
+      certInfos = pipeline.execute(gcts, handler);
+    } catch (OperationExceptionWithIndex ex) {
+      LOG.error("could not generate certificate for request[{}], no certificate is saved",
+          ex.getIndex());
+      LogUtil.warn(LOG, ex);
+      throw ex;
+    }
+
+    for (int i = 0; i < n; i++) {
+      CertificateInfo certInfo = certInfos.get(i);
+      publishCertToPublishers(certInfo);
+      GrantedCertTemplate gct = gcts.get(i);
+      if (gct.warning != null) {
+        certInfo.setWarningMessage(gct.warning);
+      }
+      logSuccessfulGenerateCert(certInfo);
     }
 
     return certInfos;
+  } // method generateCertsInBatch
+
+  private void logStartGenerateCert(GrantedCertTemplate gct) {
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), gct.certprofile.getIdent().getName(), gct.grantedSubjectText);
+  }
+
+  private void logSuccessfulGenerateCert(CertificateInfo certInfo) {
+    if (LOG.isInfoEnabled()) {
+      String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+      CertWithDbId cert = certInfo.getCert();
+      LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+          prefix, caIdent.getName(), certInfo.getProfile().getName(), cert.getSubject(),
+          LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+    }
+  }
+
+  private void logFailedGenerateCert(GrantedCertTemplate gct) {
+    LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), gct.certprofile.getIdent().getName(), gct.grantedSubjectText);
   }
 
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
@@ -1764,6 +2077,29 @@ public class X509Ca implements Closeable {
       RequestType reqType, byte[] transactionId, AuditEvent event) throws OperationException {
     Args.notNull(gct, "gct");
 
+    try {
+      prepareCert(gct, event);
+      CertificateInfo ret = signCert(gct, requestor, reqType, transactionId);
+      if (publishCert0(ret) == 1) {
+        throw new OperationException(SYSTEM_FAILURE, "could not save certificate");
+      }
+
+      if (gct.warning != null) {
+        ret.setWarningMessage(gct.warning);
+      }
+
+      return ret;
+    } finally {
+      releaseInProcess(gct);
+    }
+  } // method generateCertificate0
+
+  /**
+   * Checks the template against the certificates in process and builds the extensions.
+   * {@link #releaseInProcess(GrantedCertTemplate)} must be called afterwards.
+   */
+  private void prepareCert(GrantedCertTemplate gct, AuditEvent event)
+      throws OperationException {
     event.addEventData(CaAuditConstants.NAME_req_subject,
         X509Util.getRfc4519Name(gct.requestedSubject));
     event.addEventData(CaAuditConstants.NAME_certprofile, gct.certprofile.getIdent().getName());
@@ -1776,25 +2112,22 @@ public class X509Ca implements Closeable {
 
     IdentifiedCertprofile certprofile = gct.certprofile;
 
-    boolean duplicatedKeyNotAllowed = !caInfo.isDuplicateKeyPermitted();
-    boolean duplicatedSubjectNotAllowed = !caInfo.isDuplicateSubjectPermitted();
-    if (duplicatedKeyNotAllowed) {
+    if (!caInfo.isDuplicateKeyPermitted()) {
       if (!publicKeyCertsInProcess.add(gct.fpPublicKey)) {
         // in process already exists a request with given public key.
         throw new OperationException(ALREADY_ISSUED,
             "certificate with the given public key already in process");
       }
+      gct.keyInProcess = true;
     }
 
-    if (duplicatedSubjectNotAllowed) {
+    if (!caInfo.isDuplicateSubjectPermitted()) {
       if (!subjectCertsInProcess.add(gct.fpSubject)) {
         // in process already exists a request with given subject.
-        if (duplicatedKeyNotAllowed) { // remove the added entry from publicKeyCertsInProcess
-          publicKeyCertsInProcess.remove(gct.fpPublicKey);
-        }
         throw new OperationException(ALREADY_ISSUED,
             "certificate with the given subject " + gct.grantedSubjectText + " already in process");
       }
+      gct.subjectInProcess = true;
     }
 
     ExtensionControl extnSctCtrl = certprofile.getExtensionControls().get(Extn.id_SCTs);
@@ -1813,104 +2146,110 @@ public class X509Ca implements Closeable {
           caInfo.getPublicCaInfo().getX500Subject(), caInfo.nextSerial(), gct.grantedNotBefore,
           gct.grantedNotAfter, gct.grantedSubject, gct.grantedPublicKey);
 
-      CertificateInfo ret;
-
-      try {
-        SignerEntryWrapper crlSigner = getCrlSigner();
-        X509Certificate crlSignerCert = (crlSigner == null)
-            ? null : crlSigner.getSigner().getCertificate();
-
-        ExtensionValues extensionTuples = certprofile.getExtensions(gct.requestedSubject,
-            gct.grantedSubject, gct.extensions, gct.grantedPublicKey, caInfo.getPublicCaInfo(),
-            crlSignerCert, gct.grantedNotBefore, gct.grantedNotAfter);
-        if (extensionTuples != null) {
-          for (ASN1ObjectIdentifier extensionType : extensionTuples.getExtensionTypes()) {
-            ExtensionValue extValue = extensionTuples.getExtensionValue(extensionType);
-            certBuilder.addExtension(extensionType, extValue.isCritical(), extValue.getValue());
-          }
-        }
-
-        boolean addCtLog = ctLogEnabled && extnSctCtrl != null;
-
-        Certificate bcCert;
-        if (addCtLog) {
-          bcCert = buildCtLoggedCert(certBuilder, gct, extnSctCtrl.isCritical());
-        } else {
-          ConcurrentBagEntrySigner signer0;
-          try {
-            signer0 = gct.signer.borrowSigner();
-          } catch (NoIdleSignerException ex) {
-            throw new OperationException(SYSTEM_FAILURE, ex);
-          }
-
-          try {
-            bcCert = certBuilder.build(signer0.value()).toASN1Structure();
-          } finally {
-            gct.signer.requiteSigner(signer0);
-          }
+      SignerEntryWrapper crlSigner = getCrlSigner();
+      X509Certificate crlSignerCert = (crlSigner == null)
+          ? null : crlSigner.getSigner().getCertificate();
+
+      ExtensionValues extensionTuples = certprofile.getExtensions(gct.requestedSubject,
+          gct.grantedSubject, gct.extensions, gct.grantedPublicKey, caInfo.getPublicCaInfo(),
+          crlSignerCert, gct.grantedNotBefore, gct.grantedNotAfter);
+      if (extensionTuples != null) {
+        for (ASN1ObjectIdentifier extensionType : extensionTuples.getExtensionTypes()) {
+          ExtensionValue extValue = extensionTuples.getExtensionValue(extensionType);
+          certBuilder.addExtension(extensionType, extValue.isCritical(), extValue.getValue());
         }
+      }
 
-        byte[] encodedCert = bcCert.getEncoded();
-        int maxCertSize = gct.certprofile.getMaxCertSize();
-        if (maxCertSize > 0) {
-          int certSize = encodedCert.length;
-          if (certSize > maxCertSize) {
-            throw new OperationException(NOT_PERMITTED,
-              String.format("certificate exceeds the maximal allowed size: %d > %d",
-                certSize, maxCertSize));
-          }
-        }
+      gct.certBuilder = certBuilder;
+      gct.extnSctCtrl = ctLogEnabled ? extnSctCtrl : null;
+    } catch (BadCertTemplateException ex) {
+      throw new OperationException(BAD_CERT_TEMPLATE, ex);
+    } catch (OperationException ex) {
+      throw ex;
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not generate certificate");
+      throw new OperationException(SYSTEM_FAILURE, th);
+    }
+  } // method prepareCert
 
-        X509Certificate cert;
+  /**
+   * Signs the certificate prepared by {@link #prepareCert(GrantedCertTemplate, AuditEvent)},
+   * may be called in any thread.
+   */
+  private CertificateInfo signCert(GrantedCertTemplate gct, RequestorInfo requestor,
+      RequestType reqType, byte[] transactionId) throws OperationException {
+    try {
+      Certificate bcCert;
+      if (gct.extnSctCtrl != null) {
+        bcCert = buildCtLoggedCert(gct.certBuilder, gct, gct.extnSctCtrl.isCritical());
+      } else {
+        ConcurrentBagEntrySigner signer0;
         try {
-          cert = X509Util.toX509Cert(bcCert);
-        } catch (CertificateException ex) {
-          String message = "should not happen, could not parse generated certificate";
-          LOG.error(message, ex);
+          signer0 = gct.signer.borrowSigner();
+        } catch (NoIdleSignerException ex) {
           throw new OperationException(SYSTEM_FAILURE, ex);
         }
 
-        if (!verifySignature(cert)) {
-          throw new OperationException(SYSTEM_FAILURE,
-              "could not verify the signature of generated certificate");
-        }
-
-        CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
-        ret = new CertificateInfo(certWithMeta, gct.privateKey, caIdent, caCert,
-            gct.grantedPublicKeyData, gct.certprofile.getIdent(), requestor.getIdent());
-        if (requestor instanceof ByUserRequestorInfo) {
-          ret.setUser((((ByUserRequestorInfo) requestor).getUserId()));
+        try {
+          bcCert = gct.certBuilder.build(signer0.value()).toASN1Structure();
+        } finally {
+          gct.signer.requiteSigner(signer0);
         }
-        ret.setReqType(reqType);
-        ret.setTransactionId(transactionId);
-        ret.setRequestedSubject(gct.requestedSubject);
+      }
 
-        if (publishCert0(ret) == 1) {
-          throw new OperationException(SYSTEM_FAILURE, "could not save certificate");
+      byte[] encodedCert = bcCert.getEncoded();
+      int maxCertSize = gct.certprofile.getMaxCertSize();
+      if (maxCertSize > 0) {
+        int certSize = encodedCert.length;
+        if (certSize > maxCertSize) {
+          throw new OperationException(NOT_PERMITTED,
+            String.format("certificate exceeds the maximal allowed size: %d > %d",
+              certSize, maxCertSize));
         }
-      } catch (BadCertTemplateException ex) {
-        throw new OperationException(BAD_CERT_TEMPLATE, ex);
-      } catch (OperationException ex) {
-        throw ex;
-      } catch (Throwable th) {
-        LogUtil.error(LOG, th, "could not generate certificate");
-        throw new OperationException(SYSTEM_FAILURE, th);
       }
 
-      if (gct.warning != null) {
-        ret.setWarningMessage(gct.warning);
+      X509Certificate cert;
+      try {
+        cert = X509Util.toX509Cert(bcCert);
+      } catch (CertificateException ex) {
+        String message = "should not happen, could not parse generated certificate";
+        LOG.error(message, ex);
+        throw new OperationException(SYSTEM_FAILURE, ex);
       }
 
-      return ret;
-    } finally {
-      if (duplicatedKeyNotAllowed) {
-        publicKeyCertsInProcess.remove(gct.fpPublicKey);
+      if (!verifySignature(cert)) {
+        throw new OperationException(SYSTEM_FAILURE,
+            "could not verify the signature of generated certificate");
       }
-      if (duplicatedSubjectNotAllowed) {
-        subjectCertsInProcess.remove(gct.fpSubject);
+
+      CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
+      CertificateInfo ret = new CertificateInfo(certWithMeta, gct.privateKey, caIdent, caCert,
+          gct.grantedPublicKeyData, gct.certprofile.getIdent(), requestor.getIdent());
+      if (requestor instanceof ByUserRequestorInfo) {
+        ret.setUser((((ByUserRequestorInfo) requestor).getUserId()));
       }
+      ret.setReqType(reqType);
+      ret.setTransactionId(transactionId);
+      ret.setRequestedSubject(gct.requestedSubject);
+      return ret;
+    } catch (OperationException ex) {
+      throw ex;
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not generate certificate");
+      throw new OperationException(SYSTEM_FAILURE, th);
     }
-  } // method generateCertificate0
+  } // method signCert
+
+  private void releaseInProcess(GrantedCertTemplate gct) {
+    if (gct.keyInProcess) {
+      publicKeyCertsInProcess.remove(gct.fpPublicKey);
+      gct.keyInProcess = false;
+    }
+    if (gct.subjectInProcess) {
+      subjectCertsInProcess.remove(gct.fpSubject);
+      gct.subjectInProcess = false;
+    }
+  }
 
   private Certificate buildCtLoggedCert(X509v3CertificateBuilder certBuilder,
       GrantedCertTemplate gct, boolean critical) throws CertIOException, OperationException {
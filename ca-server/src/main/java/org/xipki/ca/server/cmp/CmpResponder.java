@@ -23,8 +23,6 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
@@ -143,6 +141,7 @@ import org.xipki.ca.server.CaManagerImpl;
 import org.xipki.ca.server.CaUtil;
 import org.xipki.ca.server.CertTemplateData;
 import org.xipki.ca.server.DhpocControl;
+import org.xipki.ca.server.EncodedCrl;
 import org.xipki.ca.server.X509Ca;
 import org.xipki.security.AlgorithmValidator;
 import org.xipki.security.ConcurrentContentSigner;
@@ -1945,13 +1944,13 @@ public class CmpResponder extends BaseCmpResponder {
           case XiSecurityConstants.CMP_ACTION_GEN_CRL:
             event.addEventType(CaAuditConstants.TYPE_CMP_genm_gen_crl);
             checkPermission(requestor, PermissionConstants.GEN_CRL);
-            X509CRL tmpCrl = ca.generateCrlOnDemand(msgId);
+            EncodedCrl tmpCrl = ca.generateCrlOnDemand(msgId);
             if (tmpCrl == null) {
               String statusMessage = "CRL generation is not activated";
               return buildErrorMsgPkiBody(PKIStatus.rejection,
                   PKIFailureInfo.systemFailure, statusMessage);
             } else {
-              respValue = CertificateList.getInstance(tmpCrl.getEncoded());
+              respValue = tmpCrl.getCrl();
             }
             break;
           case XiSecurityConstants.CMP_ACTION_GET_CRL_WITH_SN:
@@ -2028,9 +2027,6 @@ public class CmpResponder extends BaseCmpResponder {
       } // end switch code
 
       return buildErrorMsgPkiBody(PKIStatus.rejection, failureInfo, errorMessage);
-    } catch (CRLException ex) {
-      return buildErrorMsgPkiBody(PKIStatus.rejection, PKIFailureInfo.systemFailure,
-          "CRLException: " + ex.getMessage());
     }
   } // method cmpGeneralMsg
 
@@ -2046,8 +2042,8 @@ public class CmpResponder extends BaseCmpResponder {
     return (crlNumber == null) ? ca.getBcCurrentCrl() : ca.getBcCrl(crlNumber);
   }
 
-  public X509CRL generateCrlOnDemand(CmpRequestorInfo requestor, RequestType reqType, String msgId)
-      throws OperationException {
+  public EncodedCrl generateCrlOnDemand(CmpRequestorInfo requestor, RequestType reqType,
+      String msgId) throws OperationException {
     Args.notNull(requestor, "requestor");
     try {
       checkPermission(requestor, PermissionConstants.GEN_CRL);
@@ -201,6 +201,12 @@ public class OcspCertPublisher extends CertPublisher {
     return true;
   }
 
+  @Override
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    // the CRL is not published to the OCSP database, do not parse it.
+    return true;
+  }
+
   @Override
   public boolean isHealthy() {
     return queryExecutor.isHealthy();
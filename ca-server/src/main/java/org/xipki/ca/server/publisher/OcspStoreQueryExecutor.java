@@ -61,9 +61,9 @@ class OcspStoreQueryExecutor {
 
     private final byte[] cert;
 
-    IssuerEntry(int id, String b64Cert) {
+    IssuerEntry(int id, byte[] cert) {
       this.id = id;
-      this.cert = Base64.decode(b64Cert);
+      this.cert = cert;
     }
 
     int getId() {
@@ -138,9 +138,17 @@ class OcspStoreQueryExecutor {
 
   private final HashAlgo certhashAlgo;
 
+  // whether the column ISSUER.CERT is binary, otherwise Base64 encoded text.
+  private final boolean binaryCert;
+
+  // whether the column CERT.HASH is binary, otherwise Base64 encoded text.
+  private final boolean binaryCertHash;
+
   OcspStoreQueryExecutor(DataSourceWrapper datasource, boolean publishGoodCerts)
       throws DataAccessException, NoSuchAlgorithmException {
     this.datasource = Args.notNull(datasource, "datasource");
+    this.binaryCert = datasource.isBinaryColumn(null, "ISSUER", "CERT");
+    this.binaryCertHash = datasource.isBinaryColumn(null, "CERT", "HASH");
     this.issuerStore = initIssuerStore();
     this.publishGoodCerts = publishGoodCerts;
 
@@ -187,7 +195,8 @@ class OcspStoreQueryExecutor {
       rs = ps.executeQuery();
       List<IssuerEntry> caInfos = new LinkedList<>();
       while (rs.next()) {
-        caInfos.add(new IssuerEntry(rs.getInt("ID"), rs.getString("CERT")));
+        byte[] cert = binaryCert ? rs.getBytes("CERT") : Base64.decode(rs.getString("CERT"));
+        caInfos.add(new IssuerEntry(rs.getInt("ID"), cert));
       }
 
       return new IssuerStore(caInfos);
@@ -231,7 +240,7 @@ class OcspStoreQueryExecutor {
 
     long certId = certificate.getCertId();
     byte[] encodedCert = certificate.getEncodedCert();
-    String certHash = certhashAlgo.base64Hash(encodedCert);
+    byte[] certHash = certhashAlgo.hash(encodedCert);
 
     X509Certificate cert = certificate.getCert();
     long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
@@ -250,7 +259,11 @@ class OcspStoreQueryExecutor {
       ps.setLong(idx++, notAfterSeconds);
       setBoolean(ps, idx++, revoked);
       ps.setInt(idx++, issuerId);
-      ps.setString(idx++, certHash);
+      if (binaryCertHash) {
+        ps.setBytes(idx++, certHash);
+      } else {
+        ps.setString(idx++, Base64.encodeToString(certHash));
+      }
       ps.setString(idx++, cuttedSubject);
 
       if (revoked) {
@@ -465,7 +478,6 @@ class OcspStoreQueryExecutor {
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      String b64Cert = Base64.encodeToString(encodedCert);
       String subject = issuerCert.getSubject();
       int idx = 1;
       ps.setInt(idx++, id);
@@ -473,10 +485,14 @@ class OcspStoreQueryExecutor {
       ps.setLong(idx++, notBeforeSeconds);
       ps.setLong(idx++, notAfterSeconds);
       ps.setString(idx++, sha1FpCert);
-      ps.setString(idx++, b64Cert);
+      if (binaryCert) {
+        ps.setBytes(idx++, encodedCert);
+      } else {
+        ps.setString(idx++, Base64.encodeToString(encodedCert));
+      }
 
       ps.execute();
-      issuerStore.addIdentityEntry(new IssuerEntry(id, b64Cert));
+      issuerStore.addIdentityEntry(new IssuerEntry(id, encodedCert));
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -0,0 +1,298 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.store;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.OperationException;
+import org.xipki.util.Args;
+
+/**
+ * Group commit of the certificates: the certificates added concurrently by the request
+ * threads are saved by a dedicated thread with one JDBC batch in a single transaction, and the
+ * waiting request threads are released after the commit.
+ *
+ * <p>If the batch fails, e.g. because of one duplicated serial number, the certificates of
+ * the batch are saved one by one, so that each request gets its own result. If the writer
+ * thread terminates, the certificates which have not been written are saved by the request
+ * threads themselves.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CertGroupWriter implements Runnable, Closeable {
+
+  /**
+   * Saves the certificates into the database.
+   */
+  public interface CertSaver {
+
+    /**
+     * Saves the certificates in a single transaction, either all or none of them are saved.
+     * @param certInfos the certificates.
+     * @throws OperationException if the certificates could not be saved.
+     */
+    void saveCerts(List<CertificateInfo> certInfos) throws OperationException;
+
+    /**
+     * Saves the certificate.
+     * @param certInfo the certificate.
+     * @return whether the certificate is saved.
+     */
+    boolean saveCert(CertificateInfo certInfo);
+
+  } // interface CertSaver
+
+  private static final class PendingCert {
+
+    private final CertificateInfo certInfo;
+
+    // guarded by this
+    private boolean done;
+
+    // null if the certificate has not been written by the writer thread.
+    private Boolean successful;
+
+    PendingCert(CertificateInfo certInfo) {
+      this.certInfo = certInfo;
+    }
+
+    synchronized void complete(Boolean successful) {
+      if (done) {
+        return;
+      }
+
+      this.successful = successful;
+      this.done = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits for the writer thread.
+     * @param writer the writer thread.
+     * @return whether the certificate is saved, or {@code null} if it has not been written.
+     */
+    synchronized Boolean await(Thread writer) {
+      boolean interrupted = false;
+      try {
+        // the certificate may be saved, the caller must wait for the result.
+        while (!done) {
+          if (!writer.isAlive()) {
+            return null;
+          }
+
+          try {
+            wait(1000);
+          } catch (InterruptedException ex) {
+            interrupted = true;
+          }
+        }
+        return successful;
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+  } // class PendingCert
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertGroupWriter.class);
+
+  private final CertSaver saver;
+
+  private final int maxSize;
+
+  private final long maxDelayMs;
+
+  private final Object lock = new Object();
+
+  private final List<PendingCert> pending = new ArrayList<>();
+
+  private final Thread thread;
+
+  private boolean closed;
+
+  /**
+   * Constructor.
+   * @param saver the saver of the certificates.
+   * @param maxSize maximal number of certificates in one transaction.
+   * @param maxDelayMs maximal time in milliseconds to wait for more certificates before the
+   *          transaction is started, 0 to start it as soon as the previous one is committed.
+   */
+  public CertGroupWriter(CertSaver saver, int maxSize, int maxDelayMs) {
+    this.saver = Args.notNull(saver, "saver");
+    this.maxSize = Args.positive(maxSize, "maxSize");
+    this.maxDelayMs = Args.notNegative(maxDelayMs, "maxDelayMs");
+
+    this.thread = new Thread(this, "ca-cert-group-writer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Saves the certificate, returns after the transaction is committed.
+   * @param certInfo the certificate.
+   * @return whether the certificate is saved.
+   */
+  public boolean add(CertificateInfo certInfo) {
+    PendingCert entry = new PendingCert(certInfo);
+    synchronized (lock) {
+      if (closed) {
+        entry = null;
+      } else {
+        pending.add(entry);
+        int size = pending.size();
+        if (size == 1 || size >= maxSize) {
+          lock.notifyAll();
+        }
+      }
+    }
+
+    Boolean successful = (entry == null) ? null : entry.await(thread);
+    // save the certificate directly if the writer thread has been terminated.
+    return (successful == null) ? saver.saveCert(certInfo) : successful;
+  } // method add
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        List<PendingCert> batch = nextBatch();
+        if (batch == null) {
+          return;
+        }
+
+        write(batch);
+      }
+    } catch (InterruptedException ex) {
+      LOG.warn("interrupted");
+    } catch (Throwable th) {
+      LOG.error("writer thread terminated unexpectedly", th);
+    } finally {
+      // the remaining certificates are saved by the request threads.
+      failPending();
+    }
+  } // method run
+  /**
+   * Waits for the next batch.
+   * @return the next batch, or {@code null} if closed and all certificates are written.
+   */
+  private List<PendingCert> nextBatch() throws InterruptedException {
+    synchronized (lock) {
+      while (pending.isEmpty()) {
+        if (closed) {
+          return null;
+        }
+        lock.wait();
+      }
+
+      if (maxDelayMs > 0) {
+        // gather more certificates
+        long deadline = System.currentTimeMillis() + maxDelayMs;
+        long remaining = maxDelayMs;
+        while (!closed && pending.size() < maxSize && remaining > 0) {
+          lock.wait(remaining);
+          remaining = deadline - System.currentTimeMillis();
+        }
+      }
+
+      int size = Math.min(maxSize, pending.size());
+      List<PendingCert> batch = new ArrayList<>(pending.subList(0, size));
+      pending.subList(0, size).clear();
+      return batch;
+    }
+  } // method nextBatch
+
+  private void write(List<PendingCert> batch) {
+    List<CertificateInfo> certInfos = new ArrayList<>(batch.size());
+    for (PendingCert entry : batch) {
+      certInfos.add(entry.certInfo);
+    }
+
+    try {
+      saver.saveCerts(certInfos);
+      for (PendingCert entry : batch) {
+        entry.complete(true);
+      }
+      LOG.debug("saved {} certificates in one transaction", batch.size());
+      return;
+    } catch (OperationException ex) {
+      LOG.warn("could not save {} certificates in one transaction, save them one by one: {}",
+          batch.size(), ex.getMessage());
+    } catch (Throwable th) {
+      LOG.warn("could not save {} certificates in one transaction, save them one by one: {}",
+          batch.size(), th.getMessage());
+    }
+
+    try {
+      for (PendingCert entry : batch) {
+        boolean successful = false;
+        try {
+          successful = saver.saveCert(entry.certInfo);
+        } finally {
+          entry.complete(successful);
+        }
+      }
+    } finally {
+      // release the remaining certificates if the writer thread is terminated.
+      for (PendingCert entry : batch) {
+        entry.complete(null);
+      }
+    }
+  } // method write
+
+  private void failPending() {
+    List<PendingCert> entries;
+    synchronized (lock) {
+      closed = true;
+      entries = new ArrayList<>(pending);
+      pending.clear();
+    }
+
+    for (PendingCert entry : entries) {
+      entry.complete(null);
+    }
+  } // method failPending
+
+  /**
+   * Closes the writer, the pending certificates are written before this method returns.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+
+    // the pending certificates are written before the thread terminates.
+    try {
+      thread.join();
+    } catch (InterruptedException ex) {
+      LOG.warn("interrupted while waiting for the writing of the pending certificates");
+      Thread.currentThread().interrupt();
+    }
+  } // method close
+
+}
@@ -24,12 +24,20 @@ import static org.xipki.ca.api.OperationException.ErrorCode.DATABASE_FAILURE;
 import static org.xipki.ca.api.OperationException.ErrorCode.NOT_PERMITTED;
 import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_FAILURE;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.math.BigInteger;
-import java.security.cert.CRLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -42,13 +50,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
-import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERPrintableString;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Certificate;
-import org.bouncycastle.asn1.x509.Extension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
@@ -80,6 +85,7 @@ import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
+import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
@@ -92,8 +98,22 @@ import org.xipki.util.StringUtil;
 
 public class CertStore {
 
+  /**
+   * Handler of the revoked certificates read via
+   * {@link CertStore#readRevokedCerts(NameId, Date, boolean, boolean, RevokedCertHandler)}.
+   * @since 5.3.0
+   */
+  public interface RevokedCertHandler {
+
+    void handle(CertRevInfoWithSerial revInfo) throws OperationException;
+
+  } // interface RevokedCertHandler
+
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
+  // number of rows fetched at once from the cursor of a streaming query
+  private static final int STREAMING_FETCH_SIZE = 1000;
+
   private static final String SQL_ADD_CERT =
       "INSERT INTO CERT (ID,LUPDATE,SN,SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,PID,"
       + "CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CERT)"
@@ -119,6 +139,12 @@ public class CertStore {
 
   private static final String SQL_MAX_CRLNO = "SELECT MAX(CRL_NO) FROM CRL WHERE CA_ID=?";
 
+  private static final String SQL_MAX_FULL_CRLNO =
+      "SELECT MAX(CRL_NO) FROM CRL WHERE CA_ID=? AND DELTACRL=0";
+
+  private static final String SQL_SERIALS_DELTACRL_CACHE =
+      "SELECT SN FROM DELTACRL_CACHE WHERE CA_ID=?";
+
   private static final String SQL_MAX_THISUPDAATE_CRL =
       "SELECT MAX(THISUPDATE) FROM CRL WHERE CA_ID=? AND DELTACRL=?";
 
@@ -157,7 +183,7 @@ public class CertStore {
 
   private final String sqlKnowsCertForSerial;
 
-  private final String sqlRevForId;
+  private final String sqlRevForSerial;
 
   private final String sqlCertStatusForSubjectFp;
 
@@ -200,6 +226,8 @@ public class CertStore {
 
   private final UniqueIdGenerator idGenerator;
 
+  private volatile CertGroupWriter groupWriter;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
@@ -222,7 +250,8 @@ public class CertStore {
     this.sqlCaHasUser = buildSelectFirstSql(
         "PERMISSION,PROFILES FROM CA_HAS_USER WHERE CA_ID=? AND USER_ID=?");
     this.sqlKnowsCertForSerial = buildSelectFirstSql("UID FROM CERT WHERE SN=? AND CA_ID=?");
-    this.sqlRevForId = buildSelectFirstSql("SN,EE,REV,RR,RT,RIT FROM CERT WHERE ID=?");
+    this.sqlRevForSerial = buildSelectFirstSql(
+        "ID,EE,REV,RR,RT,RIT,NAFTER,LUPDATE FROM CERT WHERE CA_ID=? AND SN=?");
     this.sqlCertStatusForSubjectFp = buildSelectFirstSql("REV FROM CERT WHERE FP_S=? AND CA_ID=?");
     this.sqlCertforSubjectIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_S=?");
     this.sqlCertForKeyIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_K=?");
@@ -241,12 +270,56 @@ public class CertStore {
     return datasource.buildSelectFirstSql(1, coreSql);
   }
 
+  /**
+   * Enables the group commit of {@link #addCert(CertificateInfo)}.
+   * @param maxSize maximal number of certificates in one transaction.
+   * @param maxDelayMs maximal time in milliseconds to wait for more certificates before the
+   *          transaction is started.
+   * @since 5.3.0
+   */
+  public void enableGroupCommit(int maxSize, int maxDelayMs) {
+    if (groupWriter != null) {
+      groupWriter.close();
+    }
+    CertGroupWriter.CertSaver saver = new CertGroupWriter.CertSaver() {
+
+      @Override
+      public void saveCerts(List<CertificateInfo> certInfos) throws OperationException {
+        addCerts(certInfos);
+      }
+
+      @Override
+      public boolean saveCert(CertificateInfo certInfo) {
+        return addCertDirectly(certInfo);
+      }
+
+    };
+
+    groupWriter = new CertGroupWriter(saver, maxSize, maxDelayMs);
+    LOG.info("enabled group commit of certificates: maxSize={}, maxDelay={} ms", maxSize,
+        maxDelayMs);
+  }
+
+  /**
+   * Stops the group commit, the pending certificates are written before this method returns.
+   * @since 5.3.0
+   */
+  public void close() {
+    if (groupWriter != null) {
+      groupWriter.close();
+      groupWriter = null;
+    }
+  }
+
   public boolean addCert(CertificateInfo certInfo) {
     Args.notNull(certInfo, "certInfo");
+    CertGroupWriter writer = groupWriter;
+    return (writer == null) ? addCertDirectly(certInfo) : writer.add(certInfo);
+  }
+
+  private boolean addCertDirectly(CertificateInfo certInfo) {
     try {
-      addCert(certInfo.getIssuer(), certInfo.getCert(), certInfo.getSubjectPublicKey(),
-          certInfo.getProfile(), certInfo.getRequestor(), certInfo.getUser(), certInfo.getReqType(),
-          certInfo.getTransactionId(), certInfo.getRequestedSubject());
+      addCert0(certInfo);
     } catch (Exception ex) {
       LOG.error("could not save certificate {}: {}. Message: {}",
           new Object[]{certInfo.getCert().getSubject(),
@@ -258,17 +331,95 @@ public class CertStore {
     return true;
   }
 
-  private void addCert(NameId ca, CertWithDbId certificate, byte[] encodedSubjectPublicKey,
-      NameId certprofile, NameId requestor, Integer userId, RequestType reqType,
-      byte[] transactionId, X500Name reqSubject) throws DataAccessException, OperationException {
-    Args.notNull(ca, "ca");
-    Args.notNull(certificate, "certificate");
-    Args.notNull(certprofile, "certprofile");
-    Args.notNull(requestor, "requestor");
+  /**
+   * Adds the certificates with one JDBC batch in a single transaction, either all or none of
+   * them are saved.
+   * @param certInfos the certificates.
+   * @throws OperationException if the certificates could not be saved.
+   * @since 5.3.0
+   */
+  public void addCerts(List<CertificateInfo> certInfos) throws OperationException {
+    Args.notEmpty(certInfos, "certInfos");
+
+    final String sql = SQL_ADD_CERT;
+    Connection conn;
+    try {
+      conn = datasource.getConnection();
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+
+    PreparedStatement ps = null;
+    Boolean autoCommit = null;
+    boolean committed = false;
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      ps = datasource.prepareStatement(conn, sql);
+      long[] certIds = new long[certInfos.size()];
+      for (int i = 0; i < certIds.length; i++) {
+        certIds[i] = setAddCertParameters(ps, certInfos.get(i));
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      conn.commit();
+      committed = true;
+
+      for (int i = 0; i < certIds.length; i++) {
+        certInfos.get(i).getCert().setCertId(certIds[i]);
+      }
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    } finally {
+      datasource.releaseResources(ps, null, false);
+      if (autoCommit != null) {
+        try {
+          if (!committed) {
+            conn.rollback();
+          }
+          conn.setAutoCommit(autoCommit);
+        } catch (SQLException ex) {
+          LogUtil.error(LOG, datasource.translate(null, ex), "could not recover AutoCommit");
+        }
+      }
+      datasource.returnConnection(conn);
+    }
+  } // method addCerts
+
+  private void addCert0(CertificateInfo certInfo) throws DataAccessException, OperationException {
+    final String sql = SQL_ADD_CERT;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      long certId = setAddCertParameters(ps, certInfo);
+      ps.executeUpdate();
+      certInfo.getCert().setCertId(certId);
+    } catch (SQLException ex) {
+      throw datasource.translate(null, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method addCert0
+
+  /**
+   * Sets the parameters of the SQL statement {@link #SQL_ADD_CERT}.
+   * @return the ID of the certificate.
+   */
+  private long setAddCertParameters(PreparedStatement ps, CertificateInfo certInfo)
+      throws SQLException {
+    NameId ca = Args.notNull(certInfo.getIssuer(), "certInfo.issuer");
+    CertWithDbId certificate = Args.notNull(certInfo.getCert(), "certInfo.cert");
+    NameId certprofile = Args.notNull(certInfo.getProfile(), "certInfo.profile");
+    NameId requestor = Args.notNull(certInfo.getRequestor(), "certInfo.requestor");
+    byte[] transactionId = certInfo.getTransactionId();
+    X500Name reqSubject = certInfo.getRequestedSubject();
 
     long certId = idGenerator.nextId();
 
-    long fpPk = FpIdCalculator.hash(encodedSubjectPublicKey);
+    long fpPk = FpIdCalculator.hash(certInfo.getSubjectPublicKey());
     String subjectText = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
     long fpSubject = X509Util.fpCanonicalizedName(certificate.getSubjectAsX500Name());
 
@@ -287,45 +438,33 @@ public class CertStore {
     String b64Cert = Base64.encodeToString(certificate.getEncodedCert());
     String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
 
-    final String sql = SQL_ADD_CERT;
-    PreparedStatement ps = borrowPreparedStatement(sql);
-
-    try {
-      // cert
-      X509Certificate cert = certificate.getCert();
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, cert.getSerialNumber().toString(16));
-      ps.setString(idx++, subjectText);
-      ps.setLong(idx++, fpSubject);
-      setLong(ps, idx++, fpReqSubject);
-      ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
-      ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
-      setBoolean(ps, idx++, false);
-      ps.setInt(idx++, certprofile.getId());
-      ps.setInt(idx++, ca.getId());
-      setInt(ps, idx++, requestor.getId());
-      setInt(ps, idx++, userId);
-      ps.setLong(idx++, fpPk);
-      boolean isEeCert = cert.getBasicConstraints() == -1;
-      ps.setInt(idx++, isEeCert ? 1 : 0);
-      ps.setInt(idx++, reqType.getCode());
-      ps.setString(idx++, tid);
-
-      ps.setString(idx++, b64FpCert);
-      ps.setString(idx++, reqSubjectText);
-      ps.setString(idx++, b64Cert);
-
-      ps.executeUpdate();
-
-      certificate.setCertId(certId);
-    } catch (SQLException ex) {
-      throw datasource.translate(null, ex);
-    } finally {
-      datasource.releaseResources(ps, null);
-    }
-  } // method addCert
+    // cert
+    X509Certificate cert = certificate.getCert();
+    int idx = 1;
+    ps.setLong(idx++, certId);
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    ps.setString(idx++, cert.getSerialNumber().toString(16));
+    ps.setString(idx++, subjectText);
+    ps.setLong(idx++, fpSubject);
+    setLong(ps, idx++, fpReqSubject);
+    ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
+    ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
+    setBoolean(ps, idx++, false);
+    ps.setInt(idx++, certprofile.getId());
+    ps.setInt(idx++, ca.getId());
+    setInt(ps, idx++, requestor.getId());
+    setInt(ps, idx++, certInfo.getUser());
+    ps.setLong(idx++, fpPk);
+    boolean isEeCert = cert.getBasicConstraints() == -1;
+    ps.setInt(idx++, isEeCert ? 1 : 0);
+    ps.setInt(idx++, certInfo.getReqType().getCode());
+    ps.setString(idx++, tid);
+
+    ps.setString(idx++, b64FpCert);
+    ps.setString(idx++, reqSubjectText);
+    ps.setString(idx++, b64Cert);
+    return certId;
+  } // method setAddCertParameters
 
   public void addToPublishQueue(NameId publisher, long certId, NameId ca)
       throws OperationException {
@@ -392,6 +531,34 @@ public class CertStore {
     }
   }
 
+  /**
+   * Gets the serial numbers of the certificates in the DELTACRL_CACHE of the CA.
+   * @param ca the CA.
+   * @return the serial numbers, may contain duplicates.
+   * @throws OperationException if database error occurs.
+   * @since 5.3.0
+   */
+  public List<BigInteger> getSerialsOfDeltaCrlCache(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+
+    final String sql = SQL_SERIALS_DELTACRL_CACHE;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      List<BigInteger> ret = new ArrayList<>();
+      while (rs.next()) {
+        ret.add(new BigInteger(rs.getString("SN"), 16));
+      }
+      return ret;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getSerialsOfDeltaCrlCache
+
   public void clearPublishQueue(NameId ca, NameId publisher) throws OperationException {
     StringBuilder sqlBuilder = new StringBuilder(80);
     sqlBuilder.append("DELETE FROM PUBLISHQUEUE");
@@ -448,6 +615,34 @@ public class CertStore {
     }
   }
 
+  /**
+   * Gets the number of the latest full CRL of the CA.
+   * @param ca the CA.
+   * @return the number of the latest full CRL, 0 if no full CRL is available.
+   * @throws OperationException if database error occurs.
+   * @since 5.3.0
+   */
+  public long getMaxFullCrlNumber(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+
+    final String sql = SQL_MAX_FULL_CRLNO;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return 0;
+      }
+      long maxCrlNumber = rs.getLong(1);
+      return (maxCrlNumber < 0) ? 0 : maxCrlNumber;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getMaxFullCrlNumber
+
   public long getThisUpdateOfCurrentCrl(NameId ca, boolean deltaCrl)
       throws OperationException {
     Args.notNull(ca, "ca");
@@ -488,23 +683,23 @@ public class CertStore {
     }
   }
 
-  public void addCrl(NameId ca, X509CRL crl) throws OperationException, CRLException {
+  /**
+   * Adds a CRL. The CRL is streamed from the file into the database, it is never completely
+   * held in the memory.
+   * @param ca the CA.
+   * @param crlNumber the CRL number.
+   * @param baseCrlNumber the base CRL number of delta CRL, {@code null} for full CRL.
+   * @param thisUpdate the thisUpdate of the CRL.
+   * @param nextUpdate the nextUpdate of the CRL, may be {@code null}.
+   * @param crlFile the file containing the DER encoded CRL.
+   * @throws OperationException if the CRL could not be added.
+   */
+  public void addCrl(NameId ca, BigInteger crlNumber, BigInteger baseCrlNumber, Date thisUpdate,
+      Date nextUpdate, File crlFile) throws OperationException {
     Args.notNull(ca, "ca");
-    Args.notNull(crl, "crl");
-
-    byte[] encodedExtnValue = crl.getExtensionValue(Extension.cRLNumber.getId());
-    Long crlNumber = null;
-    if (encodedExtnValue != null) {
-      byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
-
-    encodedExtnValue = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    Long baseCrlNumber = null;
-    if (encodedExtnValue != null) {
-      byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
+    Args.notNull(crlNumber, "crlNumber");
+    Args.notNull(thisUpdate, "thisUpdate");
+    Args.notNull(crlFile, "crlFile");
 
     final String sql = SQL_ADD_CRL;
     long currentMaxCrlId;
@@ -515,29 +710,53 @@ public class CertStore {
     }
     long crlId = currentMaxCrlId + 1;
 
-    String b64Crl = Base64.encodeToString(crl.getEncoded());
-
+    File b64File = null;
+    Reader b64Reader = null;
     PreparedStatement ps = null;
 
     try {
+      // the column CRL contains the base64 encoded CRL.
+      b64File = File.createTempFile("crl-", ".b64", crlFile.getParentFile());
+      try (InputStream in = Files.newInputStream(crlFile.toPath());
+          OutputStream out = java.util.Base64.getEncoder().wrap(
+              new BufferedOutputStream(Files.newOutputStream(b64File.toPath()), 64 * 1024))) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+
+      b64Reader = new InputStreamReader(
+          new BufferedInputStream(Files.newInputStream(b64File.toPath()), 64 * 1024),
+          StandardCharsets.US_ASCII);
+
       ps = borrowPreparedStatement(sql);
 
       int idx = 1;
       ps.setLong(idx++, crlId);
       ps.setInt(idx++, ca.getId());
-      setLong(ps, idx++, crlNumber);
-      Date date = crl.getThisUpdate();
-      ps.setLong(idx++, date.getTime() / 1000);
-      setDateSeconds(ps, idx++, crl.getNextUpdate());
+      ps.setLong(idx++, crlNumber.longValue());
+      ps.setLong(idx++, thisUpdate.getTime() / 1000);
+      setDateSeconds(ps, idx++, nextUpdate);
       setBoolean(ps, idx++, (baseCrlNumber != null));
-      setLong(ps, idx++, baseCrlNumber);
-      ps.setString(idx++, b64Crl);
+      setLong(ps, idx++, (baseCrlNumber == null) ? null : baseCrlNumber.longValue());
+      ps.setCharacterStream(idx++, b64Reader, (int) b64File.length());
 
       ps.executeUpdate();
+    } catch (IOException ex) {
+      throw new OperationException(SYSTEM_FAILURE, "IOException: " + ex.getMessage());
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
       datasource.releaseResources(ps, null);
+      if (b64Reader != null) {
+        IoUtil.closeQuietly(b64Reader);
+      }
+
+      if (b64File != null && !b64File.delete()) {
+        LOG.warn("could not delete file {}", b64File.getPath());
+      }
     }
   } // method addCrl
 
@@ -727,7 +946,7 @@ public class CertStore {
     return certWithRevInfo.getCert();
   } // method unrevokeCert
 
-  private void publishToDeltaCrlCache(NameId ca, BigInteger serialNumber)
+  public void publishToDeltaCrlCache(NameId ca, BigInteger serialNumber)
       throws OperationException {
     Args.notNull(serialNumber, "serialNumber");
 
@@ -1590,13 +1809,100 @@ public class CertStore {
     }
   } // method getRevokedCertificates
 
+  /**
+   * Reads all revoked certificates of the CA in one query, ordered by the serial number, and
+   * passes them one by one to the handler. The rows are fetched from a server-side cursor,
+   * so that they are never held in the memory together.
+   *
+   * <p>The column SN contains the hex-encoded serial number without leading zeros, hence the
+   * order by the length and then by the value is the numerical order.
+   *
+   * @param ca the CA.
+   * @param notExpiredAt only certificates not expired at this time are read.
+   * @param onlyCaCerts whether to read only the CA certificates.
+   * @param onlyUserCerts whether to read only the end-entity certificates.
+   * @param handler the handler of the revoked certificates.
+   * @return number of the revoked certificates.
+   * @throws OperationException if database error occurs, or thrown by the handler.
+   */
+  public long readRevokedCerts(NameId ca, Date notExpiredAt, boolean onlyCaCerts,
+      boolean onlyUserCerts, RevokedCertHandler handler) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(notExpiredAt, "notExpiredAt");
+    Args.notNull(handler, "handler");
+    if (onlyCaCerts && onlyUserCerts) {
+      throw new IllegalArgumentException("onlyCaCerts and onlyUserCerts cannot be both of true");
+    }
+    boolean withEe = onlyCaCerts || onlyUserCerts;
+
+    final String sql = StringUtil.concat(
+        "SELECT ID,SN,RR,RT,RIT,NAFTER FROM CERT WHERE CA_ID=? AND REV=1 AND NAFTER>?",
+        (withEe ? " AND EE=?" : ""), " ORDER BY LENGTH(SN),SN");
+
+    Connection conn;
+    try {
+      conn = datasource.getConnection();
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    Boolean autoCommit = null;
+    try {
+      // PostgreSQL uses the cursor only within a transaction.
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      ps = datasource.prepareStreamingStatement(conn, sql, STREAMING_FETCH_SIZE);
+      int idx = 1;
+      ps.setInt(idx++, ca.getId());
+      ps.setLong(idx++, notExpiredAt.getTime() / 1000 + 1);
+      if (withEe) {
+        setBoolean(ps, idx++, onlyUserCerts);
+      }
+      rs = ps.executeQuery();
+
+      long count = 0;
+      while (rs.next()) {
+        long revInvalidityTime = rs.getLong("RIT");
+        Date invalidityTime = (revInvalidityTime == 0) ? null : new Date(1000 * revInvalidityTime);
+        CertRevInfoWithSerial revInfo = new CertRevInfoWithSerial(rs.getLong("ID"),
+            new BigInteger(rs.getString("SN"), 16), rs.getInt("RR"), // revReason
+            new Date(1000 * rs.getLong("RT")), invalidityTime);
+        revInfo.setNotAfter(new Date(1000 * rs.getLong("NAFTER")));
+        handler.handle(revInfo);
+        count++;
+      }
+
+      return count;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs, false);
+      if (autoCommit != null) {
+        try {
+          // read-only transaction, nothing to commit.
+          conn.rollback();
+          conn.setAutoCommit(autoCommit);
+        } catch (SQLException ex) {
+          LogUtil.error(LOG, datasource.translate(null, ex), "could not recover AutoCommit");
+        }
+      }
+      datasource.returnConnection(conn);
+    }
+  } // method readRevokedCerts
+
   public List<CertRevInfoWithSerial> getCertsForDeltaCrl(NameId ca, long startId, int numEntries,
       boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
     Args.notNull(ca, "ca");
     Args.positive(numEntries, "numEntries");
 
     String sql = getSqlDeltaCrlCacheIds(numEntries);
-    List<Long> ids = new LinkedList<>();
+    List<Long> ids = new ArrayList<>(numEntries);
+    List<BigInteger> serials = new ArrayList<>(numEntries);
     ResultSet rs = null;
 
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1605,8 +1911,8 @@ public class CertStore {
       ps.setInt(2, ca.getId());
       rs = ps.executeQuery();
       while (rs.next()) {
-        long id = rs.getLong("ID");
-        ids.add(id);
+        ids.add(rs.getLong("ID"));
+        serials.add(new BigInteger(rs.getString("SN"), 16));
       }
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
@@ -1614,53 +1920,92 @@ public class CertStore {
       datasource.releaseResources(ps, rs);
     }
 
-    sql = sqlRevForId;
-    ps = borrowPreparedStatement(sql);
+    List<CertRevInfoWithSerial> ret = new ArrayList<>(ids.size());
+    for (int i = 0; i < ids.size(); i++) {
+      // the ID of DELTACRL_CACHE is used by the caller as startId of the next call.
+      CertRevInfoWithSerial revInfo = getRevInfo(ca, ids.get(i), serials.get(i), onlyCaCerts,
+          onlyUserCerts, true);
+      if (revInfo != null) {
+        ret.add(revInfo);
+      }
+    } // end for
 
-    List<CertRevInfoWithSerial> ret = new ArrayList<>();
-    for (Long id : ids) {
-      try {
-        ps.setLong(1, id);
-        rs = ps.executeQuery();
+    return ret;
+  } // method getCertificatesForDeltaCrl
 
-        if (!rs.next()) {
-          continue;
-        }
+  /**
+   * Gets the current revocation information of the certificate.
+   * @param ca the CA.
+   * @param serial the serial number.
+   * @param onlyCaCerts whether only the CA certificates are considered.
+   * @param onlyUserCerts whether only the end-entity certificates are considered.
+   * @return the revocation information with notAfter, or {@code null} if the certificate does
+   *     not exist, is not revoked or not considered.
+   * @throws OperationException if database error occurs.
+   * @since 5.3.0
+   */
+  public CertRevInfoWithSerial getRevokedCert(NameId ca, BigInteger serial, boolean onlyCaCerts,
+      boolean onlyUserCerts) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(serial, "serial");
+    return getRevInfo(ca, null, serial, onlyCaCerts, onlyUserCerts, false);
+  }
 
-        int ee = rs.getInt("EE");
-        if (onlyCaCerts) {
-          if (ee != 0) {
-            continue;
-          }
-        } else if (onlyUserCerts) {
-          if (ee != 1) {
-            continue;
-          }
-        }
+  /**
+   * Gets the current revocation information of the certificate.
+   * @param id the ID of the returned entry, {@code null} to use the ID of the certificate.
+   * @param withUnrevoked whether an entry with reason removeFromCRL is returned for the not
+   *          revoked certificate.
+   */
+  private CertRevInfoWithSerial getRevInfo(NameId ca, Long id, BigInteger serial,
+      boolean onlyCaCerts, boolean onlyUserCerts, boolean withUnrevoked)
+      throws OperationException {
+    final String sql = sqlRevForSerial;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      ps.setInt(1, ca.getId());
+      ps.setString(2, serial.toString(16));
+      rs = ps.executeQuery();
 
-        CertRevInfoWithSerial revInfo;
+      if (!rs.next()) {
+        return null;
+      }
 
-        String serial = rs.getString("SN");
-        boolean revoked = rs.getBoolean("REVOEKD");
-        if (revoked) {
-          long revInvTime = rs.getLong("RIT");
-          Date invalidityTime = (revInvTime == 0) ? null : new Date(1000 * revInvTime);
-          revInfo = new CertRevInfoWithSerial(id, new BigInteger(serial, 16), rs.getInt("RR"),
-              new Date(1000 * rs.getLong("RT")), invalidityTime);
-        } else {
-          revInfo = new CertRevInfoWithSerial(id, new BigInteger(serial, 16),
-              CrlReason.REMOVE_FROM_CRL.getCode(), new Date(1000 * rs.getLong("LUPDATE")), null);
+      int ee = rs.getInt("EE");
+      if (onlyCaCerts) {
+        if (ee != 0) {
+          return null;
+        }
+      } else if (onlyUserCerts) {
+        if (ee != 1) {
+          return null;
         }
-        ret.add(revInfo);
-      } catch (SQLException ex) {
-        throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
-      } finally {
-        datasource.releaseResources(null, rs);
       }
-    } // end for
 
-    return ret;
-  } // method getCertificatesForDeltaCrl
+      long entryId = (id == null) ? rs.getLong("ID") : id;
+      CertRevInfoWithSerial revInfo;
+      boolean revoked = rs.getBoolean("REV");
+      if (revoked) {
+        long revInvTime = rs.getLong("RIT");
+        Date invalidityTime = (revInvTime == 0) ? null : new Date(1000 * revInvTime);
+        revInfo = new CertRevInfoWithSerial(entryId, serial, rs.getInt("RR"),
+            new Date(1000 * rs.getLong("RT")), invalidityTime);
+      } else if (withUnrevoked) {
+        revInfo = new CertRevInfoWithSerial(entryId, serial,
+            CrlReason.REMOVE_FROM_CRL.getCode(), new Date(1000 * rs.getLong("LUPDATE")), null);
+      } else {
+        return null;
+      }
+
+      revInfo.setNotAfter(new Date(1000 * rs.getLong("NAFTER")));
+      return revInfo;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getRevInfo
 
   public CertStatus getCertStatusForSubject(NameId ca, X500Name subject) throws OperationException {
     long subjectFp = X509Util.fpCanonicalizedName(subject);
@@ -1883,7 +2228,7 @@ public class CertStore {
     String sql = cacheSqlDeltaCrlCacheIds.get(numEntries);
     if (sql == null) {
       sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
-          "ID FROM DELTACRL_CACHE WHERE ID>? AND CA_ID=?");
+          "ID,SN FROM DELTACRL_CACHE WHERE ID>? AND CA_ID=?");
       cacheSqlDeltaCrlCacheIds.put(numEntries, sql);
     }
     return sql;
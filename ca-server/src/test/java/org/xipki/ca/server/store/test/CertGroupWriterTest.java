@@ -0,0 +1,268 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.store.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.api.OperationException.ErrorCode;
+import org.xipki.ca.server.store.CertGroupWriter;
+import org.xipki.ca.server.store.CertGroupWriter.CertSaver;
+import org.xipki.security.X509Cert;
+
+/**
+ * Test of the group commit of {@link CertGroupWriter}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CertGroupWriterTest {
+
+  private static class MockCertSaver implements CertSaver {
+
+    private final Set<CertificateInfo> saved = Collections.synchronizedSet(
+        new HashSet<CertificateInfo>());
+
+    private final List<Integer> batchSizes = Collections.synchronizedList(
+        new ArrayList<Integer>());
+
+    private final AtomicInteger directCount = new AtomicInteger();
+
+    // whether the next single save in the writer thread terminates the thread.
+    private final AtomicBoolean killWriter = new AtomicBoolean();
+
+    @Override
+    public void saveCerts(List<CertificateInfo> certInfos) throws OperationException {
+      if (killWriter.get()) {
+        throw new OperationException(ErrorCode.DATABASE_FAILURE, "database failure");
+      }
+
+      synchronized (saved) {
+        Set<CertificateInfo> batch = new HashSet<>(certInfos);
+        for (CertificateInfo certInfo : certInfos) {
+          if (saved.contains(certInfo)) {
+            throw new OperationException(ErrorCode.DATABASE_FAILURE, "duplicated serial");
+          }
+        }
+        saved.addAll(batch);
+      }
+      batchSizes.add(certInfos.size());
+    }
+
+    @Override
+    public boolean saveCert(CertificateInfo certInfo) {
+      if (WRITER_THREAD.equals(Thread.currentThread().getName())
+          && killWriter.compareAndSet(true, false)) {
+        throw new Error("writer thread killed");
+      }
+
+      directCount.incrementAndGet();
+      return saved.add(certInfo);
+    }
+
+  } // class MockCertSaver
+
+  private static final String WRITER_THREAD = "ca-cert-group-writer";
+
+  private static X509Cert cert;
+
+  private static NameId issuer;
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(1024);
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=group-writer-test");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 3600L * 1000);
+    X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject,
+        BigInteger.ONE, notBefore, notAfter, subject, keypair.getPublic());
+    X509Certificate x509Cert = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keypair.getPrivate())));
+
+    cert = new X509Cert(x509Cert);
+    issuer = new NameId(1, "ca1");
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void saveInBatch() throws Exception {
+    MockCertSaver saver = new MockCertSaver();
+    CertGroupWriter writer = new CertGroupWriter(saver, 100, 500);
+    try {
+      List<CertificateInfo> certInfos = newCertInfos(5);
+      List<Future<Boolean>> results = addAll(writer, certInfos);
+      for (Future<Boolean> result : results) {
+        Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+      }
+
+      Assert.assertEquals(new HashSet<>(certInfos), saver.saved);
+      Assert.assertEquals(0, saver.directCount.get());
+
+      int total = 0;
+      for (Integer size : saver.batchSizes) {
+        total += size;
+      }
+      Assert.assertEquals(5, total);
+      Assert.assertTrue("certificates are not saved in batch", saver.batchSizes.size() < 5);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void saveOneByOneAfterDuplicatedSerial() throws Exception {
+    MockCertSaver saver = new MockCertSaver();
+    List<CertificateInfo> certInfos = newCertInfos(3);
+    CertificateInfo duplicated = certInfos.get(1);
+    saver.saved.add(duplicated);
+
+    CertGroupWriter writer = new CertGroupWriter(saver, 100, 500);
+    try {
+      List<Future<Boolean>> results = addAll(writer, certInfos);
+      for (int i = 0; i < certInfos.size(); i++) {
+        boolean successful = results.get(i).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(certInfos.get(i) != duplicated, successful);
+      }
+
+      Assert.assertEquals(new HashSet<>(certInfos), saver.saved);
+      Assert.assertEquals(3, saver.directCount.get());
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void closeWritesPendingCerts() throws Exception {
+    MockCertSaver saver = new MockCertSaver();
+    // the batch would be started after one minute without close().
+    CertGroupWriter writer = new CertGroupWriter(saver, 100, 60000);
+    List<CertificateInfo> certInfos = newCertInfos(3);
+    List<Future<Boolean>> results = addAll(writer, certInfos);
+    Thread.sleep(200);
+
+    long start = System.currentTimeMillis();
+    writer.close();
+    Assert.assertTrue("close() waited for the delay",
+        System.currentTimeMillis() - start < 10000);
+
+    for (Future<Boolean> result : results) {
+      Assert.assertTrue(result.isDone());
+      Assert.assertTrue(result.get());
+    }
+    Assert.assertEquals(new HashSet<>(certInfos), saver.saved);
+
+    // certificates added after close() are saved directly
+    CertificateInfo certInfo = newCertInfos(1).get(0);
+    Assert.assertTrue(writer.add(certInfo));
+    Assert.assertTrue(saver.saved.contains(certInfo));
+  }
+
+  @Test
+  public void saveDirectlyAfterWriterTerminated() throws Exception {
+    MockCertSaver saver = new MockCertSaver();
+    saver.killWriter.set(true);
+
+    CertGroupWriter writer = new CertGroupWriter(saver, 100, 500);
+    try {
+      List<CertificateInfo> certInfos = newCertInfos(2);
+      List<Future<Boolean>> results = addAll(writer, certInfos);
+
+      // the certificate which terminated the writer thread is not saved, the other one is
+      // saved by the request thread.
+      int successful = 0;
+      for (Future<Boolean> result : results) {
+        if (result.get(10, TimeUnit.SECONDS)) {
+          successful++;
+        }
+      }
+      Assert.assertEquals(1, successful);
+      Assert.assertEquals(1, saver.saved.size());
+
+      // later certificates do not block
+      Future<Boolean> result = addAll(writer, newCertInfos(1)).get(0);
+      Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+      Assert.assertEquals(2, saver.saved.size());
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static List<Future<Boolean>> addAll(final CertGroupWriter writer,
+      List<CertificateInfo> certInfos) {
+    List<Future<Boolean>> results = new ArrayList<>(certInfos.size());
+    for (final CertificateInfo certInfo : certInfos) {
+      results.add(executor.submit(new Callable<Boolean>() {
+
+        @Override
+        public Boolean call() throws Exception {
+          return writer.add(certInfo);
+        }
+
+      }));
+    }
+    return results;
+  }
+
+  private static List<CertificateInfo> newCertInfos(int num) {
+    List<CertificateInfo> certInfos = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      certInfos.add(new CertificateInfo(new CertWithDbId(cert.getCert()), null, issuer, cert,
+          new byte[] {(byte) i}, new NameId(1, "profile1"), new NameId(1, "requestor1")));
+    }
+    return certInfos;
+  }
+
+}
@@ -0,0 +1,337 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.api.OperationException.ErrorCode;
+import org.xipki.ca.server.CertBatchPipeline;
+import org.xipki.ca.server.OperationExceptionWithIndex;
+import org.xipki.security.X509Cert;
+
+/**
+ * Test of {@link CertBatchPipeline}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CertBatchPipelineTest {
+
+  /**
+   * Handler which simulates the certificates in process and the table CERT.
+   */
+  private static class MockHandler implements CertBatchPipeline.Handler<Integer> {
+
+    // the templates in process
+    private final Set<Integer> inProcess = Collections.synchronizedSet(new HashSet<Integer>());
+
+    // the saved certificates
+    private final List<CertificateInfo> rows = Collections.synchronizedList(
+        new ArrayList<CertificateInfo>());
+
+    private final List<String> signThreads = Collections.synchronizedList(
+        new ArrayList<String>());
+
+    private final AtomicInteger numPrepared = new AtomicInteger();
+
+    private final AtomicInteger numSigning = new AtomicInteger();
+
+    private final List<Boolean> released = Collections.synchronizedList(
+        new ArrayList<Boolean>());
+
+    private int failPrepareAt = -1;
+
+    private int failSignAt = -1;
+
+    private boolean failSave;
+
+    private CountDownLatch signLatch;
+
+    @Override
+    public void prepare(int index, Integer template) throws OperationException {
+      numPrepared.incrementAndGet();
+      if (!inProcess.add(template)) {
+        throw new OperationException(ErrorCode.ALREADY_ISSUED, "already in process");
+      }
+
+      if (index == failPrepareAt) {
+        throw new OperationException(ErrorCode.BAD_CERT_TEMPLATE, "invalid template");
+      }
+    }
+
+    @Override
+    public boolean isBlockingSign(Integer template) {
+      return template % 2 == 1;
+    }
+
+    @Override
+    public CertificateInfo sign(int index, Integer template) throws OperationException {
+      numSigning.incrementAndGet();
+      try {
+        signThreads.add(Thread.currentThread().getName());
+        if (signLatch != null) {
+          signLatch.await();
+        } else {
+          // the failed task is not the last one to finish
+          Thread.sleep(10);
+        }
+
+        if (index == failSignAt) {
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE, "could not sign");
+        }
+        return newCertInfo(template);
+      } catch (InterruptedException ex) {
+        throw new OperationException(ErrorCode.SYSTEM_FAILURE, "interrupted");
+      } finally {
+        numSigning.decrementAndGet();
+      }
+    }
+
+    @Override
+    public void save(List<CertificateInfo> certInfos) throws OperationException {
+      // single transaction
+      if (failSave) {
+        throw new OperationException(ErrorCode.DATABASE_FAILURE, "rolled back");
+      }
+      rows.addAll(certInfos);
+    }
+
+    @Override
+    public void release(int index, Integer template, boolean successful) {
+      Assert.assertEquals("running signing tasks", 0, numSigning.get());
+      inProcess.remove(template);
+      released.add(successful);
+    }
+
+  } // class MockHandler
+
+  private static X509Cert cert;
+
+  private static ExecutorService signExecutor;
+
+  private static ExecutorService blockingSignExecutor;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(1024);
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=batch-pipeline-test");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 3600L * 1000);
+    X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject,
+        BigInteger.ONE, notBefore, notAfter, subject, keypair.getPublic());
+    X509Certificate x509Cert = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keypair.getPrivate())));
+    cert = new X509Cert(x509Cert);
+
+    signExecutor = Executors.newFixedThreadPool(2, new NamedThreadFactory("sign"));
+    blockingSignExecutor = Executors.newFixedThreadPool(2, new NamedThreadFactory("blocking"));
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    signExecutor.shutdownNow();
+    blockingSignExecutor.shutdownNow();
+  }
+
+  @Test
+  public void generateCerts() throws Exception {
+    MockHandler handler = new MockHandler();
+    List<CertificateInfo> certInfos = newPipeline(2).execute(templates(6), handler);
+
+    Assert.assertEquals(6, certInfos.size());
+    for (int i = 0; i < 6; i++) {
+      Assert.assertArrayEquals("order of the certificates", new byte[] {(byte) i},
+          certInfos.get(i).getSubjectPublicKey());
+    }
+    Assert.assertEquals(certInfos, handler.rows);
+    Assert.assertEquals(Collections.nCopies(6, Boolean.TRUE), handler.released);
+    Assert.assertTrue(handler.inProcess.isEmpty());
+
+    // the blocking signing tasks are executed by their own executor.
+    for (String thread : handler.signThreads) {
+      Assert.assertTrue(thread, thread.startsWith("sign-") || thread.startsWith("blocking-"));
+    }
+    Assert.assertEquals(3, count(handler.signThreads, "blocking-"));
+  }
+
+  @Test
+  public void failPrepare() throws Exception {
+    MockHandler handler = new MockHandler();
+    handler.failPrepareAt = 3;
+    assertFailure(handler, 3, 4);
+  }
+
+  @Test
+  public void failSign() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      MockHandler handler = new MockHandler();
+      handler.failSignAt = i;
+      assertFailure(handler, i, -1);
+    }
+  }
+
+  @Test
+  public void failDuplicateInBatch() throws Exception {
+    MockHandler handler = new MockHandler();
+    try {
+      newPipeline(2).execute(Arrays.asList(0, 1, 2, 1, 4), handler);
+      Assert.fail("OperationExceptionWithIndex expected");
+    } catch (OperationExceptionWithIndex ex) {
+      Assert.assertEquals(3, ex.getIndex());
+      Assert.assertEquals(ErrorCode.ALREADY_ISSUED, ex.getErrorCode());
+    }
+    Assert.assertTrue("rows saved", handler.rows.isEmpty());
+  }
+
+  @Test
+  public void failSave() throws Exception {
+    MockHandler handler = new MockHandler();
+    handler.failSave = true;
+    assertFailure(handler, 0, 6);
+  }
+
+  @Test
+  public void limitOutstandingTasks() throws Exception {
+    final MockHandler handler = new MockHandler();
+    handler.signLatch = new CountDownLatch(1);
+
+    final CertBatchPipeline<Integer> pipeline = newPipeline(2);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<CertificateInfo>> result = executor.submit(
+          new Callable<List<CertificateInfo>>() {
+            @Override
+            public List<CertificateInfo> call() throws Exception {
+              return pipeline.execute(templates(6), handler);
+            }
+          });
+
+      Thread.sleep(200);
+      // waits for the first signing task before the third template is prepared.
+      Assert.assertEquals("prepared templates", 2, handler.numPrepared.get());
+
+      handler.signLatch.countDown();
+      Assert.assertEquals(6, result.get(10, TimeUnit.SECONDS).size());
+      Assert.assertEquals(6, handler.rows.size());
+    } finally {
+      handler.signLatch.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  private static void assertFailure(MockHandler handler, int expectedIndex,
+      int expectedNumReleased) {
+    try {
+      newPipeline(2).execute(templates(6), handler);
+      Assert.fail("OperationExceptionWithIndex expected");
+    } catch (OperationExceptionWithIndex ex) {
+      Assert.assertEquals("index of the failed request", expectedIndex, ex.getIndex());
+    }
+
+    Assert.assertTrue("rows saved", handler.rows.isEmpty());
+    Assert.assertTrue("templates in process", handler.inProcess.isEmpty());
+    Assert.assertEquals("released templates", handler.numPrepared.get(),
+        handler.released.size());
+    if (expectedNumReleased != -1) {
+      Assert.assertEquals("released templates", expectedNumReleased, handler.released.size());
+    }
+    Assert.assertFalse(handler.released.contains(Boolean.TRUE));
+  }
+
+  private static CertBatchPipeline<Integer> newPipeline(int maxOutstanding) {
+    return new CertBatchPipeline<>(signExecutor, blockingSignExecutor, maxOutstanding);
+  }
+
+  private static List<Integer> templates(int num) {
+    List<Integer> templates = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      templates.add(i);
+    }
+    return templates;
+  }
+
+  private static int count(List<String> names, String prefix) {
+    int num = 0;
+    for (String name : names) {
+      if (name.startsWith(prefix)) {
+        num++;
+      }
+    }
+    return num;
+  }
+
+  private static CertificateInfo newCertInfo(int template) {
+    NameId issuer = new NameId(1, "ca1");
+    return new CertificateInfo(new CertWithDbId(cert.getCert()), null, issuer, cert,
+        new byte[] {(byte) template}, new NameId(1, "profile1"), new NameId(1, "requestor1"));
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + "-" + index.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  } // class NamedThreadFactory
+
+}
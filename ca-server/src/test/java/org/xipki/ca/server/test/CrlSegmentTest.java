@@ -0,0 +1,293 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.server.CertRevInfoWithSerial;
+import org.xipki.ca.server.CrlSegment;
+import org.xipki.ca.server.CrlSegment.RevokedCertLoader;
+import org.xipki.ca.server.store.CertStore.RevokedCertHandler;
+import org.xipki.security.CrlReason;
+
+/**
+ * Test of the merge and commit of {@link CrlSegment}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CrlSegmentTest {
+
+  private static final long REV_TIME = 1540000000L;
+
+  private static final long NOT_AFTER = 1640000000L;
+
+  private static File tmpDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    tmpDir = Files.createTempDirectory("crlsegment-test").toFile();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    delete(tmpDir);
+  }
+
+  @Test
+  public void readSegment() throws Exception {
+    List<CertRevInfoWithSerial> entries = new ArrayList<>();
+    entries.add(newRevInfo(BigInteger.valueOf(0x1f), CrlReason.KEY_COMPROMISE, REV_TIME - 10));
+    entries.add(newRevInfo(BigInteger.ONE.shiftLeft(150), CrlReason.UNSPECIFIED, REV_TIME));
+
+    List<CertRevInfoWithSerial> merged = merge(entries, new TreeSet<BigInteger>(),
+        new TreeMap<BigInteger, CertRevInfoWithSerial>());
+    assertEntries(entries, merged);
+
+    // the invalidity time is optional
+    Assert.assertEquals(new Date((REV_TIME - 10 - 3600) * 1000),
+        merged.get(0).getInvalidityTime());
+    Assert.assertNull(merged.get(1).getInvalidityTime());
+  } // method readSegment
+
+  @Test
+  public void mergeChangesOnly() throws Exception {
+    TreeSet<BigInteger> changes = serials(5, 2, 9);
+    Map<BigInteger, CertRevInfoWithSerial> current = new TreeMap<>();
+    current.put(BigInteger.valueOf(2), newRevInfo(BigInteger.valueOf(2),
+        CrlReason.SUPERSEDED, REV_TIME));
+    current.put(BigInteger.valueOf(9), newRevInfo(BigInteger.valueOf(9),
+        CrlReason.CERTIFICATE_HOLD, REV_TIME));
+
+    List<CertRevInfoWithSerial> merged =
+        merge(new ArrayList<CertRevInfoWithSerial>(), changes, current);
+    assertEntries(new ArrayList<>(current.values()), merged);
+  } // method mergeChangesOnly
+
+  @Test
+  public void mergeSegmentAndChanges() throws Exception {
+    List<CertRevInfoWithSerial> entries = new ArrayList<>();
+    for (int i : new int[]{1, 3, 5, 7}) {
+      entries.add(newRevInfo(BigInteger.valueOf(i), CrlReason.CERTIFICATE_HOLD, REV_TIME));
+    }
+
+    // 2, 6: newly revoked; 3: unrevoked; 7: reason changed; 9: not revoked.
+    TreeSet<BigInteger> changes = serials(2, 3, 6, 7, 9);
+    Map<BigInteger, CertRevInfoWithSerial> current = new TreeMap<>();
+    for (int i : new int[]{2, 6}) {
+      current.put(BigInteger.valueOf(i), newRevInfo(BigInteger.valueOf(i),
+          CrlReason.KEY_COMPROMISE, REV_TIME + 100));
+    }
+    current.put(BigInteger.valueOf(7), newRevInfo(BigInteger.valueOf(7),
+        CrlReason.CESSATION_OF_OPERATION, REV_TIME + 200));
+
+    List<CertRevInfoWithSerial> expected = new ArrayList<>();
+    expected.add(entries.get(0));
+    expected.add(current.get(BigInteger.valueOf(2)));
+    expected.add(entries.get(2));
+    expected.add(current.get(BigInteger.valueOf(6)));
+    expected.add(current.get(BigInteger.valueOf(7)));
+
+    assertEntries(expected, merge(entries, changes, current));
+  } // method mergeSegmentAndChanges
+
+  @Test
+  public void mergeRandom() throws Exception {
+    Random random = new Random(5022);
+    for (int round = 0; round < 20; round++) {
+      TreeMap<BigInteger, CertRevInfoWithSerial> segment = new TreeMap<>();
+      TreeSet<BigInteger> changes = new TreeSet<>();
+      TreeMap<BigInteger, CertRevInfoWithSerial> current = new TreeMap<>();
+
+      for (int i = 0; i < 1000; i++) {
+        BigInteger serial = new BigInteger(1 + random.nextInt(80), random);
+        if (random.nextBoolean()) {
+          segment.put(serial, newRevInfo(serial, CrlReason.KEY_COMPROMISE, REV_TIME));
+        }
+
+        if (random.nextInt(4) == 0) {
+          changes.add(serial);
+          if (random.nextBoolean()) {
+            current.put(serial, newRevInfo(serial, CrlReason.SUPERSEDED, REV_TIME + 1));
+          }
+        }
+      }
+
+      TreeMap<BigInteger, CertRevInfoWithSerial> expected = new TreeMap<>(segment);
+      for (BigInteger serial : changes) {
+        CertRevInfoWithSerial revInfo = current.get(serial);
+        if (revInfo == null) {
+          expected.remove(serial);
+        } else {
+          expected.put(serial, revInfo);
+        }
+      }
+
+      assertEntries(new ArrayList<>(expected.values()),
+          merge(new ArrayList<>(segment.values()), changes, current));
+    }
+  } // method mergeRandom
+
+  @Test
+  public void commitStoredCrl() throws Exception {
+    File dir = Files.createTempDirectory(tmpDir.toPath(), "commit").toFile();
+    File segmentFile = new File(dir, "ca1.crlsegment");
+    File tmpFile = new File(dir, "ca1.crlsegment.tmp");
+    File changesFile = new File(dir, "ca1.crlsegment.changes");
+    writeSegmentFile(segmentFile, 1, new ArrayList<CertRevInfoWithSerial>());
+    writeSegmentFile(tmpFile, 2, Arrays.asList(
+        newRevInfo(BigInteger.ONE, CrlReason.SUPERSEDED, REV_TIME)));
+    Files.write(changesFile.toPath(), "#CRLNUMBER=1\n1\n".getBytes(StandardCharsets.UTF_8));
+
+    new CrlSegment(dir, "ca1").commit(true);
+
+    // the segment of the stored CRL replaces the old one.
+    Assert.assertFalse("temporary file exists", tmpFile.exists());
+    Assert.assertFalse("changes file exists", changesFile.exists());
+    try (CrlSegment.Reader reader = new CrlSegment.Reader(segmentFile)) {
+      Assert.assertEquals(BigInteger.ONE, reader.next().getSerial());
+      Assert.assertNull(reader.next());
+    }
+    Assert.assertTrue(new String(Files.readAllBytes(segmentFile.toPath()),
+        StandardCharsets.UTF_8).startsWith("#CRLNUMBER=2\n"));
+  } // method commitStoredCrl
+
+  @Test
+  public void commitNotStoredCrl() throws Exception {
+    File dir = Files.createTempDirectory(tmpDir.toPath(), "commit").toFile();
+    File segmentFile = new File(dir, "ca1.crlsegment");
+    File tmpFile = new File(dir, "ca1.crlsegment.tmp");
+    File changesFile = new File(dir, "ca1.crlsegment.changes");
+    writeSegmentFile(segmentFile, 1, new ArrayList<CertRevInfoWithSerial>());
+    writeSegmentFile(tmpFile, 2, new ArrayList<CertRevInfoWithSerial>());
+    Files.write(changesFile.toPath(), "#CRLNUMBER=1\n1\n".getBytes(StandardCharsets.UTF_8));
+
+    new CrlSegment(dir, "ca1").commit(false);
+
+    // the old segment does not contain the changes merged into the not stored CRL, while
+    // the DELTACRL_CACHE is cleared. It must not be used for the next full CRL.
+    Assert.assertFalse("segment file exists", segmentFile.exists());
+    Assert.assertFalse("temporary file exists", tmpFile.exists());
+    Assert.assertFalse("changes file exists", changesFile.exists());
+  } // method commitNotStoredCrl
+
+  private static List<CertRevInfoWithSerial> merge(List<CertRevInfoWithSerial> entries,
+      TreeSet<BigInteger> changes, final Map<BigInteger, CertRevInfoWithSerial> current)
+      throws Exception {
+    File file = File.createTempFile("segment-", ".crlsegment", tmpDir);
+    try {
+      writeSegmentFile(file, 1, entries);
+
+      final List<CertRevInfoWithSerial> merged = new ArrayList<>();
+      try (CrlSegment.Reader reader = new CrlSegment.Reader(file)) {
+        CrlSegment.merge(reader, changes,
+            new RevokedCertLoader() {
+              @Override
+              public CertRevInfoWithSerial load(BigInteger serial) {
+                return current.get(serial);
+              }
+            },
+            new RevokedCertHandler() {
+              @Override
+              public void handle(CertRevInfoWithSerial revInfo) throws OperationException {
+                merged.add(revInfo);
+              }
+            });
+      }
+      return merged;
+    } finally {
+      file.delete();
+    }
+  } // method merge
+
+  private static void writeSegmentFile(File file, long crlNumber,
+      List<CertRevInfoWithSerial> entries) throws Exception {
+    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(),
+        StandardCharsets.UTF_8)) {
+      writer.write("#CRLNUMBER=" + crlNumber + "\n#FILTER=false,false,false\n#INCREMENTS=0\n");
+      for (CertRevInfoWithSerial entry : entries) {
+        Date invalidityTime = entry.getInvalidityTime();
+        writer.write(entry.getSerial().toString(16) + ";"
+            + entry.getRevocationTime().getTime() / 1000 + ";"
+            + entry.getReason().getCode() + ";"
+            + (invalidityTime == null ? 0 : invalidityTime.getTime() / 1000) + ";"
+            + entry.getNotAfter().getTime() / 1000 + "\n");
+      }
+    }
+  } // method writeSegmentFile
+
+  private static void assertEntries(List<CertRevInfoWithSerial> expected,
+      List<CertRevInfoWithSerial> actual) {
+    Assert.assertEquals("number of entries", expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      CertRevInfoWithSerial exp = expected.get(i);
+      CertRevInfoWithSerial act = actual.get(i);
+      String desc = "entry " + i;
+      Assert.assertEquals(desc, exp.getSerial(), act.getSerial());
+      Assert.assertEquals(desc, exp.getReason(), act.getReason());
+      Assert.assertEquals(desc, exp.getRevocationTime(), act.getRevocationTime());
+      Assert.assertEquals(desc, exp.getInvalidityTime(), act.getInvalidityTime());
+      Assert.assertEquals(desc, exp.getNotAfter(), act.getNotAfter());
+    }
+  } // method assertEntries
+
+  private static CertRevInfoWithSerial newRevInfo(BigInteger serial, CrlReason reason,
+      long revTimeSec) {
+    Date invalidityTime = (reason == CrlReason.KEY_COMPROMISE)
+        ? new Date((revTimeSec - 3600) * 1000) : null;
+    CertRevInfoWithSerial revInfo = new CertRevInfoWithSerial(0, serial, reason,
+        new Date(revTimeSec * 1000), invalidityTime);
+    revInfo.setNotAfter(new Date(NOT_AFTER * 1000));
+    return revInfo;
+  }
+
+  private static void delete(File file) {
+    if (file.isDirectory()) {
+      for (File m : file.listFiles()) {
+        delete(m);
+      }
+    }
+    file.delete();
+  }
+
+  private static TreeSet<BigInteger> serials(int... values) {
+    TreeSet<BigInteger> serials = new TreeSet<>();
+    for (int m : values) {
+      serials.add(BigInteger.valueOf(m));
+    }
+    return serials;
+  }
+
+}
@@ -25,6 +25,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -82,6 +83,16 @@ public abstract class DataSourceWrapper implements Closeable {
           + "WHERE SEQ_NAME='", sequenceName, "'");
     }
 
+    @Override
+    protected String getSqlToCreateTableLike(String table, String templateTable) {
+      return StringUtil.concat("CREATE TABLE ", table, " LIKE ", templateTable);
+    }
+
+    @Override
+    protected boolean isPrimaryKeyCopiedByCreateTableLike() {
+      return true;
+    }
+
     @Override
     public long nextSeqValue(Connection conn, String sequenceName) throws DataAccessException {
       final String sqlUpdate = buildAndCacheNextSeqValueSql(sequenceName);
@@ -130,6 +141,12 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("ALTER TABLE ", table, " DROP KEY ", constraintName);
     }
 
+    @Override
+    protected int getStreamingFetchSize(int fetchSize) {
+      // MySQL Connector/J streams the rows one by one only with this value.
+      return Integer.MIN_VALUE;
+    }
+
   } // class MySQL
 
   // CHECKSTYLE:SKIP
@@ -139,6 +156,11 @@ public abstract class DataSourceWrapper implements Closeable {
       super(name, service, DatabaseType.MARIADB);
     }
 
+    @Override
+    protected int getStreamingFetchSize(int fetchSize) {
+      return fetchSize;
+    }
+
   }
 
   // CHECKSTYLE:SKIP
@@ -171,6 +193,16 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("SELECT NEXT VALUE FOR ", sequenceName, " FROM sysibm.sysdummy1");
     }
 
+    @Override
+    protected String getSqlToCreateTableLike(String table, String templateTable) {
+      return StringUtil.concat("CREATE TABLE ", table, " LIKE ", templateTable);
+    }
+
+    @Override
+    protected String getSqlToTruncateTable(String table) {
+      return StringUtil.concat("TRUNCATE TABLE ", table, " IMMEDIATE");
+    }
+
   } // class DB2
 
   // CHECKSTYLE:SKIP
@@ -203,6 +235,17 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("SELECT NEXTVAL ('", sequenceName, "')");
     }
 
+    @Override
+    protected String getSqlToCreateTableLike(String table, String templateTable) {
+      return StringUtil.concat("CREATE TABLE ", table, " (LIKE ", templateTable,
+          " INCLUDING ALL)");
+    }
+
+    @Override
+    protected boolean isPrimaryKeyCopiedByCreateTableLike() {
+      return true;
+    }
+
     @Override
     protected boolean isUseSqlStateAsCode() {
       return true;
@@ -362,6 +405,11 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("SELECT NEXTVAL ('", sequenceName, "')");
     }
 
+    @Override
+    protected String getSqlToCreateTableLike(String table, String templateTable) {
+      return StringUtil.concat("CREATE TABLE ", table, " (LIKE ", templateTable, ")");
+    }
+
   } // class HSQL
 
   private static final Logger LOG = LoggerFactory.getLogger(DataSourceWrapper.class);
@@ -507,6 +555,35 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  /**
+   * Prepares a forward-only and read-only statement whose result is fetched from a
+   * server-side cursor in chunks, instead of being loaded completely into the memory.
+   * PostgreSQL uses the cursor only if the auto-commit of the connection is disabled.
+   * @param conn the connection.
+   * @param sqlQuery the SQL query.
+   * @param fetchSize number of rows fetched at once.
+   * @return the prepared statement.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public PreparedStatement prepareStreamingStatement(Connection conn, String sqlQuery,
+      int fetchSize) throws DataAccessException {
+    Args.notNull(conn, "conn");
+    Args.positive(fetchSize, "fetchSize");
+    try {
+      PreparedStatement ps = conn.prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY);
+      ps.setFetchSize(getStreamingFetchSize(fetchSize));
+      return ps;
+    } catch (SQLException ex) {
+      throw translate(sqlQuery, ex);
+    }
+  }
+
+  protected int getStreamingFetchSize(int fetchSize) {
+    return fetchSize;
+  }
+
   public void releaseResources(Statement ps, ResultSet rs) {
     releaseResources(ps, rs, true);
   }
@@ -718,6 +795,37 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  /**
+   * Whether the column contains binary data, e.g. BLOB, BYTEA or VARBINARY.
+   * @param conn the database connection. If {@code null}, a new one will be borrowed.
+   * @param table the table name.
+   * @param column the column name.
+   * @return whether the column contains binary data.
+   * @throws DataAccessException if the column does not exist or database error occurs.
+   */
+  public boolean isBinaryColumn(Connection conn, String table, String column)
+      throws DataAccessException {
+    Args.notBlank(table, "table");
+    Args.notBlank(column, "column");
+
+    String coreSql = StringUtil.concat(column, " FROM ", table);
+    final String sql = buildSelectFirstSql(1, coreSql);
+
+    Statement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = conn == null ? createStatement() : createStatement(conn);
+      rs = stmt.executeQuery(sql);
+      int type = rs.getMetaData().getColumnType(1);
+      return type == Types.BINARY || type == Types.VARBINARY
+          || type == Types.LONGVARBINARY || type == Types.BLOB;
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(stmt, rs, conn == null);
+    }
+  } // method isBinaryColumn
+
   public boolean tableExists(Connection conn, String table) throws DataAccessException {
     Args.notBlank(table, "table");
 
@@ -979,6 +1087,65 @@ public abstract class DataSourceWrapper implements Closeable {
     executeUpdate(conn, getSqlToAddUniqueConstrain(constraintName, table, columns));
   }
 
+  /**
+   * Returns the SQL to create an empty table with the columns of the template table.
+   * @param table name of the new table.
+   * @param templateTable name of the template table.
+   * @return the SQL statement.
+   */
+  protected String getSqlToCreateTableLike(String table, String templateTable) {
+    Args.notBlank(table, "table");
+    Args.notBlank(templateTable, "templateTable");
+    return StringUtil.concat("CREATE TABLE ", table, " AS SELECT * FROM ", templateTable,
+        " WHERE 1=0");
+  }
+
+  /**
+   * Whether the statement of {@link #getSqlToCreateTableLike(String, String)} copies also the
+   * primary key and indexes of the template table.
+   * @return whether the primary key is copied.
+   */
+  protected boolean isPrimaryKeyCopiedByCreateTableLike() {
+    return false;
+  }
+
+  /**
+   * Creates an empty table with the columns and primary key of the template table. The
+   * foreign keys are not copied.
+   * @param conn the connection. May be {@code null}.
+   * @param table name of the new table.
+   * @param templateTable name of the template table.
+   * @param primaryKeyName name of the primary key constraint of the new table.
+   * @param primaryKeyColumns columns of the primary key.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public void createTableLike(Connection conn, String table, String templateTable,
+      String primaryKeyName, String... primaryKeyColumns) throws DataAccessException {
+    executeUpdate(conn, getSqlToCreateTableLike(table, templateTable));
+    if (!isPrimaryKeyCopiedByCreateTableLike()) {
+      addPrimaryKey(conn, primaryKeyName, table, primaryKeyColumns);
+    }
+    LOG.info("datasource {} CREATETABLE {} LIKE {}", name, table, templateTable);
+  }
+
+  protected String getSqlToTruncateTable(String table) {
+    Args.notBlank(table, "table");
+    return "TRUNCATE TABLE " + table;
+  }
+
+  /**
+   * Removes all rows of the table. This is much cheaper than DELETE, since the rows are not
+   * removed one by one.
+   * @param conn the connection. May be {@code null}.
+   * @param table the table.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public void truncateTable(Connection conn, String table) throws DataAccessException {
+    executeUpdate(conn, getSqlToTruncateTable(table));
+  }
+
   public DataAccessException translate(String sql, SQLException ex) {
     Args.notNull(ex, "ex");
 
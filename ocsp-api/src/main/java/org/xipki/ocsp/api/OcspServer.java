@@ -30,9 +30,37 @@ import org.xipki.util.HealthCheckResult;
 
 public interface OcspServer extends Closeable {
 
+  /**
+   * Callback of the asynchronous answering of OCSP requests.
+   * @since 5.3.0
+   */
+  interface AnswerCallback {
+
+    /**
+     * Called when the response is available.
+     * @param response the response, may be {@code null} if the response could not be
+     *          computed.
+     */
+    void onAnswer(OcspRespWithCacheInfo response);
+
+  } // interface AnswerCallback
+
   ResponderAndPath getResponderForPath(String path) throws UnsupportedEncodingException;
 
   OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet);
 
+  /**
+   * Answers the request without waiting for identical requests in flight. The callback is
+   * called exactly once, either by the calling thread, or by the thread computing the response
+   * of an identical request. If an exception is thrown, the callback is not called.
+   *
+   * @param responder the responder.
+   * @param request the encoded request.
+   * @param viaGet whether the request is sent via HTTP GET.
+   * @param callback the callback to receive the response.
+   * @since 5.3.0
+   */
+  void answer(Responder responder, byte[] request, boolean viaGet, AnswerCallback callback);
+
   HealthCheckResult healthCheck(Responder responder);
 }
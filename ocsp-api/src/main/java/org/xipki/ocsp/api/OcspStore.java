@@ -20,7 +20,9 @@ package org.xipki.ocsp.api;
 import java.io.Closeable;
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.xipki.datasource.DataSourceWrapper;
@@ -54,6 +56,8 @@ public abstract class OcspStore implements Closeable {
 
   protected Validity minNextUpdatePeriod;
 
+  protected List<DataSourceWrapper> readReplicas;
+
   public OcspStore() {
   }
 
@@ -94,6 +98,69 @@ public abstract class OcspStore implements Closeable {
       boolean inheritCaRevocation) throws OcspStoreException {
     CertStatusInfo info = getCertStatus0(time, reqIssuer, serialNumber,
         includeCertHash, includeRit, inheritCaRevocation);
+    applyMinNextUpdate(time, info);
+    return info;
+  }
+
+  /**
+   * Gets the status of several certificates issued by the same issuer.
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate statuses, in the same order as {@code serialNumbers}.
+   */
+  public final List<CertStatusInfo> getCertStatuses(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    return getCertStatuses(time, reqIssuer, serialNumbers, includeCertHash, includeRit,
+        inheritCaRevocation, false);
+  }
+
+  /**
+   * Gets the status of several certificates issued by the same issuer.
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @param primaryOnly
+   *          Whether the statuses must be read from the primary database, and not from read
+   *          replicas or caches which may lag behind it, e.g. to pre-sign responses.
+   * @return the certificate statuses, in the same order as {@code serialNumbers}.
+   */
+  public final List<CertStatusInfo> getCertStatuses(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation, boolean primaryOnly) throws OcspStoreException {
+    List<CertStatusInfo> infos = getCertStatuses0(time, reqIssuer, serialNumbers,
+        includeCertHash, includeRit, inheritCaRevocation, primaryOnly);
+    if (infos.size() != serialNumbers.size()) {
+      throw new OcspStoreException("getCertStatuses0() returned " + infos.size()
+          + " statuses for " + serialNumbers.size() + " serial numbers");
+    }
+
+    for (CertStatusInfo info : infos) {
+      applyMinNextUpdate(time, info);
+    }
+    return infos;
+  }
+
+  private void applyMinNextUpdate(Date time, CertStatusInfo info) {
     if (info != null && minNextUpdatePeriod != null) {
       if (unknownCertBehaviour == UnknownCertBehaviour.good
           || unknownCertBehaviour == UnknownCertBehaviour.unknown) {
@@ -109,8 +176,6 @@ public abstract class OcspStore implements Closeable {
         }
       }
     }
-
-    return info;
   }
 
   /**
@@ -133,6 +198,66 @@ public abstract class OcspStore implements Closeable {
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
       boolean inheritCaRevocation) throws OcspStoreException;
 
+  /**
+   * Gets the status of several certificates issued by the same issuer. The default
+   * implementation calls {@link #getCertStatus0(Date, RequestIssuer, BigInteger, boolean,
+   * boolean, boolean)} for each serial number. Stores which can look up several
+   * certificates at once should overwrite this method.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate statuses, in the same order as {@code serialNumbers}.
+   */
+  protected List<CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      infos.add(getCertStatus0(time, reqIssuer, serialNumber, includeCertHash, includeRit,
+          inheritCaRevocation));
+    }
+    return infos;
+  }
+
+  /**
+   * Gets the status of several certificates issued by the same issuer. The default
+   * implementation ignores {@code primaryOnly} and calls {@link #getCertStatuses0(Date,
+   * RequestIssuer, List, boolean, boolean, boolean)}. Stores which read from replicas or
+   * caches should overwrite this method.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @param primaryOnly
+   *          Whether the statuses must be read from the primary database.
+   * @return the certificate statuses, in the same order as {@code serialNumbers}.
+   */
+  protected List<CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation, boolean primaryOnly) throws OcspStoreException {
+    return getCertStatuses0(time, reqIssuer, serialNumbers, includeCertHash, includeRit,
+        inheritCaRevocation);
+  }
+
   /**
    * TODO.
    * @param sourceConf
@@ -145,6 +270,23 @@ public abstract class OcspStore implements Closeable {
 
   public abstract boolean isHealthy();
 
+  /**
+   * Sets the read replicas of the datasource. Must be called before
+   * {@link #init(Map, DataSourceWrapper)}. Stores which do not support read replicas
+   * ignore them.
+   *
+   * @param readReplicas
+   *          Datasources of the read replicas. Could be {@code null}.
+   * @since 5.3.0
+   */
+  public void setReadReplicas(List<DataSourceWrapper> readReplicas) {
+    this.readReplicas = readReplicas;
+  }
+
+  public List<DataSourceWrapper> getReadReplicas() {
+    return readReplicas;
+  }
+
   public void setName(String name) {
     this.name = Args.notBlank(name, "name");
   }
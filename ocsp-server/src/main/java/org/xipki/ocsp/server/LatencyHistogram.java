@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with exponential buckets: the bucket i counts the
+ * latencies in [2^(i-1), 2^i) microseconds, the first bucket those below 1 microsecond and
+ * the last bucket those of at least 2^(n-2) microseconds. Like the HDR histogram, the bucket of
+ * a value is computed from its bit length, without search and without lock.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class LatencyHistogram {
+
+  /**
+   * Number of the buckets. The last finite upper bound is 2^(BUCKETS - 2) microseconds
+   * (about 16.8 seconds).
+   */
+  public static final int BUCKETS = 26;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLong count = new AtomicLong(0);
+
+  private final AtomicLong sumNanos = new AtomicLong(0);
+
+  /**
+   * Records the latency since the given time.
+   * @param startNanos the value of {@link System#nanoTime()} at the start.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+
+    count.incrementAndGet();
+    sumNanos.addAndGet(nanos);
+    buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000)));
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getSumNanos() {
+    return sumNanos.get();
+  }
+
+  /**
+   * Gets the upper bound (exclusive) of the bucket.
+   * @param index index of the bucket, less than {@code BUCKETS - 1}.
+   * @return the upper bound in microseconds.
+   */
+  public static long getUpperBoundMicros(int index) {
+    return 1L << index;
+  }
+
+  /**
+   * Gets the (non-cumulative) counts of the buckets.
+   * @return the counts, with {@link #BUCKETS} elements.
+   */
+  public long[] getBuckets() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * Adds the counts of this histogram to the given arrays.
+   * @param counts the bucket counts, with {@link #BUCKETS} elements.
+   * @param countAndSum the count (index 0) and sum in nanoseconds (index 1).
+   */
+  public void addTo(long[] counts, long[] countAndSum) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += buckets.get(i);
+    }
+    countAndSum[0] += count.get();
+    countAndSum[1] += sumNanos.get();
+  }
+
+}
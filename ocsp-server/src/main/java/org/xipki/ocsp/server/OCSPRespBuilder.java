@@ -19,8 +19,8 @@ package org.xipki.ocsp.server;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.bouncycastle.cert.ocsp.OCSPException;
@@ -49,7 +49,23 @@ public class OCSPRespBuilder {
   private static final byte[] successfulStatus = Hex.decode("0a0100");
   private static final byte[] responseTypeBasic = Hex.decode("06092b0601050507300101");
 
-  private List<SingleResponse> list = new LinkedList<>();
+  // initial size of the per-thread buffer for the tbsResponseData.
+  private static final int TBS_BUFFER_SIZE = 4096;
+
+  // larger buffers are not kept by the thread.
+  private static final int MAX_TBS_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> tbsBuffer = new ThreadLocal<byte[]>() {
+
+    @Override
+    protected byte[] initialValue() {
+      return new byte[TBS_BUFFER_SIZE];
+    }
+
+  };
+
+  // most OCSP requests contain only one CertID.
+  private List<SingleResponse> list = new ArrayList<>(1);
   private Extensions responseExtensions = null;
   private ResponderID responderId;
 
@@ -93,7 +109,16 @@ public class OCSPRespBuilder {
     ResponseData responseData = new ResponseData(0,
         responderId, producedAt, list, responseExtensions);
 
-    byte[] tbs = new byte[responseData.getEncodedLength()];
+    // encode the tbsResponseData into the buffer of this thread, it is copied only once
+    // into the final response.
+    final int tbsLen = responseData.getEncodedLength();
+    byte[] tbs = tbsBuffer.get();
+    if (tbs.length < tbsLen) {
+      tbs = new byte[tbsLen];
+      if (tbsLen <= MAX_TBS_BUFFER_SIZE) {
+        tbsBuffer.set(tbs);
+      }
+    }
     responseData.write(tbs, 0);
 
     ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
@@ -105,7 +130,7 @@ public class OCSPRespBuilder {
       XiContentSigner csigner0 = signer0.value();
       OutputStream sigOut = csigner0.getOutputStream();
       try {
-        sigOut.write(tbs);
+        sigOut.write(tbs, 0, tbsLen);
         sigOut.close();
       } catch (IOException ex) {
         throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
@@ -123,7 +148,7 @@ public class OCSPRespBuilder {
     int signatureLen = getLen(signatureBodyLen);
 
     // BasicOCSPResponse
-    int basicResponseBodyLen = tbs.length + sigAlgId.length + signatureLen;
+    int basicResponseBodyLen = tbsLen + sigAlgId.length + signatureLen;
     if (taggedCertSequence != null) {
       basicResponseBodyLen += taggedCertSequence.getEncodedLength();
     }
@@ -163,7 +188,8 @@ public class OCSPRespBuilder {
     // BasicOCSPResponse
     offset += ASN1Type.writeHeader((byte) 0x30, basicResponseBodyLen, out, offset);
     // BasicOCSPResponse.tbsResponseData
-    offset += arraycopy(tbs, out, offset);
+    System.arraycopy(tbs, 0, out, offset, tbsLen);
+    offset += tbsLen;
 
     // BasicOCSPResponse.signatureAlgorithm
     offset += arraycopy(sigAlgId, out, offset);
@@ -0,0 +1,318 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.xipki.ocsp.server.store.ResponseCacher;
+import org.xipki.util.Args;
+
+/**
+ * Metrics of the OCSP server, written in the Prometheus text exposition format (version
+ * 0.0.4). The metrics of the responders and stores are retained across the reloads of the
+ * configuration, those of the signers and of the response cacher belong to the current
+ * configuration.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class OcspMetrics {
+
+  /**
+   * Metrics of a responder.
+   */
+  static class ResponderMetrics {
+
+    private final AtomicLong getRequests = new AtomicLong(0);
+
+    private final AtomicLong postRequests = new AtomicLong(0);
+
+    private final AtomicLongArray statuses =
+        new AtomicLongArray(OcspResponseStatus.values().length);
+
+    private final AtomicLong cacheHits = new AtomicLong(0);
+
+    private final AtomicLong cacheMisses = new AtomicLong(0);
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Records an answered request.
+     * @param viaGet whether the request is sent via HTTP GET.
+     * @param status status of the response.
+     * @param startNanos the value of {@link System#nanoTime()} when the request is received.
+     */
+    void recordRequest(boolean viaGet, OcspResponseStatus status, long startNanos) {
+      latency.recordSince(startNanos);
+      if (viaGet) {
+        getRequests.incrementAndGet();
+      } else {
+        postRequests.incrementAndGet();
+      }
+      statuses.incrementAndGet(status.ordinal());
+    }
+
+    void recordCacheHit() {
+      cacheHits.incrementAndGet();
+    }
+
+    void recordCacheMiss() {
+      cacheMisses.incrementAndGet();
+    }
+
+  } // class ResponderMetrics
+
+  private static final String PREFIX = "xipki_ocsp_";
+
+  private final ConcurrentMap<String, ResponderMetrics> responders = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, LatencyHistogram> storeLatencies =
+      new ConcurrentHashMap<>();
+
+  ResponderMetrics getResponderMetrics(String responderName) {
+    ResponderMetrics metrics = responders.get(responderName);
+    if (metrics == null) {
+      ResponderMetrics newMetrics = new ResponderMetrics();
+      metrics = responders.putIfAbsent(responderName, newMetrics);
+      if (metrics == null) {
+        metrics = newMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  LatencyHistogram getStoreLatency(String storeName) {
+    LatencyHistogram latency = storeLatencies.get(storeName);
+    if (latency == null) {
+      LatencyHistogram newLatency = new LatencyHistogram();
+      latency = storeLatencies.putIfAbsent(storeName, newLatency);
+      if (latency == null) {
+        latency = newLatency;
+      }
+    }
+    return latency;
+  }
+
+  /**
+   * Writes the metrics.
+   * @param sb the target.
+   * @param currentResponders responders of the current configuration.
+   * @param cacher response cacher of the current configuration. May be {@code null}.
+   * @param coalescer the request coalescer.
+   */
+  void writePrometheus(StringBuilder sb, Collection<ResponderImpl> currentResponders,
+      ResponseCacher cacher, RequestCoalescer coalescer) {
+    Args.notNull(sb, "sb");
+
+    // requests
+    writeHeader(sb, "requests_total", "counter", "Number of the OCSP requests.");
+    for (Map.Entry<String, ResponderMetrics> m : responders.entrySet()) {
+      String label = label("responder", m.getKey());
+      writeSample(sb, "requests_total", label + "," + label("method", "GET"),
+          m.getValue().getRequests.get());
+      writeSample(sb, "requests_total", label + "," + label("method", "POST"),
+          m.getValue().postRequests.get());
+    }
+
+    writeHeader(sb, "responses_total", "counter", "Number of the OCSP responses by status.");
+    for (Map.Entry<String, ResponderMetrics> m : responders.entrySet()) {
+      String label = label("responder", m.getKey());
+      for (OcspResponseStatus status : OcspResponseStatus.values()) {
+        writeSample(sb, "responses_total", label + "," + label("status", status.name()),
+            m.getValue().statuses.get(status.ordinal()));
+      }
+    }
+
+    writeHeader(sb, "request_duration_seconds", "histogram",
+        "Time to answer the OCSP requests.");
+    for (Map.Entry<String, ResponderMetrics> m : responders.entrySet()) {
+      writeHistogram(sb, "request_duration_seconds", label("responder", m.getKey()),
+          m.getValue().latency);
+    }
+
+    writeHeader(sb, "responder_cache_lookups_total", "counter",
+        "Number of the lookups of cached responses by responder.");
+    for (Map.Entry<String, ResponderMetrics> m : responders.entrySet()) {
+      String label = label("responder", m.getKey());
+      writeSample(sb, "responder_cache_lookups_total", label + "," + label("result", "hit"),
+          m.getValue().cacheHits.get());
+      writeSample(sb, "responder_cache_lookups_total", label + "," + label("result", "miss"),
+          m.getValue().cacheMisses.get());
+    }
+
+    // coalescer
+    writeHeader(sb, "coalesced_requests_total", "counter",
+        "Number of the requests answered by an identical in-flight request.");
+    writeSample(sb, "coalesced_requests_total", null, coalescer.getCoalesced());
+
+    writeHeader(sb, "inflight_requests", "gauge",
+        "Number of the in-flight requests which may be coalesced.");
+    writeSample(sb, "inflight_requests", null, coalescer.getInflights());
+
+    // stores
+    writeHeader(sb, "store_query_duration_seconds", "histogram",
+        "Time to query the status of certificates in the store.");
+    for (Map.Entry<String, LatencyHistogram> m : storeLatencies.entrySet()) {
+      writeHistogram(sb, "store_query_duration_seconds", label("store", m.getKey()),
+          m.getValue());
+    }
+
+    // signers, may be shared by several responders
+    Map<String, ResponderSigner> signers = new LinkedHashMap<>();
+    for (ResponderImpl responder : currentResponders) {
+      for (ResponderSigner signer : responder.getSigners()) {
+        signers.put(signer.getName(), signer);
+      }
+    }
+    writeSignerMetrics(sb, signers.values());
+
+    if (cacher != null) {
+      writeCacherMetrics(sb, cacher);
+    }
+  } // method writePrometheus
+
+  private static void writeSignerMetrics(StringBuilder sb, Collection<ResponderSigner> signers) {
+    writeHeader(sb, "signing_duration_seconds", "histogram", "Time to sign the responses.");
+    for (ResponderSigner signer : signers) {
+      String label = label("signer", signer.getName());
+      for (Map.Entry<String, LatencyHistogram> m
+          : signer.getMetrics().getLatencies().entrySet()) {
+        writeHistogram(sb, "signing_duration_seconds",
+            label + "," + label("algorithm", m.getKey()), m.getValue());
+      }
+    }
+
+    writeHeader(sb, "signer_outstanding", "gauge",
+        "Number of the outstanding signing operations.");
+    for (ResponderSigner signer : signers) {
+      writeSample(sb, "signer_outstanding", label("signer", signer.getName()),
+          signer.getMetrics().getOutstanding());
+    }
+
+    writeHeader(sb, "signer_failures_total", "counter",
+        "Number of the failed signing operations.");
+    for (ResponderSigner signer : signers) {
+      writeSample(sb, "signer_failures_total", label("signer", signer.getName()),
+          signer.getMetrics().getFailures());
+    }
+
+    writeHeader(sb, "signer_no_idle_total", "counter",
+        "Number of the signing operations failed with NoIdleSignerException.");
+    for (ResponderSigner signer : signers) {
+      writeSample(sb, "signer_no_idle_total", label("signer", signer.getName()),
+          signer.getMetrics().getNoIdleSigners());
+    }
+
+    writeHeader(sb, "signer_rejected_total", "counter",
+        "Number of the requests rejected since the signer is saturated.");
+    for (ResponderSigner signer : signers) {
+      writeSample(sb, "signer_rejected_total", label("signer", signer.getName()),
+          signer.getMetrics().getRejected());
+    }
+  } // method writeSignerMetrics
+
+  private static void writeCacherMetrics(StringBuilder sb, ResponseCacher cacher) {
+    final String name = "cache_lookups_total";
+    writeHeader(sb, name, "counter", "Number of the lookups in the response cache by tier.");
+    writeSample(sb, name, label("tier", "memory") + "," + label("result", "hit"),
+        cacher.getMemoryCacheHits());
+    writeSample(sb, name, label("tier", "memory") + "," + label("result", "miss"),
+        cacher.getMemoryCacheMisses());
+    writeSample(sb, name, label("tier", "db") + "," + label("result", "hit"),
+        cacher.getDbCacheHits());
+    writeSample(sb, name, label("tier", "db") + "," + label("result", "miss"),
+        cacher.getDbCacheMisses());
+
+    writeHeader(sb, "cache_memory_entries", "gauge",
+        "Number of the responses in the in-memory cache.");
+    writeSample(sb, "cache_memory_entries", null, cacher.getMemoryCacheSize());
+
+    writeHeader(sb, "cache_db_write_queue", "gauge",
+        "Number of the responses waiting to be written to the cache database.");
+    writeSample(sb, "cache_db_write_queue", null, cacher.getDbWriteQueueSize());
+
+    writeHeader(sb, "cache_db_writes_total", "counter",
+        "Number of the responses to be written to the cache database by result.");
+    writeSample(sb, "cache_db_writes_total", label("result", "written"), cacher.getDbWrites());
+    writeSample(sb, "cache_db_writes_total", label("result", "failed"),
+        cacher.getFailedDbWrites());
+    writeSample(sb, "cache_db_writes_total", label("result", "coalesced"),
+        cacher.getCoalescedDbWrites());
+    writeSample(sb, "cache_db_writes_total", label("result", "dropped"),
+        cacher.getDroppedDbWrites());
+  } // method writeCacherMetrics
+
+  private static void writeHeader(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void writeSample(StringBuilder sb, String name, String labels, long value) {
+    sb.append(PREFIX).append(name);
+    if (labels != null) {
+      sb.append('{').append(labels).append('}');
+    }
+    sb.append(' ').append(value).append('\n');
+  }
+
+  private static void writeHistogram(StringBuilder sb, String name, String labels,
+      LatencyHistogram histogram) {
+    long[] counts = histogram.getBuckets();
+    long sumNanos = histogram.getSumNanos();
+
+    final String bucketName = name + "_bucket";
+    long cumulative = 0;
+    for (int i = 0; i < counts.length - 1; i++) {
+      cumulative += counts[i];
+      double le = LatencyHistogram.getUpperBoundMicros(i) / 1e6;
+      writeSample(sb, bucketName, labels + "," + label("le", Double.toString(le)), cumulative);
+    }
+
+    // use the sum of the buckets as count, the buckets are not read atomically.
+    long count = cumulative + counts[counts.length - 1];
+    writeSample(sb, bucketName, labels + "," + label("le", "+Inf"), count);
+
+    sb.append(PREFIX).append(name).append("_sum{").append(labels).append("} ")
+      .append(sumNanos / 1e9).append('\n');
+    writeSample(sb, name + "_count", labels, count);
+  } // method writeHistogram
+
+  private static String label(String name, String value) {
+    StringBuilder sb = new StringBuilder(name.length() + value.length() + 3);
+    sb.append(name).append("=\"");
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+      if (ch == '\\' || ch == '"') {
+        sb.append('\\').append(ch);
+      } else if (ch == '\n') {
+        sb.append("\\n");
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+}
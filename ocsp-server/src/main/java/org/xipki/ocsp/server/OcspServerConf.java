@@ -31,8 +31,10 @@ import org.xipki.ocsp.api.CertStatusInfo.UnknownIssuerBehaviour;
 import org.xipki.security.CertpathValidationModel;
 import org.xipki.security.Securities.KeystoreConf;
 import org.xipki.util.Args;
+import org.xipki.util.CollectionUtil;
 import org.xipki.util.FileOrBinary;
 import org.xipki.util.InvalidConfException;
+import org.xipki.util.StringUtil;
 import org.xipki.util.TripleState;
 import org.xipki.util.ValidatableConf;
 
@@ -50,6 +52,25 @@ public class OcspServerConf extends ValidatableConf {
     SIGNER_AND_CA;
   }
 
+  public enum ResponseCacheDbMode {
+    /**
+     * Responses are read from the database synchronously, and written to the database
+     * asynchronously.
+     */
+    READ_WRITE,
+
+    /**
+     * Responses are only read from the in-memory cache, and written to the database
+     * asynchronously.
+     */
+    WRITE_BEHIND,
+
+    /**
+     * No database is used, responses are cached only in memory.
+     */
+    DISABLED;
+  }
+
   public static class CertCollection extends ValidatableConf {
 
     private String dir;
@@ -313,6 +334,18 @@ public class OcspServerConf extends ValidatableConf {
 
     private String signer;
 
+    /**
+     * Names of the signers (with different keys) among which the signing is spread. Either
+     * signer or signers must be present.
+     */
+    private List<String> signers;
+
+    /**
+     * How to select the signer if more than one signer is configured. Valid values are
+     * LEAST_OUTSTANDING and ROUND_ROBIN. If not present, LEAST_OUTSTANDING will be applied.
+     */
+    private String signerSelection;
+
     private String request;
 
     private String response;
@@ -321,6 +354,11 @@ public class OcspServerConf extends ValidatableConf {
 
     private String name;
 
+    /**
+     * Pre-signing of the responses. If not present, no response will be pre-signed.
+     */
+    private Presign presign;
+
     public List<String> getServletPaths() {
       if (servletPaths == null) {
         servletPaths = new LinkedList<>();
@@ -356,6 +394,25 @@ public class OcspServerConf extends ValidatableConf {
       this.signer = signer;
     }
 
+    public List<String> getSigners() {
+      if (signers == null) {
+        signers = new LinkedList<>();
+      }
+      return signers;
+    }
+
+    public void setSigners(List<String> signers) {
+      this.signers = signers;
+    }
+
+    public String getSignerSelection() {
+      return signerSelection;
+    }
+
+    public void setSignerSelection(String signerSelection) {
+      this.signerSelection = signerSelection;
+    }
+
     public String getRequest() {
       return request;
     }
@@ -391,14 +448,84 @@ public class OcspServerConf extends ValidatableConf {
       this.name = name;
     }
 
+    public Presign getPresign() {
+      return presign;
+    }
+
+    public void setPresign(Presign presign) {
+      this.presign = presign;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(servletPaths, "servletPaths");
-      notEmpty(signer, "signer");
+      if (StringUtil.isBlank(signer) && CollectionUtil.isEmpty(signers)) {
+        throw new InvalidConfException("signer and signers may not be both empty");
+      }
       notEmpty(request, "request");
       notEmpty(response, "response");
       notEmpty(stores, "stores");
       notEmpty(name, "name");
+      validate(presign);
+    }
+
+  }
+
+  public static class Presign extends ValidatableConf {
+
+    /**
+     * Maximal number of signatures per second used for the pre-signing.
+     */
+    private int maxSignaturesPerSecond = 100;
+
+    /**
+     * Interval in seconds to look for changed certificates.
+     */
+    private int interval = 60;
+
+    /**
+     * Interval in seconds to re-sign all responses. 0 for the half of the validity of
+     * the response cache.
+     */
+    private int refreshInterval = 0;
+
+    public int getMaxSignaturesPerSecond() {
+      return maxSignaturesPerSecond;
+    }
+
+    public void setMaxSignaturesPerSecond(int maxSignaturesPerSecond) {
+      this.maxSignaturesPerSecond = maxSignaturesPerSecond;
+    }
+
+    public int getInterval() {
+      return interval;
+    }
+
+    public void setInterval(int interval) {
+      this.interval = interval;
+    }
+
+    public int getRefreshInterval() {
+      return refreshInterval;
+    }
+
+    public void setRefreshInterval(int refreshInterval) {
+      this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxSignaturesPerSecond < 1) {
+        throw new InvalidConfException("maxSignaturesPerSecond may not be less than 1");
+      }
+
+      if (interval < 1) {
+        throw new InvalidConfException("interval may not be less than 1");
+      }
+
+      if (refreshInterval < 0) {
+        throw new InvalidConfException("refreshInterval may not be negative");
+      }
     }
 
   }
@@ -409,6 +536,20 @@ public class OcspServerConf extends ValidatableConf {
 
     private int validity = 86400;
 
+    /**
+     * Maximal size of the in-memory cache in bytes. 0 to disable the in-memory cache.
+     */
+    private int memorySize = 0;
+
+    private ResponseCacheDbMode dbMode = ResponseCacheDbMode.READ_WRITE;
+
+    /**
+     * Number of the time-bucketed tables OCSP_0, OCSP_1, ... of the responses. The expired
+     * responses are removed by truncating a whole table instead of deleting them row by row.
+     * 0 to use only the table OCSP, otherwise at least 3.
+     */
+    private int buckets = 0;
+
     public DataSourceConf getDatasource() {
       return datasource;
     }
@@ -425,9 +566,47 @@ public class OcspServerConf extends ValidatableConf {
       this.validity = validity;
     }
 
+    public int getMemorySize() {
+      return memorySize;
+    }
+
+    public void setMemorySize(int memorySize) {
+      this.memorySize = memorySize;
+    }
+
+    public ResponseCacheDbMode getDbMode() {
+      return dbMode;
+    }
+
+    public void setDbMode(ResponseCacheDbMode dbMode) {
+      this.dbMode = dbMode;
+    }
+
+    public int getBuckets() {
+      return buckets;
+    }
+
+    public void setBuckets(int buckets) {
+      this.buckets = buckets;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
-      notNull(datasource, "datasource");
+      if (dbMode != ResponseCacheDbMode.DISABLED) {
+        notNull(datasource, "datasource");
+      }
+
+      if (memorySize < 0) {
+        throw new InvalidConfException("memorySize may not be negative");
+      }
+
+      if (dbMode != ResponseCacheDbMode.READ_WRITE && memorySize == 0) {
+        throw new InvalidConfException("memorySize may not be 0 if dbMode is " + dbMode);
+      }
+
+      if (buckets != 0 && buckets < 3) {
+        throw new InvalidConfException("buckets must be 0 or not less than 3");
+      }
     }
 
   }
@@ -525,6 +704,12 @@ public class OcspServerConf extends ValidatableConf {
 
     private List<FileOrBinary> caCerts;
 
+    /**
+     * Maximal number of concurrent signing operations with this signer. If all signers of a
+     * responder are saturated, the response tryLater will be returned. 0 for unlimited.
+     */
+    private int maxOutstanding;
+
     public String getName() {
       return name;
     }
@@ -579,6 +764,14 @@ public class OcspServerConf extends ValidatableConf {
       this.caCerts = caCerts;
     }
 
+    public int getMaxOutstanding() {
+      return maxOutstanding;
+    }
+
+    public void setMaxOutstanding(int maxOutstanding) {
+      this.maxOutstanding = maxOutstanding;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(name, "name");
@@ -695,6 +888,12 @@ public class OcspServerConf extends ValidatableConf {
 
     private String datasource;
 
+    /**
+     * Names of the datasources of the read replicas of the datasource.<br/>
+     * optional. Default is none.
+     */
+    private List<String> replicas;
+
     private Map<String, ? extends Object> conf;
 
     public String getType() {
@@ -713,6 +912,14 @@ public class OcspServerConf extends ValidatableConf {
       this.datasource = value;
     }
 
+    public List<String> getReplicas() {
+      return replicas;
+    }
+
+    public void setReplicas(List<String> replicas) {
+      this.replicas = replicas;
+    }
+
     public Map<String, ? extends Object> getConf() {
       return conf;
     }
@@ -902,6 +1109,8 @@ public class OcspServerConf extends ValidatableConf {
 
     notEmpty(responseOptions, "responseOptions");
     validate(responseOptions);
+
+    validate(responseCache);
   }
 
 }
@@ -33,15 +33,22 @@ import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -70,6 +77,7 @@ import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
 import org.xipki.ocsp.server.OcspServerConf.EmbedCertsMode;
+import org.xipki.ocsp.server.OcspServerConf.ResponseCacheDbMode;
 import org.xipki.ocsp.server.ResponderOption.OcspMode;
 import org.xipki.ocsp.server.store.CaDbCertStatusStore;
 import org.xipki.ocsp.server.store.DbCertStatusStore;
@@ -153,8 +161,20 @@ public class OcspServerImpl implements OcspServer {
     }
   }
 
+  private static class CertStatusLookup {
+    OcspStore store;
+    CertStatusInfo certStatusInfo;
+    boolean exceptionOccurs;
+  }
+
   public static final long DFLT_CACHE_MAX_AGE = 60; // 1 minute
 
+  // maximal time to wait for the requests processed by the replaced generation.
+  private static final long DRAIN_TIMEOUT_MS = 30000;
+
+  // maximal time in milliseconds to wait for the response of an identical in-flight request
+  private static final long COALESCE_MAX_WAIT_MS = 10000;
+
   private static final String STORE_TYPE_XIPKI_DB = "xipki-db";
 
   private static final String STORE_TYPE_XIPKI_CA_DB = "xipki-ca-db";
@@ -178,31 +198,26 @@ public class OcspServerImpl implements OcspServer {
 
   private static final Map<OcspResponseStatus, OcspRespWithCacheInfo> unsuccesfulOCSPRespMap;
 
+  // reverse of unsuccesfulOCSPRespMap
+  private static final Map<OcspRespWithCacheInfo, OcspResponseStatus> unsuccesfulOCSPStatusMap;
+
   private final DataSourceFactory datasourceFactory;
 
   private SecurityFactory securityFactory;
 
   private String confFile;
 
-  private boolean master;
-
-  private UnknownIssuerBehaviour unknownIssuerBehaviour = UnknownIssuerBehaviour.unknown;
-
-  private ResponseCacher responseCacher;
+  // the generation processing the new requests.
+  private final AtomicReference<ServerGeneration> generation = new AtomicReference<>();
 
-  private Map<String, ResponderImpl> responders = new HashMap<>();
+  private final AtomicInteger generationCounter = new AtomicInteger(0);
 
-  private Map<String, ResponderSigner> signers = new HashMap<>();
+  private final RequestCoalescer coalescer = new RequestCoalescer(COALESCE_MAX_WAIT_MS);
 
-  private Map<String, RequestOption> requestOptions = new HashMap<>();
+  private final OcspMetrics metrics = new OcspMetrics();
 
-  private Map<String, OcspServerConf.ResponseOption> responseOptions = new HashMap<>();
-
-  private Map<String, OcspStore> stores = new HashMap<>();
-
-  private List<String> servletPaths = new ArrayList<>();
-
-  private Map<String, ResponderImpl> path2responderMap = new HashMap<>();
+  // serializes the (re)initializations.
+  private final Object initLock = new Object();
 
   private AtomicBoolean initialized = new AtomicBoolean(false);
 
@@ -224,6 +239,12 @@ public class OcspServerImpl implements OcspServer {
       unsuccesfulOCSPRespMap.put(status, new OcspRespWithCacheInfo(encoded, null));
     }
 
+    unsuccesfulOCSPStatusMap = new IdentityHashMap<>(10);
+    for (Map.Entry<OcspResponseStatus, OcspRespWithCacheInfo> m
+        : unsuccesfulOCSPRespMap.entrySet()) {
+      unsuccesfulOCSPStatusMap.put(m.getValue(), m.getKey());
+    }
+
     ExtendedExtension ext = new ExtendedExtension(OID.ID_PKIX_OCSP_EXTENDEDREVOKE,
         true, DERNullBytes);
     byte[] encoded = new byte[ext.getEncodedLength()];
@@ -245,9 +266,14 @@ public class OcspServerImpl implements OcspServer {
 
   @Override
   public ResponderAndPath getResponderForPath(String path) throws UnsupportedEncodingException {
-    for (String servletPath : servletPaths) {
+    ServerGeneration gen = generation.get();
+    if (gen == null) {
+      return null;
+    }
+
+    for (String servletPath : gen.servletPaths) {
       if (path.startsWith(servletPath)) {
-        return new ResponderAndPath(servletPath, path2responderMap.get(servletPath));
+        return new ResponderAndPath(servletPath, gen.path2responderMap.get(servletPath));
       }
     }
     return null;
@@ -255,7 +281,8 @@ public class OcspServerImpl implements OcspServer {
 
   public ResponderImpl getResponder(String name) {
     Args.notBlank(name, "name");
-    return responders.get(name);
+    ServerGeneration gen = generation.get();
+    return (gen == null) ? null : gen.responders.get(name);
   }
 
   public boolean isInitialized() {
@@ -276,9 +303,17 @@ public class OcspServerImpl implements OcspServer {
     }
 
     try {
-      init0();
-      initialized.set(true);
-      LOG.info("started OCSPResponder server");
+      synchronized (initLock) {
+        // The new generation is built completely while the current one is still serving.
+        ServerGeneration newGen = init0();
+        ServerGeneration oldGen = generation.getAndSet(newGen);
+        initialized.set(true);
+        LOG.info("started OCSPResponder server (generation {})", newGen.getId());
+
+        if (oldGen != null) {
+          drainInBackground(oldGen);
+        }
+      }
     } catch (InvalidConfException | PasswordResolverException ex) {
       LOG.error("could not start OCSP responder", ex);
       throw ex;
@@ -294,7 +329,18 @@ public class OcspServerImpl implements OcspServer {
     }
   }
 
-  private void init0() throws OcspStoreException, InvalidConfException, PasswordResolverException {
+  private static void drainInBackground(final ServerGeneration gen) {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        gen.drainAndClose(DRAIN_TIMEOUT_MS);
+      }
+    }, "ocsp-drain-generation-" + gen.getId());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private ServerGeneration init0() throws InvalidConfException, PasswordResolverException {
     if (confFile == null) {
       throw new IllegalStateException("confFile is not set");
     }
@@ -305,28 +351,6 @@ public class OcspServerImpl implements OcspServer {
       throw new IllegalStateException("securityFactory is not set");
     }
 
-    initialized.set(false);
-
-    // reset
-    responseCacher = null;
-    responders.clear();
-    signers.clear();
-
-    requestOptions.clear();
-    responseOptions.clear();
-    for (String name : stores.keySet()) {
-      OcspStore store = stores.get(name);
-      try {
-        store.close();
-      } catch (IOException ex) {
-        throw new OcspStoreException("could not close OCSP store " + name, ex);
-      }
-    }
-    stores.clear();
-
-    servletPaths.clear();
-    path2responderMap.clear();
-
     OcspServerConf conf = parseConf(confFile);
 
     //-- check the duplication names
@@ -336,7 +360,8 @@ public class OcspServerImpl implements OcspServer {
     for (OcspServerConf.Responder m : conf.getResponders()) {
       String name = m.getName();
 
-      if ("health".equalsIgnoreCase(name) || "mgmt".equalsIgnoreCase(name)) {
+      if ("health".equalsIgnoreCase(name) || "mgmt".equalsIgnoreCase(name)
+          || "metrics".equalsIgnoreCase(name)) {
         throw new InvalidConfException("responder name '" + name + "' is not permitted");
       }
 
@@ -413,35 +438,66 @@ public class OcspServerImpl implements OcspServer {
       }
     }
 
-    this.master = conf.isMaster();
-    this.unknownIssuerBehaviour = conf.getUnknownIssuerBehaviour();
-    if (this.unknownIssuerBehaviour == null) {
-      this.unknownIssuerBehaviour = UnknownIssuerBehaviour.unknown;
+    UnknownIssuerBehaviour unknownIssuerBehaviour = conf.getUnknownIssuerBehaviour();
+    if (unknownIssuerBehaviour == null) {
+      unknownIssuerBehaviour = UnknownIssuerBehaviour.unknown;
+    }
+
+    ServerGeneration gen = new ServerGeneration(generationCounter.incrementAndGet(),
+        conf.isMaster(), unknownIssuerBehaviour);
+    boolean succ = false;
+    try {
+      buildGeneration(conf, gen);
+      succ = true;
+      return gen;
+    } finally {
+      if (!succ) {
+        // release the resources created so far, the current generation remains active.
+        gen.close();
+      }
     }
+  } // method init0
+
+  private void buildGeneration(OcspServerConf conf, ServerGeneration gen)
+      throws InvalidConfException, PasswordResolverException {
+    final boolean master = gen.isMaster();
+    final Map<String, ResponderSigner> signers = gen.signers;
+    final Map<String, RequestOption> requestOptions = gen.requestOptions;
+    final Map<String, OcspServerConf.ResponseOption> responseOptions = gen.responseOptions;
+    final Map<String, OcspStore> stores = gen.stores;
+    final Map<String, ResponderImpl> responders = gen.responders;
 
     // Response Cache
     OcspServerConf.ResponseCache cacheType = conf.getResponseCache();
     if (cacheType != null) {
-      DataSourceConf cacheSourceConf = cacheType.getDatasource();
-      DataSourceWrapper datasource;
-      InputStream dsStream = null;
-      try {
-        dsStream = getInputStream(cacheSourceConf.getConf());
-        datasource = datasourceFactory.createDataSource(cacheSourceConf.getName(),
-                dsStream, securityFactory.getPasswordResolver());
-      } catch (IOException ex) {
-        throw new InvalidConfException(ex.getMessage(), ex);
-      } finally {
-        closeStream(dsStream);
+      DataSourceWrapper datasource = null;
+      if (cacheType.getDbMode() != ResponseCacheDbMode.DISABLED) {
+        DataSourceConf cacheSourceConf = cacheType.getDatasource();
+        InputStream dsStream = null;
+        try {
+          dsStream = getInputStream(cacheSourceConf.getConf());
+          datasource = datasourceFactory.createDataSource(cacheSourceConf.getName(),
+                  dsStream, securityFactory.getPasswordResolver());
+        } catch (IOException ex) {
+          throw new InvalidConfException(ex.getMessage(), ex);
+        } finally {
+          closeStream(dsStream);
+        }
       }
-      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity());
-      responseCacher.init();
+      gen.responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity(),
+          cacheType.getDbMode(), cacheType.getMemorySize(), cacheType.getBuckets());
+      gen.responseCacher.init();
     }
+    final ResponseCacher responseCacher = gen.responseCacher;
 
     //-- initializes the responders
     // signers
     for (OcspServerConf.Signer m : conf.getSigners()) {
       ResponderSigner signer = initSigner(m);
+      // test the signer before it replaces the current one
+      if (!signer.isHealthy()) {
+        throw new InvalidConfException("signer " + m.getName() + " is not healthy");
+      }
       signers.put(m.getName(), signer);
     }
 
@@ -457,7 +513,7 @@ public class OcspServerImpl implements OcspServer {
     }
 
     // datasources
-    Map<String, DataSourceWrapper> datasources = new HashMap<>();
+    final Map<String, DataSourceWrapper> datasources = gen.datasources;
     if (conf.getDatasources() != null) {
       for (DataSourceConf m : conf.getDatasources()) {
         String name = m.getName();
@@ -482,9 +538,21 @@ public class OcspServerImpl implements OcspServer {
     for (OcspServerConf.Responder m : conf.getResponders()) {
       ResponderOption option = new ResponderOption(m);
 
-      String optName = option.getSignerName();
-      if (!signers.containsKey(optName)) {
-        throw new InvalidConfException("no signer named '" + optName + "' is defined");
+      Set<String> firstAlgos = null;
+      for (String optName : option.getSignerNames()) {
+        ResponderSigner signer = signers.get(optName);
+        if (signer == null) {
+          throw new InvalidConfException("no signer named '" + optName + "' is defined");
+        }
+
+        // the signature algorithm is selected before the signer
+        Set<String> algos = signer.getAlgorithmNames();
+        if (firstAlgos == null) {
+          firstAlgos = algos;
+        } else if (!firstAlgos.equals(algos)) {
+          throw new InvalidConfException("signers of responder " + m.getName()
+              + " do not have the same algorithms");
+        }
       }
 
       String reqOptName = option.getRequestOptionName();
@@ -511,6 +579,9 @@ public class OcspServerImpl implements OcspServer {
     for (OcspServerConf.Store m : conf.getStores()) {
       OcspStore store = newStore(m, datasources);
       stores.put(m.getName(), store);
+      if (!store.isHealthy()) {
+        LOG.warn("store {} is not healthy after the initialization", m.getName());
+      }
     }
 
     // responders
@@ -524,25 +595,83 @@ public class OcspServerImpl implements OcspServer {
 
       OcspServerConf.ResponseOption responseOption =
           responseOptions.get(option.getResponseOptionName());
-      ResponderSigner signer = signers.get(option.getSignerName());
-      if (signer.isMacSigner()) {
-        if (responseOption.isResponderIdByName()) {
-          throw new InvalidConfException(
-              "could not use ResponderIdByName for signer " + option.getSignerName());
-        }
+      List<ResponderSigner> responderSigners = new ArrayList<>(option.getSignerNames().size());
+      for (String signerName : option.getSignerNames()) {
+        ResponderSigner signer = signers.get(signerName);
+        if (signer.isMacSigner()) {
+          if (responseOption.isResponderIdByName()) {
+            throw new InvalidConfException(
+                "could not use ResponderIdByName for signer " + signerName);
+          }
 
-        if (EmbedCertsMode.NONE != responseOption.getEmbedCertsMode()) {
-          throw new InvalidConfException(
-              "could not embed certifcate in response for signer " + option.getSignerName());
+          if (EmbedCertsMode.NONE != responseOption.getEmbedCertsMode()) {
+            throw new InvalidConfException(
+                "could not embed certifcate in response for signer " + signerName);
+          }
         }
+        responderSigners.add(signer);
       }
 
-      ResponderImpl responder = new ResponderImpl(option,
+      ResponderImpl responder = new ResponderImpl(name, option,
           requestOptions.get(option.getRequestOptionName()),
-          responseOption, signer, statusStores);
+          responseOption, responderSigners, statusStores, gen,
+          metrics.getResponderMetrics(name));
       responders.put(name, responder);
     } // end for
 
+    // pre-signers
+    // pre-signer to interval
+    Map<ResponsePresigner, Integer> presigners = new LinkedHashMap<>();
+    for (String name : responderOptions.keySet()) {
+      OcspServerConf.Presign presignConf = responderOptions.get(name).getPresign();
+      if (presignConf == null) {
+        continue;
+      }
+
+      if (responseCacher == null || !responseCacher.isMaster()) {
+        throw new InvalidConfException(
+            "presign of responder " + name + " requires responseCache in master mode");
+      }
+
+      ResponderImpl responder = responders.get(name);
+      List<DbCertStatusStore> dbStores = new LinkedList<>();
+      for (OcspStore store : responder.getStores()) {
+        // including the CRL based store
+        if (store instanceof DbCertStatusStore) {
+          dbStores.add((DbCertStatusStore) store);
+        } else {
+          LOG.warn("responder {}: could not pre-sign responses for store {} of type {}",
+              name, store.getName(), store.getClass().getName());
+        }
+      }
+
+      if (dbStores.isEmpty()) {
+        LOG.warn("responder {}: no store supports pre-signing", name);
+        continue;
+      }
+
+      int refreshInterval = presignConf.getRefreshInterval();
+      if (refreshInterval == 0) {
+        refreshInterval = Math.max(1, responseCacher.getValidity() / 2);
+      }
+
+      presigners.put(new ResponsePresigner(this, responder, name, dbStores,
+          presignConf.getMaxSignaturesPerSecond(), refreshInterval, presignConf.getInterval()),
+          presignConf.getInterval());
+    }
+
+    if (!presigners.isEmpty()) {
+      ScheduledThreadPoolExecutor presignExecutor =
+          new ScheduledThreadPoolExecutor(presigners.size());
+      gen.presignExecutor = presignExecutor;
+      int idx = 0;
+      for (Map.Entry<ResponsePresigner, Integer> m : presigners.entrySet()) {
+        // start 10 seconds later to let the stores be initialized
+        presignExecutor.scheduleWithFixedDelay(m.getKey(), 10 + idx++, m.getValue(),
+            TimeUnit.SECONDS);
+      }
+    }
+
     // servlet paths
     List<SizeComparableString> tmpList = new LinkedList<>();
     for (String name : responderOptions.keySet()) {
@@ -551,7 +680,7 @@ public class OcspServerImpl implements OcspServer {
       List<String> strs = option.getServletPaths();
       for (String path : strs) {
         tmpList.add(new SizeComparableString(path));
-        path2responderMap.put(path, responder);
+        gen.path2responderMap.put(path, responder);
       }
     }
 
@@ -562,28 +691,179 @@ public class OcspServerImpl implements OcspServer {
     for (SizeComparableString m : tmpList) {
       list2.add(m.str);
     }
-    this.servletPaths = list2;
-  } // method init0
+    gen.servletPaths = list2;
+  } // method buildGeneration
 
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
-    if (responseCacher != null) {
-      responseCacher.close();
+    initialized.set(false);
+    ServerGeneration gen = generation.getAndSet(null);
+    if (gen != null) {
+      gen.drainAndClose(DRAIN_TIMEOUT_MS);
     }
+  }
 
-    for (OcspStore store : stores.values()) {
-      try {
-        store.close();
-      } catch (Exception ex) {
-        LogUtil.warn(LOG, ex, "shutdown store " + store.getName());
-      }
+  /**
+   * Registers the request in the generation of the responder. If the generation has been
+   * replaced, the responder with the same name in the current generation is used.
+   * @return the responder whose generation has been acquired, or {@code null} if no such
+   *         responder is available.
+   */
+  private ResponderImpl acquireResponder(ResponderImpl responder) {
+    if (responder.getGeneration().acquire()) {
+      return responder;
     }
+
+    ServerGeneration gen = generation.get();
+    ResponderImpl current = (gen == null) ? null : gen.responders.get(responder.getName());
+    return (current != null && gen.acquire()) ? current : null;
   }
 
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
-    ResponderImpl responder = (ResponderImpl) responder2;
+    final long start = System.nanoTime();
+    ResponderImpl responder = acquireResponder((ResponderImpl) responder2);
+    if (responder == null) {
+      ((ResponderImpl) responder2).getMetrics().recordRequest(viaGet,
+          OcspResponseStatus.tryLater, start);
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+    }
+
+    OcspRespWithCacheInfo resp = null;
+    try {
+      resp = answerRequest(responder, request, viaGet);
+      return resp;
+    } finally {
+      responder.getGeneration().release();
+
+      OcspResponseStatus status = (resp == null) ? OcspResponseStatus.internalError
+          : unsuccesfulOCSPStatusMap.get(resp);
+      responder.getMetrics().recordRequest(viaGet,
+          (status == null) ? OcspResponseStatus.successful : status, start);
+    }
+  }
+
+  /**
+   * Gets the metrics of the server in the Prometheus text exposition format (version 0.0.4).
+   * @return the metrics.
+   */
+  public String getPrometheusMetrics() {
+    StringBuilder sb = new StringBuilder(16384);
+    ServerGeneration gen = generation.get();
+    Collection<ResponderImpl> responders = (gen == null)
+        ? Collections.<ResponderImpl>emptyList() : gen.responders.values();
+    ResponseCacher cacher = (gen == null) ? null : gen.getResponseCacher();
+    metrics.writePrometheus(sb, responders, cacher, coalescer);
+    return sb.toString();
+  }
+
+  @Override
+  public void answer(Responder responder2, byte[] request, final boolean viaGet,
+      final AnswerCallback callback) {
+    Args.notNull(callback, "callback");
+    final long start = System.nanoTime();
+    final ResponderImpl responder = acquireResponder((ResponderImpl) responder2);
+    if (responder == null) {
+      ((ResponderImpl) responder2).getMetrics().recordRequest(viaGet,
+          OcspResponseStatus.tryLater, start);
+      callback.onAnswer(unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater));
+      return;
+    }
+
+    final AtomicBoolean answered = new AtomicBoolean(false);
+    try {
+      answerRequest(responder, request, viaGet, new AnswerCallback() {
+
+        @Override
+        public void onAnswer(OcspRespWithCacheInfo resp) {
+          answered.set(true);
+          if (resp == null) {
+            // the computation of the identical request has failed.
+            resp = unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
+          }
+
+          OcspResponseStatus status = unsuccesfulOCSPStatusMap.get(resp);
+          responder.getMetrics().recordRequest(viaGet,
+              (status == null) ? OcspResponseStatus.successful : status, start);
+          callback.onAnswer(resp);
+        }
+
+      });
+    } catch (RuntimeException | Error ex) {
+      if (!answered.get()) {
+        responder.getMetrics().recordRequest(viaGet, OcspResponseStatus.internalError, start);
+      }
+      throw ex;
+    } finally {
+      responder.getGeneration().release();
+    }
+  } // method answer
+
+  private OcspRespWithCacheInfo answerRequest(final ResponderImpl responder,
+      final byte[] request, final boolean viaGet) {
+    CertID certId = OcspRequest.readSingleCertId(request);
+    if (certId == null) {
+      return answer0(responder, request, viaGet);
+    }
+
+    OcspRespWithCacheInfo cachedResp = answerFromCache(responder, certId);
+    if (cachedResp != null) {
+      return cachedResp;
+    }
+
+    // identical requests with one CertID and without nonce have identical responses.
+    return coalescer.answer(responder.getName(), viaGet, request,
+        newComputation(responder, request, viaGet));
+  } // method answerRequest
+
+  private void answerRequest(final ResponderImpl responder, final byte[] request,
+      final boolean viaGet, AnswerCallback callback) {
+    CertID certId = OcspRequest.readSingleCertId(request);
+    if (certId == null) {
+      callback.onAnswer(answer0(responder, request, viaGet));
+      return;
+    }
+
+    OcspRespWithCacheInfo cachedResp = answerFromCache(responder, certId);
+    if (cachedResp != null) {
+      callback.onAnswer(cachedResp);
+      return;
+    }
+
+    // identical requests with one CertID and without nonce have identical responses.
+    coalescer.answer(responder.getName(), viaGet, request,
+        newComputation(responder, request, viaGet), callback);
+  } // method answerRequest
+
+  private OcspRespWithCacheInfo answerFromCache(ResponderImpl responder, CertID certId) {
+    final ResponseCacher responseCacher = responder.getGeneration().getResponseCacher();
+    if (responseCacher == null) {
+      return null;
+    }
+
+    OcspRespWithCacheInfo cachedResp = answerSimpleRequest(responder, certId, responseCacher);
+    if (cachedResp != null) {
+      responder.getMetrics().recordCacheHit();
+    }
+    return cachedResp;
+  } // method answerFromCache
+
+  private RequestCoalescer.Computation newComputation(final ResponderImpl responder,
+      final byte[] request, final boolean viaGet) {
+    return new RequestCoalescer.Computation() {
+
+      @Override
+      public OcspRespWithCacheInfo compute() {
+        return answer0(responder, request, viaGet);
+      }
+
+    };
+  } // method newComputation
+
+  private OcspRespWithCacheInfo answer0(ResponderImpl responder, byte[] request,
+      boolean viaGet) {
+    final ResponseCacher responseCacher = responder.getGeneration().getResponseCacher();
     RequestOption reqOpt = responder.getRequestOption();
 
     int version;
@@ -603,6 +883,7 @@ public class OcspServerImpl implements OcspServer {
 
     ResponderSigner signer = responder.getSigner();
     OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+    ResponderSigner acquiredSigner = null;
 
     try {
       Object reqOrRrrorResp = checkSignature(request, reqOpt);
@@ -726,9 +1007,10 @@ public class OcspServerImpl implements OcspServer {
           OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
               cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode);
           if (cachedResp != null) {
+            responder.getMetrics().recordCacheHit();
             return cachedResp;
           }
-        } else if (master) {
+        } else if (responseCacher.isMaster()) {
           // store the issuer certificate in cache database.
           X509Certificate issuerCert = null;
           for (OcspStore store : responder.getStores()) {
@@ -743,17 +1025,42 @@ public class OcspServerImpl implements OcspServer {
           }
         }
 
+        responder.getMetrics().recordCacheMiss();
         if (cacheDbIssuerId == null) {
           canCacheDb = false;
         }
       }
 
+      // spread the signing among the signers of the responder
+      acquiredSigner = responder.acquireSigner();
+      if (acquiredSigner == null) {
+        LOG.warn("all signers of responder {} are saturated", responder.getName());
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+      }
+
+      if (acquiredSigner != signer) {
+        signer = acquiredSigner;
+        concurrentSigner = signer.getSigner(concurrentSigner.getAlgorithmName());
+      }
+
       ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
       OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
+      for (CertID certId : requestList) {
+        HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
+        if (!reqOpt.allows(reqHashAlgo)) {
+          LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
+          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+        }
+      }
+
+      Date now = new Date();
+      CertStatusLookup[] lookups =
+          lookupCertStatuses(requestList, now, responder, repOpt, false);
+
       for (int i = 0; i < requestsSize; i++) {
-        OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
-            builder, responder, reqOpt, repOpt, repControl);
+        OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i), lookups[i],
+            now, builder, responder, repOpt, repControl);
 
         if (failureOcspResp != null) {
           return failureOcspResp;
@@ -769,23 +1076,19 @@ public class OcspServerImpl implements OcspServer {
         builder.setResponseExtensions(extns);
       }
 
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
+      TaggedCertSequence certsInResp = getCertsInResp(signer, repOpt);
 
       byte[] encodeOcspResponse;
+      SigningMetrics metrics = signer.getMetrics();
+      long signStart = System.nanoTime();
       try {
         encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
+        metrics.recordSignature(concurrentSigner.getAlgorithmName(), signStart);
       } catch (NoIdleSignerException ex) {
+        metrics.recordNoIdleSigner();
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
       } catch (OCSPException ex) {
+        metrics.recordFailure();
         LogUtil.error(LOG, ex, "answer() basicOcspBuilder.build");
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
       }
@@ -811,70 +1114,305 @@ public class OcspServerImpl implements OcspServer {
     } catch (Throwable th) {
       LogUtil.error(LOG, th);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
+    } finally {
+      if (acquiredSigner != null) {
+        acquiredSigner.release();
+      }
     }
   } // method ask
 
-  private OcspRespWithCacheInfo processCertReq(CertID certId, OCSPRespBuilder builder,
-      ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
-      OcspRespControl repControl) throws IOException {
-    HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
-    if (!reqOpt.allows(reqHashAlgo)) {
-      LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
-      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+  /**
+   * Fast path for the most common requests, e.g. those of the RFC 5019 profile: one CertID,
+   * no extensions and no signature. The CertID is read directly from the encoded request,
+   * and the cached response is returned. Requests whose response is not cached are left to
+   * the general processing.
+   *
+   * @param certId the CertID read via {@link OcspRequest#readSingleCertId(byte[])}.
+   * @return the cached response, or {@code null} if the general processing is required.
+   */
+  private OcspRespWithCacheInfo answerSimpleRequest(ResponderImpl responder, CertID certId,
+      ResponseCacher responseCacher) {
+    RequestOption reqOpt = responder.getRequestOption();
+    if (!responseCacher.isOnService() || !reqOpt.isVersionAllowed(0)
+        || reqOpt.getNonceOccurrence() == TripleState.required
+        || (reqOpt.isValidateSignature() && reqOpt.isSignatureRequired())) {
+      return null;
     }
 
-    CertStatusInfo certStatusInfo = null;
-    boolean exceptionOccurs = false;
+    RequestIssuer reqIssuer = certId.getIssuer();
+    if (!reqOpt.allows(reqIssuer.hashAlgorithm())) {
+      return null;
+    }
 
-    BigInteger serial = certId.getSerialNumber();
+    Integer issuerId = responseCacher.getIssuerId(reqIssuer);
+    if (issuerId == null) {
+      return null;
+    }
+
+    // without the extension prefSigAlgs, the first signer is used.
+    AlgorithmCode sigAlgCode = responder.getSigner().getFirstSigner().getAlgorithmCode();
+    try {
+      return responseCacher.getOcspResponse(issuerId.intValue(), certId.getSerialNumber(),
+          sigAlgCode);
+    } catch (DataAccessException ex) {
+      LogUtil.warn(LOG, ex, "could not read the cached response");
+      return null;
+    }
+  } // method answerSimpleRequest
+
+  /**
+   * Signs the responses for the certificates of the same issuer and puts them in the
+   * response cache. The responses are built as those to the requests with only one CertID and
+   * without nonce. Responses which are not cacheable, e.g. for unknown certificates,
+   * will not be signed.
+   *
+   * @param responder the responder.
+   * @param reqIssuer the issuer.
+   * @param issuerCert certificate of the issuer.
+   * @param serialNumbers serial numbers of the certificates.
+   * @param throttle throttle of the signing operations.
+   * @param evict whether to remove the cached responses before signing the new ones, so that
+   *          stale responses are not returned even if no new response will be cached.
+   * @return number of signed responses.
+   * @throws InterruptedException
+   *           If interrupted while waiting for the throttle.
+   */
+  int presign(ResponderImpl responder, RequestIssuer reqIssuer, X509Certificate issuerCert,
+      List<BigInteger> serialNumbers, ResponsePresigner.Throttle throttle, boolean evict)
+      throws InterruptedException {
+    ResponseCacher cacher = responder.getGeneration().getResponseCacher();
+    if (cacher == null || !cacher.isOnService()) {
+      return 0;
+    }
+
+    Integer issuerId = cacher.getIssuerId(reqIssuer);
+    if (issuerId == null) {
+      try {
+        issuerId = cacher.storeIssuer(issuerCert);
+      } catch (CertificateException | InvalidConfException | DataAccessException ex) {
+        LogUtil.error(LOG, ex, "could not store issuer " + reqIssuer + " in the cache database");
+        return 0;
+      }
+    }
+
+    if (evict) {
+      // the response may have been signed by any signer of the responder
+      Set<AlgorithmCode> sigAlgCodes = new HashSet<>();
+      for (ResponderSigner m : responder.getSigners()) {
+        for (ConcurrentContentSigner concurrentSigner : m.getSigners()) {
+          sigAlgCodes.add(concurrentSigner.getAlgorithmCode());
+        }
+      }
+
+      try {
+        cacher.removeOcspResponses(issuerId.intValue(), serialNumbers, sigAlgCodes);
+      } catch (DataAccessException ex) {
+        LogUtil.error(LOG, ex, "could not remove cached responses of issuer " + reqIssuer);
+      }
+    }
+
+    ResponderSigner signer = responder.getSigner();
+    OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+
+    // the preferred signature algorithms are ignored in RFC2560 mode.
+    List<ConcurrentContentSigner> concurrentSigners =
+        (responder.getResponderOption().getMode() == OcspMode.RFC2560)
+          ? Collections.singletonList(signer.getFirstSigner()) : signer.getSigners();
+
+    ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
+    TaggedCertSequence certsInResp = getCertsInResp(signer, repOpt);
+
+    final int size = serialNumbers.size();
+    List<CertID> requestList = new ArrayList<>(size);
+    for (BigInteger serialNumber : serialNumbers) {
+      requestList.add(new CertID(reqIssuer, serialNumber));
+    }
 
-    RequestIssuer reqIssuer = certId.getIssuer();
     Date now = new Date();
-    for (OcspStore store : responder.getStores()) {
-      if (!store.knowsIssuer(reqIssuer)) {
+    // the pre-signed responses are served until they are re-signed, the statuses must not be
+    // read from a lagging replica or from the cache filled by it.
+    CertStatusLookup[] lookups =
+        lookupCertStatuses(requestList, now, responder, repOpt, true);
+
+    int num = 0;
+    for (int i = 0; i < size; i++) {
+      CertID certId = requestList.get(i);
+      OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+      OcspRespControl repControl = new OcspRespControl();
+      repControl.canCacheInfo = true;
+
+      try {
+        OcspRespWithCacheInfo failureOcspResp = processCertReq(certId, lookups[i],
+            now, builder, responder, repOpt, repControl);
+        if (failureOcspResp != null || !repControl.canCacheInfo) {
+          continue;
+        }
+      } catch (IOException ex) {
+        LogUtil.error(LOG, ex, "could not build response for " + certId.getSerialNumber());
         continue;
       }
 
-      try {
-        certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
-            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
-            responder.getResponderOption().isInheritCaRevocation());
-        if (certStatusInfo != null) {
-          CertStatus status = certStatusInfo.getCertStatus();
-          if (status == CertStatus.UNKNOWN || status == CertStatus.IGNORE) {
-            switch (store.getUnknownCertBehaviour()) {
-              case unknown:
-                break;
-              case good:
-                if (status == CertStatus.UNKNOWN) {
-                  certStatusInfo.setCertStatus(CertStatus.GOOD);
-                }
-                break;
-              case malformedRequest:
-                return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
-              case internalError:
-                return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
-              case tryLater:
-                return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
-              default:
-                break;
+      // the response cache does not accept responses which expire within its validity.
+      if ((repControl.cacheNextUpdate - System.currentTimeMillis()) / 1000
+          < cacher.getValidity()) {
+        continue;
+      }
+
+      if (repControl.includeExtendedRevokeExtension) {
+        List<Extension> respExtensions = new ArrayList<>(1);
+        respExtensions.add(extension_pkix_ocsp_extendedRevoke);
+        builder.setResponseExtensions(new Extensions(respExtensions));
+      }
+
+      for (ConcurrentContentSigner concurrentSigner : concurrentSigners) {
+        throttle.acquire();
+
+        byte[] encodeOcspResponse;
+        long signStart = System.nanoTime();
+        try {
+          encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp,
+              new Date());
+          signer.getMetrics().recordSignature(concurrentSigner.getAlgorithmName(), signStart);
+        } catch (NoIdleSignerException ex) {
+          signer.getMetrics().recordNoIdleSigner();
+          LogUtil.warn(LOG, ex, "could not pre-sign response for " + certId.getSerialNumber());
+          continue;
+        } catch (OCSPException ex) {
+          signer.getMetrics().recordFailure();
+          LogUtil.warn(LOG, ex, "could not pre-sign response for " + certId.getSerialNumber());
+          continue;
+        }
+
+        cacher.storeOcspResponse(issuerId.intValue(), certId.getSerialNumber(),
+            repControl.cacheThisUpdate, repControl.cacheNextUpdate,
+            concurrentSigner.getAlgorithmCode(), encodeOcspResponse);
+        num++;
+      }
+    }
+
+    return num;
+  } // method presign
+
+  private static TaggedCertSequence getCertsInResp(ResponderSigner signer,
+      OcspServerConf.ResponseOption repOpt) {
+    EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      return signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      return null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      return signer.getSequenceOfCertChain();
+    }
+  }
+
+  /**
+   * Looks up the status of all requested certificates. The serial numbers of the same
+   * issuer are retrieved from each store in one call.
+   *
+   * @param primaryOnly whether the statuses must be read from the primary databases of the
+   *          stores.
+   */
+  private CertStatusLookup[] lookupCertStatuses(List<CertID> requestList, Date now,
+      ResponderImpl responder, OcspServerConf.ResponseOption repOpt, boolean primaryOnly) {
+    final int size = requestList.size();
+    CertStatusLookup[] lookups = new CertStatusLookup[size];
+
+    // group the requests by issuer
+    Map<RequestIssuer, List<Integer>> issuerIndexes = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      lookups[i] = new CertStatusLookup();
+      RequestIssuer reqIssuer = requestList.get(i).getIssuer();
+      List<Integer> indexes = issuerIndexes.get(reqIssuer);
+      if (indexes == null) {
+        indexes = new ArrayList<>(size);
+        issuerIndexes.put(reqIssuer, indexes);
+      }
+      indexes.add(i);
+    }
+
+    for (Map.Entry<RequestIssuer, List<Integer>> entry : issuerIndexes.entrySet()) {
+      RequestIssuer reqIssuer = entry.getKey();
+      List<Integer> pendingIndexes = entry.getValue();
+
+      for (OcspStore store : responder.getStores()) {
+        if (pendingIndexes.isEmpty()) {
+          break;
+        }
+
+        if (!store.knowsIssuer(reqIssuer)) {
+          continue;
+        }
+
+        List<BigInteger> serials = new ArrayList<>(pendingIndexes.size());
+        for (Integer index : pendingIndexes) {
+          serials.add(requestList.get(index).getSerialNumber());
+        }
+
+        long queryStart = System.nanoTime();
+        try {
+          List<CertStatusInfo> infos = store.getCertStatuses(now, reqIssuer, serials,
+              repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation(), primaryOnly);
+          metrics.getStoreLatency(store.getName()).recordSince(queryStart);
+
+          List<Integer> unresolvedIndexes = new ArrayList<>(pendingIndexes.size());
+          for (int i = 0; i < infos.size(); i++) {
+            int index = pendingIndexes.get(i);
+            CertStatusInfo info = infos.get(i);
+            if (info == null) {
+              unresolvedIndexes.add(index);
+            } else {
+              lookups[index].store = store;
+              lookups[index].certStatusInfo = info;
             }
           }
+          pendingIndexes = unresolvedIndexes;
+        } catch (OcspStoreException ex) {
+          for (Integer index : pendingIndexes) {
+            lookups[index].exceptionOccurs = true;
+          }
+          LogUtil.error(LOG, ex, "getCertStatuses() of CertStatusStore " + store.getName());
+        }
+      }
+    }
 
-          break;
+    return lookups;
+  } // method lookupCertStatuses
+
+  private OcspRespWithCacheInfo processCertReq(CertID certId, CertStatusLookup lookup,
+      Date now, OCSPRespBuilder builder, ResponderImpl responder,
+      OcspServerConf.ResponseOption repOpt, OcspRespControl repControl) throws IOException {
+    CertStatusInfo certStatusInfo = lookup.certStatusInfo;
+    if (certStatusInfo != null) {
+      CertStatus status = certStatusInfo.getCertStatus();
+      if (status == CertStatus.UNKNOWN || status == CertStatus.IGNORE) {
+        switch (lookup.store.getUnknownCertBehaviour()) {
+          case unknown:
+            break;
+          case good:
+            if (status == CertStatus.UNKNOWN) {
+              certStatusInfo.setCertStatus(CertStatus.GOOD);
+            }
+            break;
+          case malformedRequest:
+            return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+          case internalError:
+            return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
+          case tryLater:
+            return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+          default:
+            break;
         }
-      } catch (OcspStoreException ex) {
-        exceptionOccurs = true;
-        LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
       }
     }
 
-    if (exceptionOccurs) {
+    if (lookup.exceptionOccurs) {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
     }
 
     if (certStatusInfo == null) {
-      switch (unknownIssuerBehaviour) {
+      switch (responder.getGeneration().getUnknownIssuerBehaviour()) {
         case unknown:
           final long msPerDay = 86400000L; // 24 * 60 * 60 * 1000L;
           Date nextUpdate = new Date(now.getTime() + msPerDay);
@@ -992,9 +1530,22 @@ public class OcspServerImpl implements OcspServer {
 
   @Override
   public HealthCheckResult healthCheck(Responder responder2) {
-    ResponderImpl responder = (ResponderImpl) responder2;
+    ResponderImpl responder = acquireResponder((ResponderImpl) responder2);
     HealthCheckResult result = new HealthCheckResult();
     result.setName("OCSPResponder");
+    if (responder == null) {
+      result.setHealthy(false);
+      return result;
+    }
+
+    try {
+      return healthCheck0(responder, result);
+    } finally {
+      responder.getGeneration().release();
+    }
+  }
+
+  private HealthCheckResult healthCheck0(ResponderImpl responder, HealthCheckResult result) {
     boolean healthy = true;
 
     for (OcspStore store : responder.getStores()) {
@@ -1007,17 +1558,28 @@ public class OcspServerImpl implements OcspServer {
       result.addChildCheck(storeHealth);
     }
 
-    boolean signerHealthy = responder.getSigner().isHealthy();
-    healthy &= signerHealthy;
-
+    boolean signerHealthy = true;
     HealthCheckResult signerHealth = new HealthCheckResult();
     signerHealth.setName("Signer");
+    for (ResponderSigner signer : responder.getSigners()) {
+      boolean healthy0 = signer.isHealthy();
+      signerHealthy &= healthy0;
+
+      // queue depth and latency of the signer
+      HealthCheckResult childHealth = new HealthCheckResult();
+      childHealth.setName("Signer." + signer.getName());
+      childHealth.setHealthy(healthy0);
+      childHealth.setStatuses(signer.getMetrics().toStatuses());
+      signerHealth.addChildCheck(childHealth);
+    }
+    healthy &= signerHealthy;
+
     signerHealth.setHealthy(signerHealthy);
     result.addChildCheck(signerHealth);
 
     result.setHealthy(healthy);
     return result;
-  } // method healthCheck
+  } // method healthCheck0
 
   public void refreshTokenForSignerType(String signerType) throws XiSecurityException {
     securityFactory.refreshTokenForSignerType(signerType);
@@ -1065,7 +1627,8 @@ public class OcspServerImpl implements OcspServer {
     }
 
     try {
-      return new ResponderSigner(singleSigners);
+      return new ResponderSigner(signerType.getName(), singleSigners,
+          signerType.getMaxOutstanding());
     } catch (CertificateException | IOException ex) {
       throw new InvalidConfException(ex.getMessage(), ex);
     }
@@ -1129,6 +1692,28 @@ public class OcspServerImpl implements OcspServer {
         throw new InvalidConfException("datasource named '" + datasourceName + "' not defined");
       }
     }
+
+    List<String> replicaNames = conf.getSource().getReplicas();
+    if (CollectionUtil.isNonEmpty(replicaNames)) {
+      if (datasource == null) {
+        throw new InvalidConfException("replicas of store " + conf.getName()
+            + " are specified without datasource");
+      }
+
+      List<DataSourceWrapper> replicas = new ArrayList<>(replicaNames.size());
+      for (String replicaName : replicaNames) {
+        DataSourceWrapper replica = datasources.get(replicaName);
+        if (replica == null) {
+          throw new InvalidConfException("datasource named '" + replicaName + "' not defined");
+        } else if (replica == datasource || replicas.contains(replica)) {
+          throw new InvalidConfException("duplicated datasource '" + replicaName
+              + "' in store " + conf.getName());
+        }
+        replicas.add(replica);
+      }
+      store.setReadReplicas(replicas);
+    }
+
     try {
       Map<String, ? extends Object> sourceConf = conf.getSource().getConf();
       store.init(sourceConf, datasource);
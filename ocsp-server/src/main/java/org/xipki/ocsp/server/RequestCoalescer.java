@@ -0,0 +1,268 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspServer.AnswerCallback;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Coalesces identical in-flight OCSP requests, so that the response is computed only once
+ * and returned to all requestors. Only requests with one CertID and without extensions
+ * (especially without nonce) may be coalesced, the responses of identical requests of this
+ * form are identical.
+ *
+ * <p>The synchronous {@link #answer(String, boolean, byte[], Computation)} blocks the waiting
+ * requestors, the asynchronous
+ * {@link #answer(String, boolean, byte[], Computation, AnswerCallback)} does not.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class RequestCoalescer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RequestCoalescer.class);
+
+  interface Computation {
+
+    OcspRespWithCacheInfo compute();
+
+  } // interface Computation
+
+  private static final class Key {
+
+    private final String responderName;
+
+    private final boolean viaGet;
+
+    private final byte[] request;
+
+    private final int hashCode;
+
+    Key(String responderName, boolean viaGet, byte[] request) {
+      this.responderName = responderName;
+      this.viaGet = viaGet;
+      this.request = request;
+      this.hashCode = 31 * (31 * responderName.hashCode() + (viaGet ? 1 : 0))
+          + Arrays.hashCode(request);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return hashCode == other.hashCode && viaGet == other.viaGet
+          && responderName.equals(other.responderName) && Arrays.equals(request, other.request);
+    }
+
+  } // class Key
+
+  private static final class InflightRequest {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private boolean completed;
+
+    private OcspRespWithCacheInfo response;
+
+    private List<AnswerCallback> callbacks;
+
+    /**
+     * Registers the callback to be called on completion.
+     * @return {@code false} if the request has already been completed, the callback is not
+     *         registered then.
+     */
+    synchronized boolean addCallback(AnswerCallback callback) {
+      if (completed) {
+        return false;
+      }
+
+      if (callbacks == null) {
+        callbacks = new LinkedList<>();
+      }
+      callbacks.add(callback);
+      return true;
+    }
+
+    void complete(OcspRespWithCacheInfo response) {
+      List<AnswerCallback> tmpCallbacks;
+      synchronized (this) {
+        this.response = response;
+        this.completed = true;
+        tmpCallbacks = callbacks;
+        callbacks = null;
+      }
+      latch.countDown();
+
+      if (tmpCallbacks != null) {
+        for (AnswerCallback callback : tmpCallbacks) {
+          try {
+            callback.onAnswer(response);
+          } catch (RuntimeException ex) {
+            LogUtil.error(LOG, ex, "error while calling the callback of coalesced request");
+          }
+        }
+      }
+    }
+
+    synchronized OcspRespWithCacheInfo getResponse() {
+      return response;
+    }
+
+    OcspRespWithCacheInfo await(long timeoutMs) throws InterruptedException {
+      return latch.await(timeoutMs, TimeUnit.MILLISECONDS) ? getResponse() : null;
+    }
+
+  } // class InflightRequest
+
+  private final ConcurrentHashMap<Key, InflightRequest> inflights = new ConcurrentHashMap<>();
+
+  private final long maxWaitMs;
+
+  private final AtomicLong coalesced = new AtomicLong(0);
+
+  /**
+   * Constructor.
+   * @param maxWaitMs maximal time in milliseconds to wait for the in-flight identical request.
+   *          After that the response will be computed by the waiting requestor itself.
+   */
+  RequestCoalescer(long maxWaitMs) {
+    this.maxWaitMs = Args.positive(maxWaitMs, "maxWaitMs");
+  }
+
+  /**
+   * Answers the request. If an identical request is in flight, its response will be returned,
+   * otherwise the response will be computed and returned also to the identical requests
+   * arrived in the meantime.
+   *
+   * @param responderName name of the responder.
+   * @param viaGet whether the request is sent via HTTP GET.
+   * @param request the encoded request. Must not be modified.
+   * @param computation the computation of the response.
+   * @return the response.
+   */
+  OcspRespWithCacheInfo answer(String responderName, boolean viaGet, byte[] request,
+      Computation computation) {
+    Key key = new Key(responderName, viaGet, request);
+    InflightRequest inflight = new InflightRequest();
+    InflightRequest existing = inflights.putIfAbsent(key, inflight);
+
+    if (existing != null) {
+      OcspRespWithCacheInfo resp = null;
+      try {
+        resp = existing.await(maxWaitMs);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (resp != null) {
+        coalesced.incrementAndGet();
+        return resp;
+      }
+
+      // timed out or the computation failed
+      return computation.compute();
+    }
+
+    OcspRespWithCacheInfo resp = null;
+    try {
+      resp = computation.compute();
+      return resp;
+    } finally {
+      inflights.remove(key, inflight);
+      inflight.complete(resp);
+    }
+  } // method answer
+
+  /**
+   * Answers the request without blocking. If an identical request is in flight, the callback
+   * will be called by the thread computing that request, otherwise the response will be
+   * computed in the calling thread and passed also to the identical requests arrived in the
+   * meantime. If the computation of the identical request fails, the callback receives
+   * {@code null}.
+   *
+   * @param responderName name of the responder.
+   * @param viaGet whether the request is sent via HTTP GET.
+   * @param request the encoded request. Must not be modified.
+   * @param computation the computation of the response.
+   * @param callback the callback to receive the response.
+   */
+  void answer(String responderName, boolean viaGet, byte[] request, Computation computation,
+      AnswerCallback callback) {
+    Key key = new Key(responderName, viaGet, request);
+    InflightRequest inflight = new InflightRequest();
+    InflightRequest existing = inflights.putIfAbsent(key, inflight);
+
+    if (existing != null) {
+      if (existing.addCallback(callback)) {
+        coalesced.incrementAndGet();
+        return;
+      }
+
+      // completed in the meantime
+      OcspRespWithCacheInfo resp = existing.getResponse();
+      if (resp != null) {
+        coalesced.incrementAndGet();
+      } else {
+        resp = computation.compute();
+      }
+      callback.onAnswer(resp);
+      return;
+    }
+
+    OcspRespWithCacheInfo resp = null;
+    try {
+      resp = computation.compute();
+    } finally {
+      inflights.remove(key, inflight);
+      inflight.complete(resp);
+    }
+    callback.onAnswer(resp);
+  } // method answer
+
+  long getCoalesced() {
+    return coalesced.get();
+  }
+
+  int getInflights() {
+    return inflights.size();
+  }
+
+}
@@ -17,11 +17,14 @@
 
 package org.xipki.ocsp.server;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.server.OcspServerConf.ResponseOption;
+import org.xipki.ocsp.server.ResponderOption.SignerSelection;
 import org.xipki.util.Args;
 
 /**
@@ -32,23 +35,44 @@ import org.xipki.util.Args;
 
 public class ResponderImpl implements Responder {
 
+  private final String name;
+
   private final ResponderOption responderOption;
 
   private final RequestOption requestOption;
 
   private final ResponseOption responseOption;
 
-  private final ResponderSigner signer;
+  private final List<ResponderSigner> signers;
+
+  private final AtomicInteger nextSignerIndex = new AtomicInteger(0);
 
   private final List<OcspStore> stores;
 
-  ResponderImpl(ResponderOption responderOption, RequestOption requestOption,
-      ResponseOption responseOption, ResponderSigner signer, List<OcspStore> stores) {
+  private final ServerGeneration generation;
+
+  // retained across the reloads of the configuration
+  private final OcspMetrics.ResponderMetrics metrics;
+
+  ResponderImpl(String name, ResponderOption responderOption, RequestOption requestOption,
+      ResponseOption responseOption, List<ResponderSigner> signers, List<OcspStore> stores,
+      ServerGeneration generation, OcspMetrics.ResponderMetrics metrics) {
+    this.name = Args.notBlank(name, "name");
     this.responderOption = Args.notNull(responderOption, "responderOption");
     this.requestOption = Args.notNull(requestOption, "requestOption");
     this.responseOption = Args.notNull(responseOption, "responseOption");
-    this.signer = Args.notNull(signer, "signer");
+    this.signers = Collections.unmodifiableList(Args.notEmpty(signers, "signers"));
     this.stores = Args.notEmpty(stores, "stores");
+    this.generation = Args.notNull(generation, "generation");
+    this.metrics = Args.notNull(metrics, "metrics");
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  OcspMetrics.ResponderMetrics getMetrics() {
+    return metrics;
   }
 
   public ResponderOption getResponderOption() {
@@ -63,14 +87,66 @@ public class ResponderImpl implements Responder {
     return responseOption;
   }
 
+  /**
+   * Gets the primary signer, namely the first one.
+   *
+   * @return the primary signer.
+   */
   public ResponderSigner getSigner() {
-    return signer;
+    return signers.get(0);
+  }
+
+  public List<ResponderSigner> getSigners() {
+    return signers;
   }
 
+  /**
+   * Selects a signer according to the {@link SignerSelection} and reserves one signing
+   * operation with it. The reserved operation must be released via
+   * {@link ResponderSigner#release()}.
+   *
+   * @return the selected signer, or {@code null} if all signers are saturated.
+   */
+  ResponderSigner acquireSigner() {
+    final int size = signers.size();
+    if (size == 1) {
+      ResponderSigner signer = signers.get(0);
+      return signer.tryAcquire() ? signer : null;
+    }
+
+    int start;
+    if (responderOption.getSignerSelection() == SignerSelection.ROUND_ROBIN) {
+      start = (nextSignerIndex.getAndIncrement() & 0x7FFFFFFF) % size;
+    } else {
+      start = 0;
+      int minOutstanding = Integer.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        int outstanding = signers.get(i).getOutstanding();
+        if (outstanding < minOutstanding) {
+          minOutstanding = outstanding;
+          start = i;
+        }
+      }
+    }
+
+    // try the other signers if the selected one has been saturated in the meantime.
+    for (int i = 0; i < size; i++) {
+      ResponderSigner signer = signers.get((start + i) % size);
+      if (signer.tryAcquire()) {
+        return signer;
+      }
+    }
+    return null;
+  } // method acquireSigner
+
   public List<OcspStore> getStores() {
     return stores;
   }
 
+  ServerGeneration getGeneration() {
+    return generation;
+  }
+
   @Override
   public int getMaxRequestSize() {
     return requestOption.getMaxRequestSize();
@@ -23,6 +23,7 @@ import java.util.List;
 
 import org.xipki.util.Args;
 import org.xipki.util.InvalidConfException;
+import org.xipki.util.StringUtil;
 
 /**
  * TODO.
@@ -39,6 +40,13 @@ class ResponderOption {
 
   }
 
+  public enum SignerSelection {
+
+    LEAST_OUTSTANDING,
+    ROUND_ROBIN
+
+  }
+
   private final OcspMode mode;
 
   private final boolean inheritCaRevocation;
@@ -47,12 +55,16 @@ class ResponderOption {
 
   private final String responseOptionName;
 
-  private final String signerName;
+  private final List<String> signerNames;
+
+  private final SignerSelection signerSelection;
 
   private final List<String> storeNames;
 
   private final List<String> servletPaths;
 
+  private final OcspServerConf.Presign presign;
+
   ResponderOption(OcspServerConf.Responder conf) throws InvalidConfException {
     Args.notNull(conf, "conf");
     String str = conf.getMode();
@@ -64,7 +76,26 @@ class ResponderOption {
       throw new InvalidConfException("invalid OCSP mode '" + str + "'");
     }
 
-    this.signerName = conf.getSigner();
+    List<String> names = new ArrayList<>(conf.getSigners().size() + 1);
+    if (StringUtil.isNotBlank(conf.getSigner())) {
+      names.add(conf.getSigner());
+    }
+    for (String name : conf.getSigners()) {
+      if (!names.contains(name)) {
+        names.add(name);
+      }
+    }
+    this.signerNames = Collections.unmodifiableList(names);
+
+    str = conf.getSignerSelection();
+    if (str == null || "LEAST_OUTSTANDING".equalsIgnoreCase(str)) {
+      this.signerSelection = SignerSelection.LEAST_OUTSTANDING;
+    } else if ("ROUND_ROBIN".equalsIgnoreCase(str)) {
+      this.signerSelection = SignerSelection.ROUND_ROBIN;
+    } else {
+      throw new InvalidConfException("invalid signerSelection '" + str + "'");
+    }
+
     this.requestOptionName = conf.getRequest();
     this.responseOptionName = conf.getResponse();
     this.inheritCaRevocation = conf.isInheritCaRevocation();
@@ -84,6 +115,7 @@ class ResponderOption {
     }
     list = new ArrayList<>(paths);
     this.servletPaths = Collections.unmodifiableList(list);
+    this.presign = conf.getPresign();
   } // constructor
 
   public OcspMode getMode() {
@@ -94,8 +126,12 @@ class ResponderOption {
     return inheritCaRevocation;
   }
 
-  public String getSignerName() {
-    return signerName;
+  public List<String> getSignerNames() {
+    return signerNames;
+  }
+
+  public SignerSelection getSignerSelection() {
+    return signerSelection;
   }
 
   public String getRequestOptionName() {
@@ -114,4 +150,8 @@ class ResponderOption {
     return servletPaths;
   }
 
+  public OcspServerConf.Presign getPresign() {
+    return presign;
+  }
+
 }
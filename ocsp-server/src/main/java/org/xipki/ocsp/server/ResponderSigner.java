@@ -20,9 +20,11 @@ package org.xipki.ocsp.server;
 import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -44,6 +46,12 @@ import org.xipki.util.Args;
 
 class ResponderSigner {
 
+  private final String name;
+
+  private final int maxOutstanding;
+
+  private final SigningMetrics metrics;
+
   private final Map<String, ConcurrentContentSigner> algoSignerMap;
 
   private final List<ConcurrentContentSigner> signers;
@@ -62,7 +70,10 @@ class ResponderSigner {
 
   private final boolean macSigner;
 
-  ResponderSigner(List<ConcurrentContentSigner> signers) throws CertificateException, IOException {
+  ResponderSigner(String name, List<ConcurrentContentSigner> signers, int maxOutstanding)
+      throws CertificateException, IOException {
+    this.name = Args.notBlank(name, "name");
+    this.maxOutstanding = Args.notNegative(maxOutstanding, "maxOutstanding");
     this.signers = Args.notEmpty(signers, "signers");
     ConcurrentContentSigner firstSigner = signers.get(0);
     this.macSigner = firstSigner.isMac();
@@ -115,8 +126,39 @@ class ResponderSigner {
       String algoName = signer.getAlgorithmName();
       algoSignerMap.put(algoName, signer);
     }
+
+    this.metrics = new SigningMetrics(algoSignerMap.keySet());
   } // constructor
 
+  public String getName() {
+    return name;
+  }
+
+  public int getMaxOutstanding() {
+    return maxOutstanding;
+  }
+
+  SigningMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Reserves one signing operation, must be released via {@link #release()}.
+   *
+   * @return whether the operation is reserved, {@code false} if this signer is saturated.
+   */
+  boolean tryAcquire() {
+    return metrics.tryAcquire(maxOutstanding);
+  }
+
+  void release() {
+    metrics.release();
+  }
+
+  int getOutstanding() {
+    return metrics.getOutstanding();
+  }
+
   public boolean isMacSigner() {
     return macSigner;
   }
@@ -125,6 +167,24 @@ class ResponderSigner {
     return signers.get(0);
   }
 
+  public List<ConcurrentContentSigner> getSigners() {
+    return Collections.unmodifiableList(signers);
+  }
+
+  public Set<String> getAlgorithmNames() {
+    return Collections.unmodifiableSet(algoSignerMap.keySet());
+  }
+
+  /**
+   * Gets the signer for the given signature algorithm.
+   *
+   * @param algoName name of the signature algorithm.
+   * @return the signer, or {@code null} if the signature algorithm is not supported.
+   */
+  public ConcurrentContentSigner getSigner(String algoName) {
+    return algoSignerMap.get(algoName);
+  }
+
   public ConcurrentContentSigner getSignerForPreferredSigAlgs(
       List<AlgorithmIdentifier> prefSigAlgs) {
     if (prefSigAlgs == null) {
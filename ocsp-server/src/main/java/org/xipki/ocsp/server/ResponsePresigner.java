@@ -0,0 +1,306 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.ocsp.server.store.DbCertStatusStore.CertEntry;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Pre-signs the OCSP responses of a responder for all certificates in the xipki-db stores,
+ * and puts them in the response cache. After the first pass over all certificates, only the
+ * certificates changed since the last pass are processed, until all responses are re-signed
+ * after the refresh interval.
+ *
+ * <p>The changed certificates (e.g. by the publishing of the CA) are found via the column
+ * LUPDATE. Their cached responses are removed before the new ones are signed, and they are
+ * processed also between the batches of a full pass, so that a long full pass does not
+ * delay the revocations.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class ResponsePresigner implements Runnable {
+
+  /**
+   * Limits the number of signatures per second.
+   */
+  static class Throttle {
+
+    private final long intervalNanos;
+
+    private long nextPermit;
+
+    Throttle(int permitsPerSecond) {
+      this.intervalNanos = 1000000000L / Args.positive(permitsPerSecond, "permitsPerSecond");
+      this.nextPermit = System.nanoTime();
+    }
+
+    void acquire() throws InterruptedException {
+      long now = System.nanoTime();
+      long waitNanos = nextPermit - now;
+      if (waitNanos > 0) {
+        Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+        nextPermit += intervalNanos;
+      } else {
+        nextPermit = now + intervalNanos;
+      }
+    }
+
+  } // class Throttle
+
+  private static class StoreState {
+
+    private final DbCertStatusStore store;
+
+    // start of the last processing of the changes in milliseconds, 0 before the first pass
+    private long lastChange;
+
+    // time in milliseconds at which all responses shall be re-signed
+    private long nextFullPass;
+
+    StoreState(DbCertStatusStore store) {
+      this.store = store;
+    }
+
+  } // class StoreState
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePresigner.class);
+
+  private static final int BATCH_SIZE = 100;
+
+  private final OcspServerImpl server;
+
+  private final ResponderImpl responder;
+
+  private final String name;
+
+  private final List<StoreState> states;
+
+  private final Throttle throttle;
+
+  private final long refreshIntervalMs;
+
+  private final long changeIntervalMs;
+
+  // start of the last processing of the changes of all stores in milliseconds
+  private long lastChangeRun;
+
+  private final AtomicBoolean inProcess = new AtomicBoolean(false);
+
+  /**
+   * Constructor.
+   * @param server the OCSP server.
+   * @param responder the responder.
+   * @param name name of the responder.
+   * @param stores the stores whose certificates will be processed.
+   * @param maxSignaturesPerSecond maximal number of signatures per second.
+   * @param refreshInterval interval in seconds to re-sign all responses.
+   * @param changeInterval interval in seconds to look for the changed certificates.
+   */
+  ResponsePresigner(OcspServerImpl server, ResponderImpl responder, String name,
+      List<DbCertStatusStore> stores, int maxSignaturesPerSecond, int refreshInterval,
+      int changeInterval) {
+    this.server = Args.notNull(server, "server");
+    this.responder = Args.notNull(responder, "responder");
+    this.name = Args.notBlank(name, "name");
+    Args.notEmpty(stores, "stores");
+    this.states = new ArrayList<>(stores.size());
+    for (DbCertStatusStore store : stores) {
+      this.states.add(new StoreState(store));
+    }
+    this.throttle = new Throttle(maxSignaturesPerSecond);
+    this.refreshIntervalMs = Args.positive(refreshInterval, "refreshInterval") * 1000L;
+    this.changeIntervalMs = Args.positive(changeInterval, "changeInterval") * 1000L;
+  }
+
+  @Override
+  public void run() {
+    if (!inProcess.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      processChanges();
+
+      for (StoreState state : states) {
+        if (System.currentTimeMillis() >= state.nextFullPass) {
+          fullPass(state);
+        }
+      }
+    } catch (InterruptedException ex) {
+      LOG.info("pre-signing of responder {} interrupted", name);
+      Thread.currentThread().interrupt();
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "error while pre-signing responses of responder " + name);
+    } finally {
+      inProcess.set(false);
+    }
+  } // method run
+
+  private void processChanges() throws InterruptedException {
+    lastChangeRun = System.currentTimeMillis();
+    for (StoreState state : states) {
+      // the certificates of the store will be processed in the first full pass.
+      if (state.lastChange != 0) {
+        processChanges(state);
+      }
+    }
+  } // method processChanges
+
+  private void processChanges(StoreState state) throws InterruptedException {
+    final long start = System.currentTimeMillis();
+    // LUPDATE is in seconds, process also the certificates updated in the same second.
+    final long minLastUpdate = state.lastChange / 1000 - 1;
+    final String storeName = state.store.getName();
+
+    long minId = 0;
+    int[] counts = new int[2];
+
+    while (true) {
+      List<CertEntry> entries;
+      try {
+        entries = state.store.listCerts(minId, minLastUpdate, BATCH_SIZE);
+      } catch (OcspStoreException ex) {
+        LogUtil.error(LOG, ex, "could not list changed certificates of store " + storeName);
+        // process the same certificates in the next run.
+        return;
+      }
+
+      if (entries.isEmpty()) {
+        break;
+      }
+
+      presign(state.store, entries, true, counts);
+
+      minId = entries.get(entries.size() - 1).getId();
+      if (entries.size() < BATCH_SIZE) {
+        break;
+      }
+    }
+
+    state.lastChange = start;
+
+    if (counts[0] > 0) {
+      LOG.info("pre-signed {} responses for {} changed certificates of store {} in {} ms,"
+          + " responder {}", counts[1], counts[0], storeName,
+          System.currentTimeMillis() - start, name);
+    }
+  } // method processChanges
+
+  private void fullPass(StoreState state) throws InterruptedException {
+    final long start = System.currentTimeMillis();
+    final String storeName = state.store.getName();
+    final long lastChange = state.lastChange;
+    // certificates changed from now on will be processed as changes.
+    state.lastChange = start;
+
+    long minId = 0;
+    int[] counts = new int[2];
+
+    while (true) {
+      List<CertEntry> entries;
+      try {
+        entries = state.store.listCerts(minId, 0, BATCH_SIZE);
+      } catch (OcspStoreException ex) {
+        LogUtil.error(LOG, ex, "could not list certificates of store " + storeName);
+        // process the changes of the store in the next run as if the full pass not started.
+        state.lastChange = lastChange;
+        return;
+      }
+
+      if (entries.isEmpty()) {
+        break;
+      }
+
+      presign(state.store, entries, false, counts);
+
+      minId = entries.get(entries.size() - 1).getId();
+      if (entries.size() < BATCH_SIZE) {
+        break;
+      }
+
+      // do not delay the changes until the end of the full pass.
+      if (System.currentTimeMillis() - lastChangeRun >= changeIntervalMs) {
+        processChanges();
+      }
+    }
+
+    state.nextFullPass = start + refreshIntervalMs;
+
+    LOG.info("pre-signed {} responses for {} certificates of store {} (full pass) in {} ms,"
+        + " responder {}", counts[1], counts[0], storeName,
+        System.currentTimeMillis() - start, name);
+  } // method fullPass
+
+  /**
+   * Pre-signs the responses for the given certificates.
+   *
+   * @param store the store of the certificates.
+   * @param entries the certificates.
+   * @param evict whether to remove the cached statuses and responses before signing the
+   *          new ones.
+   * @param counts accumulated number of certificates (index 0) and of responses (index 1).
+   */
+  private void presign(DbCertStatusStore store, List<CertEntry> entries, boolean evict,
+      int[] counts) throws InterruptedException {
+    // group the certificates by issuer, keep the order of ID
+    Map<RequestIssuer, List<BigInteger>> issuerSerials = new LinkedHashMap<>();
+    Map<RequestIssuer, X509Certificate> issuerCerts = new LinkedHashMap<>();
+    for (CertEntry entry : entries) {
+      RequestIssuer issuer = entry.getIssuer();
+      if (issuer == null) {
+        continue;
+      }
+
+      List<BigInteger> serials = issuerSerials.get(issuer);
+      if (serials == null) {
+        serials = new ArrayList<>(entries.size());
+        issuerSerials.put(issuer, serials);
+        issuerCerts.put(issuer, entry.getIssuerCert());
+      }
+      serials.add(entry.getSerialNumber());
+
+      if (evict) {
+        store.invalidateCertStatus(issuer, entry.getSerialNumber());
+      }
+    }
+
+    for (Map.Entry<RequestIssuer, List<BigInteger>> m : issuerSerials.entrySet()) {
+      RequestIssuer issuer = m.getKey();
+      counts[0] += m.getValue().size();
+      counts[1] += server.presign(responder, issuer, issuerCerts.get(issuer), m.getValue(),
+          throttle, evict);
+    }
+  } // method presign
+
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatusInfo.UnknownIssuerBehaviour;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.server.store.ResponseCacher;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * All responders, signers, stores and the response cacher built from one version of the
+ * configuration. The OCSP server switches atomically from one generation to the next one,
+ * the old generation is closed after the requests processed by it have been finished.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class ServerGeneration {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServerGeneration.class);
+
+  private final int id;
+
+  private final boolean master;
+
+  private final UnknownIssuerBehaviour unknownIssuerBehaviour;
+
+  private final AtomicInteger inFlight = new AtomicInteger(0);
+
+  private volatile boolean draining;
+
+  private boolean closed;
+
+  ResponseCacher responseCacher;
+
+  final Map<String, ResponderImpl> responders = new HashMap<>();
+
+  final Map<String, ResponderSigner> signers = new HashMap<>();
+
+  final Map<String, RequestOption> requestOptions = new HashMap<>();
+
+  final Map<String, OcspServerConf.ResponseOption> responseOptions = new HashMap<>();
+
+  final Map<String, OcspStore> stores = new HashMap<>();
+
+  // shared by the stores, also as read replicas, closed after the stores.
+  final Map<String, DataSourceWrapper> datasources = new HashMap<>();
+
+  // sorted by the length of path, the first one is the longest.
+  List<String> servletPaths = new ArrayList<>();
+
+  final Map<String, ResponderImpl> path2responderMap = new HashMap<>();
+
+  ScheduledThreadPoolExecutor presignExecutor;
+
+  ServerGeneration(int id, boolean master, UnknownIssuerBehaviour unknownIssuerBehaviour) {
+    this.id = id;
+    this.master = master;
+    this.unknownIssuerBehaviour = Args.notNull(unknownIssuerBehaviour,
+        "unknownIssuerBehaviour");
+  }
+
+  int getId() {
+    return id;
+  }
+
+  boolean isMaster() {
+    return master;
+  }
+
+  UnknownIssuerBehaviour getUnknownIssuerBehaviour() {
+    return unknownIssuerBehaviour;
+  }
+
+  ResponseCacher getResponseCacher() {
+    return responseCacher;
+  }
+
+  /**
+   * Registers a request to be processed by this generation.
+   * @return whether the request may be processed. If {@code false}, the generation is being
+   *         drained and the request must be processed by the current generation.
+   */
+  boolean acquire() {
+    inFlight.incrementAndGet();
+    if (draining) {
+      release();
+      return false;
+    }
+    return true;
+  }
+
+  void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Rejects new requests, waits until the registered requests have been finished and
+   * closes all resources.
+   * @param timeoutMs maximal time in milliseconds to wait for the registered requests.
+   */
+  void drainAndClose(long timeoutMs) {
+    draining = true;
+    stopPresigners();
+
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    try {
+      while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    int num = inFlight.get();
+    if (num > 0) {
+      LOG.warn("closing generation {} with {} unfinished requests", id, num);
+    }
+    close();
+  } // method drainAndClose
+
+  synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    draining = true;
+    stopPresigners();
+
+    if (responseCacher != null) {
+      responseCacher.close();
+    }
+
+    for (OcspStore store : stores.values()) {
+      try {
+        store.close();
+      } catch (Exception ex) {
+        LogUtil.warn(LOG, ex, "shutdown store " + store.getName());
+      }
+    }
+
+    for (DataSourceWrapper datasource : datasources.values()) {
+      datasource.close();
+    }
+    LOG.info("closed generation {}", id);
+  } // method close
+
+  private void stopPresigners() {
+    ScheduledThreadPoolExecutor executor = presignExecutor;
+    if (executor == null) {
+      return;
+    }
+
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOG.warn("pre-signers of generation {} are still running", id);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  } // method stopPresigners
+
+}
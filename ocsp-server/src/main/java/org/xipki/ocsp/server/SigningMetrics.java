@@ -0,0 +1,182 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.util.Args;
+
+/**
+ * Metrics of a {@link ResponderSigner}: the number of outstanding signing operations, the
+ * number of signatures and rejections, and the histogram of the signing latency per
+ * signature algorithm.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class SigningMetrics {
+
+  private final AtomicInteger outstanding = new AtomicInteger(0);
+
+  private final AtomicLong signatures = new AtomicLong(0);
+
+  private final AtomicLong failures = new AtomicLong(0);
+
+  private final AtomicLong noIdleSigners = new AtomicLong(0);
+
+  private final AtomicLong rejected = new AtomicLong(0);
+
+  // the algorithms are fixed, the map is not modified after the construction.
+  private final Map<String, LatencyHistogram> latencies;
+
+  SigningMetrics(Collection<String> algorithmNames) {
+    Args.notEmpty(algorithmNames, "algorithmNames");
+    Map<String, LatencyHistogram> map = new HashMap<>();
+    for (String algorithmName : algorithmNames) {
+      map.put(algorithmName, new LatencyHistogram());
+    }
+    this.latencies = Collections.unmodifiableMap(map);
+  }
+
+  /**
+   * Reserves one signing operation.
+   *
+   * @param maxOutstanding maximal number of outstanding signing operations, 0 for unlimited.
+   * @return whether the operation is reserved, {@code false} if the signer is saturated.
+   */
+  boolean tryAcquire(int maxOutstanding) {
+    if (maxOutstanding <= 0) {
+      outstanding.incrementAndGet();
+      return true;
+    }
+
+    while (true) {
+      int current = outstanding.get();
+      if (current >= maxOutstanding) {
+        rejected.incrementAndGet();
+        return false;
+      }
+
+      if (outstanding.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases the operation reserved by {@link #tryAcquire(int)}.
+   */
+  void release() {
+    outstanding.decrementAndGet();
+  }
+
+  /**
+   * Records a successful signing operation.
+   *
+   * @param algorithmName name of the signature algorithm.
+   * @param startNanos the value of {@link System#nanoTime()} when the signing started.
+   */
+  void recordSignature(String algorithmName, long startNanos) {
+    signatures.incrementAndGet();
+    LatencyHistogram latency = latencies.get(algorithmName);
+    if (latency != null) {
+      latency.recordSince(startNanos);
+    }
+  }
+
+  void recordFailure() {
+    failures.incrementAndGet();
+  }
+
+  /**
+   * Records a signing operation which failed since no idle signer is available in time.
+   */
+  void recordNoIdleSigner() {
+    noIdleSigners.incrementAndGet();
+    failures.incrementAndGet();
+  }
+
+  int getOutstanding() {
+    return outstanding.get();
+  }
+
+  long getSignatures() {
+    return signatures.get();
+  }
+
+  long getFailures() {
+    return failures.get();
+  }
+
+  long getNoIdleSigners() {
+    return noIdleSigners.get();
+  }
+
+  long getRejected() {
+    return rejected.get();
+  }
+
+  Map<String, LatencyHistogram> getLatencies() {
+    return latencies;
+  }
+
+  Map<String, Object> toStatuses() {
+    long[] counts = new long[LatencyHistogram.BUCKETS];
+    long[] countAndSum = new long[2];
+    for (LatencyHistogram latency : latencies.values()) {
+      latency.addTo(counts, countAndSum);
+    }
+
+    Map<String, Object> statuses = new LinkedHashMap<>();
+    statuses.put("outstanding", getOutstanding());
+    statuses.put("signatures", getSignatures());
+    statuses.put("failures", getFailures());
+    statuses.put("noIdleSigners", getNoIdleSigners());
+    statuses.put("rejected", getRejected());
+    statuses.put("latencySumMs", countAndSum[1] / 1000000L);
+
+    // only the non-empty buckets
+    Map<String, Long> histogram = new LinkedHashMap<>();
+    final int last = LatencyHistogram.BUCKETS - 1;
+    for (int i = 0; i < last; i++) {
+      if (counts[i] != 0) {
+        histogram.put("<" + LatencyHistogram.getUpperBoundMicros(i) + "us", counts[i]);
+      }
+    }
+    if (counts[last] != 0) {
+      histogram.put(">=" + LatencyHistogram.getUpperBoundMicros(last - 1) + "us", counts[last]);
+    }
+    statuses.put("latencyHistogram", histogram);
+    return statuses;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SigningMetrics[outstanding=%d,signatures=%d,failures=%d,"
+        + "noIdleSigners=%d,rejected=%d]", getOutstanding(), getSignatures(), getFailures(),
+        getNoIdleSigners(), getRejected());
+  }
+
+}
@@ -24,9 +24,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +69,41 @@ import com.alibaba.fastjson.JSON;
 
 public class CaDbCertStatusStore extends OcspStore {
 
+  private static class CertStatusRow {
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    private final long revTime;
+
+    private final long invalTime;
+
+    private final String b64CertHash;
+
+    CertStatusRow(ResultSet rs, boolean includeCertHash, boolean includeRit)
+        throws SQLException {
+      this.notBefore = rs.getLong("NBEFORE");
+      this.notAfter = rs.getLong("NAFTER");
+      this.revoked = rs.getBoolean("REV");
+      if (revoked) {
+        this.reason = rs.getInt("RR");
+        this.revTime = rs.getLong("RT");
+        this.invalTime = includeRit ? rs.getLong("RIT") : 0;
+      } else {
+        this.reason = 0;
+        this.revTime = 0;
+        this.invalTime = 0;
+      }
+      this.b64CertHash = includeCertHash ? rs.getString("SHA1") : null;
+    }
+
+  } // class CertStatusRow
+
   private class StoreUpdateService implements Runnable {
 
     @Override
@@ -80,6 +117,8 @@ public class CaDbCertStatusStore extends OcspStore {
 
   private static final Logger LOG = LoggerFactory.getLogger(CaDbCertStatusStore.class);
 
+  private static final int MAX_SERIALS_PER_QUERY = 100;
+
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
 
   private String sqlCsNoRit;
@@ -239,20 +278,8 @@ public class CaDbCertStatusStore extends OcspStore {
         sql = includeRit ? sqlCs : sqlCsNoRit;
       }
 
-      Date thisUpdate = new Date();
-      Date nextUpdate = null;
-
+      CertStatusRow row = null;
       ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
-
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
@@ -261,119 +288,219 @@ public class CaDbCertStatusStore extends OcspStore {
         rs = ps.executeQuery();
 
         if (rs.next()) {
-          unknown = false;
-
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("SHA1");
-            }
-
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
+          row = new CertStatusRow(rs, includeCertHash, includeRit);
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime)
-              ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
+      return buildCertStatusInfo(time, issuer, row, includeCertHash, includeRit,
+          inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+
+  } // method getCertStatus0
+
+  @Override
+  protected List<CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    if (serialNumbers.size() < 2) {
+      return super.getCertStatuses0(time, reqIssuer, serialNumbers, includeCertHash,
+          includeRit, inheritCaRevocation);
+    }
+
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
+
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      for (int i = 0; i < serialNumbers.size(); i++) {
+        infos.add(null);
+      }
+      return infos;
+    }
+
+    Set<BigInteger> serials = new HashSet<>();
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() == 1) {
+        serials.add(serialNumber);
+      }
+    }
+
+    try {
+      Map<BigInteger, CertStatusRow> rows = new HashMap<>();
+      List<BigInteger> chunk = new ArrayList<>(MAX_SERIALS_PER_QUERY);
+      for (BigInteger serial : serials) {
+        chunk.add(serial);
+        if (chunk.size() == MAX_SERIALS_PER_QUERY) {
+          queryCertStatusRows(issuer.getId(), chunk, includeCertHash, includeRit, rows);
+          chunk.clear();
         }
       }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+      if (!chunk.isEmpty()) {
+        queryCertStatusRows(issuer.getId(), chunk, includeCertHash, includeRit, rows);
+      }
 
-          certStatusInfo.setArchiveCutOff(date);
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() != 1) { // non-positive serial number
+          infos.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+        } else {
+          infos.add(buildCertStatusInfo(time, issuer, rows.get(serialNumber), includeCertHash,
+              includeRit, inheritCaRevocation));
         }
       }
+      return infos;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatuses0
+
+  private void queryCertStatusRows(int issuerId, List<BigInteger> serials,
+      boolean includeCertHash, boolean includeRit, Map<BigInteger, CertStatusRow> rows)
+      throws DataAccessException {
+    StringBuilder sb = new StringBuilder(120 + 2 * serials.size());
+    sb.append("SELECT SN,NBEFORE,NAFTER,REV,RR,RT");
+    if (includeRit) {
+      sb.append(",RIT");
+    }
+    if (includeCertHash) {
+      sb.append(",SHA1");
+    }
+    sb.append(" FROM CERT WHERE CA_ID=? AND SN IN (?");
+    for (int i = 1; i < serials.size(); i++) {
+      sb.append(",?");
+    }
+    sb.append(")");
+
+    final String sql = sb.toString();
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(sql);
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+    try {
+      int idx = 1;
+      ps.setInt(idx++, issuerId);
+      for (BigInteger serial : serials) {
+        ps.setString(idx++, serial.toString(16));
       }
+      rs = ps.executeQuery();
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
+      while (rs.next()) {
+        BigInteger serial = new BigInteger(rs.getString("SN"), 16);
+        rows.put(serial, new CertStatusRow(rs, includeCertHash, includeRit));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method queryCertStatusRows
+
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer, CertStatusRow row,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation) {
+    Date thisUpdate = new Date();
+    Date nextUpdate = null;
+
+    boolean unknown = (row == null);
+    boolean ignore = false;
+
+    if (!unknown) {
+      long timeInSec = time.getTime() / 1000;
+      if (!ignore && ignoreNotYetValidCert) {
+        if (row.notBefore != 0 && timeInSec < row.notBefore) {
+          ignore = true;
         }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        if (row.notAfter != 0 && timeInSec > row.notAfter) {
+          ignore = true;
         }
       }
+    }
+
+    CertStatusInfo certStatusInfo;
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      String b64CertHash = includeCertHash ? row.b64CertHash : null;
+      byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+      if (row.revoked) {
+        long revTime = row.revTime;
+        long invalTime = includeRit ? row.invalTime : 0;
+        Date invTime = (invalTime == 0 || invalTime == revTime)
+            ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(row.reason,
+            new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
+      }
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
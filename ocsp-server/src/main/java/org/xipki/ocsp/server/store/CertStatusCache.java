@@ -0,0 +1,314 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.ocsp.server.store.DbCertStatusStore.CertStatusRow;
+import org.xipki.util.Args;
+
+/**
+ * In-memory cache of the certificate status rows read from the table CERT, identified by
+ * the issuer id and serial number. Absent rows (unknown certificates) are cached as well.
+ * Reads and writes do not block; if the cache is full, expired entries are removed first,
+ * and then arbitrary entries until the cache is filled to 90%.
+ *
+ * <p>The entries are invalidated if the rows have been updated (column LUPDATE), or if the
+ * issuer or the CRL has been changed. Rows deleted by other processes cannot be detected,
+ * their entries remain until the TTL expires, hence the TTL is limited by the store.
+ *
+ * <p>The rows of invalidated entries shall be read from the primary database within the TTL
+ * after the invalidation, since the read replicas may not have replicated the change yet,
+ * see {@link #isPrimaryReadRequired(Key, long)}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class CertStatusCache {
+
+  static final class Key {
+
+    private final int issuerId;
+
+    private final BigInteger serialNumber;
+
+    private final int hashCode;
+
+    Key(int issuerId, BigInteger serialNumber) {
+      this.issuerId = issuerId;
+      this.serialNumber = Args.notNull(serialNumber, "serialNumber");
+      this.hashCode = 31 * issuerId + serialNumber.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return issuerId == other.issuerId && serialNumber.equals(other.serialNumber);
+    }
+
+  } // class Key
+
+  static final class Entry {
+
+    // null for unknown certificate
+    private final CertStatusRow row;
+
+    // in milliseconds
+    private final long expireAt;
+
+    private Entry(CertStatusRow row, long expireAt) {
+      this.row = row;
+      this.expireAt = expireAt;
+    }
+
+    /**
+     * Gets the cached row.
+     * @return the row, or {@code null} if the certificate is unknown.
+     */
+    CertStatusRow getRow() {
+      return row;
+    }
+
+  } // class Entry
+
+  private final ConcurrentMap<Key, Entry> cache = new ConcurrentHashMap<>();
+
+  private final int maxSize;
+
+  private final long ttlMs;
+
+  private final AtomicBoolean evictionInProcess = new AtomicBoolean(false);
+
+  private final AtomicLong hits = new AtomicLong(0);
+
+  private final AtomicLong misses = new AtomicLong(0);
+
+  private final AtomicLong invalidations = new AtomicLong(0);
+
+  // incremented by each invalidation, rows read before it may not be cached any more.
+  private final AtomicLong generation = new AtomicLong(0);
+
+  // time in milliseconds until which the rows of the invalidated entries, issuers and all
+  // entries must be read from the primary database.
+  private final ConcurrentMap<Key, Long> primaryReadKeys = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<Integer, Long> primaryReadIssuers = new ConcurrentHashMap<>();
+
+  private volatile long primaryReadAllUntil;
+
+  /**
+   * Constructor.
+   * @param maxSize maximal number of cached entries.
+   * @param ttl time to live of the entries in seconds.
+   */
+  CertStatusCache(int maxSize, int ttl) {
+    this.maxSize = Args.positive(maxSize, "maxSize");
+    this.ttlMs = Args.positive(ttl, "ttl") * 1000L;
+  }
+
+  /**
+   * Gets the cached entry.
+   * @param key the key.
+   * @param now current time in milliseconds.
+   * @return the cached entry, or {@code null} if no unexpired one is available.
+   */
+  Entry get(Key key, long now) {
+    Entry entry = cache.get(key);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    if (entry.expireAt <= now) {
+      cache.remove(key, entry);
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return entry;
+  }
+
+  /**
+   * Gets the current generation, must be retrieved before the row is read from the database.
+   * @return the current generation.
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Puts the row in the cache.
+   * @param key the key.
+   * @param row the row, {@code null} for unknown certificate.
+   * @param now current time in milliseconds.
+   * @param maxExpireAt the entry expires latest at this time (in milliseconds), 0 for no
+   *          limitation.
+   * @param readGeneration the generation retrieved before the row was read. The row will
+   *          not be cached if any entry has been invalidated since then.
+   */
+  void put(Key key, CertStatusRow row, long now, long maxExpireAt, long readGeneration) {
+    long expireAt = now + ttlMs;
+    if (maxExpireAt > now && maxExpireAt < expireAt) {
+      expireAt = maxExpireAt;
+    }
+
+    Entry entry = new Entry(row, expireAt);
+    cache.put(key, entry);
+    // checked after the put: a concurrent invalidation either removed the entry or is visible.
+    if (generation.get() != readGeneration) {
+      cache.remove(key, entry);
+      return;
+    }
+
+    if (cache.size() > maxSize) {
+      evict(now);
+    }
+  } // method put
+
+  /**
+   * Whether the row must be read from the primary database, namely if the entry has been
+   * invalidated within the TTL.
+   * @param key the key.
+   * @param now current time in milliseconds.
+   * @return whether the row must be read from the primary database.
+   */
+  boolean isPrimaryReadRequired(Key key, long now) {
+    if (primaryReadAllUntil > now) {
+      return true;
+    }
+
+    if (!primaryReadIssuers.isEmpty()) {
+      Long until = primaryReadIssuers.get(key.issuerId);
+      if (until != null) {
+        if (until > now) {
+          return true;
+        }
+        primaryReadIssuers.remove(key.issuerId, until);
+      }
+    }
+
+    Long until = primaryReadKeys.get(key);
+    if (until == null) {
+      return false;
+    } else if (until > now) {
+      return true;
+    } else {
+      primaryReadKeys.remove(key, until);
+      return false;
+    }
+  } // method isPrimaryReadRequired
+
+  void invalidate(Key key) {
+    generation.incrementAndGet();
+    long now = System.currentTimeMillis();
+    primaryReadKeys.put(key, now + ttlMs);
+    if (primaryReadKeys.size() > maxSize) {
+      Iterator<Long> it = primaryReadKeys.values().iterator();
+      while (it.hasNext()) {
+        if (it.next() <= now) {
+          it.remove();
+        }
+      }
+
+      if (primaryReadKeys.size() > maxSize) {
+        // too many changes, read all rows from the primary database within the TTL.
+        primaryReadAllUntil = now + ttlMs;
+        primaryReadKeys.clear();
+      }
+    }
+
+    if (cache.remove(key) != null) {
+      invalidations.incrementAndGet();
+    }
+  } // method invalidate
+
+  void invalidateIssuer(int issuerId) {
+    generation.incrementAndGet();
+    primaryReadIssuers.put(issuerId, System.currentTimeMillis() + ttlMs);
+    Iterator<Key> it = cache.keySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().issuerId == issuerId) {
+        it.remove();
+        invalidations.incrementAndGet();
+      }
+    }
+  }
+
+  void clear() {
+    generation.incrementAndGet();
+    primaryReadAllUntil = System.currentTimeMillis() + ttlMs;
+    primaryReadKeys.clear();
+    invalidations.addAndGet(cache.size());
+    cache.clear();
+  }
+
+  int getMaxSize() {
+    return maxSize;
+  }
+
+  private void evict(long now) {
+    // only one thread evicts, the others continue without waiting.
+    if (!evictionInProcess.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      Iterator<Entry> it = cache.values().iterator();
+      while (it.hasNext()) {
+        if (it.next().expireAt <= now) {
+          it.remove();
+        }
+      }
+
+      int targetSize = maxSize / 10 * 9;
+      it = cache.values().iterator();
+      while (cache.size() > targetSize && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    } finally {
+      evictionInProcess.set(false);
+    }
+  } // method evict
+
+  @Override
+  public String toString() {
+    return String.format("CertStatusCache[size=%d,maxSize=%d,hits=%d,misses=%d,"
+        + "invalidations=%d]", cache.size(), maxSize, hits.get(), misses.get(),
+        invalidations.get());
+  }
+
+}
@@ -26,14 +26,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -60,6 +61,7 @@ import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.CollectionUtil;
+import org.xipki.util.Hex;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 
@@ -73,19 +75,141 @@ import com.alibaba.fastjson.JSON;
 
 public class DbCertStatusStore extends OcspStore {
 
+  static class CertStatusRow {
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    private final long revTime;
+
+    private final long invalTime;
+
+    private final byte[] certHash;
+
+    CertStatusRow(ResultSet rs, boolean includeCertHash, boolean includeRit,
+        boolean binaryCertHash) throws SQLException {
+      this.notBefore = rs.getLong("NBEFORE");
+      this.notAfter = rs.getLong("NAFTER");
+      this.revoked = rs.getBoolean("REV");
+      if (revoked) {
+        this.reason = rs.getInt("RR");
+        this.revTime = rs.getLong("RT");
+        this.invalTime = includeRit ? rs.getLong("RIT") : 0;
+      } else {
+        this.reason = 0;
+        this.revTime = 0;
+        this.invalTime = 0;
+      }
+      if (!includeCertHash) {
+        this.certHash = null;
+      } else if (binaryCertHash) {
+        this.certHash = rs.getBytes("HASH");
+      } else {
+        String b64CertHash = rs.getString("HASH");
+        this.certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+      }
+    }
+
+  } // class CertStatusRow
+
+  /**
+   * Certificate in the table CERT.
+   */
+  public static class CertEntry {
+
+    private final long id;
+
+    private final RequestIssuer issuer;
+
+    private final X509Certificate issuerCert;
+
+    private final BigInteger serialNumber;
+
+    private final long lastUpdate;
+
+    CertEntry(long id, RequestIssuer issuer, X509Certificate issuerCert,
+        BigInteger serialNumber, long lastUpdate) {
+      this.id = id;
+      this.issuer = issuer;
+      this.issuerCert = issuerCert;
+      this.serialNumber = serialNumber;
+      this.lastUpdate = lastUpdate;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    /**
+     * Gets the issuer with hash algorithm SHA-1.
+     * @return the issuer, {@code null} if the issuer is not served by the store.
+     */
+    public RequestIssuer getIssuer() {
+      return issuer;
+    }
+
+    public X509Certificate getIssuerCert() {
+      return issuerCert;
+    }
+
+    public BigInteger getSerialNumber() {
+      return serialNumber;
+    }
+
+    /**
+     * Gets the time of the last update.
+     * @return the time of the last update, in seconds since January 1, 1970, 00:00:00 GMT.
+     */
+    public long getLastUpdate() {
+      return lastUpdate;
+    }
+
+  } // class CertEntry
+
   private class StoreUpdateService implements Runnable {
 
     @Override
     public void run() {
       updateIssuerStore();
+      invalidateUpdatedCertStatuses();
     }
 
   } // class StoreUpdateService
 
+  private class ReplicaProbeService implements Runnable {
+
+    @Override
+    public void run() {
+      ReplicaRouter router = replicaRouter;
+      if (router != null) {
+        router.probe();
+      }
+    }
+
+  } // class ReplicaProbeService
+
   protected DataSourceWrapper datasource;
 
+  // routes the status queries to the read replicas, null if no replica is configured.
+  private ReplicaRouter replicaRouter;
+
   private static final Logger LOG = LoggerFactory.getLogger(DbCertStatusStore.class);
 
+  private static final int MAX_SERIALS_PER_QUERY = 100;
+
+  private static final int DFLT_STATUS_CACHE_TTL = 60;
+
+  // the deletion of rows in the table CERT is not detected, see CertStatusCache.
+  private static final int MAX_STATUS_CACHE_TTL = 600;
+
+  // interval in seconds to probe the health of the read replicas
+  private static final int REPLICA_PROBE_INTERVAL = 10;
+
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
 
   private String sqlCsNoRit;
@@ -98,11 +222,28 @@ public class DbCertStatusStore extends OcspStore {
 
   private IssuerFilter issuerFilter;
 
-  private IssuerStore issuerStore;
+  // replaced as a whole by updateIssuerStore(), never modified.
+  private volatile IssuerStore issuerStore;
+
+  // REV_INFO, CRL_INFO and S1C of the issuers in issuerStore, accessed only by
+  // updateIssuerStore().
+  private Map<Integer, String[]> issuerRows = Collections.emptyMap();
 
   private HashAlgo certHashAlgo;
 
-  private boolean initialized;
+  // whether the column ISSUER.CERT is binary, otherwise Base64 encoded text.
+  private boolean binaryCert;
+
+  // whether the column CERT.HASH is binary, otherwise Base64 encoded text.
+  private boolean binaryCertHash;
+
+  private volatile boolean initialized;
+
+  // cache of the rows in the table CERT, null if disabled.
+  private CertStatusCache statusCache;
+
+  // time in seconds of the last check of the updated rows in the table CERT.
+  private long lastStatusCacheCheck;
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
@@ -110,296 +251,677 @@ public class DbCertStatusStore extends OcspStore {
     return Collections.emptyList();
   }
 
-  private synchronized void updateIssuerStore() {
-    if (storeUpdateInProcess.get()) {
+  /**
+   * Refreshes the issuers. A new {@link IssuerStore} is built and replaces the current one
+   * atomically, so that the requests are never blocked. Only the certificates of new issuers
+   * are read and parsed, the other issuers are taken over from the current store, with the
+   * updated revocation and CRL information if changed.
+   */
+  private void updateIssuerStore() {
+    if (!storeUpdateInProcess.compareAndSet(false, true)) {
       return;
     }
 
-    storeUpdateInProcess.set(true);
     try {
-      if (initialized) {
-        final String sql = "SELECT ID,REV_INFO,S1C FROM ISSUER";
-        PreparedStatement ps = preparedStatement(sql);
-        ResultSet rs = null;
+      final IssuerStore current = issuerStore;
 
-        try {
-          Map<Integer, SimpleIssuerEntry> newIssuers = new HashMap<>();
-
-          rs = ps.executeQuery();
-          while (rs.next()) {
-            if (!issuerFilter.includeAll()) {
-              String sha1Fp = rs.getString("S1C");
-              if (!issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
-                continue;
-              }
-            }
-
-            int id = rs.getInt("ID");
-            Long revTimeMs = null;
-            String str = rs.getString("REV_INFO");
-            if (str != null) {
-              CertRevocationInfo revInfo = CertRevocationInfo.fromEncoded(str);
-              revTimeMs = revInfo.getRevocationTime().getTime();
-            }
-            SimpleIssuerEntry issuerEntry = new SimpleIssuerEntry(id, revTimeMs);
-            newIssuers.put(id, issuerEntry);
-          }
-
-          // no change in the issuerStore
-          Set<Integer> newIds = newIssuers.keySet();
-          Set<Integer> ids = (issuerStore != null) ? issuerStore.getIds() : Collections.emptySet();
-
-          boolean issuersUnchanged = (ids.size() == newIds.size())
-              && ids.containsAll(newIds) && newIds.containsAll(ids);
-
-          if (issuersUnchanged) {
-            for (Integer id : newIds) {
-              IssuerEntry entry = issuerStore.getIssuerForId(id);
-              SimpleIssuerEntry newEntry = newIssuers.get(id);
-              if (!newEntry.match(entry)) {
-                issuersUnchanged = false;
-                break;
-              }
-            }
-          }
-
-          if (issuersUnchanged) {
-            return;
-          }
-        } finally {
-          releaseDbResources(ps, rs);
-        }
-      } // end if(initialized)
-
-      final String sql = "SELECT ID,NBEFORE,REV_INFO,S1C,CERT,CRL_INFO FROM ISSUER";
+      // ID to (REV_INFO, CRL_INFO, S1C)
+      Map<Integer, String[]> rows = new HashMap<>();
+      final String sql = "SELECT ID,S1C,REV_INFO,CRL_INFO FROM ISSUER";
       PreparedStatement ps = preparedStatement(sql);
-
       ResultSet rs = null;
       try {
         rs = ps.executeQuery();
-        List<IssuerEntry> caInfos = new LinkedList<>();
         while (rs.next()) {
           String sha1Fp = rs.getString("S1C");
-          if (!issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
+          if (!issuerFilter.includeAll() && !issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
             continue;
           }
 
-          X509Certificate cert = X509Util.parseCert(StringUtil.toUtf8Bytes(rs.getString("CERT")));
+          rows.put(rs.getInt("ID"), new String[]{rs.getString("REV_INFO"),
+              rs.getString("CRL_INFO"), sha1Fp});
+        }
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+
+      boolean changed = (current == null) || current.size() != rows.size();
+      List<IssuerEntry> caInfos = new ArrayList<>(rows.size());
+      Map<Integer, String[]> newIssuerRows = new HashMap<>();
+      for (Map.Entry<Integer, String[]> m : rows.entrySet()) {
+        int id = m.getKey();
+        String[] row = m.getValue();
+        IssuerEntry existing = (current == null) ? null : current.getIssuerForId(id);
+        String[] existingRow = issuerRows.get(id);
+
+        if (existing == null || existingRow == null
+            || !Objects.equals(existingRow[2], row[2])) {
+          newIssuerRows.put(id, row);
+          changed = true;
+        } else if (Objects.equals(existingRow[0], row[0])
+            && Objects.equals(existingRow[1], row[1])) {
+          caInfos.add(existing);
+        } else {
+          // the certificate of an issuer does not change, only parse the changed columns.
+          caInfos.add(newIssuerEntry(new IssuerEntry(existing), row[0], row[1]));
+          changed = true;
+        }
+      }
 
-          IssuerEntry caInfoEntry = new IssuerEntry(rs.getInt("ID"), cert);
-          String crlInfoStr = rs.getString("CRL_INFO");
-          if (StringUtil.isNotBlank(crlInfoStr)) {
-            CrlInfo crlInfo = new CrlInfo(crlInfoStr);
-            caInfoEntry.setCrlInfo(crlInfo);
-          }
-          RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
-              caInfoEntry.getEncodedHash(HashAlgo.SHA1));
-          for (IssuerEntry existingIssuer : caInfos) {
-            if (existingIssuer.matchHash(reqIssuer)) {
-              throw new Exception("found at least two issuers with the same subject and key");
-            }
-          }
+      if (!changed) {
+        return;
+      }
 
-          String str = rs.getString("REV_INFO");
-          if (str != null) {
-            CertRevocationInfo revInfo = CertRevocationInfo.fromEncoded(str);
-            caInfoEntry.setRevocationInfo(revInfo.getRevocationTime());
-          }
+      for (Map.Entry<Integer, String[]> m : newIssuerRows.entrySet()) {
+        String[] row = m.getValue();
+        IssuerEntry entry = readIssuer(m.getKey());
+        if (entry != null) {
+          caInfos.add(newIssuerEntry(entry, row[0], row[1]));
+        }
+      }
 
-          caInfos.add(caInfoEntry);
-        } // end while (rs.next())
+      Set<String> hashes = new HashSet<>();
+      for (IssuerEntry entry : caInfos) {
+        if (!hashes.add(Hex.encode(entry.getEncodedHash(HashAlgo.SHA1)))) {
+          throw new Exception("found at least two issuers with the same subject and key");
+        }
+      }
 
-        this.issuerStore = new IssuerStore(caInfos);
-        LOG.info("Updated issuers: {}", name);
-      } finally {
-        releaseDbResources(ps, rs);
+      IssuerStore newStore = new IssuerStore(caInfos);
+      this.issuerStore = newStore;
+      this.issuerRows = rows;
+
+      if (statusCache != null && current != null) {
+        // the cached rows may belong to the removed issuers.
+        for (Integer id : current.getIds()) {
+          if (!rows.containsKey(id)) {
+            statusCache.invalidateIssuer(id);
+          }
+        }
       }
+
+      LOG.info("Updated issuers of store {}: {} issuers, {} newly loaded", name,
+          caInfos.size(), newIssuerRows.size());
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "error while executing updateIssuerStore()");
     } finally {
       initialized = true;
       storeUpdateInProcess.set(false);
     }
-  } // method initIssuerStore
+  } // method updateIssuerStore
+
+  private IssuerEntry readIssuer(int id) throws Exception {
+    final String sql = "SELECT CERT FROM ISSUER WHERE ID=?";
+    PreparedStatement ps = preparedStatement(sql);
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, id);
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        // removed in the meantime
+        return null;
+      }
+
+      X509Certificate cert = X509Util.parseCert(binaryCert ? rs.getBytes("CERT")
+          : StringUtil.toUtf8Bytes(rs.getString("CERT")));
+      return new IssuerEntry(id, cert);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method readIssuer
+
+  private static IssuerEntry newIssuerEntry(IssuerEntry entry, String revInfoStr,
+      String crlInfoStr) throws IOException {
+    // set both fields explicitly, a cleared column must also clear the field.
+    entry.setCrlInfo(StringUtil.isBlank(crlInfoStr) ? null : new CrlInfo(crlInfoStr));
+
+    if (revInfoStr == null) {
+      entry.setRevocationInfo(null);
+    } else {
+      CertRevocationInfo revInfo = CertRevocationInfo.fromEncoded(revInfoStr);
+      entry.setRevocationInfo(revInfo.getRevocationTime());
+    }
+    return entry;
+  } // method newIssuerEntry
 
   @Override
   protected CertStatusInfo getCertStatus0(Date time, RequestIssuer reqIssuer,
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
       boolean inheritCaRevocation) throws OcspStoreException {
+    return getCertStatus(time, reqIssuer, serialNumber, includeCertHash, includeRit,
+        inheritCaRevocation, false);
+  }
+
+  private CertStatusInfo getCertStatus(Date time, RequestIssuer reqIssuer,
+      BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation, boolean primaryOnly) throws OcspStoreException {
     if (serialNumber.signum() != 1) { // non-positive serial number
       return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
     }
 
-    if (!initialized) {
-      throw new OcspStoreException("initialization of CertStore is still in process");
-    }
-
     String sql;
 
     try {
-      IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+      IssuerEntry issuer = issuers().getIssuerForFp(reqIssuer);
       if (issuer == null) {
         return null;
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+      CertStatusCache cache = statusCache;
+      CertStatusCache.Key cacheKey = null;
+      long now = 0;
+      long cacheGeneration = 0;
+      boolean primary = primaryOnly;
+      if (cache != null) {
+        now = System.currentTimeMillis();
+        cacheKey = new CertStatusCache.Key(issuer.getId(), serialNumber);
+        CertStatusCache.Entry entry = primaryOnly ? null : cache.get(cacheKey, now);
+        if (entry != null) {
+          return buildCertStatusInfo(time, issuer, entry.getRow(), includeCertHash, includeRit,
+              inheritCaRevocation);
+        }
+        cacheGeneration = cache.getGeneration();
+        primary = primary || cache.isPrimaryReadRequired(cacheKey, now);
+      }
+
+      // the cached row contains all columns, so that it can be used by all requests.
+      final boolean queryCertHash = includeCertHash || cache != null;
+      final boolean queryRit = includeRit || cache != null;
+      if (queryCertHash) {
+        sql = queryRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
       } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
+        sql = queryRit ? sqlCs : sqlCsNoRit;
       }
 
-      CrlInfo crlInfo = issuer.getCrlInfo();
+      CertStatusRow row = null;
+      boolean queried = false;
+      ReplicaRouter router = primary ? null : replicaRouter;
+      ReplicaRouter.Replica replica = (router == null) ? null : router.acquire();
+      if (replica != null) {
+        long start = System.nanoTime();
+        try {
+          row = queryCertStatusRow(replica.getDatasource(), sql, issuer.getId(), serialNumber,
+              queryCertHash, queryRit);
+          queried = true;
+        } catch (DataAccessException ex) {
+          LogUtil.warn(LOG, ex, "could not query replica " + replica.getDatasource().getName()
+              + ", fall back to the primary");
+        } finally {
+          router.release(replica, start, !queried);
+        }
+      }
 
-      Date thisUpdate;
-      Date nextUpdate = null;
+      if (!queried) {
+        row = queryCertStatusRow(datasource, sql, issuer.getId(), serialNumber,
+            queryCertHash, queryRit);
+      }
 
-      if (crlInfo != null) {
-        thisUpdate = crlInfo.getThisUpdate();
+      if (cache != null) {
+        cache.put(cacheKey, row, now, getMaxCacheExpireAt(issuer), cacheGeneration);
+      }
 
-        // this.nextUpdate is still in the future (10 seconds buffer)
-        if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
-          nextUpdate = crlInfo.getNextUpdate();
-        }
+      return buildCertStatusInfo(time, issuer, row, includeCertHash, includeRit,
+          inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+
+  } // method getCertStatus
+
+  private CertStatusRow queryCertStatusRow(DataSourceWrapper datasource, String sql,
+      int issuerId, BigInteger serialNumber, boolean includeCertHash, boolean includeRit)
+      throws DataAccessException {
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    try {
+      ps.setInt(1, issuerId);
+      ps.setString(2, serialNumber.toString(16));
+      rs = ps.executeQuery();
+
+      return rs.next() ? new CertStatusRow(rs, includeCertHash, includeRit, binaryCertHash)
+          : null;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method queryCertStatusRow
+
+  @Override
+  protected List<CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation, boolean primaryOnly) throws OcspStoreException {
+    List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
+    if (serialNumbers.size() < 2) {
+      for (BigInteger serialNumber : serialNumbers) {
+        infos.add(getCertStatus(time, reqIssuer, serialNumber, includeCertHash, includeRit,
+            inheritCaRevocation, primaryOnly));
+      }
+      return infos;
+    }
+
+    IssuerEntry issuer = issuers().getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      for (int i = 0; i < serialNumbers.size(); i++) {
+        infos.add(null);
+      }
+      return infos;
+    }
+
+    CertStatusCache cache = statusCache;
+    final long now = System.currentTimeMillis();
+    final long cacheGeneration = (cache == null) ? 0 : cache.getGeneration();
+
+    Map<BigInteger, CertStatusRow> rows = new HashMap<>();
+    // serials to be read from the replicas (if configured) and from the primary database.
+    // The statuses invalidated within the TTL of the cache are read from the primary
+    // database, since the replicas may not have replicated the change yet.
+    Set<BigInteger> serials = new HashSet<>();
+    Set<BigInteger> primarySerials = new HashSet<>();
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() != 1) {
+        continue;
+      }
+
+      if (primaryOnly) {
+        primarySerials.add(serialNumber);
+        continue;
+      }
+
+      CertStatusCache.Key key = new CertStatusCache.Key(issuer.getId(), serialNumber);
+      CertStatusCache.Entry entry = (cache == null) ? null : cache.get(key, now);
+      if (entry != null) {
+        rows.put(serialNumber, entry.getRow());
+      } else if (cache != null && cache.isPrimaryReadRequired(key, now)) {
+        primarySerials.add(serialNumber);
       } else {
-        thisUpdate = new Date();
+        serials.add(serialNumber);
       }
+    }
 
-      ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
+    // the cached rows contain all columns, so that they can be used by all requests.
+    final boolean queryCertHash = includeCertHash || cache != null;
+    final boolean queryRit = includeRit || cache != null;
 
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
+    try {
+      queryCertStatusRows(issuer.getId(), serials, false, queryCertHash, queryRit, rows);
+      queryCertStatusRows(issuer.getId(), primarySerials, true, queryCertHash, queryRit, rows);
+
+      if (cache != null) {
+        long maxExpireAt = getMaxCacheExpireAt(issuer);
+        for (BigInteger serial : serials) {
+          cache.put(new CertStatusCache.Key(issuer.getId(), serial), rows.get(serial), now,
+              maxExpireAt, cacheGeneration);
+        }
+        for (BigInteger serial : primarySerials) {
+          cache.put(new CertStatusCache.Key(issuer.getId(), serial), rows.get(serial), now,
+              maxExpireAt, cacheGeneration);
+        }
+      }
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() != 1) { // non-positive serial number
+          infos.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+        } else {
+          infos.add(buildCertStatusInfo(time, issuer, rows.get(serialNumber), includeCertHash,
+              includeRit, inheritCaRevocation));
+        }
+      }
+      return infos;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatuses0
+
+  private void queryCertStatusRows(int issuerId, Set<BigInteger> serials, boolean primary,
+      boolean includeCertHash, boolean includeRit, Map<BigInteger, CertStatusRow> rows)
+      throws DataAccessException {
+    List<BigInteger> chunk = new ArrayList<>(MAX_SERIALS_PER_QUERY);
+    for (BigInteger serial : serials) {
+      chunk.add(serial);
+      if (chunk.size() == MAX_SERIALS_PER_QUERY) {
+        queryCertStatusRows(issuerId, chunk, primary, includeCertHash, includeRit, rows);
+        chunk.clear();
+      }
+    }
 
+    if (!chunk.isEmpty()) {
+      queryCertStatusRows(issuerId, chunk, primary, includeCertHash, includeRit, rows);
+    }
+  } // method queryCertStatusRows
+
+  private void queryCertStatusRows(int issuerId, List<BigInteger> serials, boolean primary,
+      boolean includeCertHash, boolean includeRit, Map<BigInteger, CertStatusRow> rows)
+      throws DataAccessException {
+    ReplicaRouter router = primary ? null : replicaRouter;
+    ReplicaRouter.Replica replica = (router == null) ? null : router.acquire();
+    if (replica != null) {
+      long start = System.nanoTime();
+      boolean queried = false;
       try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+        queryCertStatusRows(replica.getDatasource(), issuerId, serials, includeCertHash,
+            includeRit, rows);
+        queried = true;
+      } catch (DataAccessException ex) {
+        LogUtil.warn(LOG, ex, "could not query replica " + replica.getDatasource().getName()
+            + ", fall back to the primary");
+      } finally {
+        router.release(replica, start, !queried);
+      }
 
-        if (rs.next()) {
-          unknown = false;
+      if (queried) {
+        return;
+      }
+    }
 
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
+    queryCertStatusRows(datasource, issuerId, serials, includeCertHash, includeRit, rows);
+  } // method queryCertStatusRows
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
+  private void queryCertStatusRows(DataSourceWrapper datasource, int issuerId,
+      List<BigInteger> serials, boolean includeCertHash, boolean includeRit,
+      Map<BigInteger, CertStatusRow> rows) throws DataAccessException {
+    StringBuilder sb = new StringBuilder(120 + 2 * serials.size());
+    sb.append("SELECT SN,NBEFORE,NAFTER,REV,RR,RT");
+    if (includeRit) {
+      sb.append(",RIT");
+    }
+    if (includeCertHash) {
+      sb.append(",HASH");
+    }
+    sb.append(" FROM CERT WHERE IID=? AND SN IN (?");
+    for (int i = 1; i < serials.size(); i++) {
+      sb.append(",?");
+    }
+    sb.append(")");
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+    final String sql = sb.toString();
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(sql);
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
+    try {
+      int idx = 1;
+      ps.setInt(idx++, issuerId);
+      for (BigInteger serial : serials) {
+        ps.setString(idx++, serial.toString(16));
+      }
+      rs = ps.executeQuery();
+
+      while (rs.next()) {
+        BigInteger serial = new BigInteger(rs.getString("SN"), 16);
+        rows.put(serial, new CertStatusRow(rs, includeCertHash, includeRit, binaryCertHash));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method queryCertStatusRows
+
+  private static long getMaxCacheExpireAt(IssuerEntry issuer) {
+    CrlInfo crlInfo = issuer.getCrlInfo();
+    // the status shall not be cached beyond the nextUpdate of the CRL.
+    return (crlInfo == null || crlInfo.getNextUpdate() == null) ? 0
+        : crlInfo.getNextUpdate().getTime();
+  }
+
+  /**
+   * Removes the cached status of the rows in the table CERT updated since the last check.
+   * If more rows than the capacity of the cache have been updated, the cache is cleared.
+   */
+  private void invalidateUpdatedCertStatuses() {
+    CertStatusCache cache = statusCache;
+    if (cache == null || !initialized) {
+      return;
+    }
+
+    final long start = System.currentTimeMillis() / 1000;
+    final int maxSize = cache.getMaxSize();
+    final String sql = datasource.buildSelectFirstSql(maxSize + 1,
+        "IID,SN FROM CERT WHERE LUPDATE>=?");
+    int num = 0;
+    ResultSet rs = null;
+    try {
+      PreparedStatement ps = preparedStatement(sql);
+      try {
+        ps.setLong(1, lastStatusCacheCheck);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          if (++num > maxSize) {
+            break;
           }
-        } // end if (rs.next())
+          cache.invalidate(
+              new CertStatusCache.Key(rs.getInt("IID"), new BigInteger(rs.getString("SN"), 16)));
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
+    } catch (DataAccessException ex) {
+      LogUtil.error(LOG, ex, "could not check the updated certificates, clear the cache");
+      num = maxSize + 1;
+    }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime)
-              ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
-        }
-      }
+    if (num > maxSize) {
+      cache.clear();
+    }
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
-      }
+    lastStatusCacheCheck = start;
+    LOG.debug("store {}: {}", name, cache);
+  } // method invalidateUpdatedCertStatuses
+
+  /**
+   * Removes the cached status of the given certificate, e.g. after the certificate has been
+   * published by the CA.
+   * @param reqIssuer the issuer.
+   * @param serialNumber the serial number.
+   */
+  public void invalidateCertStatus(RequestIssuer reqIssuer, BigInteger serialNumber) {
+    CertStatusCache cache = statusCache;
+    IssuerStore issuers = issuerStore;
+    IssuerEntry issuer = (cache == null || issuers == null) ? null
+        : issuers.getIssuerForFp(reqIssuer);
+    if (issuer != null) {
+      cache.invalidate(new CertStatusCache.Key(issuer.getId(), serialNumber));
+    }
+  }
+
+  /**
+   * Removes the cached status of all certificates of the given issuer.
+   * @param reqIssuer the issuer.
+   */
+  public void invalidateCertStatuses(RequestIssuer reqIssuer) {
+    CertStatusCache cache = statusCache;
+    IssuerStore issuers = issuerStore;
+    IssuerEntry issuer = (cache == null || issuers == null) ? null
+        : issuers.getIssuerForFp(reqIssuer);
+    if (issuer != null) {
+      cache.invalidateIssuer(issuer.getId());
+    }
+  }
+
+  /**
+   * Removes the cached status of all certificates.
+   */
+  public void clearCertStatusCache() {
+    CertStatusCache cache = statusCache;
+    if (cache != null) {
+      cache.clear();
+    }
+  }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
+  /**
+   * Lists the certificates ordered by the ID.
+   * @param minId the ID of the returned certificates must be greater than it.
+   * @param minLastUpdate the last update of the returned certificates, in seconds, must be
+   *          not less than it.
+   * @param maxSize maximal number of returned certificates.
+   * @return the certificates.
+   * @throws OcspStoreException
+   *           If error occurs while accessing the database.
+   */
+  public List<CertEntry> listCerts(long minId, long minLastUpdate, int maxSize)
+      throws OcspStoreException {
+    Args.positive(maxSize, "maxSize");
+    final IssuerStore issuers = issuers();
+    final String sql = datasource.buildSelectFirstSql(maxSize, "ID ASC",
+        "ID,IID,SN,LUPDATE FROM CERT WHERE ID>? AND LUPDATE>=?");
+    Map<Integer, RequestIssuer> reqIssuers = new HashMap<>();
+
+    List<CertEntry> entries = new ArrayList<>(maxSize);
+    ResultSet rs = null;
+    try {
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        ps.setLong(1, minId);
+        ps.setLong(2, minLastUpdate);
+        rs = ps.executeQuery();
+
+        while (rs.next()) {
+          int iid = rs.getInt("IID");
+          IssuerEntry issuer = (issuers == null) ? null : issuers.getIssuerForId(iid);
+
+          RequestIssuer reqIssuer = null;
+          X509Certificate issuerCert = null;
+          if (issuer != null) {
+            issuerCert = issuer.getCert();
+            reqIssuer = reqIssuers.get(iid);
+            if (reqIssuer == null) {
+              reqIssuer = new RequestIssuer(HashAlgo.SHA1, issuer.getEncodedHash(HashAlgo.SHA1));
+              reqIssuers.put(iid, reqIssuer);
+            }
           }
 
-          certStatusInfo.setArchiveCutOff(date);
+          entries.add(new CertEntry(rs.getLong("ID"), reqIssuer, issuerCert,
+              new BigInteger(rs.getString("SN"), 16), rs.getLong("LUPDATE")));
         }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
       }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+
+    return entries;
+  } // method listCerts
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer, CertStatusRow row,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation) {
+    CrlInfo crlInfo = issuer.getCrlInfo();
+
+    Date thisUpdate;
+    Date nextUpdate = null;
+
+    if (crlInfo != null) {
+      thisUpdate = crlInfo.getThisUpdate();
+
+      // this.nextUpdate is still in the future (10 seconds buffer)
+      if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
+        nextUpdate = crlInfo.getNextUpdate();
       }
+    } else {
+      thisUpdate = new Date();
+    }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
+    boolean unknown = (row == null);
+    boolean ignore = false;
+
+    if (!unknown) {
+      long timeInSec = time.getTime() / 1000;
+      if (!ignore && ignoreNotYetValidCert) {
+        if (row.notBefore != 0 && timeInSec < row.notBefore) {
+          ignore = true;
         }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        if (row.notAfter != 0 && timeInSec > row.notAfter) {
+          ignore = true;
         }
       }
+    }
+
+    CertStatusInfo certStatusInfo;
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      byte[] certHash = includeCertHash ? row.certHash : null;
+      if (row.revoked) {
+        long revTime = row.revTime;
+        long invalTime = includeRit ? row.invalTime : 0;
+        Date invTime = (invalTime == 0 || invalTime == revTime)
+            ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(row.reason,
+            new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
+      }
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -410,28 +932,32 @@ public class DbCertStatusStore extends OcspStore {
     return datasource.prepareStatement(sqlQuery);
   }
 
+  /**
+   * Returns whether the primary datasource is healthy. The read replicas are probed
+   * separately, an unhealthy replica is only ejected from the routing of the status queries.
+   */
   @Override
   public boolean isHealthy() {
-    if (!isInitialized()) {
-      return false;
-    }
+    return isInitialized() && isHealthy(datasource);
+  }
 
+  static boolean isHealthy(DataSourceWrapper datasource) {
     final String sql = "SELECT ID FROM ISSUER";
 
     try {
-      PreparedStatement ps = preparedStatement(sql);
+      PreparedStatement ps = datasource.prepareStatement(sql);
       ResultSet rs = null;
       try {
         rs = ps.executeQuery();
         return true;
       } finally {
-        releaseDbResources(ps, rs);
+        datasource.releaseResources(ps, rs);
       }
     } catch (Exception ex) {
       LogUtil.error(LOG, ex);
       return false;
     }
-  }
+  } // method isHealthy
 
   private void releaseDbResources(Statement ps, ResultSet rs) {
     datasource.releaseResources(ps, rs);
@@ -446,22 +972,60 @@ public class DbCertStatusStore extends OcspStore {
    * <li>caCerts: optional
    *   <p/>
    *   CA certificate files to be included / excluded.</li>
+   * <li>statusCacheSize: optional
+   *   <p/>
+   *   Maximal number of certificate status cached in the memory, 0 to disable the cache.
+   *   Defaults to 0.</li>
+   * <li>statusCacheTtl: optional
+   *   <p/>
+   *   Time to live in seconds of the cached certificate status. Defaults to 60, at most
+   *   600. A certificate deleted from the database by other processes, e.g. by the OCSP
+   *   publisher of the CA, is answered with its cached status until the TTL expires.</li>
    *  </ul>
-   * @param datasource DataSource.
+   * @param datasource DataSource. The status queries are routed to the read replicas set
+   *     via {@link #setReadReplicas(List)}, if present.
    */
   @Override
   public void init(Map<String, ? extends Object> sourceConf, DataSourceWrapper datasource)
       throws OcspStoreException {
     OcspServerConf.CaCerts caCerts = null;
+    int statusCacheSize = 0;
+    int statusCacheTtl = DFLT_STATUS_CACHE_TTL;
     if (sourceConf != null) {
       Object objValue = sourceConf.get("caCerts");
       if (objValue != null) {
         caCerts = JSON.parseObject(JSON.toJSONBytes(objValue), OcspServerConf.CaCerts.class);
       }
+
+      statusCacheSize = getIntValue(sourceConf, "statusCacheSize", statusCacheSize);
+      statusCacheTtl = getIntValue(sourceConf, "statusCacheTtl", statusCacheTtl);
+      if (statusCacheTtl > MAX_STATUS_CACHE_TTL) {
+        LOG.warn("store {}: statusCacheTtl {} is too large, use {}", name, statusCacheTtl,
+            MAX_STATUS_CACHE_TTL);
+        statusCacheTtl = MAX_STATUS_CACHE_TTL;
+      }
     }
 
+    this.lastStatusCacheCheck = System.currentTimeMillis() / 1000;
+    this.statusCache = (statusCacheSize > 0)
+        ? new CertStatusCache(statusCacheSize, statusCacheTtl) : null;
+
     this.datasource = Args.notNull(datasource, "datasource");
 
+    List<DataSourceWrapper> replicas = getReadReplicas();
+    if (CollectionUtil.isNonEmpty(replicas)) {
+      for (DataSourceWrapper replica : replicas) {
+        // the SQL statements are built for the primary.
+        if (replica.getDatabaseType() != datasource.getDatabaseType()) {
+          throw new OcspStoreException("database type of replica " + replica.getName()
+              + " differs from that of datasource " + datasource.getName());
+        }
+      }
+      this.replicaRouter = new ReplicaRouter(replicas);
+    } else {
+      this.replicaRouter = null;
+    }
+
     sqlCs = datasource.buildSelectFirstSql(1,
         "NBEFORE,NAFTER,REV,RR,RT,RIT FROM CERT WHERE IID=? AND SN=?");
     sqlCsNoRit = datasource.buildSelectFirstSql(1,
@@ -479,6 +1043,13 @@ public class DbCertStatusStore extends OcspStore {
           "Could not retrieve the certhash's algorithm from the database", ex);
     }
 
+    try {
+      this.binaryCert = datasource.isBinaryColumn(null, "ISSUER", "CERT");
+      this.binaryCertHash = datasource.isBinaryColumn(null, "CERT", "HASH");
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException("Could not detect the column types of the database", ex);
+    }
+
     try {
       Set<X509Certificate> includeIssuers = null;
       Set<X509Certificate> excludeIssuers = null;
@@ -509,11 +1080,18 @@ public class DbCertStatusStore extends OcspStore {
     if (scheduledServices != null) {
       size += scheduledServices.size();
     }
+    if (replicaRouter != null) {
+      size++;
+    }
     this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(size);
 
     Random random = new Random();
     this.scheduledThreadPoolExecutor.scheduleAtFixedRate(storeUpdateService,
         60 + random.nextInt(60), 60, TimeUnit.SECONDS);
+    if (replicaRouter != null) {
+      this.scheduledThreadPoolExecutor.scheduleAtFixedRate(new ReplicaProbeService(),
+          REPLICA_PROBE_INTERVAL, REPLICA_PROBE_INTERVAL, TimeUnit.SECONDS);
+    }
     if (scheduledServices != null) {
       for (Runnable service : scheduledServices) {
         this.scheduledThreadPoolExecutor.scheduleAtFixedRate(service,
@@ -532,26 +1110,59 @@ public class DbCertStatusStore extends OcspStore {
     if (datasource != null) {
       datasource.close();
     }
+
+    // the datasources of the replicas are shared, and closed by the server.
+    replicaRouter = null;
   }
 
   @Override
   public boolean knowsIssuer(RequestIssuer reqIssuer) {
-    return issuerStore != null && null != issuerStore.getIssuerForFp(reqIssuer);
+    IssuerStore issuers = issuerStore;
+    return issuers != null && null != issuers.getIssuerForFp(reqIssuer);
   }
 
   @Override
   public X509Certificate getIssuerCert(RequestIssuer reqIssuer) {
-    if (issuerStore == null) {
+    IssuerStore issuers = issuerStore;
+    if (issuers == null) {
       return null;
     }
-    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    IssuerEntry issuer = issuers.getIssuerForFp(reqIssuer);
     return (issuer == null) ? null : issuer.getCert();
   }
 
+  /**
+   * Gets the current issuers. The returned store is never modified, a refresh replaces it.
+   * @return the current issuers.
+   * @throws OcspStoreException
+   *           If the issuers could not be loaded yet.
+   */
+  private IssuerStore issuers() throws OcspStoreException {
+    IssuerStore issuers = issuerStore;
+    if (issuers == null) {
+      throw new OcspStoreException("issuers of CertStore " + name + " are not loaded");
+    }
+    return issuers;
+  }
+
   protected boolean isInitialized() {
     return initialized;
   }
 
+  private static int getIntValue(Map<String, ? extends Object> sourceConf, String confName,
+      int defaultValue) {
+    Object objVal = sourceConf.get(confName);
+    if (objVal == null) {
+      return defaultValue;
+    } else if (objVal instanceof Number) {
+      return ((Number) objVal).intValue();
+    } else if (objVal instanceof String) {
+      return Integer.parseInt((String) objVal);
+    } else {
+      throw new IllegalArgumentException("content of " + confName + " is not a number");
+    }
+  }
+
   static Set<X509Certificate> parseCerts(Collection<String> certFiles)
       throws OcspStoreException {
     Set<X509Certificate> certs = new HashSet<>(certFiles.size());
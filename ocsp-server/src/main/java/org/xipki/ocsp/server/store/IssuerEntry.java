@@ -61,6 +61,19 @@ class IssuerEntry {
     this.issuerHashMap = getIssuerHashAndKeys(cert.getEncoded());
   }
 
+  /**
+   * Copy constructor. Only the certificate and its hashes are shared with the other entry, the
+   * revocation and CRL information are not copied and must be set by the caller.
+   * @param other the entry to be copied.
+   */
+  public IssuerEntry(IssuerEntry other) {
+    Args.notNull(other, "other");
+    this.id = other.id;
+    this.cert = other.cert;
+    this.notBefore = other.notBefore;
+    this.issuerHashMap = other.issuerHashMap;
+  }
+
   private static Map<HashAlgo, byte[]> getIssuerHashAndKeys(byte[] encodedCert)
       throws CertificateEncodingException {
     byte[] encodedName;
@@ -111,10 +124,13 @@ class IssuerEntry {
         reqIssuer.getNameHashFrom(), issuerHash.length);
   }
 
+  /**
+   * Sets the revocation information.
+   * @param revocationTime the revocation time, or {@code null} if the issuer is not revoked.
+   */
   public void setRevocationInfo(Date revocationTime) {
-    Args.notNull(revocationTime, "revocationTime");
-    this.revocationInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-        revocationTime, null);
+    this.revocationInfo = (revocationTime == null) ? null
+        : new CertRevocationInfo(CrlReason.CA_COMPROMISE, revocationTime, null);
   }
 
   public void setCrlInfo(CrlInfo crlInfo) {
@@ -0,0 +1,190 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+import org.xipki.util.CompareUtil;
+
+/**
+ * Immutable index of the issuers by the id and by the hash of the issuer's name and key as
+ * in the CertID, shared by the issuer stores. It will be replaced as a whole if an issuer
+ * is added.
+ *
+ * @param <I> type of the issuer id.
+ * @param <E> type of the issuer entry.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public final class IssuerIndex<I, E> {
+
+  /**
+   * Accessor of the id and the hashes of the issuer entries.
+   *
+   * @param <I> type of the issuer id.
+   * @param <E> type of the issuer entry.
+   */
+  public interface EntryAccessor<I, E> {
+
+    I getId(E entry);
+
+    /**
+     * Gets the DER-encoded (issuerNameHash, issuerKeyHash) as in the CertID.
+     * @param entry the issuer entry.
+     * @param hashAlgo the hash algorithm.
+     * @return the DER-encoded hashes.
+     */
+    byte[] getEncodedHash(E entry, HashAlgo hashAlgo);
+
+  } // interface EntryAccessor
+
+  /**
+   * Key of the issuer for the hash algorithm and the DER-encoded
+   * (issuerNameHash, issuerKeyHash) as in the CertID.
+   */
+  private static final class HashKey {
+
+    private final HashAlgo hashAlgo;
+
+    private final byte[] data;
+
+    private final int from;
+
+    private final int length;
+
+    private final int hashCode;
+
+    HashKey(HashAlgo hashAlgo, byte[] data, int from, int length) {
+      this.hashAlgo = hashAlgo;
+      this.data = data;
+      this.from = from;
+      this.length = length;
+
+      int hash = hashAlgo.ordinal();
+      for (int i = from; i < from + length; i++) {
+        hash = 31 * hash + data[i];
+      }
+      this.hashCode = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof HashKey)) {
+        return false;
+      }
+
+      HashKey other = (HashKey) obj;
+      return hashAlgo == other.hashAlgo && length == other.length
+          && CompareUtil.areEqual(data, from, other.data, other.from, length);
+    }
+
+  } // class HashKey
+
+  private final EntryAccessor<I, E> accessor;
+
+  private final List<E> entries;
+
+  private final Set<I> ids;
+
+  private final Map<I, E> idMap;
+
+  private final Map<HashKey, E> hashMap;
+
+  public IssuerIndex(EntryAccessor<I, E> accessor, List<E> entries) {
+    this.accessor = Args.notNull(accessor, "accessor");
+    this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+
+    Map<I, E> idMap0 = new HashMap<>(entries.size() * 4 / 3 + 1);
+    Map<HashKey, E> hashMap0 =
+        new HashMap<>(entries.size() * HashAlgo.values().length * 4 / 3 + 1);
+
+    for (E entry : entries) {
+      I id = accessor.getId(entry);
+      if (idMap0.put(id, entry) != null) {
+        throw new IllegalArgumentException("issuer with the same id " + id + " already available");
+      }
+
+      for (HashAlgo hashAlgo : HashAlgo.values()) {
+        byte[] encodedHash = accessor.getEncodedHash(entry, hashAlgo);
+        HashKey key = new HashKey(hashAlgo, encodedHash, 0, encodedHash.length);
+        // the first issuer wins, as in the former linear search
+        if (!hashMap0.containsKey(key)) {
+          hashMap0.put(key, entry);
+        }
+      }
+    }
+
+    this.idMap = idMap0;
+    this.hashMap = hashMap0;
+    this.ids = Collections.unmodifiableSet(new HashSet<>(idMap0.keySet()));
+  }
+
+  public Set<I> getIds() {
+    return ids;
+  }
+
+  public E getIssuerForId(I id) {
+    return idMap.get(id);
+  }
+
+  public E getIssuerForFp(RequestIssuer reqIssuer) {
+    HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+    if (hashAlgo == null) {
+      return null;
+    }
+
+    // issuerNameHash and issuerKeyHash, both DER-encoded OCTET STRING
+    int from = reqIssuer.getNameHashFrom();
+    int length = (2 + hashAlgo.getLength()) << 1;
+    if (from + length > reqIssuer.getFrom() + reqIssuer.getLength()) {
+      return null;
+    }
+    return hashMap.get(new HashKey(hashAlgo, reqIssuer.getData(), from, length));
+  }
+
+  /**
+   * Creates a new index with the additional issuer.
+   * @param entry the issuer entry.
+   * @return the new index.
+   */
+  public IssuerIndex<I, E> add(E entry) {
+    List<E> newEntries = new ArrayList<>(entries.size() + 1);
+    newEntries.addAll(entries);
+    newEntries.add(entry);
+    return new IssuerIndex<>(accessor, newEntries);
+  }
+
+}
@@ -18,12 +18,11 @@
 package org.xipki.ocsp.server.store;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
 
 /**
  * TODO.
@@ -33,34 +32,33 @@ import org.xipki.ocsp.api.RequestIssuer;
 
 class IssuerStore {
 
-  private final List<IssuerEntry> entries;
+  private static final IssuerIndex.EntryAccessor<Integer, IssuerEntry> ACCESSOR =
+      new IssuerIndex.EntryAccessor<Integer, IssuerEntry>() {
 
-  private Set<Integer> ids;
+        @Override
+        public Integer getId(IssuerEntry entry) {
+          return entry.getId();
+        }
 
-  public IssuerStore(List<IssuerEntry> entries) {
-    this.entries = new ArrayList<>(entries.size());
-    Set<Integer> idSet = new HashSet<>(entries.size());
-
-    for (IssuerEntry entry : entries) {
-      for (IssuerEntry existingEntry : this.entries) {
-        if (existingEntry.getId() == entry.getId()) {
-          throw new IllegalArgumentException(
-              "issuer with the same id " + entry.getId() + " already available");
+        @Override
+        public byte[] getEncodedHash(IssuerEntry entry, HashAlgo hashAlgo) {
+          return entry.getEncodedHash(hashAlgo);
         }
-      }
-      this.entries.add(entry);
-      idSet.add(entry.getId());
-    }
 
-    this.ids = Collections.unmodifiableSet(idSet);
+      };
+
+  private volatile IssuerIndex<Integer, IssuerEntry> index;
+
+  public IssuerStore(List<IssuerEntry> entries) {
+    this.index = new IssuerIndex<>(ACCESSOR, new ArrayList<>(entries));
   }
 
   public int size() {
-    return ids.size();
+    return index.getIds().size();
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return index.getIds();
   }
 
   public Integer getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -69,30 +67,15 @@ class IssuerStore {
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : entries) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.getIssuerForId(id);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : entries) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.getIssuerForFp(reqIssuer);
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.entries.add(issuer);
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    this.index = index.add(issuer);
   }
 
 }
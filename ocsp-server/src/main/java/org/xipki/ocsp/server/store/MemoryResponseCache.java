@@ -0,0 +1,173 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * In-memory cache of the signed OCSP responses, bounded by the total size of the
+ * cached responses in bytes.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class MemoryResponseCache {
+
+  static final class Key {
+
+    private final int issuerId;
+
+    private final BigInteger serialNumber;
+
+    private final AlgorithmCode sigAlg;
+
+    private final int hashCode;
+
+    Key(int issuerId, BigInteger serialNumber, AlgorithmCode sigAlg) {
+      this.issuerId = issuerId;
+      this.serialNumber = Args.notNull(serialNumber, "serialNumber");
+      this.sigAlg = Args.notNull(sigAlg, "sigAlg");
+      this.hashCode = 31 * (31 * issuerId + serialNumber.hashCode()) + sigAlg.getCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return issuerId == other.issuerId && sigAlg == other.sigAlg
+          && serialNumber.equals(other.serialNumber);
+    }
+
+  } // class Key
+
+  private static class Cache extends LruCache<Key, OcspRespWithCacheInfo> {
+
+    // estimated overhead of the key, the cache info and the map entry.
+    private static final int ENTRY_OVERHEAD = 128;
+
+    Cache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(Key key, OcspRespWithCacheInfo value) {
+      return ENTRY_OVERHEAD + value.getResponse().length;
+    }
+
+  } // class Cache
+
+  private final Cache cache;
+
+  private final AtomicLong hits = new AtomicLong(0);
+
+  private final AtomicLong misses = new AtomicLong(0);
+
+  private final AtomicLong expired = new AtomicLong(0);
+
+  MemoryResponseCache(int maxSizeInBytes) {
+    this.cache = new Cache(Args.positive(maxSizeInBytes, "maxSizeInBytes"));
+  }
+
+  /**
+   * Gets the cached response.
+   * @param key the key.
+   * @param minNextUpdate the minimal nextUpdate of the response (in milliseconds). Cached
+   *          responses whose nextUpdate is before it are removed and not returned.
+   * @return the cached response, or {@code null} if no usable one is available.
+   */
+  OcspRespWithCacheInfo get(Key key, long minNextUpdate) {
+    OcspRespWithCacheInfo resp = cache.get(key);
+    if (resp == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    Long nextUpdate = resp.getCacheInfo().getNextUpdate();
+    if (nextUpdate != null && nextUpdate < minNextUpdate) {
+      cache.remove(key);
+      expired.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return resp;
+  }
+
+  void put(Key key, OcspRespWithCacheInfo resp) {
+    Args.notNull(resp.getCacheInfo(), "resp.cacheInfo");
+    cache.put(key, resp);
+  }
+
+  void remove(Key key) {
+    cache.remove(key);
+  }
+
+  void clear() {
+    cache.evictAll();
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  long getExpired() {
+    return expired.get();
+  }
+
+  long getEvictions() {
+    return cache.evictionCount();
+  }
+
+  int getSize() {
+    return cache.size();
+  }
+
+  int getMaxSize() {
+    return cache.maxSize();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("MemoryResponseCache[size=%d,maxSize=%d,hits=%d,misses=%d,"
+        + "expired=%d,evictions=%d]", getSize(), getMaxSize(), getHits(), getMisses(),
+        getExpired(), getEvictions());
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.Args;
+
+/**
+ * Routes the read-only status queries of a store to its read replicas. The healthy replica
+ * with the least active queries is chosen, ties are broken by the lower average latency.
+ * A replica is ejected if a query fails, and is taken back once it passes the health probe.
+ *
+ * <p>The router does not own the datasources of the replicas, they may be shared with other
+ * stores and are closed by their owner.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class ReplicaRouter {
+
+  static final class Replica {
+
+    private final DataSourceWrapper datasource;
+
+    private final AtomicInteger active = new AtomicInteger(0);
+
+    // exponentially weighted moving average of the query latency in nanoseconds
+    private volatile long avgLatency;
+
+    private volatile boolean healthy = true;
+
+    private Replica(DataSourceWrapper datasource) {
+      this.datasource = datasource;
+    }
+
+    DataSourceWrapper getDatasource() {
+      return datasource;
+    }
+
+  } // class Replica
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReplicaRouter.class);
+
+  private final List<Replica> replicas;
+
+  ReplicaRouter(List<DataSourceWrapper> datasources) {
+    Args.notEmpty(datasources, "datasources");
+    this.replicas = new ArrayList<>(datasources.size());
+    for (DataSourceWrapper datasource : datasources) {
+      this.replicas.add(new Replica(Args.notNull(datasource, "datasource")));
+    }
+  }
+
+  /**
+   * Chooses the replica for the next query. The returned replica must be released via
+   * {@link #release(Replica, long, boolean)}.
+   *
+   * @return the chosen replica, or {@code null} if no replica is healthy.
+   */
+  Replica acquire() {
+    Replica best = null;
+    int bestActive = 0;
+    for (Replica replica : replicas) {
+      if (!replica.healthy) {
+        continue;
+      }
+
+      int active = replica.active.get();
+      if (best == null || active < bestActive
+          || (active == bestActive && replica.avgLatency < best.avgLatency)) {
+        best = replica;
+        bestActive = active;
+      }
+    }
+
+    if (best != null) {
+      best.active.incrementAndGet();
+    }
+    return best;
+  } // method acquire
+
+  /**
+   * Releases the replica acquired via {@link #acquire()}.
+   *
+   * @param replica the replica.
+   * @param startNanos value of {@link System#nanoTime()} before the query.
+   * @param failed whether the query failed. If {@code true}, the replica will be ejected
+   *          until it passes the next health probe.
+   */
+  void release(Replica replica, long startNanos, boolean failed) {
+    replica.active.decrementAndGet();
+    if (failed) {
+      if (replica.healthy) {
+        replica.healthy = false;
+        LOG.warn("ejected replica {}", replica.datasource.getName());
+      }
+    } else {
+      long avg = replica.avgLatency;
+      // weight 1/8, concurrent updates may get lost, which is acceptable for an average.
+      replica.avgLatency = avg + ((System.nanoTime() - startNanos - avg) >> 3);
+    }
+  } // method release
+
+  /**
+   * Probes the health of all replicas, ejects the unhealthy ones and takes back the
+   * recovered ones.
+   */
+  void probe() {
+    for (Replica replica : replicas) {
+      boolean healthy = DbCertStatusStore.isHealthy(replica.datasource);
+      if (healthy != replica.healthy) {
+        replica.healthy = healthy;
+        if (healthy) {
+          LOG.info("replica {} is healthy again", replica.datasource.getName());
+        } else {
+          LOG.warn("ejected unhealthy replica {}", replica.datasource.getName());
+        }
+      }
+    }
+  } // method probe
+
+}
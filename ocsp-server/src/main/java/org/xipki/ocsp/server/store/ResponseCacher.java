@@ -21,10 +21,10 @@ import java.io.Closeable;
 import java.math.BigInteger;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -33,6 +33,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
@@ -43,6 +44,7 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf.ResponseCacheDbMode;
 import org.xipki.security.AlgorithmCode;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
@@ -64,7 +66,13 @@ public class ResponseCacher implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(ResponseCacher.class);
 
-  private static final long SEC_PER_WEEK = 7L * 24 * 60 * 60;
+  private static final long MS_PER_WEEK = 7L * 24 * 60 * 60 * 1000;
+
+  // nextUpdate of a cached response must be at least 600 seconds in the future
+  private static final long MIN_FRESHNESS_MS = 600L * 1000;
+
+  // maximal number of responses waiting to be written to the database
+  private static final int DB_WRITE_QUEUE_SIZE = 10000;
 
   private static final String SQL_ADD_ISSUER = "INSERT INTO ISSUER (ID,S1C,CERT) VALUES (?,?,?)";
 
@@ -76,12 +84,6 @@ public class ResponseCacher implements Closeable {
 
   private static final String SQL_DELETE_EXPIRED_RESP = "DELETE FROM OCSP WHERE THIS_UPDATE<?";
 
-  private static final String SQL_ADD_RESP = "INSERT INTO OCSP (ID,IID,IDENT,"
-      + "THIS_UPDATE,NEXT_UPDATE,RESP) VALUES (?,?,?,?,?,?)";
-
-  private static final String SQL_UPDATE_RESP = "UPDATE OCSP SET THIS_UPDATE=?,"
-      + "NEXT_UPDATE=?,RESP=? WHERE ID=?";
-
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
   private class IssuerUpdater implements Runnable {
@@ -108,10 +110,27 @@ public class ResponseCacher implements Closeable {
       }
 
       inProcess = true;
-      long maxThisUpdate = System.currentTimeMillis() / 1000 - validity;
+      if (memoryCache != null) {
+        LOG.info("{}", memoryCache);
+      }
+
+      if (dbWriter != null) {
+        LOG.info("{}", dbWriter);
+      }
+
+      if (dbMode == ResponseCacheDbMode.DISABLED) {
+        inProcess = false;
+        return;
+      }
+
       try {
-        int num = removeExpiredResponses(maxThisUpdate);
-        LOG.info("removed {} response with thisUpdate < {}", num, maxThisUpdate);
+        if (tables.isBucketed()) {
+          truncateNextTable();
+        } else {
+          long maxThisUpdate = System.currentTimeMillis() - validity * 1000L;
+          int num = removeExpiredResponses(maxThisUpdate);
+          LOG.info("removed {} response with thisUpdate < {}", num, maxThisUpdate);
+        }
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not remove expired responses");
       } finally {
@@ -123,7 +142,16 @@ public class ResponseCacher implements Closeable {
 
   private final String sqlSelectIssuerCert;
 
-  private final String sqlSelectOcsp;
+  // per table
+  private final String[] sqlSelectOcsps;
+
+  // per table
+  private final String[] sqlDeleteResps;
+
+  private final ResponseTables tables;
+
+  // the period whose table has been truncated, accessed only by ExpiredResponsesCleaner
+  private long truncatedPeriod = -1;
 
   private final boolean master;
 
@@ -131,23 +159,85 @@ public class ResponseCacher implements Closeable {
 
   private final AtomicBoolean onService;
 
+  private final ResponseCacheDbMode dbMode;
+
+  private final MemoryResponseCache memoryCache;
+
+  private final AtomicLong dbHits = new AtomicLong(0);
+
+  private final AtomicLong dbMisses = new AtomicLong(0);
+
   private DataSourceWrapper datasource;
 
   private IssuerStore issuerStore;
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private ResponseDbWriter dbWriter;
+
+  // whether the column ISSUER.CERT is binary, otherwise Base64 encoded text.
+  private boolean binaryCert;
+
+  // whether the column OCSP.RESP is binary, otherwise Base64 encoded text.
+  private boolean binaryResp;
+
   private ScheduledFuture<?> responseCleaner;
 
   private ScheduledFuture<?> issuerUpdater;
 
   public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity) {
-    this.datasource = Args.notNull(datasource, "datasource");
-    this.master = master;
+    this(datasource, master, validity, ResponseCacheDbMode.READ_WRITE, 0);
+  }
+
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity,
+      ResponseCacheDbMode dbMode, int memorySize) {
+    this(datasource, master, validity, dbMode, memorySize, 0);
+  }
+
+  /**
+   * Constructor.
+   * @param datasource datasource of the cache database. May be {@code null} only if
+   *          {@code dbMode} is {@link ResponseCacheDbMode#DISABLED}.
+   * @param master whether this instance is allowed to add issuers to the cache database.
+   * @param validity validity of the cached responses in seconds.
+   * @param dbMode mode of the database tier.
+   * @param memorySize maximal size of the in-memory cache in bytes, 0 to disable it.
+   * @param buckets number of the time-bucketed tables of the responses, 0 to use only the
+   *          table OCSP. See {@link ResponseTables}.
+   */
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity,
+      ResponseCacheDbMode dbMode, int memorySize, int buckets) {
     this.validity = Args.positive(validity, "validity");
-    this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
-    this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
-        "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
+    this.tables = new ResponseTables(buckets, validity);
+    this.dbMode = Args.notNull(dbMode, "dbMode");
+    this.memoryCache = (memorySize > 0) ? new MemoryResponseCache(memorySize) : null;
+    if (dbMode == ResponseCacheDbMode.DISABLED) {
+      if (memoryCache == null) {
+        throw new IllegalArgumentException("memorySize may not be 0 if dbMode is " + dbMode);
+      }
+
+      // without database every instance manages its own issuers.
+      this.master = true;
+      this.sqlSelectIssuerCert = null;
+      this.sqlSelectOcsps = null;
+      this.sqlDeleteResps = null;
+    } else {
+      this.datasource = Args.notNull(datasource, "datasource");
+      if (dbMode == ResponseCacheDbMode.WRITE_BEHIND && memoryCache == null) {
+        throw new IllegalArgumentException("memorySize may not be 0 if dbMode is " + dbMode);
+      }
+
+      this.master = master;
+      this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1,
+          "CERT FROM ISSUER WHERE ID=?");
+      this.sqlSelectOcsps = new String[tables.size()];
+      this.sqlDeleteResps = new String[tables.size()];
+      for (int i = 0; i < tables.size(); i++) {
+        sqlSelectOcsps[i] = datasource.buildSelectFirstSql(1,
+            "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM " + tables.getName(i) + " WHERE ID=?");
+        sqlDeleteResps[i] = "DELETE FROM " + tables.getName(i) + " WHERE ID=?";
+      }
+    }
     this.onService = new AtomicBoolean(false);
 
     this.idDigesters = new ConcurrentBag<>();
@@ -161,9 +251,23 @@ public class ResponseCacher implements Closeable {
     return onService.get() && issuerStore != null;
   }
 
-  public void init() {
-    updateCacheStore();
+  public boolean isMaster() {
+    return master;
+  }
 
+  public ResponseCacheDbMode getDbMode() {
+    return dbMode;
+  }
+
+  /**
+   * Gets the validity of the cached responses.
+   * @return the validity in seconds.
+   */
+  public int getValidity() {
+    return validity;
+  }
+
+  public void init() {
     scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
     scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
@@ -171,6 +275,15 @@ public class ResponseCacher implements Closeable {
     this.responseCleaner = scheduledThreadPoolExecutor.scheduleAtFixedRate(
         new ExpiredResponsesCleaner(), 348, 600, TimeUnit.SECONDS);
 
+    if (dbMode == ResponseCacheDbMode.DISABLED) {
+      this.issuerStore = new IssuerStore(new LinkedList<IssuerEntry>());
+      this.onService.set(true);
+      LOG.info("OCSP response cacher is on service, without database");
+      return;
+    }
+
+    updateCacheStore();
+
     // check every 600 seconds (10 minutes)
     this.issuerUpdater = scheduledThreadPoolExecutor.scheduleAtFixedRate(
         new IssuerUpdater(), 448, 600, TimeUnit.SECONDS);
@@ -178,11 +291,20 @@ public class ResponseCacher implements Closeable {
 
   @Override
   public void close() {
+    if (dbWriter != null) {
+      dbWriter.close();
+      dbWriter = null;
+    }
+
     if (datasource != null) {
       datasource.close();
       datasource = null;
     }
 
+    if (memoryCache != null) {
+      memoryCache.clear();
+    }
+
     if (responseCleaner != null) {
       responseCleaner.cancel(false);
       responseCleaner = null;
@@ -223,6 +345,15 @@ public class ResponseCacher implements Closeable {
       }
     }
 
+    if (dbMode == ResponseCacheDbMode.DISABLED) {
+      int id = 1;
+      for (Integer existingId : issuerStore.getIds()) {
+        id = Math.max(id, existingId + 1);
+      }
+      issuerStore.addIssuer(new IssuerEntry(id, issuerCert));
+      return id;
+    }
+
     byte[] encodedCert = issuerCert.getEncoded();
     String sha1FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
 
@@ -236,7 +367,11 @@ public class ResponseCacher implements Closeable {
         int idx = 1;
         ps.setInt(idx++, id);
         ps.setString(idx++, sha1FpCert);
-        ps.setString(idx++, Base64.encodeToString(encodedCert));
+        if (binaryCert) {
+          ps.setBytes(idx++, encodedCert);
+        } else {
+          ps.setString(idx++, Base64.encodeToString(encodedCert));
+        }
 
         ps.execute();
 
@@ -258,9 +393,48 @@ public class ResponseCacher implements Closeable {
 
   public OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber,
       AlgorithmCode sigAlg) throws DataAccessException {
-    final String sql = sqlSelectOcsp;
+    long minNextUpdate = System.currentTimeMillis() + MIN_FRESHNESS_MS;
+
+    MemoryResponseCache.Key memoryKey = null;
+    if (memoryCache != null) {
+      memoryKey = new MemoryResponseCache.Key(issuerId, serialNumber, sigAlg);
+      OcspRespWithCacheInfo resp = memoryCache.get(memoryKey, minNextUpdate);
+      if (resp != null || dbMode != ResponseCacheDbMode.READ_WRITE) {
+        return resp;
+      }
+    }
+
     byte[] identBytes = buildIdent(serialNumber, sigAlg);
     long id = deriveId(issuerId, identBytes);
+
+    OcspRespWithCacheInfo resp = null;
+    if (!tables.isBucketed()) {
+      resp = getOcspResponse(0, id, issuerId, identBytes, minNextUpdate, 0, memoryKey);
+    } else {
+      // the responses of older periods are not removed before the table is truncated.
+      long now = System.currentTimeMillis();
+      long minThisUpdate = now - validity * 1000L;
+      for (int index : tables.getLiveIndexes(now)) {
+        resp = getOcspResponse(index, id, issuerId, identBytes, minNextUpdate, minThisUpdate,
+            memoryKey);
+        if (resp != null) {
+          break;
+        }
+      }
+    }
+
+    if (resp == null) {
+      dbMisses.incrementAndGet();
+    } else {
+      dbHits.incrementAndGet();
+    }
+    return resp;
+  } // method getOcspResponse
+
+  private OcspRespWithCacheInfo getOcspResponse(int tableIndex, long id, int issuerId,
+      byte[] identBytes, long minNextUpdate, long minThisUpdate,
+      MemoryResponseCache.Key memoryKey) throws DataAccessException {
+    final String sql = sqlSelectOcsps[tableIndex];
     PreparedStatement ps = datasource.prepareStatement(sql);
     ResultSet rs = null;
 
@@ -283,101 +457,180 @@ public class ResponseCacher implements Closeable {
       }
 
       long nextUpdate = rs.getLong("NEXT_UPDATE");
-      if (nextUpdate != 0) {
-        // nextUpdate must be at least in 600 seconds
-        long minNextUpdate = System.currentTimeMillis() / 1000 + 600;
-
-        if (nextUpdate < minNextUpdate) {
-          return null;
-        }
+      if (nextUpdate != 0 && nextUpdate < minNextUpdate) {
+        return null;
       }
 
       long thisUpdate = rs.getLong("THIS_UPDATE");
-      String b64Resp = rs.getString("RESP");
-      byte[] encoded = Base64.decodeFast(b64Resp);
+      if (thisUpdate < minThisUpdate) {
+        return null;
+      }
+
+      byte[] encoded = binaryResp ? rs.getBytes("RESP") : Base64.decodeFast(rs.getString("RESP"));
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
       }
-      return new OcspRespWithCacheInfo(encoded, cacheInfo);
+
+      OcspRespWithCacheInfo resp = new OcspRespWithCacheInfo(encoded, cacheInfo);
+      if (memoryKey != null) {
+        memoryCache.put(memoryKey, resp);
+      }
+      return resp;
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
       datasource.releaseResources(ps, rs);
     }
-  }
+  } // method getOcspResponse
 
+  /**
+   * Caches the OCSP response.
+   * @param issuerId issuer id.
+   * @param serialNumber serial number.
+   * @param thisUpdate thisUpdate of the response in milliseconds.
+   * @param nextUpdate nextUpdate of the response in milliseconds. May be {@code null}.
+   * @param sigAlgCode code of the signature algorithm.
+   * @param response the encoded response.
+   */
   public void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate,
       Long nextUpdate, AlgorithmCode sigAlgCode, byte[] response) {
-    long nowInSec = System.currentTimeMillis() / 1000;
+    long nowInMs = System.currentTimeMillis();
     if (nextUpdate == null) {
-      nextUpdate = nowInSec + SEC_PER_WEEK;
+      nextUpdate = nowInMs + MS_PER_WEEK;
     }
 
-    if (nextUpdate - nowInSec < validity) {
+    if ((nextUpdate - nowInMs) / 1000 < validity) {
+      return;
+    }
+
+    if (memoryCache != null) {
+      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
+      cacheInfo.setNextUpdate(nextUpdate);
+      memoryCache.put(new MemoryResponseCache.Key(issuerId, serialNumber, sigAlgCode),
+          new OcspRespWithCacheInfo(response, cacheInfo));
+    }
+
+    if (dbMode == ResponseCacheDbMode.DISABLED) {
+      return;
+    }
+
+    ResponseDbWriter writer = dbWriter;
+    if (writer == null) {
       return;
     }
 
     byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
     String ident = Base64.encodeToString(identBytes);
-    try {
-      long id = deriveId(issuerId, identBytes);
-
-      Connection conn = datasource.getConnection();
-      try {
-        String sql = SQL_ADD_RESP;
-        PreparedStatement ps = datasource.prepareStatement(conn, sql);
+    long id = deriveId(issuerId, identBytes);
+    if (!writer.offer(new ResponseDbWriter.PendingResponse(id, issuerId, ident, thisUpdate,
+        nextUpdate, response))) {
+      LOG.debug("write queue is full, OCSP response not stored in the database");
+    }
+  }
 
-        String b64Response = Base64.encodeToString(response);
-        Boolean dataIntegrityViolationException = null;
-        try {
-          int idx = 1;
-          ps.setLong(idx++, id);
-          ps.setInt(idx++, issuerId);
-          ps.setString(idx++, ident);
-          ps.setLong(idx++, thisUpdate);
-          ps.setLong(idx++, nextUpdate);
-          ps.setString(idx++, b64Response);
-          ps.execute();
-        } catch (SQLException ex) {
-          DataAccessException dex = datasource.translate(sql, ex);
-          if (dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
-            dataIntegrityViolationException = Boolean.TRUE;
-          } else {
-            throw dex;
-          }
-        } finally {
-          datasource.releaseResources(ps, null, false);
+  /**
+   * Removes the cached OCSP responses, e.g. after the status of the certificates has changed.
+   * @param issuerId issuer id.
+   * @param serialNumbers serial numbers of the certificates.
+   * @param sigAlgCodes codes of the signature algorithms.
+   * @throws DataAccessException
+   *           if the responses could not be removed from the database.
+   */
+  public void removeOcspResponses(int issuerId, List<BigInteger> serialNumbers,
+      Collection<AlgorithmCode> sigAlgCodes) throws DataAccessException {
+    if (memoryCache != null) {
+      for (BigInteger serialNumber : serialNumbers) {
+        for (AlgorithmCode sigAlgCode : sigAlgCodes) {
+          memoryCache.remove(new MemoryResponseCache.Key(issuerId, serialNumber, sigAlgCode));
         }
+      }
+    }
 
-        if (dataIntegrityViolationException == null) {
-          LOG.debug("added cached OCSP response iid={}, ident={}", issuerId, ident);
-          return;
-        }
+    if (dbMode == ResponseCacheDbMode.DISABLED || !master) {
+      return;
+    }
 
-        sql = SQL_UPDATE_RESP;
-        ps = datasource.prepareStatement(conn, sql);
-        try {
-          int idx = 1;
-          ps.setLong(idx++, thisUpdate);
-          ps.setLong(idx++, nextUpdate);
-          ps.setString(idx++, b64Response);
-          ps.setLong(idx++, id);
-          ps.executeUpdate();
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        } finally {
-          datasource.releaseResources(ps, null, false);
+    long[] ids = new long[serialNumbers.size() * sigAlgCodes.size()];
+    int idx = 0;
+    for (BigInteger serialNumber : serialNumbers) {
+      for (AlgorithmCode sigAlgCode : sigAlgCodes) {
+        ids[idx++] = deriveId(issuerId, buildIdent(serialNumber, sigAlgCode));
+      }
+    }
+
+    ResponseDbWriter writer = dbWriter;
+    if (writer != null) {
+      for (long id : ids) {
+        writer.remove(id);
+      }
+    }
+
+    // the response may be in any of the time-bucketed tables.
+    for (int i = 0; i < tables.size(); i++) {
+      final String sql = sqlDeleteResps[i];
+      PreparedStatement ps = null;
+      try {
+        ps = datasource.prepareStatement(sql);
+        for (long id : ids) {
+          ps.setLong(1, id);
+          ps.addBatch();
         }
+        ps.executeBatch();
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
       } finally {
-        datasource.returnConnection(conn);
-      }
-    } catch (DataAccessException ex) {
-      LOG.info("could not cache OCSP response iid={}, ident={}", issuerId, ident);
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("could not cache OCSP response iid=" + issuerId + ", ident=" + ident, ex);
+        datasource.releaseResources(ps, null);
       }
     }
+  } // method removeOcspResponses
+
+  public long getMemoryCacheHits() {
+    return (memoryCache == null) ? 0 : memoryCache.getHits();
+  }
+
+  public long getMemoryCacheMisses() {
+    return (memoryCache == null) ? 0 : memoryCache.getMisses();
+  }
+
+  public long getMemoryCacheEvictions() {
+    return (memoryCache == null) ? 0 : memoryCache.getEvictions();
+  }
+
+  public long getMemoryCacheExpired() {
+    return (memoryCache == null) ? 0 : memoryCache.getExpired();
+  }
+
+  public long getDbCacheHits() {
+    return dbHits.get();
+  }
+
+  public long getDbCacheMisses() {
+    return dbMisses.get();
+  }
+
+  public int getMemoryCacheSize() {
+    return (memoryCache == null) ? 0 : memoryCache.getSize();
+  }
+
+  public int getDbWriteQueueSize() {
+    return (dbWriter == null) ? 0 : dbWriter.getQueueSize();
+  }
+
+  public long getDroppedDbWrites() {
+    return (dbWriter == null) ? 0 : dbWriter.getDropped();
+  }
+
+  public long getCoalescedDbWrites() {
+    return (dbWriter == null) ? 0 : dbWriter.getCoalesced();
+  }
+
+  public long getDbWrites() {
+    return (dbWriter == null) ? 0 : dbWriter.getWritten();
+  }
+
+  public long getFailedDbWrites() {
+    return (dbWriter == null) ? 0 : dbWriter.getFailed();
   }
 
   private int removeExpiredResponses(long maxThisUpdate) throws DataAccessException {
@@ -394,6 +647,51 @@ public class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Truncates the table of the next period, all its responses are expired. Only the master
+   * truncates the tables.
+   */
+  private void truncateNextTable() throws DataAccessException {
+    if (!master) {
+      return;
+    }
+
+    long nextPeriod = tables.getPeriod(System.currentTimeMillis()) + 1;
+    if (nextPeriod == truncatedPeriod) {
+      return;
+    }
+
+    String table = tables.getName(tables.getIndexForPeriod(nextPeriod));
+    datasource.truncateTable(null, table);
+    truncatedPeriod = nextPeriod;
+    LOG.info("truncated table {} of the expired responses", table);
+  } // method truncateNextTable
+
+  /**
+   * Creates the missing time-bucketed tables of the responses with the columns of the table
+   * OCSP. Only the master creates the tables.
+   */
+  private void createResponseTables() throws DataAccessException {
+    if (!tables.isBucketed()) {
+      return;
+    }
+
+    for (int i = 0; i < tables.size(); i++) {
+      String table = tables.getName(i);
+      if (datasource.tableExists(null, table)) {
+        continue;
+      }
+
+      if (!master) {
+        throw new DataAccessException("table " + table + " does not exist");
+      }
+
+      datasource.createTableLike(null, table, ResponseTables.BASE_TABLE, "PK_" + table, "ID");
+      datasource.addForeignKeyConstraint(null, "FK_" + table + "_ISSUER1", table, "IID",
+          "ISSUER", "ID", "CASCADE", "NO ACTION");
+    }
+  } // method createResponseTables
+
   private void updateCacheStore() {
     boolean stillOnService = updateCacheStore0();
     this.onService.set(stillOnService);
@@ -411,6 +709,8 @@ public class ResponseCacher implements Closeable {
   private boolean updateCacheStore0() {
     try {
       if (this.issuerStore == null) {
+        createResponseTables();
+        detectColumnTypes();
         return initIssuerStore();
       }
 
@@ -460,7 +760,7 @@ public class ResponseCacher implements Closeable {
             ps.setInt(1, id);
             rs = ps.executeQuery();
             rs.next();
-            X509Certificate cert = X509Util.parseCert(StringUtil.toUtf8Bytes(rs.getString("CERT")));
+            X509Certificate cert = readCert(rs);
             IssuerEntry caInfoEntry = new IssuerEntry(id, cert);
             issuerStore.addIssuer(caInfoEntry);
             LOG.info("added issuer {}", id);
@@ -490,6 +790,27 @@ public class ResponseCacher implements Closeable {
     return true;
   } // method updateCacheStore0
 
+  private X509Certificate readCert(ResultSet rs) throws SQLException, CertificateException {
+    return X509Util.parseCert(
+        binaryCert ? rs.getBytes("CERT") : StringUtil.toUtf8Bytes(rs.getString("CERT")));
+  }
+
+  /**
+   * Detects whether the columns ISSUER.CERT and OCSP.RESP are binary or Base64 encoded text,
+   * and creates the writer of the responses.
+   */
+  private void detectColumnTypes() throws DataAccessException {
+    if (dbWriter != null) {
+      return;
+    }
+
+    binaryCert = datasource.isBinaryColumn(null, "ISSUER", "CERT");
+    binaryResp = datasource.isBinaryColumn(null, "OCSP", "RESP");
+    LOG.info("cache database: ISSUER.CERT is {}, OCSP.RESP is {}",
+        binaryCert ? "binary" : "text", binaryResp ? "binary" : "text");
+    dbWriter = new ResponseDbWriter(datasource, tables, DB_WRITE_QUEUE_SIZE, binaryResp);
+  }
+
   private boolean initIssuerStore() throws DataAccessException, CertificateException {
     PreparedStatement ps = null;
     ResultSet rs = null;
@@ -503,7 +824,7 @@ public class ResponseCacher implements Closeable {
 
       while (rs.next()) {
         int id = rs.getInt("ID");
-        X509Certificate cert = X509Util.parseCert(StringUtil.toUtf8Bytes(rs.getString("CERT")));
+        X509Certificate cert = readCert(rs);
         IssuerEntry caInfoEntry = new IssuerEntry(id, cert);
         RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
             caInfoEntry.getEncodedHash(HashAlgo.SHA1));
@@ -0,0 +1,470 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataAccessException.Reason;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.DatabaseType;
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+
+/**
+ * Writes the OCSP responses to the cache database in a dedicated thread. Pending
+ * responses with the same ID are coalesced, and the responses are written in JDBC
+ * batches with the native upsert statement of the database if available.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+class ResponseDbWriter implements Runnable, Closeable {
+
+  static final class PendingResponse {
+
+    private final long id;
+
+    private final int issuerId;
+
+    private final String ident;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    private final byte[] response;
+
+    PendingResponse(long id, int issuerId, String ident, long thisUpdate, long nextUpdate,
+        byte[] response) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.ident = ident;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class PendingResponse
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponseDbWriter.class);
+
+  private static final int BATCH_SIZE = 100;
+
+  // maximal time a response waits in the queue if less than BATCH_SIZE are pending.
+  private static final long MAX_FLUSH_DELAY_MS = 1000;
+
+  private final DataSourceWrapper datasource;
+
+  // whether the column OCSP.RESP is binary, otherwise Base64 encoded text.
+  private final boolean binaryResp;
+
+  private final ResponseTables tables;
+
+  // per table, null if the database does not support upsert
+  private final String[] sqlUpserts;
+
+  // per table
+  private final String[] sqlAdds;
+
+  // per table
+  private final String[] sqlUpdates;
+
+  private final int maxPending;
+
+  private final Object lock = new Object();
+
+  private final LinkedHashMap<Long, PendingResponse> pending;
+
+  private final AtomicLong dropped = new AtomicLong(0);
+
+  private final AtomicLong coalesced = new AtomicLong(0);
+
+  private final AtomicLong written = new AtomicLong(0);
+
+  private final AtomicLong failed = new AtomicLong(0);
+
+  private final Thread thread;
+
+  private boolean closed;
+
+  ResponseDbWriter(DataSourceWrapper datasource, ResponseTables tables, int maxPending,
+      boolean binaryResp) {
+    this.datasource = Args.notNull(datasource, "datasource");
+    this.tables = Args.notNull(tables, "tables");
+    this.maxPending = Args.positive(maxPending, "maxPending");
+    this.binaryResp = binaryResp;
+    this.pending = new LinkedHashMap<>(Math.min(maxPending, 1024) * 4 / 3 + 1);
+
+    final int n = tables.size();
+    String[] upserts = new String[n];
+    this.sqlAdds = new String[n];
+    this.sqlUpdates = new String[n];
+    for (int i = 0; i < n; i++) {
+      String table = tables.getName(i);
+      upserts[i] = buildUpsertSql(datasource, binaryResp, table);
+      sqlAdds[i] = "INSERT INTO " + table + " (ID,IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP)"
+          + " VALUES (?,?,?,?,?,?)";
+      sqlUpdates[i] = "UPDATE " + table + " SET THIS_UPDATE=?,NEXT_UPDATE=?,RESP=? WHERE ID=?";
+    }
+    this.sqlUpserts = (upserts[0] == null) ? null : upserts;
+
+    LOG.info("write OCSP responses to the cache database with {}",
+        (sqlUpserts == null) ? "INSERT / UPDATE" : sqlUpserts[0]);
+
+    this.thread = new Thread(this, "ocsp-response-db-writer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  private static String buildUpsertSql(DataSourceWrapper datasource, boolean binaryResp,
+      String table) {
+    final String cols = "ID,IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP";
+    final String updateFromV = "IID=V.IID,IDENT=V.IDENT,THIS_UPDATE=V.THIS_UPDATE,"
+        + "NEXT_UPDATE=V.NEXT_UPDATE,RESP=V.RESP";
+    final String insertFromV = "INSERT (" + cols + ") VALUES "
+        + "(V.ID,V.IID,V.IDENT,V.THIS_UPDATE,V.NEXT_UPDATE,V.RESP)";
+
+    switch (datasource.getDatabaseType()) {
+      case MYSQL:
+      case MARIADB:
+        return "INSERT INTO " + table + " (" + cols + ") VALUES (?,?,?,?,?,?) "
+            + "ON DUPLICATE KEY UPDATE "
+            + "IID=VALUES(IID),IDENT=VALUES(IDENT),THIS_UPDATE=VALUES(THIS_UPDATE),"
+            + "NEXT_UPDATE=VALUES(NEXT_UPDATE),RESP=VALUES(RESP)";
+      case POSTGRES:
+        return "INSERT INTO " + table + " (" + cols + ") VALUES (?,?,?,?,?,?) "
+            + "ON CONFLICT (ID) DO UPDATE SET IID=EXCLUDED.IID,IDENT=EXCLUDED.IDENT,"
+            + "THIS_UPDATE=EXCLUDED.THIS_UPDATE,NEXT_UPDATE=EXCLUDED.NEXT_UPDATE,"
+            + "RESP=EXCLUDED.RESP";
+      case H2:
+        return "MERGE INTO " + table + " (" + cols + ") KEY (ID) VALUES (?,?,?,?,?,?)";
+      case HSQL:
+      case DB2:
+        // the parameters in VALUES must be typed.
+        String respType;
+        if (binaryResp) {
+          respType = datasource.getDatabaseType() == DatabaseType.DB2 ? "BLOB" : "VARBINARY(3000)";
+        } else {
+          respType = "VARCHAR(4000)";
+        }
+
+        return "MERGE INTO " + table + " USING (VALUES (CAST(? AS BIGINT),CAST(? AS INT),"
+            + "CAST(? AS VARCHAR(48)),CAST(? AS BIGINT),CAST(? AS BIGINT),"
+            + "CAST(? AS " + respType + "))) AS V(" + cols + ") ON " + table + ".ID=V.ID "
+            + "WHEN MATCHED THEN UPDATE SET " + updateFromV
+            + " WHEN NOT MATCHED THEN " + insertFromV;
+      case ORACLE:
+        return "MERGE INTO " + table + " USING (SELECT ? ID,? IID,? IDENT,? THIS_UPDATE,"
+            + "? NEXT_UPDATE,? RESP FROM DUAL) V ON (" + table + ".ID=V.ID) "
+            + "WHEN MATCHED THEN UPDATE SET " + updateFromV
+            + " WHEN NOT MATCHED THEN " + insertFromV;
+      default:
+        return null;
+    }
+  } // method buildUpsertSql
+
+  /**
+   * Adds the response to the queue.
+   * @param resp the response.
+   * @return whether the response is queued.
+   */
+  boolean offer(PendingResponse resp) {
+    synchronized (lock) {
+      if (closed) {
+        dropped.incrementAndGet();
+        return false;
+      }
+
+      if (pending.containsKey(resp.id)) {
+        // replaces the queued response, the position in queue is retained.
+        pending.put(resp.id, resp);
+        coalesced.incrementAndGet();
+        return true;
+      }
+
+      if (pending.size() >= maxPending) {
+        dropped.incrementAndGet();
+        return false;
+      }
+
+      pending.put(resp.id, resp);
+      if (pending.size() >= BATCH_SIZE) {
+        lock.notifyAll();
+      }
+      return true;
+    }
+  } // method offer
+
+  /**
+   * Removes the response from the queue.
+   * @param id ID of the response.
+   */
+  void remove(long id) {
+    synchronized (lock) {
+      pending.remove(id);
+    }
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      List<PendingResponse> batch;
+      synchronized (lock) {
+        if (!closed && pending.size() < BATCH_SIZE) {
+          try {
+            lock.wait(MAX_FLUSH_DELAY_MS);
+          } catch (InterruptedException ex) {
+            LOG.warn("interrupted, {} OCSP responses not written to the database",
+                pending.size());
+            return;
+          }
+        }
+
+        if (pending.isEmpty()) {
+          if (closed) {
+            return;
+          }
+          continue;
+        }
+
+        batch = new ArrayList<>(Math.min(BATCH_SIZE, pending.size()));
+        Iterator<PendingResponse> it = pending.values().iterator();
+        while (it.hasNext() && batch.size() < BATCH_SIZE) {
+          batch.add(it.next());
+          it.remove();
+        }
+      }
+
+      try {
+        write(batch);
+      } catch (Throwable th) {
+        // must not stop the writer
+        failed.addAndGet(batch.size());
+        LOG.error("could not write {} OCSP responses: {}", batch.size(), th.getMessage());
+      }
+    }
+  } // method run
+
+  private void write(List<PendingResponse> batch) {
+    if (!tables.isBucketed()) {
+      write(0, batch);
+      return;
+    }
+
+    // the responses of a batch are usually in the same table.
+    Map<Integer, List<PendingResponse>> tableBatches = new HashMap<>(4);
+    for (PendingResponse resp : batch) {
+      int index = tables.getIndex(resp.thisUpdate);
+      List<PendingResponse> tableBatch = tableBatches.get(index);
+      if (tableBatch == null) {
+        tableBatch = new ArrayList<>(batch.size());
+        tableBatches.put(index, tableBatch);
+      }
+      tableBatch.add(resp);
+    }
+
+    for (Map.Entry<Integer, List<PendingResponse>> m : tableBatches.entrySet()) {
+      write(m.getKey(), m.getValue());
+    }
+  } // method write
+
+  private void write(int tableIndex, List<PendingResponse> batch) {
+    if (sqlUpserts != null) {
+      try {
+        writeBatch(tableIndex, batch);
+        written.addAndGet(batch.size());
+        return;
+      } catch (DataAccessException ex) {
+        LOG.warn("could not write {} OCSP responses in batch, write them one by one: {}",
+            batch.size(), ex.getMessage());
+      }
+    }
+
+    for (PendingResponse resp : batch) {
+      if (writeSingle(tableIndex, resp)) {
+        written.incrementAndGet();
+      } else {
+        failed.incrementAndGet();
+      }
+    }
+  } // method write
+
+  private void writeBatch(int tableIndex, List<PendingResponse> batch)
+      throws DataAccessException {
+    final String sql = sqlUpserts[tableIndex];
+    Connection conn = datasource.getConnection();
+    try {
+      PreparedStatement ps = datasource.prepareStatement(conn, sql);
+      try {
+        for (PendingResponse resp : batch) {
+          int idx = 1;
+          ps.setLong(idx++, resp.id);
+          ps.setInt(idx++, resp.issuerId);
+          ps.setString(idx++, resp.ident);
+          ps.setLong(idx++, resp.thisUpdate);
+          ps.setLong(idx++, resp.nextUpdate);
+          setResponse(ps, idx++, resp);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, null, false);
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method writeBatch
+
+  private void setResponse(PreparedStatement ps, int index, PendingResponse resp)
+      throws SQLException {
+    if (binaryResp) {
+      ps.setBytes(index, resp.response);
+    } else {
+      ps.setString(index, Base64.encodeToString(resp.response));
+    }
+  }
+
+  private boolean writeSingle(int tableIndex, PendingResponse resp) {
+    try {
+      Connection conn = datasource.getConnection();
+      try {
+        String sql = sqlAdds[tableIndex];
+        PreparedStatement ps = datasource.prepareStatement(conn, sql);
+
+        Boolean dataIntegrityViolationException = null;
+        try {
+          int idx = 1;
+          ps.setLong(idx++, resp.id);
+          ps.setInt(idx++, resp.issuerId);
+          ps.setString(idx++, resp.ident);
+          ps.setLong(idx++, resp.thisUpdate);
+          ps.setLong(idx++, resp.nextUpdate);
+          setResponse(ps, idx++, resp);
+          ps.execute();
+        } catch (SQLException ex) {
+          DataAccessException dex = datasource.translate(sql, ex);
+          if (dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
+            dataIntegrityViolationException = Boolean.TRUE;
+          } else {
+            throw dex;
+          }
+        } finally {
+          datasource.releaseResources(ps, null, false);
+        }
+
+        if (dataIntegrityViolationException == null) {
+          LOG.debug("added cached OCSP response iid={}, ident={}", resp.issuerId, resp.ident);
+          return true;
+        }
+
+        sql = sqlUpdates[tableIndex];
+        ps = datasource.prepareStatement(conn, sql);
+        try {
+          int idx = 1;
+          ps.setLong(idx++, resp.thisUpdate);
+          ps.setLong(idx++, resp.nextUpdate);
+          setResponse(ps, idx++, resp);
+          ps.setLong(idx++, resp.id);
+          ps.executeUpdate();
+          return true;
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          datasource.releaseResources(ps, null, false);
+        }
+      } finally {
+        datasource.returnConnection(conn);
+      }
+    } catch (DataAccessException ex) {
+      LOG.info("could not cache OCSP response iid={}, ident={}", resp.issuerId, resp.ident);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("could not cache OCSP response iid=" + resp.issuerId
+            + ", ident=" + resp.ident, ex);
+      }
+      return false;
+    }
+  } // method writeSingle
+
+  /**
+   * Stops accepting new responses and writes the pending ones.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+
+    try {
+      thread.join(10000);
+    } catch (InterruptedException ex) {
+      LOG.error("interrupted: {}", ex.getMessage());
+    }
+
+    if (thread.isAlive()) {
+      LOG.warn("could not write all cached OCSP responses to the database");
+      thread.interrupt();
+    }
+  } // method close
+
+  int getQueueSize() {
+    synchronized (lock) {
+      return pending.size();
+    }
+  }
+
+  long getDropped() {
+    return dropped.get();
+  }
+
+  long getCoalesced() {
+    return coalesced.get();
+  }
+
+  long getWritten() {
+    return written.get();
+  }
+
+  long getFailed() {
+    return failed.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ResponseDbWriter[queueSize=%d,maxQueueSize=%d,written=%d,failed=%d,"
+        + "coalesced=%d,dropped=%d]", getQueueSize(), maxPending, getWritten(), getFailed(),
+        getCoalesced(), getDropped());
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.xipki.util.Args;
+
+/**
+ * Tables of the cached OCSP responses. Either all responses are in the table OCSP, or the
+ * responses are distributed over n time-bucketed tables OCSP_0, ..., OCSP_(n-1) with the same
+ * columns: a response with thisUpdate in the period p (thisUpdate / bucketLength) is written
+ * to the table OCSP_(p % n).
+ *
+ * <p>The bucket length is chosen so that all responses of the table of the next period are
+ * expired. Instead of deleting the expired responses row by row, this table is truncated
+ * before its period starts.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class ResponseTables {
+
+  public static final String BASE_TABLE = "OCSP";
+
+  public static final int MIN_BUCKETS = 3;
+
+  // the expired responses are removed every 10 minutes, every period must contain at least
+  // one run.
+  private static final long MIN_BUCKET_LENGTH_MS = 2 * 600 * 1000L;
+
+  private final String[] names;
+
+  private final long validityMs;
+
+  // 0 if not bucketed
+  private final long bucketLengthMs;
+
+  /**
+   * Constructor.
+   * @param buckets number of the time-bucketed tables, 0 to use only the table OCSP.
+   * @param validity validity of the cached responses in seconds.
+   */
+  public ResponseTables(int buckets, int validity) {
+    Args.notNegative(buckets, "buckets");
+    this.validityMs = Args.positive(validity, "validity") * 1000L;
+
+    if (buckets == 0) {
+      this.names = new String[]{BASE_TABLE};
+      this.bucketLengthMs = 0;
+    } else {
+      if (buckets < MIN_BUCKETS) {
+        throw new IllegalArgumentException("buckets must be 0 or not less than " + MIN_BUCKETS
+            + ": " + buckets);
+      }
+
+      this.names = new String[buckets];
+      for (int i = 0; i < buckets; i++) {
+        names[i] = BASE_TABLE + "_" + i;
+      }
+
+      // validity <= (buckets - 2) * bucketLength: the table of the next period contains only
+      // responses with thisUpdate < now - validity.
+      long len = (validityMs + buckets - 3) / (buckets - 2);
+      this.bucketLengthMs = Math.max(len, MIN_BUCKET_LENGTH_MS);
+    }
+  }
+
+  public boolean isBucketed() {
+    return bucketLengthMs != 0;
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  public String getName(int index) {
+    return names[index];
+  }
+
+  public long getBucketLengthMs() {
+    return bucketLengthMs;
+  }
+
+  public long getPeriod(long timeMs) {
+    return isBucketed() ? timeMs / bucketLengthMs : 0;
+  }
+
+  public int getIndexForPeriod(long period) {
+    return (int) (period % names.length);
+  }
+
+  /**
+   * Gets the index of the table for the response.
+   * @param thisUpdate thisUpdate of the response in milliseconds.
+   * @return the index of the table.
+   */
+  public int getIndex(long thisUpdate) {
+    return getIndexForPeriod(getPeriod(thisUpdate));
+  }
+
+  /**
+   * Gets the indexes of the tables which may contain not expired responses.
+   * @param now current time in milliseconds.
+   * @return the indexes of the tables, the table of the current period first.
+   */
+  public int[] getLiveIndexes(long now) {
+    if (!isBucketed()) {
+      return new int[]{0};
+    }
+
+    long currentPeriod = getPeriod(now);
+    long minPeriod = getPeriod(Math.max(0, now - validityMs));
+    int num = (int) Math.min(names.length - 1, currentPeriod - minPeriod + 1);
+    int[] indexes = new int[num];
+    for (int i = 0; i < num; i++) {
+      indexes[i] = getIndexForPeriod(currentPeriod - i);
+    }
+    return indexes;
+  }
+
+}
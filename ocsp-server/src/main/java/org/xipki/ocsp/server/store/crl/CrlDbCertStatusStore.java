@@ -18,52 +18,250 @@
 package org.xipki.ocsp.server.store.crl;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.security.HashAlgo;
 import org.xipki.util.Args;
 import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 
 /**
- * TODO.
+ * Certificate status store which imports the CRLs of one or more CAs into the database.
+ * The CRLs of different CAs are imported in parallel, and a CRL is only imported if it
+ * has been changed.
+ *
+ * <p>The CRL of a CA directory is imported by only one store of the JVM, the last
+ * initialized one, e.g. the store of the new generation while the configuration is being
+ * reloaded. It takes over the directory after the running import of the previous store has
+ * been finished.
+ *
  * @author Lijun Liao
  * @since 2.2.0
  */
 
 public class CrlDbCertStatusStore extends DbCertStatusStore {
 
+  /**
+   * Import state and metrics of the directory of one CA.
+   *
+   * @since 5.3.0
+   */
+  public static class CrlDirState {
+
+    private final String name;
+
+    private final File dir;
+
+    private final AtomicBoolean inProcess = new AtomicBoolean(false);
+
+    // the following four fields are only accessed by the import task of this directory.
+    private long crlFileLength = -1;
+
+    private long crlFileLastModified = -1;
+
+    private byte[] crlFileHash;
+
+    private BigInteger crlNumber;
+
+    private final AtomicLong numImports = new AtomicLong(0);
+
+    private final AtomicLong numFailedImports = new AtomicLong(0);
+
+    private final AtomicLong numSkippedImports = new AtomicLong(0);
+
+    private volatile boolean lastImportSuccessful;
+
+    private volatile long lastImportTime;
+
+    private volatile long lastImportDuration;
+
+    private volatile long lastNumRevokedCerts;
+
+    private volatile long lastNumCerts;
+
+    private CrlDirState(String name, File dir) {
+      this.name = name;
+      this.dir = dir;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public File getDir() {
+      return dir;
+    }
+
+    public boolean isInProcess() {
+      return inProcess.get();
+    }
+
+    public long getNumImports() {
+      return numImports.get();
+    }
+
+    public long getNumFailedImports() {
+      return numFailedImports.get();
+    }
+
+    /**
+     * Gets the number of checks which found no changed CRL.
+     * @return the number of skipped imports.
+     */
+    public long getNumSkippedImports() {
+      return numSkippedImports.get();
+    }
+
+    public boolean isLastImportSuccessful() {
+      return lastImportSuccessful;
+    }
+
+    /**
+     * Gets the start time of the last import.
+     * @return the start time in milliseconds, 0 if no CRL has been imported.
+     */
+    public long getLastImportTime() {
+      return lastImportTime;
+    }
+
+    /**
+     * Gets the duration of the last import.
+     * @return the duration in milliseconds.
+     */
+    public long getLastImportDuration() {
+      return lastImportDuration;
+    }
+
+    public long getLastNumRevokedCerts() {
+      return lastNumRevokedCerts;
+    }
+
+    public long getLastNumCerts() {
+      return lastNumCerts;
+    }
+
+    private void recordImport(boolean successful, long startTime, ImportCrl importCrl) {
+      numImports.incrementAndGet();
+      if (!successful) {
+        numFailedImports.incrementAndGet();
+        // retry the import in the next run
+        crlFileLength = -1;
+        crlFileLastModified = -1;
+        crlFileHash = null;
+      }
+
+      lastImportSuccessful = successful;
+      lastImportTime = startTime;
+      lastImportDuration = System.currentTimeMillis() - startTime;
+      lastNumRevokedCerts = (importCrl == null) ? 0 : importCrl.getNumRevokedCerts();
+      lastNumCerts = (importCrl == null) ? 0 : importCrl.getNumCerts();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("CrlDirState[name=%s,imports=%d,failed=%d,skipped=%d,"
+          + "lastSuccessful=%b,lastDuration=%d ms,lastRevokedCerts=%d,lastCerts=%d]",
+          name, getNumImports(), getNumFailedImports(), getNumSkippedImports(),
+          lastImportSuccessful, lastImportDuration, lastNumRevokedCerts, lastNumCerts);
+    }
+
+  } // class CrlDirState
+
   private class CrlUpdateService implements Runnable {
 
     @Override
     public void run() {
       try {
-        updateStore(datasource);
+        updateStore(datasource, false);
       } catch (Throwable th) {
-        LogUtil.error(LOG, th, "error while calling initializeStore() for store " + name);
+        LogUtil.error(LOG, th, "error while calling updateStore() for store " + name);
       }
     }
 
-  } // StoreUpdateService
+  } // class CrlUpdateService
+
+  private class CrlImportTask implements Runnable {
+
+    private final CrlDirState state;
+
+    private final DataSourceWrapper datasource;
+
+    CrlImportTask(CrlDirState state, DataSourceWrapper datasource) {
+      this.state = state;
+      this.datasource = datasource;
+    }
+
+    @Override
+    public void run() {
+      try {
+        importCrl(state, datasource);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while importing CRL of " + state.name);
+      } finally {
+        state.inProcess.set(false);
+      }
+    }
+
+  } // class CrlImportTask
 
   private static final Logger LOG = LoggerFactory.getLogger(CrlDbCertStatusStore.class);
 
-  private final AtomicBoolean crlUpdateInProcess = new AtomicBoolean(false);
+  private static final String CA_CERT_FILENAME = "ca.crt";
+
+  private static final String CRL_FILENAME = "ca.crl";
+
+  private static final String UPDATEME_FILENAME = "UPDATEME";
+
+  // the following maps are shared by all stores of the JVM.
+
+  // directory path to the store which imports the CRL of it.
+  private static final ConcurrentMap<String, CrlDbCertStatusStore> DIR_IMPORTERS =
+      new ConcurrentHashMap<>();
 
-  //private X509Certificate caCert;
+  // directory path to the lock of the import.
+  private static final ConcurrentMap<String, Object> DIR_LOCKS = new ConcurrentHashMap<>();
 
-  //private X509Certificate issuerCert;
+  // datasource name to the maximal ID in the table CERT.
+  private static final ConcurrentMap<String, AtomicLong> CERT_ID_COUNTERS =
+      new ConcurrentHashMap<>();
+
+  // directory path to state
+  private final ConcurrentMap<String, CrlDirState> dirStates = new ConcurrentHashMap<>();
 
   private String dir;
 
-  private boolean crlUpdated;
+  private AtomicLong certIdCounter;
+
+  private ExecutorService importExecutor;
+
+  private volatile boolean crlUpdated;
+
+  private volatile boolean closed;
 
   /**
    * Initialize the store.
@@ -73,8 +271,15 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
    * <ul>
    * <li>dir: required
    *   <p/>
-   *   Directory of the CRL resources.</li>
+   *   Directory of the CRL resources. Either the directory contains the files ca.crt, ca.crl,
+   *   etc. of one CA, or each of its sub-directories contains the files of one CA.</li>
+   * <li>importThreads: optional
+   *   <p/>
+   *   Number of threads to import the CRLs of different CAs in parallel, defaults to the
+   *   number of available processors.</li>
    * </ul>
+   * A CRL is imported if it has been changed and its CRL number is greater than that of the
+   * imported one, or if the file UPDATEME exists in the directory of the CA.
    * @param datasource DataSource.
    */
   public void init(Map<String, ? extends Object> sourceConf, DataSourceWrapper datasource)
@@ -82,8 +287,22 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     Args.notNull(sourceConf, "sourceConf");
 
     this.dir = IoUtil.expandFilepath(getStrValue(sourceConf, "dir", true));
+    String str = getStrValue(sourceConf, "importThreads", false);
+    int importThreads = (str == null) ? Runtime.getRuntime().availableProcessors()
+        : Args.positive(Integer.parseInt(str), "importThreads");
 
-    updateStore(datasource);
+    // the IDs are allocated by all stores on the same datasource, the counter is raised to
+    // the maximal ID in the table CERT at the start of each import.
+    AtomicLong counter = new AtomicLong(0);
+    AtomicLong existingCounter = CERT_ID_COUNTERS.putIfAbsent(datasource.getName(), counter);
+    this.certIdCounter = (existingCounter == null) ? counter : existingCounter;
+
+    if (importExecutor != null) {
+      importExecutor.shutdownNow();
+    }
+    importExecutor = Executors.newFixedThreadPool(importThreads);
+
+    updateStore(datasource, true);
     super.init(sourceConf, datasource);
   }
 
@@ -101,6 +320,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
     if (objVal instanceof String) {
       return (String) objVal;
+    } else if (objVal instanceof Number) {
+      return objVal.toString();
     } else {
       throw new IllegalArgumentException(
           "content of " + confName + " is not String, but " + objVal.getClass().getName());
@@ -117,34 +338,225 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     return crlUpdated && super.isInitialized();
   }
 
-  private synchronized void updateStore(DataSourceWrapper datasource) {
-    if (crlUpdateInProcess.get()) {
+  @Override
+  public void close() {
+    closed = true;
+    if (importExecutor != null) {
+      importExecutor.shutdownNow();
+      importExecutor = null;
+    }
+
+    // hand the directories over to other stores.
+    for (String path : dirStates.keySet()) {
+      DIR_IMPORTERS.remove(path, this);
+    }
+
+    super.close();
+  }
+
+  /**
+   * Gets the import states of the CA directories.
+   * @return the import states.
+   * @since 5.3.0
+   */
+  public Collection<CrlDirState> getCrlDirStates() {
+    return Collections.unmodifiableCollection(dirStates.values());
+  }
+
+  /**
+   * Submits the import of the CRL of each CA directory which is not being imported.
+   * @param datasource the datasource.
+   * @param wait whether to wait until all submitted imports are finished.
+   */
+  private void updateStore(DataSourceWrapper datasource, boolean wait) {
+    List<Future<?>> futures = new ArrayList<>();
+    for (CrlDirState state : scanCrlDirs()) {
+      if (!state.inProcess.compareAndSet(false, true)) {
+        LOG.info("the CRL of {} is still being imported", state.name);
+        continue;
+      }
+
+      try {
+        futures.add(importExecutor.submit(new CrlImportTask(state, datasource)));
+      } catch (RejectedExecutionException ex) {
+        state.inProcess.set(false);
+        LOG.warn("could not submit the import of CRL of {}: {}", state.name, ex.getMessage());
+      }
+    }
+
+    if (wait) {
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch (ExecutionException ex) {
+          LogUtil.error(LOG, ex.getCause(), "error while importing CRL");
+        }
+      }
+    }
+
+    crlUpdated = true;
+  } // method updateStore
+
+  private List<CrlDirState> scanCrlDirs() {
+    File baseDir = new File(dir);
+    List<File> caDirs = new ArrayList<>();
+    if (new File(baseDir, CA_CERT_FILENAME).exists()) {
+      caDirs.add(baseDir);
+    } else {
+      File[] subDirs = baseDir.listFiles(new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+          return file.isDirectory() && new File(file, CA_CERT_FILENAME).exists();
+        }
+      });
+
+      if (subDirs != null) {
+        Arrays.sort(subDirs);
+        caDirs.addAll(Arrays.asList(subDirs));
+      }
+    }
+
+    List<CrlDirState> states = new ArrayList<>(caDirs.size());
+    for (File caDir : caDirs) {
+      String path = caDir.getAbsolutePath();
+      CrlDirState state = dirStates.get(path);
+      if (state == null) {
+        dirStates.putIfAbsent(path, new CrlDirState(caDir.getName(), caDir));
+        state = dirStates.get(path);
+        // the last initialized store takes over the directory.
+        if (!closed) {
+          DIR_IMPORTERS.put(path, this);
+        }
+      }
+      states.add(state);
+    }
+    return states;
+  } // method scanCrlDirs
+
+  private void importCrl(CrlDirState state, DataSourceWrapper datasource) throws Exception {
+    final String path = state.dir.getAbsolutePath();
+    Object lock = DIR_LOCKS.get(path);
+    if (lock == null) {
+      DIR_LOCKS.putIfAbsent(path, new Object());
+      lock = DIR_LOCKS.get(path);
+    }
+
+    // waits for the running import of the directory by the other store.
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+
+      CrlDbCertStatusStore importer = DIR_IMPORTERS.get(path);
+      if (importer == null) {
+        // the importing store has been closed, take the directory back.
+        DIR_IMPORTERS.putIfAbsent(path, this);
+        importer = DIR_IMPORTERS.get(path);
+      }
+
+      if (importer != this) {
+        LOG.debug("the CRL of {} is imported by store {}", state.name, importer.name);
+        return;
+      }
+
+      importCrl0(state, datasource);
+    }
+  } // method importCrl
+
+  private void importCrl0(CrlDirState state, DataSourceWrapper datasource) throws Exception {
+    File updateMeFile = new File(state.dir, UPDATEME_FILENAME);
+    File crlFile = new File(state.dir, CRL_FILENAME);
+    final boolean forced = updateMeFile.exists();
+
+    if (!crlFile.exists()) {
+      if (forced) {
+        LOG.warn("CRL file {} does not exist", crlFile.getPath());
+      }
       return;
     }
 
-    File updateMeFile = new File(dir, "UPDATEME");
-    if (!updateMeFile.exists()) {
-      LOG.info("The CRL will not be updated. Create new file {} to force the update",
-          updateMeFile.getAbsolutePath());
+    // change detection
+    long length = crlFile.length();
+    long lastModified = crlFile.lastModified();
+    if (!forced && length == state.crlFileLength && lastModified == state.crlFileLastModified) {
+      state.numSkippedImports.incrementAndGet();
       return;
     }
 
-    crlUpdateInProcess.set(true);
+    byte[] hash = hashFile(crlFile);
+    boolean changed = !Arrays.equals(hash, state.crlFileHash);
+    state.crlFileLength = length;
+    state.crlFileLastModified = lastModified;
+    state.crlFileHash = hash;
 
+    if (!forced && !changed) {
+      state.numSkippedImports.incrementAndGet();
+      return;
+    }
+
+    final long start = System.currentTimeMillis();
+    ImportCrl importCrl = null;
     try {
-      ImportCrl importCrl = new ImportCrl(datasource, dir);
-      if (importCrl.importCrlToOcspDb()) {
-        updateMeFile.delete();
-        LOG.info("updated CertStore {} successfully", name);
-      } else {
-        LOG.error("updating CertStore {} failed", name);
+      importCrl = new ImportCrl(datasource, state.dir.getPath(), certIdCounter);
+      BigInteger crlNumber = importCrl.getCrlNumber();
+      if (!forced) {
+        boolean newer = (state.crlNumber == null) ? importCrl.isCrlNewer()
+            : crlNumber.compareTo(state.crlNumber) > 0;
+        if (!newer) {
+          LOG.info("CRL {} of {} is not newer than the imported one, ignore it",
+              crlNumber, state.name);
+          state.crlNumber = crlNumber;
+          state.numSkippedImports.incrementAndGet();
+          importCrl.close();
+          return;
+        }
       }
-    } catch (Throwable th) {
-      LogUtil.error(LOG, th, "error while executing updateStore()");
+    } catch (Exception ex) {
+      if (importCrl != null) {
+        importCrl.close();
+      }
+      state.recordImport(false, start, null);
+      throw ex;
+    }
+
+    LOG.info("UPDATE_CERTSTORE: importing CRL {} of {}", importCrl.getCrlNumber(), state.name);
+    boolean successful;
+    try {
+      successful = importCrl.importCrlToOcspDb();
     } finally {
-      crlUpdated = true;
-      crlUpdateInProcess.set(false);
+      importCrl.close();
     }
-  } // method initializeStore
+    state.recordImport(successful, start, importCrl);
+    // entries may have been changed or deleted, even if the import failed.
+    clearCertStatusCache();
+
+    if (successful) {
+      state.crlNumber = importCrl.getCrlNumber();
+      if (forced) {
+        updateMeFile.delete();
+      }
+      LOG.info("updated CertStore {} with CRL of {} successfully: {}", name, state.name, state);
+    } else {
+      LOG.error("updating CertStore {} with CRL of {} failed", name, state.name);
+    }
+  } // method importCrl0
+
+  private static byte[] hashFile(File file) throws IOException {
+    Digest digest = HashAlgo.SHA1.createDigest();
+    byte[] buffer = new byte[8192];
+    try (InputStream is = Files.newInputStream(file.toPath())) {
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+
+    byte[] hash = new byte[digest.getDigestSize()];
+    digest.doFinal(hash, 0);
+    return hash;
+  }
 
 }
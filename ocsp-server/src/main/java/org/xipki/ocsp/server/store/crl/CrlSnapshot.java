@@ -0,0 +1,345 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store.crl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.server.store.crl.ImportCrl.ImportCrlException;
+import org.xipki.security.CrlReason;
+import org.xipki.security.CrlStreamParser;
+import org.xipki.security.CrlStreamParser.RevokedCert;
+import org.xipki.security.CrlStreamParser.RevokedCertsIterator;
+import org.xipki.util.Args;
+import org.xipki.util.StringUtil;
+
+/**
+ * File containing the revoked certificates of a full CRL, sorted by the serial number. The
+ * snapshot is created with an external merge sort, so that the memory usage is bounded for
+ * any size of CRL.
+ *
+ * <p>Format: the first line is {@code #CRLNUMBER=<crl number>}, each of the following lines
+ * is {@code <hex serial number>;<revocation time>;<reason code>;<invalidity time>}, where
+ * the times are in seconds since January 1, 1970, 00:00:00 GMT, and 0 for absent invalidity
+ * time.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public final class CrlSnapshot {
+
+  /**
+   * Reads the entries of a snapshot file in the order of serial number.
+   */
+  public static class Reader implements Closeable {
+
+    private final BufferedReader reader;
+
+    private final BigInteger crlNumber;
+
+    public Reader(File file) throws IOException {
+      this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+      String line = reader.readLine();
+      if (line == null || !line.startsWith(CRLNUMBER_PREFIX)) {
+        reader.close();
+        throw new IOException("invalid snapshot file " + file.getPath());
+      }
+      this.crlNumber = new BigInteger(line.substring(CRLNUMBER_PREFIX.length()));
+    }
+
+    public BigInteger getCrlNumber() {
+      return crlNumber;
+    }
+
+    /**
+     * Reads the next entry.
+     * @return the next entry, or {@code null} if no more entry is available.
+     * @throws IOException if the file could not be read.
+     */
+    public RevokedCert next() throws IOException {
+      String line = reader.readLine();
+      return (line == null) ? null : parseLine(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+
+  } // class Reader
+
+  private static class RunHead {
+
+    private final Reader reader;
+
+    private RevokedCert entry;
+
+    RunHead(Reader reader, RevokedCert entry) {
+      this.reader = reader;
+      this.entry = entry;
+    }
+
+  } // class RunHead
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlSnapshot.class);
+
+  private static final String CRLNUMBER_PREFIX = "#CRLNUMBER=";
+
+  // number of entries sorted in the memory.
+  private static final int RUN_SIZE = 100000;
+
+  private static final Comparator<RevokedCert> SERIAL_COMPARATOR =
+      new Comparator<RevokedCert>() {
+        @Override
+        public int compare(RevokedCert o1, RevokedCert o2) {
+          return o1.getSerialNumber().compareTo(o2.getSerialNumber());
+        }
+      };
+
+  private CrlSnapshot() {
+  }
+
+  /**
+   * Reads the CRL number of the snapshot.
+   * @param file the snapshot file.
+   * @return the CRL number, or {@code null} if the file does not exist or is invalid.
+   */
+  public static BigInteger readCrlNumber(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+
+    try (Reader reader = new Reader(file)) {
+      return reader.getCrlNumber();
+    } catch (IOException | RuntimeException ex) {
+      LOG.warn("could not read the snapshot file {}: {}", file.getPath(), ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Writes the sorted snapshot of the revoked certificates of the CRL.
+   * @param crl the CRL.
+   * @param caSubject the subject of the CA.
+   * @param file the snapshot file.
+   * @return number of entries in the snapshot.
+   * @throws IOException if the file could not be read or written.
+   * @throws ImportCrlException if the CRL contains entry of other CA.
+   */
+  public static long write(CrlStreamParser crl, X500Name caSubject, File file)
+      throws IOException, ImportCrlException {
+    return write(crl, caSubject, file, RUN_SIZE);
+  }
+
+  /**
+   * Writes the sorted snapshot of the revoked certificates of the CRL.
+   * @param crl the CRL.
+   * @param caSubject the subject of the CA.
+   * @param file the snapshot file.
+   * @param runSize number of entries sorted in the memory.
+   * @return number of entries in the snapshot.
+   * @throws IOException if the file could not be read or written.
+   * @throws ImportCrlException if the CRL contains entry of other CA.
+   */
+  public static long write(CrlStreamParser crl, X500Name caSubject, File file, int runSize)
+      throws IOException, ImportCrlException {
+    Args.notNull(crl, "crl");
+    Args.notNull(caSubject, "caSubject");
+    Args.notNull(file, "file");
+    Args.positive(runSize, "runSize");
+
+    final long start = System.currentTimeMillis();
+    List<File> runs = new ArrayList<>();
+    long numEntries = 0;
+    int numIgnored = 0;
+
+    try {
+      // write the sorted runs
+      try (RevokedCertsIterator revokedCerts = crl.revokedCertificates()) {
+        List<RevokedCert> run = new ArrayList<>(Math.min(runSize, RUN_SIZE));
+        while (revokedCerts.hasNext()) {
+          RevokedCert revokedCert = revokedCerts.next();
+          X500Name issuer = revokedCert.getCertificateIssuer();
+          if (issuer != null && !caSubject.equals(issuer)) {
+            throw new ImportCrlException("invalid CRLEntry for certificate number "
+                + revokedCert.getSerialNumber());
+          }
+
+          if (revokedCert.getReason() == CrlReason.REMOVE_FROM_CRL) {
+            numIgnored++;
+          } else {
+            run.add(revokedCert);
+          }
+
+          if (run.size() == runSize || (!revokedCerts.hasNext() && !run.isEmpty())) {
+            Collections.sort(run, SERIAL_COMPARATOR);
+            File runFile = new File(file.getPath() + ".run" + runs.size());
+            runs.add(runFile);
+            writeFile(runFile, crl.getCrlNumber(), run);
+            numEntries += run.size();
+            run.clear();
+          }
+        }
+      } catch (IllegalStateException ex) {
+        // thrown by the iterator if the CRL entry could not be read
+        throw new IOException("could not read CRL entry: " + ex.getMessage(), ex);
+      }
+
+      if (numIgnored > 0) {
+        LOG.warn("ignored {} CRL entries with reason removeFromCRL in non-Delta CRL",
+            numIgnored);
+      }
+
+      // merge the runs
+      if (runs.size() == 1) {
+        Files.move(runs.get(0).toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        merge(runs, crl.getCrlNumber(), file);
+      }
+    } finally {
+      for (File run : runs) {
+        if (run.exists() && !run.delete()) {
+          LOG.warn("could not delete file {}", run.getPath());
+        }
+      }
+    }
+
+    LOG.info("wrote snapshot of {} revoked certificates ({} runs) in {} ms", numEntries,
+        runs.size(), System.currentTimeMillis() - start);
+    return numEntries;
+  } // method write
+
+  /**
+   * Checks whether two entries of the same serial number have the same revocation
+   * information.
+   */
+  public static boolean sameRevocation(RevokedCert a, RevokedCert b) {
+    return a.getReason() == b.getReason()
+        && toSeconds(a.getRevocationDate()) == toSeconds(b.getRevocationDate())
+        && toSeconds(a.getInvalidityDate()) == toSeconds(b.getInvalidityDate());
+  }
+
+  private static void merge(List<File> runs, BigInteger crlNumber, File file)
+      throws IOException {
+    PriorityQueue<RunHead> heads = new PriorityQueue<>(Math.max(1, runs.size()),
+        new Comparator<RunHead>() {
+          @Override
+          public int compare(RunHead o1, RunHead o2) {
+            return SERIAL_COMPARATOR.compare(o1.entry, o2.entry);
+          }
+        });
+
+    List<Reader> readers = new ArrayList<>(runs.size());
+    try (BufferedWriter writer = newWriter(file, crlNumber)) {
+      for (File run : runs) {
+        Reader reader = new Reader(run);
+        readers.add(reader);
+        RevokedCert entry = reader.next();
+        if (entry != null) {
+          heads.add(new RunHead(reader, entry));
+        }
+      }
+
+      while (!heads.isEmpty()) {
+        RunHead head = heads.poll();
+        writeLine(writer, head.entry);
+        head.entry = head.reader.next();
+        if (head.entry != null) {
+          heads.add(head);
+        }
+      }
+    } finally {
+      for (Reader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close reader: {}", ex.getMessage());
+        }
+      }
+    }
+  } // method merge
+
+  private static void writeFile(File file, BigInteger crlNumber, List<RevokedCert> entries)
+      throws IOException {
+    try (BufferedWriter writer = newWriter(file, crlNumber)) {
+      for (RevokedCert entry : entries) {
+        writeLine(writer, entry);
+      }
+    }
+  }
+
+  private static BufferedWriter newWriter(File file, BigInteger crlNumber) throws IOException {
+    BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    writer.write(CRLNUMBER_PREFIX);
+    writer.write(crlNumber.toString());
+    writer.newLine();
+    return writer;
+  }
+
+  private static void writeLine(BufferedWriter writer, RevokedCert entry) throws IOException {
+    writer.write(entry.getSerialNumber().toString(16));
+    writer.write(';');
+    writer.write(Long.toString(toSeconds(entry.getRevocationDate())));
+    writer.write(';');
+    writer.write(Integer.toString(entry.getReason().getCode()));
+    writer.write(';');
+    writer.write(Long.toString(toSeconds(entry.getInvalidityDate())));
+    writer.newLine();
+  }
+
+  private static RevokedCert parseLine(String line) throws IOException {
+    List<String> tokens = StringUtil.split(line, ";");
+    if (tokens.size() != 4) {
+      throw new IOException("invalid line in snapshot: " + line);
+    }
+
+    try {
+      BigInteger serialNumber = new BigInteger(tokens.get(0), 16);
+      Date revocationDate = new Date(Long.parseLong(tokens.get(1)) * 1000);
+      CrlReason reason = CrlReason.forReasonCode(Integer.parseInt(tokens.get(2)));
+      long rit = Long.parseLong(tokens.get(3));
+      Date invalidityDate = (rit == 0) ? null : new Date(rit * 1000);
+      return new RevokedCert(serialNumber, revocationDate, reason, invalidityDate, null);
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("invalid line in snapshot: " + line, ex);
+    }
+  }
+
+  private static long toSeconds(Date date) {
+    return (date == null) ? 0 : date.getTime() / 1000;
+  }
+
+}
@@ -18,6 +18,7 @@
 package org.xipki.ocsp.server.store.crl;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FilenameFilter;
@@ -25,15 +26,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.file.Files;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.SignatureException;
-import java.security.cert.CRLException;
+import java.nio.file.StandardCopyOption;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -41,26 +36,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
-import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
-import javax.security.auth.x500.X500Principal;
-
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.DERGeneralizedTime;
 import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
@@ -69,7 +61,9 @@ import org.bouncycastle.asn1.ocsp.CrlID;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
@@ -77,6 +71,9 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.server.store.DbCertStatusStore;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
+import org.xipki.security.CrlStreamParser;
+import org.xipki.security.CrlStreamParser.RevokedCert;
+import org.xipki.security.CrlStreamParser.RevokedCertsIterator;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.ObjectIdentifiers;
 import org.xipki.security.util.X509Util;
@@ -93,9 +90,9 @@ import org.xipki.util.StringUtil;
  * @since 2.2.0
  */
 
-class ImportCrl {
+public class ImportCrl implements Closeable {
 
-  static class ImportCrlException extends Exception {
+  public static class ImportCrlException extends Exception {
 
     private static final long serialVersionUID = 1L;
 
@@ -140,11 +137,38 @@ class ImportCrl {
 
   private static final String CORE_SQL_SELECT_ID_CERT = "ID FROM CERT WHERE IID=? AND SN=?";
 
+  // number of CRL entries written and committed in one batch.
+  private static final int BATCH_SIZE = 1000;
+
+  // number of serial numbers in one query to check the existence of entries.
+  private static final int MAX_SERIALS_PER_QUERY = 100;
+
+  // number of processed CRL entries between two progress logs.
+  private static final int PROGRESS_LOG_INTERVAL = 100000;
+
+  // name of the file, in the CA directory, containing the snapshot of the last imported
+  // full CRL.
+  private static final String SNAPSHOT_FILENAME = "ca.crl.snapshot";
+
+  private static final String SQL_SELECT_IDS_CERT;
+
+  // serializes the creation of new issuers by concurrent imports.
+  private static final Object ISSUER_LOCK = new Object();
+
+  static {
+    StringBuilder sb = new StringBuilder(60 + 2 * MAX_SERIALS_PER_QUERY);
+    sb.append("SELECT ID,SN FROM CERT WHERE IID=? AND SN IN (?");
+    for (int i = 1; i < MAX_SERIALS_PER_QUERY; i++) {
+      sb.append(",?");
+    }
+    SQL_SELECT_IDS_CERT = sb.append(")").toString();
+  }
+
   private final String basedir;
 
   private final String sqlSelectIdCert;
 
-  private final X509CRL crl;
+  private final CrlStreamParser crl;
 
   private final X509Certificate caCert;
 
@@ -161,26 +185,54 @@ class ImportCrl {
 
   private final X500Name caSubject;
 
-  private final X500Principal x500PrincipalCaSubject;
-
   private final byte[] caSpki;
 
   private final CertRevocationInfo caRevInfo;
 
   private final HashAlgo certhashAlgo;
 
+  // whether the column ISSUER.CERT is binary, otherwise Base64 encoded text.
+  private final boolean binaryCert;
+
+  // whether the column CERT.HASH is binary, otherwise Base64 encoded text.
+  private final boolean binaryCertHash;
+
+  private final AtomicLong certIdCounter;
+
+  private final X509Certificate crlSignerCert;
+
+  // the CRL information in the database before this import.
+  private CrlInfo previousCrlInfo;
+
+  private long numRevokedCerts;
+
+  private long numCerts;
+
   private PreparedStatement psDeleteCert;
   private PreparedStatement psInsertCert;
   private PreparedStatement psInsertCertRev;
   private PreparedStatement psSelectIdCert;
+  private PreparedStatement psSelectIdsCert;
   private PreparedStatement psUpdateCert;
   private PreparedStatement psUpdateCertRev;
 
-  public ImportCrl(DataSourceWrapper datasource, String basedir)
+  /**
+   * Constructor. Only the header of the CRL is parsed, the signature is verified in
+   * {@link #importCrlToOcspDb()}.
+   * @param datasource the datasource of the OCSP database.
+   * @param basedir the directory containing the CRL resources.
+   * @param certIdCounter the maximal ID in the table CERT, shared by all imports into the
+   *          same database. It is raised to the maximal ID in the database at the start of
+   *          each import.
+   */
+  public ImportCrl(DataSourceWrapper datasource, String basedir, AtomicLong certIdCounter)
       throws ImportCrlException, DataAccessException, IOException {
     this.datasource = Args.notNull(datasource, "datasource");
     this.basedir = Args.notNull(basedir, "basedir");
+    this.certIdCounter = Args.notNull(certIdCounter, "certIdCounter");
     this.certhashAlgo = DbCertStatusStore.getCertHashAlgo(datasource);
+    this.binaryCert = datasource.isBinaryColumn(null, "ISSUER", "CERT");
+    this.binaryCertHash = datasource.isBinaryColumn(null, "CERT", "HASH");
 
     File caCertFile = new File(basedir, "ca.crt");
     if (!caCertFile.exists()) {
@@ -193,11 +245,8 @@ class ImportCrl {
       throw new ImportCrlException("CRL file " + caCertFile.getPath() + " does not exist");
     }
 
-    LOG.info("UPDATE_CERTSTORE: a newer CRL is available");
-
     this.caCert = parseCert(caCertFile);
-    this.x500PrincipalCaSubject = caCert.getSubjectX500Principal();
-    this.caSubject = X500Name.getInstance(x500PrincipalCaSubject.getEncoded());
+    this.caSubject = X500Name.getInstance(caCert.getSubjectX500Principal().getEncoded());
     try {
       this.caSpki = X509Util.extractSki(caCert);
     } catch (CertificateEncodingException ex) {
@@ -211,96 +260,98 @@ class ImportCrl {
     }
 
     try {
-      this.crl = X509Util.parseCrl(crlFile);
-    } catch (CertificateException | CRLException ex) {
+      // the revoked certificates are not loaded into the memory.
+      this.crl = new CrlStreamParser(crlFile);
+    } catch (IOException | RuntimeException ex) {
       throw new ImportCrlException("could not parse X.509 CRL from file "
           + crlFile + ": " + ex.getMessage(), ex);
     }
 
-    File revFile = new File(basedir, "REVOCATION");
-    CertRevocationInfo caRevInfo = null;
-    if (revFile.exists()) {
-      Properties props = new Properties();
-      InputStream is = Files.newInputStream(revFile.toPath());
-      try {
-        props.load(is);
-      } finally {
-        is.close();
-      }
-
-      String str = props.getProperty(KEY_CA_REVOCATION_TIME);
-      if (StringUtil.isNotBlank(str)) {
-        Date revocationTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
-        Date invalidityTime = null;
+    boolean successful = false;
+    try {
+      File revFile = new File(basedir, "REVOCATION");
+      CertRevocationInfo caRevInfo = null;
+      if (revFile.exists()) {
+        Properties props = new Properties();
+        InputStream is = Files.newInputStream(revFile.toPath());
+        try {
+          props.load(is);
+        } finally {
+          is.close();
+        }
 
-        str = props.getProperty(KEY_CA_INVALIDITY_TIME);
+        String str = props.getProperty(KEY_CA_REVOCATION_TIME);
         if (StringUtil.isNotBlank(str)) {
-          invalidityTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+          Date revocationTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+          Date invalidityTime = null;
+
+          str = props.getProperty(KEY_CA_INVALIDITY_TIME);
+          if (StringUtil.isNotBlank(str)) {
+            invalidityTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+          }
+          caRevInfo = new CertRevocationInfo(CrlReason.UNSPECIFIED, revocationTime, invalidityTime);
         }
-        caRevInfo = new CertRevocationInfo(CrlReason.UNSPECIFIED, revocationTime, invalidityTime);
       }
-    }
 
-    this.caRevInfo = caRevInfo;
+      this.caRevInfo = caRevInfo;
 
-    X500Principal issuer = crl.getIssuerX500Principal();
+      X500Name issuer = crl.getIssuer();
 
-    X509Certificate crlSignerCert;
-    if (x500PrincipalCaSubject.equals(issuer)) {
-      crlSignerCert = caCert;
-    } else {
-      if (issuerCert == null) {
-        throw new IllegalArgumentException("issuerCert may not be null");
-      }
+      X509Certificate crlSignerCert;
+      if (caSubject.equals(issuer)) {
+        crlSignerCert = caCert;
+      } else {
+        if (issuerCert == null) {
+          throw new IllegalArgumentException("issuerCert may not be null");
+        }
 
-      if (!issuerCert.getSubjectX500Principal().equals(issuer)) {
-        throw new IllegalArgumentException("issuerCert and CRL do not match");
+        if (!X500Name.getInstance(issuerCert.getSubjectX500Principal().getEncoded())
+            .equals(issuer)) {
+          throw new IllegalArgumentException("issuerCert and CRL do not match");
+        }
+        crlSignerCert = issuerCert;
       }
-      crlSignerCert = issuerCert;
-    }
+      this.crlSignerCert = crlSignerCert;
 
-    // Verify the signature
-    try {
-      crl.verify(crlSignerCert.getPublicKey());
-    } catch (SignatureException | NoSuchProviderException | InvalidKeyException | CRLException
-        | NoSuchAlgorithmException ex) {
-      throw new ImportCrlException("could not verify signature of CRL", ex);
-    }
-
-    byte[] octetString = crl.getExtensionValue(Extension.cRLNumber.getId());
-    if (octetString == null) {
-      throw new IllegalArgumentException("CRL without CRLNumber is not supported");
-    }
-    ASN1Integer asn1CrlNumber
-        = ASN1Integer.getInstance(DEROctetString.getInstance(octetString).getOctets());
-    this.crlNumber = asn1CrlNumber.getPositiveValue();
-
-    octetString = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    this.isDeltaCrl = (octetString != null);
-    if (this.isDeltaCrl) {
-      LOG.info("The CRL is a DeltaCRL");
-      byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
-      this.baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
-    } else {
-      LOG.info("The CRL is a full CRL");
-      this.baseCrlNumber = null;
-    }
+      this.crlNumber = crl.getCrlNumber();
+      if (crlNumber == null) {
+        throw new IllegalArgumentException("CRL without CRLNumber is not supported");
+      }
 
-    // Construct CrlID
-    ASN1EncodableVector vec = new ASN1EncodableVector();
-    File urlFile = new File(basedir, "crl.url");
-    if (urlFile.exists()) {
-      String crlUrl = StringUtil.toUtf8String(IoUtil.read(urlFile)).trim();
-      if (StringUtil.isNotBlank(crlUrl)) {
-        vec.add(new DERTaggedObject(true, 0, new DERIA5String(crlUrl, true)));
+      this.baseCrlNumber = crl.getBaseCrlNumber();
+      this.isDeltaCrl = (baseCrlNumber != null);
+      LOG.info("The CRL is a {}", isDeltaCrl ? "DeltaCRL" : "full CRL");
+
+      // Construct CrlID
+      ASN1EncodableVector vec = new ASN1EncodableVector();
+      File urlFile = new File(basedir, "crl.url");
+      if (urlFile.exists()) {
+        String crlUrl = StringUtil.toUtf8String(IoUtil.read(urlFile)).trim();
+        if (StringUtil.isNotBlank(crlUrl)) {
+          vec.add(new DERTaggedObject(true, 0, new DERIA5String(crlUrl, true)));
+        }
       }
-    }
 
-    vec.add(new DERTaggedObject(true, 1, asn1CrlNumber));
-    vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(crl.getThisUpdate())));
-    this.crlId = CrlID.getInstance(new DERSequence(vec));
+      vec.add(new DERTaggedObject(true, 1, new ASN1Integer(crlNumber)));
+      vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(crl.getThisUpdate())));
+      this.crlId = CrlID.getInstance(new DERSequence(vec));
 
-    this.sqlSelectIdCert = datasource.buildSelectFirstSql(1, CORE_SQL_SELECT_ID_CERT);
+      this.sqlSelectIdCert = datasource.buildSelectFirstSql(1, CORE_SQL_SELECT_ID_CERT);
+      successful = true;
+    } finally {
+      if (!successful) {
+        // the CRL may be converted to a temporary file.
+        crl.close();
+      }
+    }
+  } // constructor
+
+  /**
+   * Releases the resources of the CRL, e.g. the temporary DER encoded file.
+   */
+  @Override
+  public void close() {
+    crl.close();
   }
 
   public boolean importCrlToOcspDb() {
@@ -310,6 +361,21 @@ class ImportCrl {
 
       // CHECKSTYLE:SKIP
       Date startTime = new Date();
+
+      // Verify the signature
+      boolean sigValid;
+      try {
+        sigValid = crl.verifySignature(crlSignerCert.getPublicKey());
+      } catch (IOException | OperatorCreationException ex) {
+        throw new ImportCrlException("could not verify signature of CRL", ex);
+      }
+
+      if (!sigValid) {
+        throw new ImportCrlException("invalid signature of CRL");
+      }
+      LOG.info("verified signature of CRL in {} ms",
+          System.currentTimeMillis() - startTime.getTime());
+
       // CHECKSTYLE:SKIP
       int caId = importCa(conn);
 
@@ -317,21 +383,24 @@ class ImportCrl {
       psInsertCert = datasource.prepareStatement(conn, SQL_INSERT_CERT);
       psInsertCertRev = datasource.prepareStatement(conn, SQL_INSERT_CERT_REV);
       psSelectIdCert = datasource.prepareStatement(conn, sqlSelectIdCert);
+      psSelectIdsCert = datasource.prepareStatement(conn, SQL_SELECT_IDS_CERT);
       psUpdateCert = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
       psUpdateCertRev = datasource.prepareStatement(conn, SQL_UPDATE_CERT_REV);
 
-      importEntries(conn, caId);
-      if (!isDeltaCrl) {
-        deleteEntriesNotUpdatedSince(conn, startTime);
-      }
+      importEntries(conn, caId, startTime);
 
+      LOG.info("imported CRL {} in {} ms", crlNumber,
+          System.currentTimeMillis() - startTime.getTime());
       return true;
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "could not import CRL to OCSP database");
+      return false;
+    } finally {
       releaseResources(psDeleteCert, null);
       releaseResources(psInsertCert, null);
       releaseResources(psInsertCertRev, null);
       releaseResources(psSelectIdCert, null);
+      releaseResources(psSelectIdsCert, null);
       releaseResources(psUpdateCert, null);
       releaseResources(psUpdateCertRev, null);
 
@@ -339,10 +408,61 @@ class ImportCrl {
         datasource.returnConnection(conn);
       }
     }
+  }
+
+  public BigInteger getCrlNumber() {
+    return crlNumber;
+  }
 
-    return false;
+  /**
+   * Gets the number of revoked certificates processed by {@link #importCrlToOcspDb()}.
+   * @return the number of revoked certificates.
+   */
+  public long getNumRevokedCerts() {
+    return numRevokedCerts;
   }
 
+  /**
+   * Gets the number of certificates processed by {@link #importCrlToOcspDb()}.
+   * @return the number of certificates.
+   */
+  public long getNumCerts() {
+    return numCerts;
+  }
+
+  /**
+   * Checks whether the CRL is newer than the one imported in the database.
+   * @return whether the CRL is newer, or no CRL of the CA has been imported.
+   * @throws DataAccessException if database error occurs.
+   * @throws ImportCrlException if the CRL information in the database is invalid.
+   */
+  public boolean isCrlNewer() throws DataAccessException, ImportCrlException {
+    String fpCaCert;
+    try {
+      fpCaCert = HashAlgo.SHA1.base64Hash(caCert.getEncoded());
+    } catch (CertificateEncodingException ex) {
+      throw new ImportCrlException("could not encode CA certificate");
+    }
+
+    final String sql = "SELECT CRL_INFO FROM ISSUER WHERE S1C=?";
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      ps.setString(1, fpCaCert);
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return true;
+      }
+
+      String str = rs.getString("CRL_INFO");
+      return str == null || crlNumber.compareTo(new CrlInfo(str).getCrlNumber()) > 0;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method isCrlNewer
+
   private int importCa(Connection conn) throws DataAccessException, ImportCrlException {
     byte[] encodedCaCert;
     try {
@@ -371,6 +491,7 @@ class ImportCrl {
             "RequestIssuer for the given CA of CRL exists, but not imported from CRL");
         }
         crlInfo = new CrlInfo(str);
+        previousCrlInfo = new CrlInfo(str);
       }
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
@@ -387,7 +508,7 @@ class ImportCrl {
         crlInfo = new CrlInfo(crlNumber, null, crl.getThisUpdate(), crl.getNextUpdate(), crlId);
       }
     } else {
-      if (crlNumber.compareTo(crlInfo.getCrlNumber()) <= 0) {
+      if (crlNumber.compareTo(crlInfo.getCrlNumber()) < 0) {
         // It is permitted if the CRL number equals to the one in Database,
         // which enables the resume of importing process if error occurred.
         throw new ImportCrlException("Given CRL is not newer than existing CRL.");
@@ -411,11 +532,21 @@ class ImportCrl {
       crlInfo.setNextUpdate(crl.getNextUpdate());
     }
 
-    ps = null;
-    rs = null;
-    sql = null;
+    if (addNew) {
+      synchronized (ISSUER_LOCK) {
+        return updateIssuer(conn, null, fpCaCert, encodedCaCert, crlInfo);
+      }
+    } else {
+      return updateIssuer(conn, issuerId, fpCaCert, encodedCaCert, crlInfo);
+    }
+  } // method importCa
+
+  private int updateIssuer(Connection conn, Integer issuerId, String fpCaCert,
+      byte[] encodedCaCert, CrlInfo crlInfo) throws DataAccessException, ImportCrlException {
+    final boolean addNew = (issuerId == null);
+    PreparedStatement ps = null;
+    String sql = null;
     try {
-      // issuer exists
       int offset = 1;
       if (addNew) {
         int maxId = (int) datasource.getMax(conn, "ISSUER", "ID");
@@ -431,7 +562,11 @@ class ImportCrl {
         ps.setLong(offset++, caCert.getNotBefore().getTime() / 1000);
         ps.setLong(offset++, caCert.getNotAfter().getTime() / 1000);
         ps.setString(offset++, fpCaCert);
-        ps.setString(offset++, Base64.encodeToString(encodedCaCert));
+        if (binaryCert) {
+          ps.setBytes(offset++, encodedCaCert);
+        } else {
+          ps.setString(offset++, Base64.encodeToString(encodedCaCert));
+        }
       } else {
         sql = "UPDATE ISSUER SET REV_INFO=?,CRL_INFO=? WHERE ID=?";
         ps = datasource.prepareStatement(conn, sql);
@@ -455,106 +590,369 @@ class ImportCrl {
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
-      releaseResources(ps, rs);
+      releaseResources(ps, null);
     }
-  }
+  } // method updateIssuer
+
+  private void importEntries(Connection conn, int caId, Date startTime)
+      throws DataAccessException, ImportCrlException, IOException {
+    AtomicLong maxId = certIdCounter;
+    // the table CERT may have been changed by others since the last import.
+    long dbMaxId = datasource.getMax(conn, "CERT", "ID");
+    while (true) {
+      long id = maxId.get();
+      if (id >= dbMaxId || maxId.compareAndSet(id, dbMaxId)) {
+        break;
+      }
+    }
+    File snapshotFile = new File(basedir, SNAPSHOT_FILENAME);
 
-  private void importEntries(Connection conn, int caId)
-      throws DataAccessException, ImportCrlException {
-    AtomicLong maxId = new AtomicLong(datasource.getMax(conn, "CERT", "ID"));
+    if (isDeltaCrl) {
+      // the snapshot of the full CRL does not reflect the database any more.
+      deleteFile(snapshotFile);
+      numRevokedCerts = importRevokedCerts(conn, caId, maxId);
+      importCerts(caId, maxId, startTime);
+      return;
+    }
+
+    File newSnapshotFile = new File(basedir, SNAPSHOT_FILENAME + ".new");
+    boolean snapshotWritten;
+    try {
+      CrlSnapshot.write(crl, caSubject, newSnapshotFile);
+      snapshotWritten = true;
+    } catch (IOException ex) {
+      LogUtil.warn(LOG, ex, "could not write the snapshot of CRL, import the full CRL");
+      deleteFile(newSnapshotFile);
+      snapshotWritten = false;
+    }
+
+    // The difference to the last full CRL can only be applied if the database contains
+    // exactly the entries of the last snapshot.
+    boolean incremental = false;
+    if (snapshotWritten && previousCrlInfo != null
+        && previousCrlInfo.getBaseCrlNumber() == null) {
+      BigInteger snapshotCrlNumber = CrlSnapshot.readCrlNumber(snapshotFile);
+      incremental = previousCrlInfo.getCrlNumber().equals(snapshotCrlNumber);
+    }
+
+    if (!incremental) {
+      deleteFile(snapshotFile);
+    }
 
     // import the revoked information
-    Set<? extends X509CRLEntry> revokedCertList = crl.getRevokedCertificates();
-    if (revokedCertList != null) {
-      for (X509CRLEntry c : revokedCertList) {
-        X500Principal issuer = c.getCertificateIssuer();
-        BigInteger serial = c.getSerialNumber();
-
-        if (issuer != null) {
-          if (!x500PrincipalCaSubject.equals(issuer)) {
-            throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
-          }
-        }
+    numRevokedCerts = incremental
+        ? importRevokedCerts(conn, caId, maxId, snapshotFile, newSnapshotFile)
+        : importRevokedCerts(conn, caId, maxId);
 
-        Date rt = c.getRevocationDate();
-        Date rit = null;
-        byte[] extnValue = c.getExtensionValue(Extension.invalidityDate.getId());
-        if (extnValue != null) {
-          extnValue = extractCoreValue(extnValue);
-          ASN1GeneralizedTime genTime = DERGeneralizedTime.getInstance(extnValue);
-          try {
-            rit = genTime.getDate();
-          } catch (ParseException ex) {
-            throw new ImportCrlException(ex.getMessage(), ex);
+    importCerts(caId, maxId, startTime);
+
+    // in the incremental mode, the unchanged revoked certificates are not updated.
+    deleteEntriesNotUpdatedSince(conn, caId, startTime, incremental);
+
+    if (snapshotWritten) {
+      Files.move(newSnapshotFile.toPath(), snapshotFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+  } // method importEntries
+
+  private void importCerts(int caId, AtomicLong maxId, Date startTime)
+      throws DataAccessException, ImportCrlException {
+    long start = System.currentTimeMillis();
+    numCerts = importCerts(caId, maxId);
+    if (numCerts > 0) {
+      LOG.info("imported {} certificates in {} ms", numCerts,
+          System.currentTimeMillis() - start);
+    }
+  } // method importCerts
+
+  /**
+   * Imports only the difference between the snapshot of the last imported full CRL and the
+   * snapshot of the current CRL. Both snapshots are sorted by the serial number, so that
+   * they are compared in one pass.
+   */
+  private long importRevokedCerts(Connection conn, int caId, AtomicLong maxId,
+      File oldSnapshotFile, File newSnapshotFile)
+      throws DataAccessException, ImportCrlException, IOException {
+    final long start = System.currentTimeMillis();
+    LOG.info("importing the difference to the CRL {}", previousCrlInfo.getCrlNumber());
+
+    // processed, inserted, updated, deleted
+    long[] counts = new long[4];
+    long numUnchanged = 0;
+    long numNew = 0;
+
+    boolean autoCommit;
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+    } catch (SQLException ex) {
+      throw datasource.translate(null, ex);
+    }
+
+    boolean succ = false;
+    try (CrlSnapshot.Reader oldReader = new CrlSnapshot.Reader(oldSnapshotFile);
+        CrlSnapshot.Reader newReader = new CrlSnapshot.Reader(newSnapshotFile)) {
+      List<RevokedCert> upserts = new ArrayList<>(BATCH_SIZE);
+      List<BigInteger> deletes = new ArrayList<>(BATCH_SIZE);
+
+      RevokedCert oldEntry = oldReader.next();
+      RevokedCert newEntry = newReader.next();
+      while (oldEntry != null || newEntry != null) {
+        int cmp = (oldEntry == null) ? 1 : (newEntry == null) ? -1
+            : oldEntry.getSerialNumber().compareTo(newEntry.getSerialNumber());
+        if (cmp < 0) {
+          // not contained in the current CRL any more
+          deletes.add(oldEntry.getSerialNumber());
+          oldEntry = oldReader.next();
+        } else {
+          numNew++;
+          if (cmp > 0 || !CrlSnapshot.sameRevocation(oldEntry, newEntry)) {
+            upserts.add(newEntry);
+          } else {
+            numUnchanged++;
           }
 
-          if (rt.equals(rit)) {
-            rit = null;
+          if (cmp == 0) {
+            oldEntry = oldReader.next();
           }
+          newEntry = newReader.next();
         }
 
-        CrlReason reason = CrlReason.fromReason(c.getRevocationReason());
+        if (upserts.size() == BATCH_SIZE) {
+          importRevokedCerts(conn, caId, maxId, upserts, counts);
+          upserts.clear();
+        }
 
-        String sql = null;
-        try {
-          if (reason == CrlReason.REMOVE_FROM_CRL) {
-            if (isDeltaCrl) {
-              // delete the entry
-              sql = SQL_DELETE_CERT;
-              psDeleteCert.setInt(1, caId);
-              psDeleteCert.setString(2, serial.toString(16));
-              psDeleteCert.executeUpdate();
-            } else {
-              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
-            }
-            continue;
-          }
+        if (deletes.size() == BATCH_SIZE) {
+          deleteRevokedCerts(conn, caId, deletes);
+          counts[3] += deletes.size();
+          deletes.clear();
+        }
+      }
 
-          Long id = getId(caId, serial);
-          PreparedStatement ps;
-          int offset = 1;
-
-          if (id == null) {
-            sql = SQL_INSERT_CERT_REV;
-            id = maxId.incrementAndGet();
-            ps = psInsertCertRev;
-            ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
-          } else {
-            sql = SQL_UPDATE_CERT_REV;
-            ps = psUpdateCertRev;
+      if (!upserts.isEmpty()) {
+        importRevokedCerts(conn, caId, maxId, upserts, counts);
+      }
+
+      if (!deletes.isEmpty()) {
+        deleteRevokedCerts(conn, caId, deletes);
+        counts[3] += deletes.size();
+      }
+
+      succ = true;
+    } finally {
+      try {
+        if (!succ) {
+          conn.rollback();
+        }
+        conn.setAutoCommit(autoCommit);
+      } catch (SQLException ex) {
+        LogUtil.error(LOG, datasource.translate(null, ex), "could not recover AutoCommit");
+      }
+    }
+
+    LOG.info("imported difference of {} revoked certificates ({} inserted, {} updated, "
+        + "{} deleted, {} unchanged) in {} ms", numNew, counts[1], counts[2], counts[3],
+        numUnchanged, System.currentTimeMillis() - start);
+    return numNew;
+  } // method importRevokedCerts
+
+  private void deleteRevokedCerts(Connection conn, int caId, List<BigInteger> serials)
+      throws DataAccessException {
+    try {
+      for (BigInteger serial : serials) {
+        psDeleteCert.setInt(1, caId);
+        psDeleteCert.setString(2, serial.toString(16));
+        psDeleteCert.addBatch();
+      }
+      psDeleteCert.executeBatch();
+      conn.commit();
+    } catch (SQLException ex) {
+      throw datasource.translate(SQL_DELETE_CERT, ex);
+    }
+  } // method deleteRevokedCerts
+
+  /**
+   * Imports the revoked certificates. The entries are read from the CRL file and written
+   * to the database in batches, each batch is committed separately.
+   */
+  private long importRevokedCerts(Connection conn, int caId, AtomicLong maxId)
+      throws DataAccessException, ImportCrlException, IOException {
+    final long start = System.currentTimeMillis();
+    LOG.info("importing revoked certificates");
+
+    // processed, inserted, updated, deleted
+    long[] counts = new long[4];
+    long nextProgressLog = PROGRESS_LOG_INTERVAL;
+
+    boolean autoCommit;
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+    } catch (SQLException ex) {
+      throw datasource.translate(null, ex);
+    }
+
+    boolean succ = false;
+    try (RevokedCertsIterator revokedCerts = crl.revokedCertificates()) {
+      List<RevokedCert> batch = new ArrayList<>(BATCH_SIZE);
+      while (revokedCerts.hasNext()) {
+        RevokedCert revokedCert = revokedCerts.next();
+        X500Name issuer = revokedCert.getCertificateIssuer();
+        if (issuer != null && !caSubject.equals(issuer)) {
+          throw new ImportCrlException("invalid CRLEntry for certificate number "
+              + revokedCert.getSerialNumber());
+        }
+
+        batch.add(revokedCert);
+        if (batch.size() == BATCH_SIZE || !revokedCerts.hasNext()) {
+          importRevokedCerts(conn, caId, maxId, batch, counts);
+          batch.clear();
+
+          if (counts[0] >= nextProgressLog) {
+            LOG.info("imported {} revoked certificates in {} ms", counts[0],
+                System.currentTimeMillis() - start);
+            nextProgressLog += PROGRESS_LOG_INTERVAL;
           }
+        }
+      }
+
+      succ = true;
+    } catch (IllegalStateException ex) {
+      // thrown by the iterator if the CRL entry could not be read
+      throw new ImportCrlException("could not read CRL entry: " + ex.getMessage(), ex);
+    } finally {
+      try {
+        if (!succ) {
+          conn.rollback();
+        }
+        conn.setAutoCommit(autoCommit);
+      } catch (SQLException ex) {
+        LogUtil.error(LOG, datasource.translate(null, ex), "could not recover AutoCommit");
+      }
+    }
+
+    LOG.info("imported {} revoked certificates ({} inserted, {} updated, {} deleted) in {} ms",
+        counts[0], counts[1], counts[2], counts[3], System.currentTimeMillis() - start);
+    return counts[0];
+  } // method importRevokedCerts
+
+  private void importRevokedCerts(Connection conn, int caId, AtomicLong maxId,
+      List<RevokedCert> revokedCerts, long[] counts) throws DataAccessException {
+    List<BigInteger> serials = new ArrayList<>(revokedCerts.size());
+    for (RevokedCert revokedCert : revokedCerts) {
+      if (revokedCert.getReason() != CrlReason.REMOVE_FROM_CRL) {
+        serials.add(revokedCert.getSerialNumber());
+      }
+    }
+
+    Map<BigInteger, Long> ids = getIds(caId, serials);
+
+    boolean deleteCert = false;
+    boolean insertCertRev = false;
+    boolean updateCertRev = false;
 
-          ps.setInt(offset++, 1);
-          ps.setInt(offset++, reason.getCode());
-          ps.setLong(offset++, rt.getTime() / 1000);
-          if (rit != null) {
-            ps.setLong(offset++, rit.getTime() / 1000);
+    String sql = null;
+    try {
+      final long lastUpdate = System.currentTimeMillis() / 1000;
+
+      for (RevokedCert revokedCert : revokedCerts) {
+        counts[0]++;
+        BigInteger serial = revokedCert.getSerialNumber();
+        CrlReason reason = revokedCert.getReason();
+
+        if (reason == CrlReason.REMOVE_FROM_CRL) {
+          if (isDeltaCrl) {
+            // delete the entry
+            sql = SQL_DELETE_CERT;
+            psDeleteCert.setInt(1, caId);
+            psDeleteCert.setString(2, serial.toString(16));
+            psDeleteCert.addBatch();
+            deleteCert = true;
+            counts[3]++;
           } else {
-            ps.setNull(offset++, Types.BIGINT);
+            LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
           }
-          ps.setLong(offset++, System.currentTimeMillis() / 1000);
+          continue;
+        }
 
-          if (ps == psUpdateCertRev) {
-            ps.setLong(offset++, id);
-          }
+        Date rt = revokedCert.getRevocationDate();
+        Date rit = revokedCert.getInvalidityDate();
+        if (rt.equals(rit)) {
+          rit = null;
+        }
 
-          ps.executeUpdate();
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
+        Long id = ids.get(serial);
+        PreparedStatement ps;
+        int offset = 1;
+
+        if (id == null) {
+          sql = SQL_INSERT_CERT_REV;
+          id = maxId.incrementAndGet();
+          // the same serial number in this batch will be updated.
+          ids.put(serial, id);
+          ps = psInsertCertRev;
+          ps.setLong(offset++, id);
+          ps.setInt(offset++, caId);
+          ps.setString(offset++, serial.toString(16));
+          insertCertRev = true;
+          counts[1]++;
+        } else {
+          sql = SQL_UPDATE_CERT_REV;
+          ps = psUpdateCertRev;
+          updateCertRev = true;
+          counts[2]++;
         }
+
+        ps.setInt(offset++, 1);
+        ps.setInt(offset++, reason.getCode());
+        ps.setLong(offset++, rt.getTime() / 1000);
+        if (rit != null) {
+          ps.setLong(offset++, rit.getTime() / 1000);
+        } else {
+          ps.setNull(offset++, Types.BIGINT);
+        }
+        ps.setLong(offset++, lastUpdate);
+
+        if (ps == psUpdateCertRev) {
+          ps.setLong(offset++, id);
+        }
+
+        ps.addBatch();
+      }
+
+      if (deleteCert) {
+        sql = SQL_DELETE_CERT;
+        psDeleteCert.executeBatch();
+      }
+
+      if (insertCertRev) {
+        sql = SQL_INSERT_CERT_REV;
+        psInsertCertRev.executeBatch();
       }
+
+      if (updateCertRev) {
+        sql = SQL_UPDATE_CERT_REV;
+        psUpdateCertRev.executeBatch();
+      }
+
+      sql = null;
+      conn.commit();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
     }
+  } // method importRevokedCerts
 
-    // import the certificates
+  private int importCerts(int caId, AtomicLong maxId)
+      throws DataAccessException, ImportCrlException {
+    int numCerts = 0;
 
     // extract the certificate
-    byte[] extnValue =
-        crl.getExtensionValue(ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset.getId());
-    if (extnValue != null) {
-      extnValue = extractCoreValue(extnValue);
-      ASN1Set asn1Set = DERSet.getInstance(extnValue);
+    Extensions crlExtensions = crl.getCrlExtensions();
+    Extension certsetExtn = (crlExtensions == null) ? null
+        : crlExtensions.getExtension(ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset);
+    if (certsetExtn != null) {
+      ASN1Set asn1Set = DERSet.getInstance(certsetExtn.getExtnValue().getOctets());
       final int n = asn1Set.size();
 
       for (int i = 0; i < n; i++) {
@@ -600,6 +998,7 @@ class ImportCrl {
         String certLogId = "(issuer='" + cert.getIssuer()
             + "', serialNumber=" + cert.getSerialNumber() + ")";
         addCertificate(maxId, caId, cert, profileName, certLogId);
+        numCerts++;
       }
     } else {
       // cert dirs
@@ -607,17 +1006,17 @@ class ImportCrl {
 
       if (!certsDir.exists()) {
         LOG.warn("the folder {} does not exist, ignore it", certsDir.getPath());
-        return;
+        return numCerts;
       }
 
       if (!certsDir.isDirectory()) {
         LOG.warn("the path {} does not point to a folder, ignore it", certsDir.getPath());
-        return;
+        return numCerts;
       }
 
       if (!certsDir.canRead()) {
         LOG.warn("the folder {} may not be read, ignore it", certsDir.getPath());
-        return;
+        return numCerts;
       }
 
       // import certificates
@@ -640,6 +1039,7 @@ class ImportCrl {
 
           String certLogId = "(file " + certFile.getName() + ")";
           addCertificate(maxId, caId, cert, null, certLogId);
+          numCerts++;
         }
       }
 
@@ -658,6 +1058,7 @@ class ImportCrl {
             while ((line = reader.readLine()) != null) {
               BigInteger serialNumber = new BigInteger(line.trim(), 16);
               addCertificateBySerialNumber(maxId, caId, serialNumber);
+              numCerts++;
             }
           } catch (IOException ex) {
             LOG.warn("could not import certificates by serial numbers from file {}, ignore it",
@@ -668,11 +1069,8 @@ class ImportCrl {
       }
     }
 
-  }
-
-  private static byte[] extractCoreValue(byte[] encodedExtensionValue) {
-    return ASN1OctetString.getInstance(encodedExtensionValue).getOctets();
-  }
+    return numCerts;
+  } // method importCerts
 
   private static X509Certificate parseCert(File certFile) throws ImportCrlException {
     try {
@@ -700,6 +1098,44 @@ class ImportCrl {
     }
   }
 
+  /**
+   * Gets the IDs of the given serial numbers of the CA in the table CERT.
+   * @return map of serial number to ID, contains only the existing entries.
+   */
+  private Map<BigInteger, Long> getIds(int caId, List<BigInteger> serialNumbers)
+      throws DataAccessException {
+    Map<BigInteger, Long> ids = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
+    final int size = serialNumbers.size();
+    for (int from = 0; from < size; from += MAX_SERIALS_PER_QUERY) {
+      int to = Math.min(size, from + MAX_SERIALS_PER_QUERY);
+      ResultSet rs = null;
+      try {
+        int idx = 1;
+        psSelectIdsCert.setInt(idx++, caId);
+        for (int i = from; i < to; i++) {
+          psSelectIdsCert.setString(idx++, serialNumbers.get(i).toString(16));
+        }
+
+        // fill the remaining parameters with the last serial number
+        String lastSerial = serialNumbers.get(to - 1).toString(16);
+        for (int i = to - from; i < MAX_SERIALS_PER_QUERY; i++) {
+          psSelectIdsCert.setString(idx++, lastSerial);
+        }
+
+        rs = psSelectIdsCert.executeQuery();
+        while (rs.next()) {
+          ids.put(new BigInteger(rs.getString("SN"), 16), rs.getLong("ID"));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(SQL_SELECT_IDS_CERT, ex);
+      } finally {
+        releaseResources(null, rs);
+      }
+    }
+
+    return ids;
+  } // method getIds
+
   private void addCertificate(AtomicLong maxId, int caId, Certificate cert, String profileName,
       String certLogId) throws DataAccessException, ImportCrlException {
     // not issued by the given issuer
@@ -715,7 +1151,7 @@ class ImportCrl {
     } catch (IOException ex) {
       throw new ImportCrlException("could not encode certificate {}" + certLogId, ex);
     }
-    String b64CertHash = certhashAlgo.base64Hash(encodedCert);
+    byte[] certHash = certhashAlgo.hash(encodedCert);
 
     if (caSpki != null) {
       byte[] aki = null;
@@ -774,7 +1210,11 @@ class ImportCrl {
       ps.setLong(offset++, tbsCert.getStartDate().getDate().getTime() / 1000);
       // not after NAFTER
       ps.setLong(offset++, tbsCert.getEndDate().getDate().getTime() / 1000);
-      ps.setString(offset++, b64CertHash);
+      if (binaryCertHash) {
+        ps.setBytes(offset++, certHash);
+      } else {
+        ps.setString(offset++, Base64.encodeToString(certHash));
+      }
 
       if (sql == SQL_UPDATE_CERT) {
         ps.setLong(offset++, id);
@@ -830,7 +1270,11 @@ class ImportCrl {
       ps.setLong(offset++, 0);
       // not after NAFTER, use Long.MAX_VALUE
       ps.setLong(offset++, Long.MAX_VALUE);
-      ps.setString(offset++, null);
+      if (binaryCertHash) {
+        ps.setBytes(offset++, null);
+      } else {
+        ps.setString(offset++, null);
+      }
 
       if (sql == SQL_UPDATE_CERT) {
         ps.setLong(offset++, id);
@@ -844,16 +1288,29 @@ class ImportCrl {
     LOG.info(" Imported certificate by serial number {}", serialNumber);
   }
 
-  private void deleteEntriesNotUpdatedSince(Connection conn, Date time) throws DataAccessException {
-    // remove the unmodified entries
-    String sql = "DELETE FROM CERT WHERE LUPDATE<" + time.getTime() / 1000;
-    Statement stmt = datasource.createStatement(conn);
+  private void deleteEntriesNotUpdatedSince(Connection conn, int caId, Date time,
+      boolean goodOnly) throws DataAccessException {
+    // remove the unmodified entries of the CA
+    long start = System.currentTimeMillis();
+    final String sql = goodOnly ? "DELETE FROM CERT WHERE IID=? AND REV=0 AND LUPDATE<?"
+        : "DELETE FROM CERT WHERE IID=? AND LUPDATE<?";
+    PreparedStatement ps = datasource.prepareStatement(conn, sql);
     try {
-      stmt.executeUpdate(sql);
+      ps.setInt(1, caId);
+      ps.setLong(2, time.getTime() / 1000);
+      int num = ps.executeUpdate();
+      LOG.info("deleted {} entries not contained in the CRL in {} ms", num,
+          System.currentTimeMillis() - start);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
-      releaseResources(stmt, null);
+      releaseResources(ps, null);
+    }
+  }
+
+  private static void deleteFile(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("could not delete file {}", file.getPath());
     }
   }
 
@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -71,6 +72,39 @@ import com.alibaba.fastjson.JSON;
 
 public class EjbcaCertStatusStore extends OcspStore {
 
+  private static class CertStatusRow {
+
+    // in milliseconds
+    private final long notBefore;
+
+    // in milliseconds
+    private final long notAfter;
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    // in seconds
+    private final long revTime;
+
+    private final String hexCertHash;
+
+    CertStatusRow(ResultSet rs, boolean includeCertHash) throws SQLException {
+      this.notBefore = rs.getLong("notBefore");
+      this.notAfter = rs.getLong("expireDate");
+      this.revoked = rs.getInt("status") == 40;
+      if (revoked) {
+        this.reason = rs.getInt("revocationReason");
+        this.revTime = rs.getLong("revocationDate") / 1000;
+      } else {
+        this.reason = 0;
+        this.revTime = 0;
+      }
+      this.hexCertHash = includeCertHash ? rs.getString("fingerprint") : null;
+    }
+
+  } // class CertStatusRow
+
   private class StoreUpdateService implements Runnable {
 
     @Override
@@ -82,6 +116,8 @@ public class EjbcaCertStatusStore extends OcspStore {
 
   private static final Logger LOG = LoggerFactory.getLogger(EjbcaCertStatusStore.class);
 
+  private static final int MAX_SERIALS_PER_QUERY = 100;
+
   private final HashAlgo certHashAlgo = HashAlgo.SHA1;
 
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
@@ -234,19 +270,8 @@ public class EjbcaCertStatusStore extends OcspStore {
 
       String sql = includeCertHash ? sqlCsWithCertHash : sqlCs;
 
-      Date thisUpdate = new Date();
-      Date nextUpdate = null;
-
+      CertStatusRow row = null;
       ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String hexCertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
@@ -256,115 +281,221 @@ public class EjbcaCertStatusStore extends OcspStore {
         rs = ps.executeQuery();
 
         if (rs.next()) {
-          unknown = false;
-
-          long timeInMs = time.getTime();
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBefore = rs.getLong("notBefore");
-            if (timeInMs < notBefore) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("expireDate");
-            if (timeInMs > notAfterInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore) {
-            if (includeCertHash) {
-              hexCertHash = rs.getString("fingerprint");
-            }
-
-            int status = rs.getInt("status");
-            revoked = status == 40;
-            if (revoked) {
-              reason = rs.getInt("revocationReason");
-              revTime = rs.getLong("revocationDate") / 1000;
-            }
-          }
-        } // end if (rs.next())
+          row = new CertStatusRow(rs, includeCertHash);
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (hexCertHash == null) ? null : Hex.decode(hexCertHash);
-        if (revoked) {
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), null);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
+      return buildCertStatusInfo(time, issuer, row, includeCertHash, inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+
+  } // method getCertStatus0
+
+  @Override
+  protected List<CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    if (serialNumbers.size() < 2) {
+      return super.getCertStatuses0(time, reqIssuer, serialNumbers, includeCertHash,
+          includeRit, inheritCaRevocation);
+    }
+
+    if (includeRit) {
+      throw new OcspStoreException("EJBCA store does not support includeRit");
+    }
+
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    if (initializationFailed) {
+      throw new OcspStoreException("initialization of CertStore failed");
+    }
+
+    List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
+
+    EjbcaIssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      for (int i = 0; i < serialNumbers.size(); i++) {
+        infos.add(null);
+      }
+      return infos;
+    }
+
+    Set<BigInteger> serials = new HashSet<>();
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() == 1) {
+        serials.add(serialNumber);
+      }
+    }
+
+    try {
+      Map<BigInteger, CertStatusRow> rows = new HashMap<>();
+      List<BigInteger> chunk = new ArrayList<>(MAX_SERIALS_PER_QUERY);
+      for (BigInteger serial : serials) {
+        chunk.add(serial);
+        if (chunk.size() == MAX_SERIALS_PER_QUERY) {
+          queryCertStatusRows(issuer.getId(), chunk, includeCertHash, rows);
+          chunk.clear();
         }
       }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+      if (!chunk.isEmpty()) {
+        queryCertStatusRows(issuer.getId(), chunk, includeCertHash, rows);
+      }
 
-          certStatusInfo.setArchiveCutOff(date);
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() != 1) { // non-positive serial number
+          infos.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+        } else {
+          infos.add(buildCertStatusInfo(time, issuer, rows.get(serialNumber), includeCertHash,
+              inheritCaRevocation));
         }
       }
+      return infos;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatuses0
+
+  private void queryCertStatusRows(String issuerId, List<BigInteger> serials,
+      boolean includeCertHash, Map<BigInteger, CertStatusRow> rows)
+      throws DataAccessException {
+    StringBuilder sb = new StringBuilder(180 + 2 * serials.size());
+    sb.append("SELECT serialNumber,");
+    if (includeCertHash) {
+      sb.append("fingerprint,");
+    }
+    sb.append("notBefore,expireDate,status,revocationReason,revocationDate")
+      .append(" FROM CertificateData WHERE cAFingerprint=? AND serialNumber IN (?");
+    for (int i = 1; i < serials.size(); i++) {
+      sb.append(",?");
+    }
+    sb.append(")");
+
+    final String sql = sb.toString();
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(sql);
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+    try {
+      int idx = 1;
+      ps.setString(idx++, issuerId);
+      for (BigInteger serial : serials) {
+        // decimal serial number
+        ps.setString(idx++, serial.toString());
       }
+      rs = ps.executeQuery();
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
+      while (rs.next()) {
+        BigInteger serial = new BigInteger(rs.getString("serialNumber"));
+        rows.put(serial, new CertStatusRow(rs, includeCertHash));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method queryCertStatusRows
+
+  private CertStatusInfo buildCertStatusInfo(Date time, EjbcaIssuerEntry issuer,
+      CertStatusRow row, boolean includeCertHash, boolean inheritCaRevocation) {
+    Date thisUpdate = new Date();
+    Date nextUpdate = null;
+
+    boolean unknown = (row == null);
+    boolean ignore = false;
+
+    if (!unknown) {
+      long timeInMs = time.getTime();
+      if (!ignore && ignoreNotYetValidCert) {
+        if (timeInMs < row.notBefore) {
+          ignore = true;
         }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        if (timeInMs > row.notAfter) {
+          ignore = true;
         }
       }
+    }
+
+    CertStatusInfo certStatusInfo;
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      String hexCertHash = includeCertHash ? row.hexCertHash : null;
+      byte[] certHash = (hexCertHash == null) ? null : Hex.decode(hexCertHash);
+      if (row.revoked) {
+        CertRevocationInfo revInfo = new CertRevocationInfo(row.reason,
+            new Date(row.revTime * 1000), null);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
+      }
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -19,12 +19,11 @@ package org.xipki.ocsp.server.store.ejbca;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.IssuerIndex;
+import org.xipki.security.HashAlgo;
 
 /**
  * TODO.
@@ -34,34 +33,33 @@ import org.xipki.ocsp.api.RequestIssuer;
 
 class EjbcaIssuerStore {
 
-  private final List<EjbcaIssuerEntry> entries;
+  private static final IssuerIndex.EntryAccessor<String, EjbcaIssuerEntry> ACCESSOR =
+      new IssuerIndex.EntryAccessor<String, EjbcaIssuerEntry>() {
 
-  private Set<String> ids;
+        @Override
+        public String getId(EjbcaIssuerEntry entry) {
+          return entry.getId();
+        }
 
-  public EjbcaIssuerStore(Collection<EjbcaIssuerEntry> entries) {
-    this.entries = new ArrayList<>(entries.size());
-    Set<String> idSet = new HashSet<>(entries.size());
-
-    for (EjbcaIssuerEntry entry : entries) {
-      for (EjbcaIssuerEntry existingEntry : this.entries) {
-        if (existingEntry.getId().contentEquals(entry.getId())) {
-          throw new IllegalArgumentException(
-              "issuer with the same id (fingerprint) " + entry.getId() + " already available");
+        @Override
+        public byte[] getEncodedHash(EjbcaIssuerEntry entry, HashAlgo hashAlgo) {
+          return entry.getEncodedHash(hashAlgo);
         }
-      }
-      this.entries.add(entry);
-      idSet.add(entry.getId());
-    }
 
-    this.ids = Collections.unmodifiableSet(idSet);
+      };
+
+  private volatile IssuerIndex<String, EjbcaIssuerEntry> index;
+
+  public EjbcaIssuerStore(Collection<EjbcaIssuerEntry> entries) {
+    this.index = new IssuerIndex<>(ACCESSOR, new ArrayList<>(entries));
   }
 
   public int size() {
-    return ids.size();
+    return index.getIds().size();
   }
 
   public Set<String> getIds() {
-    return ids;
+    return index.getIds();
   }
 
   public String getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -70,30 +68,15 @@ class EjbcaIssuerStore {
   }
 
   public EjbcaIssuerEntry getIssuerForId(String id) {
-    for (EjbcaIssuerEntry entry : entries) {
-      if (entry.getId().contentEquals(id)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.getIssuerForId(id);
   }
 
   public EjbcaIssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (EjbcaIssuerEntry entry : entries) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.getIssuerForFp(reqIssuer);
   }
 
-  public void addIssuer(EjbcaIssuerEntry issuer) {
-    this.entries.add(issuer);
-    Set<String> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(EjbcaIssuerEntry issuer) {
+    this.index = index.add(issuer);
   }
 
 }
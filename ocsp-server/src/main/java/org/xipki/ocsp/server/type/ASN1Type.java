@@ -17,8 +17,6 @@
 
 package org.xipki.ocsp.server.type;
 
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
 import java.util.Date;
 
 /**
@@ -80,35 +78,59 @@ public abstract class ASN1Type {
   }
 
   public static int writeGeneralizedTime(Date time, byte[] out, int offset) {
-    OffsetDateTime offsetTime = time.toInstant().atOffset(ZoneOffset.UTC);
+    return writeGeneralizedTime(time.getTime(), out, offset);
+  }
+
+  /**
+   * Writes the time as GeneralizedTime (yyyyMMddhhmmssZ) without creating any temporary
+   * object.
+   *
+   * @param timeMillis the time in milliseconds since 1970-01-01T00:00:00Z.
+   * @param out the output buffer.
+   * @param offset the offset in the output buffer.
+   * @return the number of written bytes, always 17.
+   */
+  public static int writeGeneralizedTime(long timeMillis, byte[] out, int offset) {
+    long epochSecond = Math.floorDiv(timeMillis, 1000L);
+    long epochDay = Math.floorDiv(epochSecond, 86400L);
+    int secondOfDay = (int) Math.floorMod(epochSecond, 86400L);
+
+    // convert the epoch day to year, month and day, see java.time.LocalDate.ofEpochDay()
+    long zeroDay = epochDay + 719468; // days since 0000-03-01
+    long era = (zeroDay >= 0 ? zeroDay : zeroDay - 146096) / 146097;
+    int dayOfEra = (int) (zeroDay - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int marchMonth = (5 * dayOfYear + 2) / 153; // 0 for March
+    int day = dayOfYear - (153 * marchMonth + 2) / 5 + 1;
+    int month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+    int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
     int idx = offset;
     out[idx++] = 0x18;
     out[idx++] = 15;
     // yyyyMMddhhmmssZ
     // year
-    int year = offsetTime.getYear();
     out[idx++] = (byte) (0x30 + year / 1000);
     out[idx++] = (byte) (0x30 + year / 100 % 10);
     out[idx++] = (byte) (0x30 + year / 10 % 10);
     out[idx++] = (byte) (0x30 + year % 10);
     // month
-    int month = offsetTime.getMonthValue();
     out[idx++] = (byte) (0x30 + month / 10);
     out[idx++] = (byte) (0x30 + month % 10);
     // day
-    int day = offsetTime.getDayOfMonth();
     out[idx++] = (byte) (0x30 + day / 10);
     out[idx++] = (byte) (0x30 + day % 10);
     // hour
-    int hour = offsetTime.getHour();
+    int hour = secondOfDay / 3600;
     out[idx++] = (byte) (0x30 + hour / 10);
     out[idx++] = (byte) (0x30 + hour % 10);
     // minute
-    int minute = offsetTime.getMinute();
+    int minute = secondOfDay / 60 % 60;
     out[idx++] = (byte) (0x30 + minute / 10);
     out[idx++] = (byte) (0x30 + minute % 10);
     // second
-    int second = offsetTime.getSecond();
+    int second = secondOfDay % 60;
     out[idx++] = (byte) (0x30 + second / 10);
     out[idx++] = (byte) (0x30 + second % 10);
     out[idx++] = 'Z';
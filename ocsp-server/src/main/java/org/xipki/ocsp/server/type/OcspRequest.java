@@ -21,6 +21,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -213,6 +214,131 @@ public class OcspRequest {
     return new OcspRequest(tbsReq0.getVersion().getValue().intValue(), requestList, extensions);
   }
 
+  /**
+   * Reads the CertID of a request in the form of RFC 5019: version v1, no requestorName,
+   * exactly one Request without singleRequestExtensions, no requestExtensions and no
+   * signature. Only the returned CertID is allocated, its issuer refers to the given request.
+   *
+   * @param request the encoded OCSP request.
+   * @return the CertID, or {@code null} if the request has other form or is invalid.
+   */
+  public static CertID readSingleCertId(byte[] request) {
+    // OCSPRequest
+    long hdr = readTagAndLength(request, 0, (byte) 0x30);
+    if (hdr == -1 || contentEnd(hdr) != request.length) {
+      return null;
+    }
+
+    // tbsRequest, no optionalSignature follows
+    hdr = readTagAndLength(request, contentOffset(hdr), (byte) 0x30);
+    if (hdr == -1 || contentEnd(hdr) != request.length) {
+      return null;
+    }
+
+    int off = contentOffset(hdr);
+    // [0] EXPLICIT version v1 (0), encoded only by few clients
+    if (off + 5 <= request.length && request[off] == (byte) 0xA0) {
+      if (request[off + 1] != 3 || request[off + 2] != 2 || request[off + 3] != 1
+          || request[off + 4] != 0) {
+        return null;
+      }
+      off += 5;
+    }
+
+    // requestList, no requestExtensions follows
+    hdr = readTagAndLength(request, off, (byte) 0x30);
+    if (hdr == -1 || contentEnd(hdr) != request.length) {
+      return null;
+    }
+
+    // the only Request, without singleRequestExtensions
+    hdr = readTagAndLength(request, contentOffset(hdr), (byte) 0x30);
+    if (hdr == -1 || contentEnd(hdr) != request.length) {
+      return null;
+    }
+
+    // CertID
+    hdr = readTagAndLength(request, contentOffset(hdr), (byte) 0x30);
+    if (hdr == -1 || contentEnd(hdr) != request.length) {
+      return null;
+    }
+
+    final int issuerFrom = contentOffset(hdr);
+    // hashAlgorithm
+    hdr = readTagAndLength(request, issuerFrom, (byte) 0x30);
+    if (hdr == -1) {
+      return null;
+    }
+
+    // issuerNameHash
+    hdr = readTagAndLength(request, contentEnd(hdr), (byte) 0x04);
+    if (hdr == -1) {
+      return null;
+    }
+
+    // issuerKeyHash
+    hdr = readTagAndLength(request, contentEnd(hdr), (byte) 0x04);
+    if (hdr == -1) {
+      return null;
+    }
+
+    final int issuerEnd = contentEnd(hdr);
+    // serialNumber
+    hdr = readTagAndLength(request, issuerEnd, (byte) 0x02);
+    if (hdr == -1 || contentEnd(hdr) != request.length || contentLength(hdr) == 0) {
+      return null;
+    }
+
+    RequestIssuer issuer = new RequestIssuer(request, issuerFrom, issuerEnd - issuerFrom);
+    BigInteger serialNumber = new BigInteger(
+        Arrays.copyOfRange(request, contentOffset(hdr), contentEnd(hdr)));
+    return new CertID(issuer, serialNumber);
+  } // method readSingleCertId
+
+  /**
+   * Reads the tag and length of the element at the given offset.
+   * @return the offset of the content (high 32 bits) and the length of the content (low
+   *         32 bits), or -1 if the tag does not match or the element exceeds the data.
+   */
+  private static long readTagAndLength(byte[] data, int offset, byte expectedTag) {
+    final int dataLen = data.length;
+    if (offset + 2 > dataLen || data[offset] != expectedTag) {
+      return -1;
+    }
+
+    int off = offset + 1;
+    int len = 0xFF & data[off++];
+    if (len >= 0x80) {
+      int lenSize = len & 0x7F;
+      // DER: at most 3 bytes are required for the length of an OCSP request.
+      if (lenSize == 0 || lenSize > 3 || off + lenSize > dataLen) {
+        return -1;
+      }
+
+      len = 0;
+      for (int i = 0; i < lenSize; i++) {
+        len = (len << 8) | (0xFF & data[off++]);
+      }
+    }
+
+    if (off + len > dataLen) {
+      return -1;
+    }
+    return ((long) off << 32) | len;
+  } // method readTagAndLength
+
+  private static int contentOffset(long tagAndLength) {
+    return (int) (tagAndLength >>> 32);
+  }
+
+  private static int contentLength(long tagAndLength) {
+    return (int) tagAndLength;
+  }
+
+  private static int contentEnd(long tagAndLength) {
+    return contentOffset(tagAndLength) + contentLength(tagAndLength);
+  }
+
   public static int readRequestVersion(byte[] request) throws EncodingException {
     // OCSPRequest
     Header hdr = readHeader(request, 0);
@@ -38,6 +38,8 @@ public class ResponseData extends ASN1Type {
 
   private final Extensions extensions;
 
+  private final int responsesBodyLength;
+
   private final int bodyLength;
 
   private final int encodedLength;
@@ -67,6 +69,7 @@ public class ResponseData extends ASN1Type {
     for (SingleResponse sr : responses) {
       responsesBodyLen += sr.getEncodedLength();
     }
+    this.responsesBodyLength = responsesBodyLen;
     len += getLen(responsesBodyLen);
 
     // extensions
@@ -99,11 +102,7 @@ public class ResponseData extends ASN1Type {
     idx += writeGeneralizedTime(producedAt, out, idx);
 
     // responses
-    int responsesBodyLen = 0;
-    for (SingleResponse sr : responses) {
-      responsesBodyLen += sr.getEncodedLength();
-    }
-    idx += writeHeader((byte) 0x30, responsesBodyLen, out, idx);
+    idx += writeHeader((byte) 0x30, responsesBodyLength, out, idx);
     for (SingleResponse sr : responses) {
       idx += sr.write(out, idx);
     }
@@ -0,0 +1,235 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store.crl.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.server.store.crl.CrlSnapshot;
+import org.xipki.ocsp.server.store.crl.ImportCrl.ImportCrlException;
+import org.xipki.security.CrlReason;
+import org.xipki.security.CrlStreamParser;
+import org.xipki.security.CrlStreamParser.RevokedCert;
+
+/**
+ * Test of the external merge sort of {@link CrlSnapshot}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CrlSnapshotTest {
+
+  private static final X500Name CA_SUBJECT = new X500Name("CN=test-ca,O=xipki");
+
+  private static final Date REV_DATE = new Date(1540000000000L);
+
+  private static KeyPair keypair;
+
+  private static File tmpDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(1024);
+    keypair = kpGen.generateKeyPair();
+    tmpDir = Files.createTempDirectory("crlsnapshot-test").toFile();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    for (File file : tmpDir.listFiles()) {
+      file.delete();
+    }
+    tmpDir.delete();
+  }
+
+  @Test
+  public void sortInOneRun() throws Exception {
+    sortAndMerge(100, 1000);
+  }
+
+  @Test
+  public void mergeRuns() throws Exception {
+    // 100 / 7: 14 full runs and one partial run
+    sortAndMerge(100, 7);
+  }
+
+  @Test
+  public void mergeFullRuns() throws Exception {
+    sortAndMerge(100, 10);
+  }
+
+  @Test
+  public void ignoreRemoveFromCrl() throws Exception {
+    X509v2CRLBuilder builder = newCrlBuilder(5);
+    builder.addCRLEntry(BigInteger.valueOf(3), REV_DATE, CrlReason.KEY_COMPROMISE.getCode());
+    builder.addCRLEntry(BigInteger.valueOf(2), REV_DATE, CrlReason.REMOVE_FROM_CRL.getCode());
+    builder.addCRLEntry(BigInteger.valueOf(1), REV_DATE, CrlReason.SUPERSEDED.getCode());
+
+    File file = newFile();
+    Assert.assertEquals("number of entries", 2,
+        CrlSnapshot.write(writeCrl(builder), CA_SUBJECT, file, 1));
+
+    List<RevokedCert> entries = readSnapshot(file, BigInteger.valueOf(5));
+    Assert.assertEquals("number of entries", 2, entries.size());
+    Assert.assertEquals("serial", BigInteger.ONE, entries.get(0).getSerialNumber());
+    Assert.assertEquals("reason", CrlReason.SUPERSEDED, entries.get(0).getReason());
+    Assert.assertEquals("serial", BigInteger.valueOf(3), entries.get(1).getSerialNumber());
+    Assert.assertEquals("reason", CrlReason.KEY_COMPROMISE, entries.get(1).getReason());
+  } // method ignoreRemoveFromCrl
+
+  @Test
+  public void rejectEntryOfOtherCa() throws Exception {
+    X509v2CRLBuilder builder = newCrlBuilder(1);
+    builder.addCRLEntry(BigInteger.ONE, REV_DATE, 0);
+    Extension certIssuer = new Extension(Extension.certificateIssuer, true,
+        new GeneralNames(new GeneralName(new X500Name("CN=other-ca"))).getEncoded());
+    builder.addCRLEntry(BigInteger.valueOf(2), REV_DATE, new Extensions(certIssuer));
+
+    try {
+      CrlSnapshot.write(writeCrl(builder), CA_SUBJECT, newFile());
+      Assert.fail("ImportCrlException expected");
+    } catch (ImportCrlException ex) {
+      // expected
+    }
+  } // method rejectEntryOfOtherCa
+
+  @Test
+  public void readCrlNumber() throws Exception {
+    Assert.assertNull("CRL number of absent snapshot",
+        CrlSnapshot.readCrlNumber(new File(tmpDir, "absent")));
+
+    File file = newFile();
+    X509v2CRLBuilder builder = newCrlBuilder(123);
+    builder.addCRLEntry(BigInteger.ONE, REV_DATE, 0);
+    CrlSnapshot.write(writeCrl(builder), CA_SUBJECT, file);
+    Assert.assertEquals("CRL number", BigInteger.valueOf(123), CrlSnapshot.readCrlNumber(file));
+  } // method readCrlNumber
+
+  @Test
+  public void sameRevocation() {
+    Date invalidityDate = new Date(1530000000000L);
+    RevokedCert a = new RevokedCert(BigInteger.ONE, REV_DATE, CrlReason.KEY_COMPROMISE,
+        invalidityDate, null);
+    // the times are compared in seconds
+    RevokedCert b = new RevokedCert(BigInteger.ONE, new Date(REV_DATE.getTime() + 999),
+        CrlReason.KEY_COMPROMISE, invalidityDate, null);
+    Assert.assertTrue(CrlSnapshot.sameRevocation(a, b));
+
+    b = new RevokedCert(BigInteger.ONE, REV_DATE, CrlReason.SUPERSEDED, invalidityDate, null);
+    Assert.assertFalse(CrlSnapshot.sameRevocation(a, b));
+
+    b = new RevokedCert(BigInteger.ONE, REV_DATE, CrlReason.KEY_COMPROMISE, null, null);
+    Assert.assertFalse(CrlSnapshot.sameRevocation(a, b));
+  } // method sameRevocation
+
+  private void sortAndMerge(int numEntries, int runSize) throws Exception {
+    List<BigInteger> serials = new ArrayList<>(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      // serial numbers of different lengths
+      serials.add(BigInteger.valueOf(i + 1).shiftLeft(i));
+    }
+    Collections.shuffle(serials, new Random(numEntries * 31 + runSize));
+
+    X509v2CRLBuilder builder = newCrlBuilder(7);
+    Date invalidityDate = new Date(1530000000000L);
+    for (BigInteger serial : serials) {
+      int reason = serial.mod(BigInteger.valueOf(2)).intValue() == 0
+          ? CrlReason.KEY_COMPROMISE.getCode() : CrlReason.UNSPECIFIED.getCode();
+      builder.addCRLEntry(serial, REV_DATE, reason, invalidityDate);
+    }
+
+    File file = newFile();
+    Assert.assertEquals("number of entries", numEntries,
+        CrlSnapshot.write(writeCrl(builder), CA_SUBJECT, file, runSize));
+
+    Collections.sort(serials);
+    List<RevokedCert> entries = readSnapshot(file, BigInteger.valueOf(7));
+    Assert.assertEquals("number of entries", numEntries, entries.size());
+    for (int i = 0; i < numEntries; i++) {
+      RevokedCert entry = entries.get(i);
+      BigInteger serial = serials.get(i);
+      Assert.assertEquals("serial", serial, entry.getSerialNumber());
+      Assert.assertEquals("revocationDate", REV_DATE, entry.getRevocationDate());
+      Assert.assertEquals("invalidityDate", invalidityDate, entry.getInvalidityDate());
+      CrlReason reason = serial.mod(BigInteger.valueOf(2)).intValue() == 0
+          ? CrlReason.KEY_COMPROMISE : CrlReason.UNSPECIFIED;
+      Assert.assertEquals("reason", reason, entry.getReason());
+    }
+
+    // the runs are deleted.
+    for (File m : tmpDir.listFiles()) {
+      Assert.assertFalse("run file " + m.getName() + " is not deleted",
+          m.getName().contains(".run"));
+    }
+  } // method sortAndMerge
+
+  private static List<RevokedCert> readSnapshot(File file, BigInteger expectedCrlNumber)
+      throws Exception {
+    List<RevokedCert> entries = new ArrayList<>();
+    try (CrlSnapshot.Reader reader = new CrlSnapshot.Reader(file)) {
+      Assert.assertEquals("CRL number", expectedCrlNumber, reader.getCrlNumber());
+      RevokedCert entry;
+      while ((entry = reader.next()) != null) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  private static X509v2CRLBuilder newCrlBuilder(int crlNumber) throws Exception {
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(CA_SUBJECT, new Date(1550000000000L));
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+    return builder;
+  }
+
+  private static CrlStreamParser writeCrl(X509v2CRLBuilder builder) throws Exception {
+    byte[] encoded = builder.build(
+        new JcaContentSignerBuilder("SHA256withRSA").build(keypair.getPrivate())).getEncoded();
+    File file = File.createTempFile("crl-", ".der", tmpDir);
+    Files.write(file.toPath(), encoded);
+    return new CrlStreamParser(file);
+  }
+
+  private static File newFile() throws Exception {
+    File file = File.createTempFile("snapshot-", ".txt", tmpDir);
+    file.delete();
+    return file;
+  }
+
+}
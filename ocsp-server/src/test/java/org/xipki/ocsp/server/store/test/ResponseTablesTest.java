@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store.test;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.server.store.ResponseTables;
+
+/**
+ * Test of the bucket and truncation math of {@link ResponseTables}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class ResponseTablesTest {
+
+  private static final int DAY = 86400;
+
+  @Test
+  public void notBucketed() {
+    ResponseTables tables = new ResponseTables(0, DAY);
+    Assert.assertFalse(tables.isBucketed());
+    Assert.assertEquals(1, tables.size());
+    Assert.assertEquals("OCSP", tables.getName(0));
+    Assert.assertEquals(0, tables.getIndex(System.currentTimeMillis()));
+    Assert.assertArrayEquals(new int[]{0}, tables.getLiveIndexes(System.currentTimeMillis()));
+  }
+
+  @Test
+  public void invalidBuckets() {
+    for (int buckets : new int[]{-1, 1, 2}) {
+      try {
+        new ResponseTables(buckets, DAY);
+        Assert.fail("IllegalArgumentException expected for buckets " + buckets);
+      } catch (IllegalArgumentException ex) {
+        // expected
+      }
+    }
+
+    try {
+      new ResponseTables(3, 0);
+      Assert.fail("IllegalArgumentException expected for validity 0");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  } // method invalidBuckets
+
+  @Test
+  public void tableNames() {
+    ResponseTables tables = new ResponseTables(4, DAY);
+    Assert.assertTrue(tables.isBucketed());
+    Assert.assertEquals(4, tables.size());
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals("OCSP_" + i, tables.getName(i));
+    }
+  }
+
+  @Test
+  public void bucketLength() {
+    // validity <= (buckets - 2) * bucketLength
+    Assert.assertEquals(DAY * 1000L, new ResponseTables(3, DAY).getBucketLengthMs());
+    Assert.assertEquals(DAY * 500L, new ResponseTables(4, DAY).getBucketLengthMs());
+    // rounded up
+    Assert.assertEquals(28800334L, new ResponseTables(5, DAY + 1).getBucketLengthMs());
+    // not less than 20 minutes
+    Assert.assertEquals(1200000L, new ResponseTables(3, 60).getBucketLengthMs());
+    Assert.assertEquals(1200000L, new ResponseTables(10, 3600).getBucketLengthMs());
+  }
+
+  @Test
+  public void indexes() {
+    ResponseTables tables = new ResponseTables(4, DAY);
+    long len = tables.getBucketLengthMs();
+    Assert.assertEquals(0, tables.getIndex(0));
+    Assert.assertEquals(0, tables.getIndex(len - 1));
+    Assert.assertEquals(1, tables.getIndex(len));
+    Assert.assertEquals(3, tables.getIndex(4 * len - 1));
+    Assert.assertEquals(0, tables.getIndex(4 * len));
+    Assert.assertEquals(2, tables.getIndex(10 * len + 1));
+
+    // validity is 2 periods: the periods 10 (table 2), 9 (table 1) and 8 (table 0) are live.
+    Assert.assertArrayEquals(new int[]{2, 1, 0}, tables.getLiveIndexes(10 * len));
+    Assert.assertArrayEquals(new int[]{2, 1, 0}, tables.getLiveIndexes(11 * len - 1));
+    // close to the epoch
+    Assert.assertArrayEquals(new int[]{0}, tables.getLiveIndexes(1));
+  } // method indexes
+
+  @Test
+  public void truncation() {
+    Random random = new Random(5018);
+    for (int i = 0; i < 2000; i++) {
+      int buckets = ResponseTables.MIN_BUCKETS + random.nextInt(10);
+      int validity = 60 + random.nextInt(7 * DAY);
+      ResponseTables tables = new ResponseTables(buckets, validity);
+      long len = tables.getBucketLengthMs();
+
+      long now = 1500000000000L + (long) (random.nextDouble() * 100 * len);
+      String desc = "buckets=" + buckets + ", validity=" + validity + ", now=" + now;
+
+      int[] liveIndexes = tables.getLiveIndexes(now);
+      Assert.assertTrue(desc, liveIndexes.length > 0 && liveIndexes.length < buckets);
+      Assert.assertEquals(desc, tables.getIndex(now), liveIndexes[0]);
+
+      // the table truncated during the current period
+      int truncatedIndex = tables.getIndexForPeriod(tables.getPeriod(now) + 1);
+      for (int index : liveIndexes) {
+        Assert.assertTrue(desc, truncatedIndex != index);
+      }
+
+      // every not expired response is in a live table, and not in the truncated one.
+      long minThisUpdate = now - validity * 1000L;
+      for (int j = 0; j < 100; j++) {
+        long thisUpdate = (j == 0) ? minThisUpdate
+            : (j == 1) ? now : minThisUpdate + (long) (random.nextDouble() * validity * 1000L);
+        int index = tables.getIndex(thisUpdate);
+        Assert.assertTrue(desc, truncatedIndex != index);
+        Assert.assertTrue(desc + ", thisUpdate=" + thisUpdate, contains(liveIndexes, index));
+      }
+    }
+  } // method truncation
+
+  private static boolean contains(int[] values, int value) {
+    for (int m : values) {
+      if (m == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.server.LatencyHistogram;
+
+/**
+ * Test of the bucket boundaries of {@link LatencyHistogram}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucketBoundaries() {
+    // the upper bound (exclusive) of the bucket i is 2^i microseconds.
+    for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++) {
+      long upperNanos = LatencyHistogram.getUpperBoundMicros(i) * 1000;
+      Assert.assertEquals("bucket of " + (upperNanos - 1) + " ns", i, bucketOf(upperNanos - 1));
+      Assert.assertEquals("bucket of " + upperNanos + " ns", i + 1, bucketOf(upperNanos));
+    }
+  }
+
+  @Test
+  public void firstBucket() {
+    Assert.assertEquals(0, bucketOf(0));
+    Assert.assertEquals(0, bucketOf(999));
+    // negative latencies, e.g. by clock adjustment, are counted as 0.
+    Assert.assertEquals(0, bucketOf(-1));
+    Assert.assertEquals(1, bucketOf(1000));
+  }
+
+  @Test
+  public void lastBucket() {
+    final int last = LatencyHistogram.BUCKETS - 1;
+    long lastBoundNanos = LatencyHistogram.getUpperBoundMicros(last - 1) * 1000;
+    Assert.assertEquals(last - 1, bucketOf(lastBoundNanos - 1));
+    Assert.assertEquals(last, bucketOf(lastBoundNanos));
+    Assert.assertEquals(last, bucketOf(3600 * 1000000000L));
+    Assert.assertEquals(last, bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void countAndSum() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(500);
+    histogram.record(1500);
+    histogram.record(1999);
+    histogram.record(-10);
+
+    Assert.assertEquals(4, histogram.getCount());
+    Assert.assertEquals(500 + 1500 + 1999, histogram.getSumNanos());
+
+    long[] buckets = histogram.getBuckets();
+    Assert.assertEquals(LatencyHistogram.BUCKETS, buckets.length);
+    Assert.assertEquals(2, buckets[0]);
+    Assert.assertEquals(2, buckets[1]);
+
+    long[] counts = new long[LatencyHistogram.BUCKETS];
+    counts[1] = 10;
+    long[] countAndSum = {1, 100};
+    histogram.addTo(counts, countAndSum);
+    Assert.assertEquals(2, counts[0]);
+    Assert.assertEquals(12, counts[1]);
+    Assert.assertEquals(5, countAndSum[0]);
+    Assert.assertEquals(100 + 500 + 1500 + 1999, countAndSum[1]);
+  } // method countAndSum
+
+  private static int bucketOf(long nanos) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(nanos);
+    long[] buckets = histogram.getBuckets();
+    int index = -1;
+    for (int i = 0; i < buckets.length; i++) {
+      if (buckets[i] != 0) {
+        Assert.assertEquals("bucket count", 1, buckets[i]);
+        Assert.assertEquals("more than one bucket", -1, index);
+        index = i;
+      }
+    }
+    return index;
+  } // method bucketOf
+
+}
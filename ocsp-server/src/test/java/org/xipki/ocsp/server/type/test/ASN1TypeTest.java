@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.type.test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.DERGeneralizedTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.server.type.ASN1Type;
+
+/**
+ * Test of {@link ASN1Type#writeGeneralizedTime(long, byte[], int)}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class ASN1TypeTest {
+
+  private static final DateTimeFormatter FORMATTER =
+      DateTimeFormatter.ofPattern("uuuuMMddHHmmss'Z'").withZone(ZoneOffset.UTC);
+
+  @Test
+  public void writeSpecialTimes() throws Exception {
+    String[] times = {
+      "1970-01-01T00:00:00Z",
+      "1969-12-31T23:59:59Z",
+      "1950-01-01T00:00:00Z",
+      "1999-12-31T23:59:59Z",
+      "2000-02-29T12:00:00Z",
+      "2000-03-01T00:00:00Z",
+      "2019-02-28T23:59:59Z",
+      "2019-03-01T00:00:00Z",
+      "2024-02-29T23:59:59Z",
+      "2049-12-31T23:59:59Z",
+      "2050-01-01T00:00:00Z",
+      "2100-02-28T23:59:59Z",
+      "2100-03-01T00:00:00Z",
+      "9999-12-31T23:59:59Z"};
+
+    for (String time : times) {
+      assertTime(Instant.parse(time).toEpochMilli());
+    }
+  } // method writeSpecialTimes
+
+  @Test
+  public void writeTimesWithMillis() throws Exception {
+    // the fraction of second is truncated, also for times before 1970.
+    assertTime(Instant.parse("2019-06-30T23:59:59Z").toEpochMilli() + 999);
+    assertTime(Instant.parse("1969-12-31T23:59:59Z").toEpochMilli() + 1);
+    assertTime(-1);
+  }
+
+  @Test
+  public void writeRandomTimes() throws Exception {
+    Random random = new Random(5019);
+    long min = Instant.parse("1900-01-01T00:00:00Z").toEpochMilli();
+    long max = Instant.parse("9999-12-31T23:59:59Z").toEpochMilli();
+    for (int i = 0; i < 100000; i++) {
+      assertTime(min + (long) (random.nextDouble() * (max - min)));
+    }
+  } // method writeRandomTimes
+
+  @Test
+  public void sameAsBouncyCastle() throws Exception {
+    long time = Instant.parse("2019-05-17T08:09:10Z").toEpochMilli();
+    byte[] expected = new DERGeneralizedTime(new Date(time)).getEncoded(ASN1Encoding.DER);
+    byte[] out = new byte[17];
+    ASN1Type.writeGeneralizedTime(new Date(time), out, 0);
+    Assert.assertArrayEquals(expected, out);
+  }
+
+  private static void assertTime(long timeMillis) {
+    final int offset = 3;
+    byte[] out = new byte[offset + 17 + 2];
+    Assert.assertEquals("encoded length", 17,
+        ASN1Type.writeGeneralizedTime(timeMillis, out, offset));
+
+    // the bytes around the time are not touched.
+    Assert.assertEquals(0, out[offset - 1]);
+    Assert.assertEquals(0, out[offset + 17]);
+
+    Assert.assertEquals("tag", 0x18, out[offset]);
+    Assert.assertEquals("length", 15, out[offset + 1]);
+
+    String expected = FORMATTER.format(Instant.ofEpochMilli(timeMillis));
+    String actual = new String(Arrays.copyOfRange(out, offset + 2, offset + 17),
+        StandardCharsets.US_ASCII);
+    Assert.assertEquals("time " + timeMillis, expected, actual);
+  }
+
+}
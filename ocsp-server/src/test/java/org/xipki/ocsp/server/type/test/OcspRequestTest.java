@@ -0,0 +1,175 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.type.test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.Signature;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.server.type.OcspRequest;
+
+/**
+ * Test of the fast path {@link OcspRequest#readSingleCertId(byte[])}.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class OcspRequestTest {
+
+  private static final BigInteger SERIAL = new BigInteger("0123456789abcdef0123456789", 16);
+
+  @Test
+  public void readSimpleRequest() throws Exception {
+    byte[] request = encode(null, null, null, false, certId(SERIAL), null);
+    assertSameAsSlowPath(request);
+  }
+
+  @Test
+  public void readSimpleRequestWithVersion() throws Exception {
+    byte[] request = encode(new ASN1Integer(0), null, null, false, certId(SERIAL), null);
+    assertSameAsSlowPath(request);
+  }
+
+  @Test
+  public void readSerialNumbers() throws Exception {
+    // the long serial number requires lengths encoded in more than one byte.
+    BigInteger[] serials = {BigInteger.ONE, BigInteger.valueOf(0x80),
+        BigInteger.ONE.shiftLeft(159), BigInteger.ONE.shiftLeft(1000)};
+    for (BigInteger serial : serials) {
+      assertSameAsSlowPath(encode(null, null, null, false, certId(serial), null));
+    }
+  }
+
+  @Test
+  public void rejectOtherForms() throws Exception {
+    CertID certId = certId(SERIAL);
+    Extensions nonce = new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce,
+        false, new DEROctetString(new byte[16]).getEncoded()));
+
+    Assert.assertNull("version v2",
+        OcspRequest.readSingleCertId(encode(new ASN1Integer(1), null, null, false, certId,
+            null)));
+    Assert.assertNull("requestorName",
+        OcspRequest.readSingleCertId(encode(null, new GeneralName(new X500Name("CN=a")), null,
+            false, certId, null)));
+    Assert.assertNull("requestExtensions",
+        OcspRequest.readSingleCertId(encode(null, null, nonce, false, certId, null)));
+    Assert.assertNull("singleRequestExtensions",
+        OcspRequest.readSingleCertId(encode(null, null, null, false, certId, nonce)));
+    Assert.assertNull("signature",
+        OcspRequest.readSingleCertId(encode(null, null, null, true, certId, null)));
+    Assert.assertNull("two requests",
+        OcspRequest.readSingleCertId(encode(null, null, null, false, certId, null,
+            certId(BigInteger.ONE))));
+  } // method rejectOtherForms
+
+  @Test
+  public void rejectInvalidEncoding() throws Exception {
+    byte[] request = encode(null, null, null, false, certId(SERIAL), null);
+    Assert.assertNull("empty", OcspRequest.readSingleCertId(new byte[0]));
+
+    for (int i = 0; i < request.length; i++) {
+      Assert.assertNull("truncated to " + i + " bytes",
+          OcspRequest.readSingleCertId(Arrays.copyOf(request, i)));
+    }
+
+    byte[] extended = Arrays.copyOf(request, request.length + 1);
+    Assert.assertNull("trailing byte", OcspRequest.readSingleCertId(extended));
+
+    byte[] invalidTag = request.clone();
+    invalidTag[0] = 0x31;
+    Assert.assertNull("invalid tag", OcspRequest.readSingleCertId(invalidTag));
+  } // method rejectInvalidEncoding
+
+  private static void assertSameAsSlowPath(byte[] request) throws Exception {
+    org.xipki.ocsp.server.type.CertID fast = OcspRequest.readSingleCertId(request);
+    Assert.assertNotNull("fast path CertID", fast);
+
+    org.xipki.ocsp.server.type.CertID slow =
+        OcspRequest.getInstance(request).getRequestList().get(0);
+    Assert.assertEquals("serialNumber", slow.getSerialNumber(), fast.getSerialNumber());
+    Assert.assertEquals("issuer", slow.getIssuer(), fast.getIssuer());
+    Assert.assertEquals("hashAlgorithm", slow.getIssuer().hashAlgorithm(),
+        fast.getIssuer().hashAlgorithm());
+  }
+
+  private static CertID certId(BigInteger serial) {
+    byte[] nameHash = new byte[20];
+    byte[] keyHash = new byte[20];
+    for (int i = 0; i < 20; i++) {
+      nameHash[i] = (byte) i;
+      keyHash[i] = (byte) (100 + i);
+    }
+    return new CertID(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE),
+        new DEROctetString(nameHash), new DEROctetString(keyHash), new ASN1Integer(serial));
+  }
+
+  private static byte[] encode(ASN1Integer version, GeneralName requestorName,
+      Extensions requestExtensions, boolean signed, CertID certId,
+      Extensions singleRequestExtensions, CertID... otherCertIds) throws Exception {
+    ASN1EncodableVector requests = new ASN1EncodableVector();
+    requests.add(new Request(certId, singleRequestExtensions));
+    for (CertID m : otherCertIds) {
+      requests.add(new Request(m, null));
+    }
+
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    if (version != null) {
+      vec.add(new DERTaggedObject(true, 0, version));
+    }
+    if (requestorName != null) {
+      vec.add(new DERTaggedObject(true, 1, requestorName));
+    }
+    vec.add(new DERSequence(requests));
+    if (requestExtensions != null) {
+      vec.add(new DERTaggedObject(true, 2, requestExtensions));
+    }
+    TBSRequest tbsRequest = TBSRequest.getInstance(new DERSequence(vec));
+
+    Signature signature = null;
+    if (signed) {
+      signature = new Signature(
+          new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption),
+          new DERBitString(new byte[128]));
+    }
+    return new OCSPRequest(tbsRequest, signature).getEncoded(ASN1Encoding.DER);
+  } // method encode
+
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.servlet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.server.OcspServerImpl;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Exports the metrics of the OCSP server in the Prometheus text format.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class MetricsServlet extends HttpServlet {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsServlet.class);
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String CT_RESPONSE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private OcspServerImpl server;
+
+  public void setServer(OcspServerImpl server) {
+    this.server = Args.notNull(server, "server");
+  }
+
+  @Override
+  protected void doGet(final HttpServletRequest req, final HttpServletResponse resp)
+      throws ServletException, IOException {
+    try {
+      byte[] respBytes = server.getPrometheusMetrics().getBytes(StandardCharsets.UTF_8);
+      resp.setStatus(HttpServletResponse.SC_OK);
+      resp.setContentType(CT_RESPONSE);
+      resp.setHeader("Cache-Control", "no-cache");
+      resp.setContentLength(respBytes.length);
+      resp.getOutputStream().write(respBytes);
+    } catch (Throwable th) {
+      if (th instanceof EOFException) {
+        LogUtil.warn(LOG, th, "connection reset by peer");
+      } else {
+        LOG.error("Throwable thrown, this should not happen", th);
+      }
+      resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      resp.setContentLength(0);
+    } finally {
+      resp.flushBuffer();
+    }
+  } // method doGet
+
+}
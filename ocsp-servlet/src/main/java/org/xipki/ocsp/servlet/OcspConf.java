@@ -65,12 +65,87 @@ public class OcspConf extends ValidatableConf {
 
   }
 
+  public static class Async extends ValidatableConf {
+
+    /**
+     * Whether to process the OCSP requests asynchronously. If the servlet container does not
+     * support the asynchronous processing, the requests are processed synchronously.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Number of threads to process the requests. 0 for twice the number of processors.
+     */
+    private int threads;
+
+    /**
+     * Maximal number of requests waiting for a processing thread. Further requests are
+     * rejected with HTTP status 503 (Service Unavailable).
+     */
+    private int queueSize = 1000;
+
+    /**
+     * Timeout in milliseconds of the asynchronous processing.
+     */
+    private long timeout = 30000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    public int getQueueSize() {
+      return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+    }
+
+    public long getTimeout() {
+      return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+      this.timeout = timeout;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (threads < 0) {
+        throw new InvalidConfException("threads must not be negative");
+      }
+
+      if (queueSize < 1) {
+        throw new InvalidConfException("queueSize must be positive");
+      }
+
+      if (timeout < 1) {
+        throw new InvalidConfException("timeout must be positive");
+      }
+    }
+
+  }
+
   public static final String DFLT_SERVER_CONF = "xipki/etc/ocsp/ocsp-responder.json";
 
   private String serverConf;
 
   private RemoteMgmt remoteMgmt;
 
+  private Async async;
+
   private SecurityConf security;
 
   public static OcspConf readConfFromFile(String fileName)
@@ -101,6 +176,17 @@ public class OcspConf extends ValidatableConf {
     this.remoteMgmt = remoteMgmt;
   }
 
+  public Async getAsync() {
+    if (async == null) {
+      async = new Async();
+    }
+    return async;
+  }
+
+  public void setAsync(Async async) {
+    this.async = async;
+  }
+
   public SecurityConf getSecurity() {
     return security == null ? SecurityConf.DEFAULT : security;
   }
@@ -112,6 +198,7 @@ public class OcspConf extends ValidatableConf {
   @Override
   public void validate() throws InvalidConfException {
     validate(remoteMgmt);
+    validate(async);
     validate(security);
   }
 
@@ -20,7 +20,18 @@ package org.xipki.ocsp.servlet;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -62,13 +73,75 @@ public class OcspServlet extends HttpServlet {
 
   private OcspServer server;
 
+  private ExecutorService executor;
+
+  private long asyncTimeout;
+
   public void setServer(OcspServer server) {
     this.server = Args.notNull(server, "server");
   }
 
+  /**
+   * Enables the asynchronous processing of the requests, so that the container threads are
+   * not blocked while the responses are computed.
+   *
+   * @param threads number of threads to compute the responses, 0 for twice the number of
+   *          processors.
+   * @param queueSize maximal number of requests waiting for a thread. Further requests will
+   *          be rejected with HTTP status 503.
+   * @param timeout timeout in milliseconds of the asynchronous processing.
+   */
+  public void setAsync(int threads, int queueSize, long timeout) {
+    Args.notNegative(threads, "threads");
+    Args.positive(queueSize, "queueSize");
+    this.asyncTimeout = Args.positive(timeout, "timeout");
+
+    if (threads == 0) {
+      threads = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    final AtomicInteger threadNumber = new AtomicInteger(1);
+    ThreadPoolExecutor tmpExecutor = new ThreadPoolExecutor(threads, threads, 60,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ocsp-async-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }
+
+        });
+    tmpExecutor.allowCoreThreadTimeOut(true);
+    this.executor = tmpExecutor;
+    LOG.info("asynchronous processing enabled, threads={}, queueSize={}", threads, queueSize);
+  } // method setAsync
+
+  /**
+   * Stops the threads of the asynchronous processing.
+   */
+  public void close() {
+    ExecutorService tmpExecutor = executor;
+    if (tmpExecutor == null) {
+      return;
+    }
+
+    executor = null;
+    tmpExecutor.shutdown();
+    try {
+      if (!tmpExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+        tmpExecutor.shutdownNow();
+      }
+    } catch (InterruptedException ex) {
+      tmpExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  } // method close
+
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
+    boolean async = false;
     try {
       String path = (String) req.getAttribute(HttpConstants.ATTR_XIPKI_PATH);
       ResponderAndPath responderAndPath = server.getResponderForPath(path);
@@ -92,27 +165,17 @@ public class OcspServlet extends HttpServlet {
         return;
       }
 
-      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, reqContent, false);
-      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
-        LOG.error("processRequest returned null, this should not happen");
-        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      async = answerAsync(req, resp, responder, reqContent, false);
+      if (!async) {
+        sendResponse(resp, responder, server.answer(responder, reqContent, false), false);
       }
-
-      byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-      resp.setStatus(HttpServletResponse.SC_OK);
-      resp.setContentType(CT_RESPONSE);
-      resp.setContentLength(encodedOcspResp.length);
-      resp.getOutputStream().write(encodedOcspResp);
     } catch (Throwable th) {
-      if (th instanceof EOFException) {
-        LogUtil.warn(LOG, th, "Connection reset by peer");
-      } else {
-        LOG.error("Throwable thrown, this should not happen!", th);
-      }
-
+      logThrowable(th);
       sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     } finally {
-      resp.flushBuffer();
+      if (!async) {
+        resp.flushBuffer();
+      }
     }
   } // method servicePost
 
@@ -148,6 +211,7 @@ public class OcspServlet extends HttpServlet {
       return;
     }
 
+    boolean async = false;
     try {
       // 1. RFC 2560/6960 A.1.1 specifies that request longer than 255 bytes SHOULD be sent by
       //    POST, we support GET for longer requests anyway.
@@ -166,71 +230,193 @@ public class OcspServlet extends HttpServlet {
         return;
       }
 
-      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocsReqBytes, true);
-      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
-        LOG.error("processRequest returned null, this should not happen");
-        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-        return;
+      async = answerAsync(req, resp, responder, ocsReqBytes, true);
+      if (!async) {
+        sendResponse(resp, responder, server.answer(responder, ocsReqBytes, true), true);
+      }
+    } catch (Throwable th) {
+      logThrowable(th);
+      sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    } finally {
+      if (!async) {
+        resp.flushBuffer();
       }
+    }
+  } // method serviceGet
 
-      byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-
-      OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
-      if (cacheInfo != null) {
-        encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-        long now = System.currentTimeMillis();
-
-        // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
-        // the HTTP response.
-        resp.addDateHeader("Date", now);
-        // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
-        // last modified the response.
-        resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
-        // RFC 5019 6.2: Expires: This date and time will be the same as the
-        // nextUpdate time-stamp in the OCSP
-        // response itself.
-        // This is overridden by max-age on HTTP/1.1 compatible components
-        if (cacheInfo.getNextUpdate() != null) {
-          resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
-        }
-        // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
-        // HEX representation of the SHA1 hash of the OCSPResponse structure.
-        resp.addHeader("ETag",
-            StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
-
-        // Max age must be in seconds in the cache-control header
-        long maxAge;
-        if (responder.getCacheMaxAge() != null) {
-          maxAge = responder.getCacheMaxAge().longValue();
-        } else {
-          maxAge = DFLT_CACHE_MAX_AGE;
+  /**
+   * Answers the request in a thread of the asynchronous processing.
+   *
+   * @return whether the request will be answered asynchronously. If {@code false}, the request
+   *         must be answered by the caller.
+   */
+  private boolean answerAsync(HttpServletRequest req, final HttpServletResponse resp,
+      final Responder responder, final byte[] ocspReq, final boolean viaGet) {
+    ExecutorService tmpExecutor = executor;
+    if (tmpExecutor == null || !req.isAsyncSupported()) {
+      return false;
+    }
+
+    final AsyncContext asyncContext = req.startAsync();
+    asyncContext.setTimeout(asyncTimeout);
+
+    // set by the party which answers the request: the processing thread, or the container on
+    // timeout and error. The response must not be touched by the other one.
+    final AtomicBoolean answered = new AtomicBoolean(false);
+    asyncContext.addListener(new AsyncListener() {
+
+      @Override
+      public void onComplete(AsyncEvent event) {
+      }
+
+      @Override
+      public void onTimeout(AsyncEvent event) {
+        abort(event, "timed out");
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+        abort(event, "failed");
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {
+      }
+
+      private void abort(AsyncEvent event, String reason) {
+        if (answered.compareAndSet(false, true)) {
+          LOG.warn("asynchronous processing of the OCSP request {}, answer with 503", reason);
+          sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+          complete(event.getAsyncContext());
         }
+      }
 
-        if (cacheInfo.getNextUpdate() != null) {
-          maxAge = Math.min(maxAge,
-              (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
+    });
+
+    try {
+      tmpExecutor.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          if (answered.get()) {
+            // timed out while waiting in the queue
+            return;
+          }
+
+          try {
+            // do not block this thread while an identical request is being answered.
+            server.answer(responder, ocspReq, viaGet, new OcspServer.AnswerCallback() {
+
+              @Override
+              public void onAnswer(OcspRespWithCacheInfo response) {
+                if (!answered.compareAndSet(false, true)) {
+                  LOG.warn("discard the response of the timed out OCSP request");
+                  return;
+                }
+
+                try {
+                  sendResponse(resp, responder, response, viaGet);
+                } catch (Throwable th) {
+                  logThrowable(th);
+                  sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } finally {
+                  complete(asyncContext);
+                }
+              }
+
+            });
+          } catch (Throwable th) {
+            logThrowable(th);
+            if (answered.compareAndSet(false, true)) {
+              sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+              complete(asyncContext);
+            }
+          }
         }
 
-        resp.addHeader("Cache-Control",
-            StringUtil.concat("max-age=", Long.toString(maxAge),
-              ",public,no-transform,must-revalidate"));
-      } // end if (ocspRespWithCacheInfo)
+      });
+    } catch (RejectedExecutionException ex) {
+      if (answered.compareAndSet(false, true)) {
+        LOG.warn("too many OCSP requests are waiting, reject the request");
+        sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        complete(asyncContext);
+      }
+    }
+    return true;
+  } // method answerAsync
 
-      resp.setContentLength(encodedOcspResp.length);
-      resp.setContentType(CT_RESPONSE);
-      resp.getOutputStream().write(encodedOcspResp);
-    } catch (Throwable th) {
-      if (th instanceof EOFException) {
-        LogUtil.warn(LOG, th, "Connection reset by peer");
+  private void sendResponse(HttpServletResponse resp, Responder responder,
+      OcspRespWithCacheInfo ocspRespWithCacheInfo, boolean viaGet) throws IOException {
+    if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+      LOG.error("processRequest returned null, this should not happen");
+      sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      return;
+    }
+
+    byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
+
+    OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
+    if (viaGet && cacheInfo != null) {
+      long now = System.currentTimeMillis();
+
+      // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
+      // the HTTP response.
+      resp.addDateHeader("Date", now);
+      // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
+      // last modified the response.
+      resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
+      // RFC 5019 6.2: Expires: This date and time will be the same as the
+      // nextUpdate time-stamp in the OCSP
+      // response itself.
+      // This is overridden by max-age on HTTP/1.1 compatible components
+      if (cacheInfo.getNextUpdate() != null) {
+        resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
+      }
+      // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
+      // HEX representation of the SHA1 hash of the OCSPResponse structure.
+      resp.addHeader("ETag",
+          StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
+
+      // Max age must be in seconds in the cache-control header
+      long maxAge;
+      if (responder.getCacheMaxAge() != null) {
+        maxAge = responder.getCacheMaxAge().longValue();
       } else {
-        LOG.error("Throwable thrown, this should not happen!", th);
+        maxAge = DFLT_CACHE_MAX_AGE;
       }
 
-      sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-    } finally {
-      resp.flushBuffer();
+      if (cacheInfo.getNextUpdate() != null) {
+        maxAge = Math.min(maxAge,
+            (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
+      }
+
+      resp.addHeader("Cache-Control",
+          StringUtil.concat("max-age=", Long.toString(maxAge),
+            ",public,no-transform,must-revalidate"));
+    } // end if (cacheInfo)
+
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setContentType(CT_RESPONSE);
+    resp.setContentLength(encodedOcspResp.length);
+    resp.getOutputStream().write(encodedOcspResp);
+  } // method sendResponse
+
+  private static void complete(AsyncContext asyncContext) {
+    try {
+      asyncContext.complete();
+    } catch (IllegalStateException ex) {
+      // e.g. the asynchronous processing has timed out
+      LOG.warn("could not complete the asynchronous processing: {}", ex.getMessage());
     }
-  } // method serviceGet
+  }
+
+  private static void logThrowable(Throwable th) {
+    if (th instanceof EOFException) {
+      LogUtil.warn(LOG, th, "Connection reset by peer");
+    } else {
+      LOG.error("Throwable thrown, this should not happen!", th);
+    }
+  }
 
   private static void sendError(HttpServletResponse resp, int status) {
     resp.setStatus(status);
@@ -63,6 +63,8 @@ public class OcspServletFilter implements Filter {
 
   private HealthCheckServlet healthServlet;
 
+  private MetricsServlet metricsServlet;
+
   private OcspServlet ocspServlet;
 
   private boolean remoteMgmtEnabled;
@@ -102,9 +104,17 @@ public class OcspServletFilter implements Filter {
     this.healthServlet = new HealthCheckServlet();
     this.healthServlet.setServer(this.server);
 
+    this.metricsServlet = new MetricsServlet();
+    this.metricsServlet.setServer(this.server);
+
     this.ocspServlet = new OcspServlet();
     this.ocspServlet.setServer(this.server);
 
+    OcspConf.Async async = conf.getAsync();
+    if (async.isEnabled()) {
+      this.ocspServlet.setAsync(async.getThreads(), async.getQueueSize(), async.getTimeout());
+    }
+
     RemoteMgmt remoteMgmt = conf.getRemoteMgmt();
     this.remoteMgmtEnabled = remoteMgmt == null ? false : remoteMgmt.isEnabled();
     LOG.info("remote management is {}", remoteMgmtEnabled ? "enabled" : "disabled");
@@ -139,6 +149,10 @@ public class OcspServletFilter implements Filter {
 
   @Override
   public void destroy() {
+    if (ocspServlet != null) {
+      ocspServlet.close();
+    }
+
     if (securities != null) {
       securities.close();
     }
@@ -177,6 +191,8 @@ public class OcspServletFilter implements Filter {
       String servletPath = path.substring(7); // 7 = "/health".length()
       req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, servletPath);
       healthServlet.service(req, resp);
+    } else if (path.equals("/metrics")) {
+      metricsServlet.service(req, resp);
     } else if (path.startsWith("/mgmt/")) {
       if (remoteMgmtEnabled) {
         req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, path.substring(5)); // 5 = "/mgmt".length()
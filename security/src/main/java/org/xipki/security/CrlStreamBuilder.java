@@ -0,0 +1,304 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * Builder of X.509 CRL which does not hold the revoked certificates in the memory. The
+ * DER-encoded entries are written to a temporary file as they are added, and are read from
+ * it again to compute the signature and to write the CRL.
+ *
+ * <p>The entries are written in the order they are added, the caller is responsible for
+ * the order (e.g. by serial number).
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CrlStreamBuilder implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlStreamBuilder.class);
+
+  private static final int TAG_SEQUENCE = 0x30;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private Date nextUpdate;
+
+  private final List<Extension> extensions = new ArrayList<>();
+
+  private final File entriesFile;
+
+  private OutputStream entriesStream;
+
+  private long entriesLength;
+
+  private int numEntries;
+
+  /**
+   * Constructor.
+   * @param issuer the issuer of the CRL.
+   * @param thisUpdate the thisUpdate of the CRL.
+   * @param tmpDir the directory of the temporary file. {@code null} to use the default
+   *          temporary-file directory.
+   * @throws IOException if the temporary file could not be created.
+   */
+  public CrlStreamBuilder(X500Name issuer, Date thisUpdate, File tmpDir) throws IOException {
+    this.issuer = Args.notNull(issuer, "issuer");
+    this.thisUpdate = Args.notNull(thisUpdate, "thisUpdate");
+    this.entriesFile = File.createTempFile("crl-", ".entries", tmpDir);
+    this.entriesStream = new BufferedOutputStream(
+        Files.newOutputStream(entriesFile.toPath()), 64 * 1024);
+  }
+
+  public Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  public void setNextUpdate(Date nextUpdate) {
+    this.nextUpdate = nextUpdate;
+  }
+
+  public Date getNextUpdate() {
+    return nextUpdate;
+  }
+
+  /**
+   * Adds a revoked certificate, as X509v2CRLBuilder.addCRLEntry(BigInteger, Date, int).
+   * @param serialNumber the serial number.
+   * @param revocationDate the revocation date.
+   * @param reason the reason code, 0 (unspecified) will not be encoded.
+   * @param invalidityDate the invalidity date, may be {@code null}.
+   * @throws IOException if the entry could not be written.
+   */
+  public void addCrlEntry(BigInteger serialNumber, Date revocationDate, int reason,
+      Date invalidityDate) throws IOException {
+    List<Extension> entryExtns = null;
+    if (reason != 0) {
+      entryExtns = new ArrayList<>(2);
+      entryExtns.add(new Extension(Extension.reasonCode, false,
+          CRLReason.lookup(reason).getEncoded(ASN1Encoding.DER)));
+    }
+
+    if (invalidityDate != null) {
+      if (entryExtns == null) {
+        entryExtns = new ArrayList<>(1);
+      }
+      entryExtns.add(new Extension(Extension.invalidityDate, false,
+          new ASN1GeneralizedTime(invalidityDate).getEncoded(ASN1Encoding.DER)));
+    }
+
+    addCrlEntry(serialNumber, revocationDate,
+        (entryExtns == null) ? null : new Extensions(entryExtns.toArray(new Extension[0])));
+  }
+
+  /**
+   * Adds a revoked certificate.
+   * @param serialNumber the serial number.
+   * @param revocationDate the revocation date.
+   * @param extensions the extensions of the entry, may be {@code null}.
+   * @throws IOException if the entry could not be written.
+   */
+  public void addCrlEntry(BigInteger serialNumber, Date revocationDate, Extensions extensions)
+      throws IOException {
+    Args.notNull(serialNumber, "serialNumber");
+    Args.notNull(revocationDate, "revocationDate");
+    if (entriesStream == null) {
+      throw new IllegalStateException("CrlStreamBuilder is already built or closed");
+    }
+
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    vec.add(new ASN1Integer(serialNumber));
+    vec.add(new Time(revocationDate));
+    if (extensions != null) {
+      vec.add(extensions);
+    }
+
+    byte[] encoded = new DERSequence(vec).getEncoded(ASN1Encoding.DER);
+    entriesStream.write(encoded);
+    entriesLength += encoded.length;
+    numEntries++;
+  }
+
+  public void addExtension(ASN1ObjectIdentifier oid, boolean critical, ASN1Encodable value)
+      throws IOException {
+    extensions.add(new Extension(oid, critical,
+        new DEROctetString(value.toASN1Primitive().getEncoded(ASN1Encoding.DER))));
+  }
+
+  public int getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Signs the CRL and writes its DER encoding. The revoked certificates are read twice from
+   * the temporary file: once to compute the signature, once to write the CRL.
+   * @param signer the signer.
+   * @param out the stream to which the DER-encoded CRL is written.
+   * @throws IOException if IO error occurs.
+   */
+  public void build(ContentSigner signer, OutputStream out) throws IOException {
+    Args.notNull(signer, "signer");
+    Args.notNull(out, "out");
+
+    if (entriesStream == null) {
+      throw new IllegalStateException("CrlStreamBuilder is already built or closed");
+    }
+    entriesStream.close();
+    entriesStream = null;
+
+    byte[] sigAlg = signer.getAlgorithmIdentifier().getEncoded(ASN1Encoding.DER);
+
+    List<byte[]> header = new ArrayList<>(6);
+    // version v2
+    header.add(new ASN1Integer(1).getEncoded(ASN1Encoding.DER));
+    header.add(sigAlg);
+    header.add(issuer.getEncoded(ASN1Encoding.DER));
+    header.add(new Time(thisUpdate).getEncoded(ASN1Encoding.DER));
+    if (nextUpdate != null) {
+      header.add(new Time(nextUpdate).getEncoded(ASN1Encoding.DER));
+    }
+
+    byte[] revokedHeader = null;
+    if (numEntries > 0) {
+      revokedHeader = encodeHeader(TAG_SEQUENCE, entriesLength);
+    }
+
+    byte[] extns = null;
+    if (!extensions.isEmpty()) {
+      extns = new DERTaggedObject(true, 0,
+          new Extensions(extensions.toArray(new Extension[0]))).getEncoded(ASN1Encoding.DER);
+    }
+
+    long tbsBodyLen = 0;
+    for (byte[] m : header) {
+      tbsBodyLen += m.length;
+    }
+    if (revokedHeader != null) {
+      tbsBodyLen += revokedHeader.length + entriesLength;
+    }
+    if (extns != null) {
+      tbsBodyLen += extns.length;
+    }
+
+    byte[] tbsHeader = encodeHeader(TAG_SEQUENCE, tbsBodyLen);
+
+    // signature
+    OutputStream sigOut = new BufferedOutputStream(signer.getOutputStream(), 64 * 1024);
+    writeTbsCertList(sigOut, tbsHeader, header, revokedHeader, extns);
+    sigOut.close();
+    byte[] signature = new DERBitString(signer.getSignature()).getEncoded(ASN1Encoding.DER);
+
+    // CertificateList
+    long tbsLen = tbsHeader.length + tbsBodyLen;
+    out.write(encodeHeader(TAG_SEQUENCE, tbsLen + sigAlg.length + signature.length));
+    writeTbsCertList(out, tbsHeader, header, revokedHeader, extns);
+    out.write(sigAlg);
+    out.write(signature);
+    out.flush();
+  } // method build
+
+  private void writeTbsCertList(OutputStream out, byte[] tbsHeader, List<byte[]> header,
+      byte[] revokedHeader, byte[] extns) throws IOException {
+    out.write(tbsHeader);
+    for (byte[] m : header) {
+      out.write(m);
+    }
+
+    if (revokedHeader != null) {
+      out.write(revokedHeader);
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(entriesFile.toPath()))) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+    }
+
+    if (extns != null) {
+      out.write(extns);
+    }
+  } // method writeTbsCertList
+
+  private static byte[] encodeHeader(int tag, long length) {
+    if (length < 128) {
+      return new byte[]{(byte) tag, (byte) length};
+    }
+
+    int numBytes = (64 - Long.numberOfLeadingZeros(length) + 7) / 8;
+    byte[] ret = new byte[2 + numBytes];
+    ret[0] = (byte) tag;
+    ret[1] = (byte) (0x80 | numBytes);
+    for (int i = 0; i < numBytes; i++) {
+      ret[2 + i] = (byte) (length >>> (8 * (numBytes - 1 - i)));
+    }
+    return ret;
+  } // method encodeHeader
+
+  /**
+   * Deletes the temporary file.
+   */
+  @Override
+  public void close() {
+    if (entriesStream != null) {
+      IoUtil.closeQuietly(entriesStream);
+      entriesStream = null;
+    }
+
+    if (entriesFile.exists() && !entriesFile.delete()) {
+      LOG.warn("could not delete file {}", entriesFile.getPath());
+    }
+  } // method close
+
+}
@@ -0,0 +1,667 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.PublicKey;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * Parser of X.509 CRL which does not load the revoked certificates into the memory. Only the
+ * header fields and the extensions of the CRL are parsed in the constructor, the revoked
+ * certificates are read from the file on demand via {@link #revokedCertificates()}.
+ *
+ * <p>A PEM encoded CRL is converted to a temporary DER encoded file, which is deleted by
+ * {@link #close()}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CrlStreamParser implements Closeable {
+
+  /**
+   * Entry of the revokedCertificates.
+   */
+  public static class RevokedCert {
+
+    private final BigInteger serialNumber;
+
+    private final Date revocationDate;
+
+    private final CrlReason reason;
+
+    private final Date invalidityDate;
+
+    private final X500Name certificateIssuer;
+
+    public RevokedCert(BigInteger serialNumber, Date revocationDate, CrlReason reason,
+        Date invalidityDate, X500Name certificateIssuer) {
+      this.serialNumber = Args.notNull(serialNumber, "serialNumber");
+      this.revocationDate = Args.notNull(revocationDate, "revocationDate");
+      this.reason = Args.notNull(reason, "reason");
+      this.invalidityDate = invalidityDate;
+      this.certificateIssuer = certificateIssuer;
+    }
+
+    public BigInteger getSerialNumber() {
+      return serialNumber;
+    }
+
+    public Date getRevocationDate() {
+      return revocationDate;
+    }
+
+    /**
+     * Gets the revocation reason.
+     * @return the revocation reason, {@link CrlReason#UNSPECIFIED} if not present.
+     */
+    public CrlReason getReason() {
+      return reason;
+    }
+
+    public Date getInvalidityDate() {
+      return invalidityDate;
+    }
+
+    /**
+     * Gets the certificate issuer.
+     * @return the certificate issuer, {@code null} if the certificate is issued by the
+     *         CRL issuer.
+     */
+    public X500Name getCertificateIssuer() {
+      return certificateIssuer;
+    }
+
+  } // class RevokedCert
+
+  /**
+   * Iterator over the revokedCertificates. Since the entries are read from the file,
+   * {@link #next()} throws {@link IllegalStateException} if the file could not be read or
+   * contains invalid entry.
+   */
+  public class RevokedCertsIterator implements Iterator<RevokedCert>, Closeable {
+
+    private final CountInputStream instream;
+
+    // certificateIssuer of an entry applies also to the following entries (indirect CRL)
+    private X500Name certificateIssuer;
+
+    private RevokedCert next;
+
+    private RevokedCertsIterator() throws IOException {
+      if (revokedCertsOffset < 0) {
+        this.instream = null;
+      } else {
+        this.instream = openAt(revokedCertsOffset);
+        this.next = readNext();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public RevokedCert next() {
+      if (next == null) {
+        throw new NoSuchElementException("no more revoked certificates");
+      }
+
+      RevokedCert ret = next;
+      try {
+        next = readNext();
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex.getMessage(), ex);
+      }
+      return ret;
+    }
+
+    private RevokedCert readNext() throws IOException {
+      if (instream.getCount() >= revokedCertsEnd) {
+        return null;
+      }
+
+      ASN1Sequence seq = ASN1Sequence.getInstance(readTlv(instream, TAG_SEQUENCE));
+      BigInteger serialNumber = ASN1Integer.getInstance(seq.getObjectAt(0)).getPositiveValue();
+      Date revocationDate = Time.getInstance(seq.getObjectAt(1)).getDate();
+
+      CrlReason reason = CrlReason.UNSPECIFIED;
+      Date invalidityDate = null;
+      if (seq.size() > 2) {
+        Extensions extns = Extensions.getInstance(seq.getObjectAt(2));
+
+        ASN1Encodable value = getExtensionValue(extns, Extension.reasonCode);
+        if (value != null) {
+          reason = CrlReason.forReasonCode(
+              ASN1Enumerated.getInstance(value).getValue().intValue());
+        }
+
+        value = getExtensionValue(extns, Extension.invalidityDate);
+        if (value != null) {
+          try {
+            invalidityDate = ASN1GeneralizedTime.getInstance(value).getDate();
+          } catch (ParseException ex) {
+            throw new IOException("invalid extension invalidityDate", ex);
+          }
+        }
+
+        value = getExtensionValue(extns, Extension.certificateIssuer);
+        if (value != null) {
+          certificateIssuer = null;
+          for (GeneralName name : GeneralNames.getInstance(value).getNames()) {
+            if (name.getTagNo() == GeneralName.directoryName) {
+              certificateIssuer = X500Name.getInstance(name.getName());
+              break;
+            }
+          }
+        }
+      }
+
+      return new RevokedCert(serialNumber, revocationDate, reason, invalidityDate,
+          certificateIssuer);
+    } // method readNext
+
+    @Override
+    public void close() throws IOException {
+      if (instream != null) {
+        instream.close();
+      }
+    }
+
+  } // class RevokedCertsIterator
+
+  private static class CountInputStream extends FilterInputStream {
+
+    private long count;
+
+    CountInputStream(InputStream in) {
+      super(in);
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int ret = super.read();
+      if (ret != -1) {
+        count++;
+      }
+      return ret;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+      int ret = super.read(buf, off, len);
+      if (ret > 0) {
+        count += ret;
+      }
+      return ret;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long ret = super.skip(n);
+      count += ret;
+      return ret;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+  } // class CountInputStream
+
+  private static final int TAG_INTEGER = 0x02;
+
+  private static final int TAG_BIT_STRING = 0x03;
+
+  private static final int TAG_UTC_TIME = 0x17;
+
+  private static final int TAG_GENERALIZED_TIME = 0x18;
+
+  private static final int TAG_SEQUENCE = 0x30;
+
+  private static final int TAG_CONTEXT_CONSTRUCTED_0 = 0xA0;
+
+  private final File crlFile;
+
+  // whether crlFile is a temporary file converted from the PEM encoded CRL.
+  private final boolean tmpCrlFile;
+
+  private final int version;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final AlgorithmIdentifier algorithmIdentifier;
+
+  private final byte[] signature;
+
+  private final Extensions crlExtensions;
+
+  private final BigInteger crlNumber;
+
+  private final BigInteger baseCrlNumber;
+
+  private final long tbsCertListOffset;
+
+  private final long tbsCertListEnd;
+
+  // -1 if no revokedCertificates is present.
+  private final long revokedCertsOffset;
+
+  private final long revokedCertsEnd;
+
+  /**
+   * Constructor.
+   * @param crlFile the file containing the DER encoded CRL. The PEM encoded CRL is also
+   *          accepted, but it will be decoded in the memory.
+   * @throws IOException if the file could not be read or does not contain valid CRL.
+   */
+  public CrlStreamParser(File crlFile) throws IOException {
+    crlFile = IoUtil.expandFilepath(Args.notNull(crlFile, "crlFile"));
+    this.crlFile = toDerEncodedFile(crlFile);
+    this.tmpCrlFile = !this.crlFile.equals(crlFile);
+
+    boolean successful = false;
+    try {
+      try (CountInputStream instream = openAt(0)) {
+        // CertificateList
+        readHeader(instream, TAG_SEQUENCE, "CertificateList");
+
+        // tbsCertList
+        this.tbsCertListOffset = instream.getCount();
+        int len = readHeader(instream, TAG_SEQUENCE, "tbsCertList");
+        this.tbsCertListEnd = instream.getCount() + len;
+
+        // version, optional
+        int tag = instream.read();
+        if (tag == TAG_INTEGER) {
+          this.version = 1 + new BigInteger(readValue(instream, readLength(instream))).intValue();
+          tag = instream.read();
+        } else {
+          this.version = 1;
+        }
+
+        // signature
+        AlgorithmIdentifier tbsSignature = AlgorithmIdentifier.getInstance(
+            readTlv(instream, tag, TAG_SEQUENCE, "signature"));
+
+        // issuer
+        this.issuer = X500Name.getInstance(readTlv(instream, TAG_SEQUENCE));
+
+        // thisUpdate
+        this.thisUpdate = readTime(instream, instream.read(), "thisUpdate");
+
+        Date nextUpdate0 = null;
+        long revokedCertsOffset0 = -1;
+        long revokedCertsEnd0 = -1;
+        Extensions crlExtensions0 = null;
+
+        while (instream.getCount() < tbsCertListEnd) {
+          tag = instream.read();
+          if (tag == TAG_UTC_TIME || tag == TAG_GENERALIZED_TIME) {
+            // nextUpdate
+            nextUpdate0 = readTime(instream, tag, "nextUpdate");
+          } else if (tag == TAG_SEQUENCE) {
+            // revokedCertificates, skip them
+            len = readLength(instream);
+            revokedCertsOffset0 = instream.getCount();
+            revokedCertsEnd0 = revokedCertsOffset0 + len;
+            skipFully(instream, len);
+          } else if (tag == TAG_CONTEXT_CONSTRUCTED_0) {
+            // crlExtensions, explicitly tagged
+            readLength(instream);
+            crlExtensions0 = Extensions.getInstance(readTlv(instream, TAG_SEQUENCE));
+          } else {
+            throw new IOException("unknown field with tag " + tag + " in tbsCertList");
+          }
+        }
+
+        if (instream.getCount() != tbsCertListEnd) {
+          throw new IOException("invalid length of tbsCertList");
+        }
+
+        this.nextUpdate = nextUpdate0;
+        this.revokedCertsOffset = revokedCertsOffset0;
+        this.revokedCertsEnd = revokedCertsEnd0;
+        this.crlExtensions = crlExtensions0;
+
+        // signatureAlgorithm
+        this.algorithmIdentifier = AlgorithmIdentifier.getInstance(
+            readTlv(instream, TAG_SEQUENCE));
+        if (!tbsSignature.equals(algorithmIdentifier)) {
+          throw new IOException("algorithmIdentifier != tbsCertList.signature");
+        }
+
+        // signatureValue
+        this.signature = DERBitString.getInstance(readTlv(instream, TAG_BIT_STRING)).getBytes();
+      }
+
+      ASN1Encodable value = getExtensionValue(crlExtensions, Extension.cRLNumber);
+      this.crlNumber = (value == null) ? null : ASN1Integer.getInstance(value).getPositiveValue();
+
+      value = getExtensionValue(crlExtensions, Extension.deltaCRLIndicator);
+      this.baseCrlNumber = (value == null) ? null
+          : ASN1Integer.getInstance(value).getPositiveValue();
+      successful = true;
+    } finally {
+      if (!successful) {
+        close();
+      }
+    }
+  } // constructor
+
+  public int getVersion() {
+    return version;
+  }
+
+  public X500Name getIssuer() {
+    return issuer;
+  }
+
+  public Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  public Date getNextUpdate() {
+    return nextUpdate;
+  }
+
+  public AlgorithmIdentifier getAlgorithmIdentifier() {
+    return algorithmIdentifier;
+  }
+
+  public byte[] getSignature() {
+    return signature;
+  }
+
+  public BigInteger getCrlNumber() {
+    return crlNumber;
+  }
+
+  /**
+   * Gets the CRL number of the base CRL.
+   * @return the CRL number of the base CRL, {@code null} if this CRL is not a DeltaCRL.
+   */
+  public BigInteger getBaseCrlNumber() {
+    return baseCrlNumber;
+  }
+
+  public boolean isDeltaCrl() {
+    return baseCrlNumber != null;
+  }
+
+  public Extensions getCrlExtensions() {
+    return crlExtensions;
+  }
+
+  /**
+   * Verifies the signature of the CRL. The tbsCertList is read from the file.
+   * @param publicKey the public key of the CRL signer.
+   * @return whether the signature is valid.
+   * @throws IOException if the file could not be read.
+   * @throws OperatorCreationException if the verifier could not be created.
+   */
+  public boolean verifySignature(PublicKey publicKey)
+      throws IOException, OperatorCreationException {
+    Args.notNull(publicKey, "publicKey");
+    ContentVerifier verifier = new JcaContentVerifierProviderBuilder()
+        .build(publicKey).get(algorithmIdentifier);
+
+    OutputStream verifierOut = verifier.getOutputStream();
+    try (CountInputStream instream = openAt(tbsCertListOffset)) {
+      byte[] buffer = new byte[8192];
+      long remaining = tbsCertListEnd - tbsCertListOffset;
+      while (remaining > 0) {
+        int read = instream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read == -1) {
+          throw new EOFException("unexpected end of file");
+        }
+        verifierOut.write(buffer, 0, read);
+        remaining -= read;
+      }
+    }
+    verifierOut.close();
+
+    return verifier.verify(signature);
+  } // method verifySignature
+
+  /**
+   * Returns an iterator over the revoked certificates. The iterator must be closed after use.
+   * @return the iterator.
+   * @throws IOException if the file could not be read.
+   */
+  public RevokedCertsIterator revokedCertificates() throws IOException {
+    return new RevokedCertsIterator();
+  }
+
+  private CountInputStream openAt(long offset) throws IOException {
+    CountInputStream instream = new CountInputStream(
+        new BufferedInputStream(Files.newInputStream(crlFile.toPath())));
+    try {
+      skipFully(instream, offset);
+    } catch (IOException ex) {
+      instream.close();
+      throw ex;
+    }
+    return instream;
+  }
+
+  private static File toDerEncodedFile(File file) throws IOException {
+    try (InputStream instream = Files.newInputStream(file.toPath())) {
+      if (instream.read() == TAG_SEQUENCE) {
+        return file;
+      }
+    }
+
+    // PEM encoded
+    byte[] encoded = X509Util.toDerEncoded(IoUtil.read(file));
+    File derFile = File.createTempFile("crl-", ".der");
+    try {
+      IoUtil.save(derFile, encoded);
+    } catch (IOException ex) {
+      derFile.delete();
+      throw ex;
+    }
+    return derFile;
+  }
+
+  /**
+   * Deletes the temporary DER encoded file converted from the PEM encoded CRL.
+   */
+  @Override
+  public void close() {
+    if (tmpCrlFile && crlFile.exists() && !crlFile.delete()) {
+      crlFile.deleteOnExit();
+    }
+  }
+
+  private static ASN1Encodable getExtensionValue(Extensions extensions,
+      ASN1ObjectIdentifier type) {
+    if (extensions == null) {
+      return null;
+    }
+
+    Extension extn = extensions.getExtension(type);
+    return (extn == null) ? null : extn.getParsedValue();
+  }
+
+  private static Date readTime(CountInputStream instream, int tag, String name)
+      throws IOException {
+    if (tag != TAG_UTC_TIME && tag != TAG_GENERALIZED_TIME) {
+      throw new IOException("invalid " + name + " with tag " + tag);
+    }
+
+    return Time.getInstance(ASN1Primitive.fromByteArray(readTlv(instream, tag, tag, name)))
+        .getDate();
+  }
+
+  private static int readHeader(CountInputStream instream, int expectedTag, String name)
+      throws IOException {
+    int tag = instream.read();
+    if (tag != expectedTag) {
+      throw new IOException("invalid " + name + " with tag " + tag);
+    }
+    return readLength(instream);
+  }
+
+  private static byte[] readTlv(CountInputStream instream, int expectedTag) throws IOException {
+    return readTlv(instream, instream.read(), expectedTag, "ASN.1 object");
+  }
+
+  /**
+   * Reads the length and the value of the ASN.1 object whose tag has been already read.
+   */
+  private static byte[] readTlv(CountInputStream instream, int tag, int expectedTag,
+      String name) throws IOException {
+    if (tag != expectedTag) {
+      throw new IOException("invalid " + name + " with tag " + tag);
+    }
+
+    int len = readLength(instream);
+
+    int lenBytes = 0;
+    if (len > 127) {
+      for (int i = len; i != 0; i >>>= 8) {
+        lenBytes++;
+      }
+    }
+
+    byte[] tlv = new byte[2 + lenBytes + len];
+    int off = 0;
+    tlv[off++] = (byte) tag;
+    if (lenBytes == 0) {
+      tlv[off++] = (byte) len;
+    } else {
+      tlv[off++] = (byte) (0x80 | lenBytes);
+      for (int i = lenBytes - 1; i >= 0; i--) {
+        tlv[off++] = (byte) (len >>> (8 * i));
+      }
+    }
+
+    readFully(instream, tlv, off, len);
+    return tlv;
+  } // method readTlv
+
+  private static byte[] readValue(CountInputStream instream, int len) throws IOException {
+    byte[] value = new byte[len];
+    readFully(instream, value, 0, len);
+    return value;
+  }
+
+  private static int readLength(InputStream instream) throws IOException {
+    int len = instream.read();
+    if (len == -1) {
+      throw new EOFException("unexpected end of file");
+    }
+
+    if (len < 0x80) {
+      return len;
+    }
+
+    int lenBytes = len & 0x7F;
+    if (lenBytes == 0 || lenBytes > 4) {
+      throw new IOException("unsupported length with " + lenBytes + " bytes");
+    }
+
+    len = 0;
+    for (int i = 0; i < lenBytes; i++) {
+      int b = instream.read();
+      if (b == -1) {
+        throw new EOFException("unexpected end of file");
+      }
+      len = (len << 8) | b;
+    }
+
+    if (len < 0) {
+      throw new IOException("length too large");
+    }
+    return len;
+  } // method readLength
+
+  private static void readFully(InputStream instream, byte[] buf, int off, int len)
+      throws IOException {
+    int read = 0;
+    while (read < len) {
+      int n = instream.read(buf, off + read, len - read);
+      if (n == -1) {
+        throw new EOFException("unexpected end of file");
+      }
+      read += n;
+    }
+  }
+
+  private static void skipFully(InputStream instream, long len) throws IOException {
+    long remaining = len;
+    while (remaining > 0) {
+      long skipped = instream.skip(remaining);
+      if (skipped <= 0) {
+        if (instream.read() == -1) {
+          throw new EOFException("unexpected end of file");
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.security.CrlStreamBuilder;
+
+/**
+ * Test of {@link CrlStreamBuilder}, the CRLs must be byte-identical to those generated by
+ * BouncyCastle.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CrlStreamBuilderTest {
+
+  private static final X500Name ISSUER = new X500Name("CN=test-ca,O=xipki");
+
+  private static final Date THIS_UPDATE = new Date(1550000000000L);
+
+  private static final Date NEXT_UPDATE = new Date(1550000000000L + 86400000L);
+
+  private static KeyPair keypair;
+
+  private static File tmpDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(1024);
+    keypair = kpGen.generateKeyPair();
+    tmpDir = Files.createTempDirectory("crlstreambuilder-test").toFile();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    for (File file : tmpDir.listFiles()) {
+      file.delete();
+    }
+    tmpDir.delete();
+  }
+
+  @Test
+  public void buildEmptyCrl() throws Exception {
+    X509v2CRLBuilder expected = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+    expected.setNextUpdate(NEXT_UPDATE);
+    expected.addExtension(Extension.cRLNumber, false, new ASN1Integer(1));
+
+    try (CrlStreamBuilder actual = new CrlStreamBuilder(ISSUER, THIS_UPDATE, tmpDir)) {
+      actual.setNextUpdate(NEXT_UPDATE);
+      actual.addExtension(Extension.cRLNumber, false, new ASN1Integer(1));
+      assertSameCrl(expected, actual);
+    }
+  } // method buildEmptyCrl
+
+  @Test
+  public void buildCrlWithoutNextUpdateAndExtensions() throws Exception {
+    X509v2CRLBuilder expected = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+    expected.addCRLEntry(BigInteger.ONE, THIS_UPDATE, 0);
+
+    try (CrlStreamBuilder actual = new CrlStreamBuilder(ISSUER, THIS_UPDATE, tmpDir)) {
+      actual.addCrlEntry(BigInteger.ONE, THIS_UPDATE, 0, null);
+      assertSameCrl(expected, actual);
+    }
+  } // method buildCrlWithoutNextUpdateAndExtensions
+
+  @Test
+  public void buildCrl() throws Exception {
+    X509v2CRLBuilder expected = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+    expected.setNextUpdate(NEXT_UPDATE);
+
+    CrlStreamBuilder actual = new CrlStreamBuilder(ISSUER, THIS_UPDATE, tmpDir);
+    try {
+      actual.setNextUpdate(NEXT_UPDATE);
+
+      Date revocationDate = new Date(THIS_UPDATE.getTime() - 3600000L);
+      Date invalidityDate = new Date(revocationDate.getTime() - 7200000L);
+
+      // without extension
+      expected.addCRLEntry(BigInteger.valueOf(1), revocationDate, 0);
+      actual.addCrlEntry(BigInteger.valueOf(1), revocationDate, 0, null);
+
+      // reason only
+      expected.addCRLEntry(BigInteger.valueOf(2), revocationDate, CRLReason.keyCompromise);
+      actual.addCrlEntry(BigInteger.valueOf(2), revocationDate, CRLReason.keyCompromise, null);
+
+      // reason and invalidity date
+      expected.addCRLEntry(BigInteger.valueOf(3), revocationDate, CRLReason.superseded,
+          invalidityDate);
+      actual.addCrlEntry(BigInteger.valueOf(3), revocationDate, CRLReason.superseded,
+          invalidityDate);
+
+      // invalidity date only
+      expected.addCRLEntry(BigInteger.valueOf(4), revocationDate, 0, invalidityDate);
+      actual.addCrlEntry(BigInteger.valueOf(4), revocationDate, 0, invalidityDate);
+
+      // revocation date encoded as GeneralizedTime, large serial number
+      Date date2050 = new Date(2524608000000L);
+      BigInteger largeSerial = BigInteger.ONE.shiftLeft(159).add(BigInteger.TEN);
+      expected.addCRLEntry(largeSerial, date2050, CRLReason.cessationOfOperation);
+      actual.addCrlEntry(largeSerial, date2050, CRLReason.cessationOfOperation, null);
+
+      // indirect CRL entry
+      Extensions extns = new Extensions(new Extension(Extension.certificateIssuer, true,
+          new GeneralNames(new GeneralName(new X500Name("CN=other-ca,O=xipki"))).getEncoded()));
+      expected.addCRLEntry(BigInteger.valueOf(6), revocationDate, extns);
+      actual.addCrlEntry(BigInteger.valueOf(6), revocationDate, extns);
+
+      expected.addExtension(Extension.cRLNumber, false, new ASN1Integer(100));
+      actual.addExtension(Extension.cRLNumber, false, new ASN1Integer(100));
+      expected.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(99));
+      actual.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(99));
+
+      Assert.assertEquals("numEntries", 6, actual.getNumEntries());
+      assertSameCrl(expected, actual);
+
+      // the builder cannot be reused
+      try {
+        actual.addCrlEntry(BigInteger.TEN, revocationDate, 0, null);
+        Assert.fail("IllegalStateException expected");
+      } catch (IllegalStateException ex) {
+        // expected
+      }
+    } finally {
+      actual.close();
+    }
+
+    Assert.assertEquals("temporary files", 0, tmpDir.listFiles().length);
+  } // method buildCrl
+
+  @Test
+  public void buildLargeCrl() throws Exception {
+    X509v2CRLBuilder expected = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+    expected.setNextUpdate(NEXT_UPDATE);
+
+    try (CrlStreamBuilder actual = new CrlStreamBuilder(ISSUER, THIS_UPDATE, tmpDir)) {
+      actual.setNextUpdate(NEXT_UPDATE);
+
+      // more than 64 KB of entries, the lengths need multi-byte encoding.
+      final int num = 5000;
+      for (int i = 1; i <= num; i++) {
+        BigInteger serial = BigInteger.valueOf(i).shiftLeft(64).add(BigInteger.valueOf(i));
+        Date revocationDate = new Date(THIS_UPDATE.getTime() - i * 1000L);
+        int reason = (i % 3 == 0) ? CRLReason.keyCompromise : 0;
+        expected.addCRLEntry(serial, revocationDate, reason);
+        actual.addCrlEntry(serial, revocationDate, reason, null);
+      }
+
+      expected.addExtension(Extension.cRLNumber, false, new ASN1Integer(2));
+      actual.addExtension(Extension.cRLNumber, false, new ASN1Integer(2));
+
+      byte[] encoded = assertSameCrl(expected, actual);
+      Assert.assertTrue("CRL is too small: " + encoded.length, encoded.length > 64 * 1024);
+    }
+  } // method buildLargeCrl
+
+  private static byte[] assertSameCrl(X509v2CRLBuilder expectedBuilder,
+      CrlStreamBuilder actualBuilder) throws Exception {
+    // RSA PKCS#1 v1.5 signatures are deterministic.
+    byte[] expected = expectedBuilder.build(newSigner()).getEncoded();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    actualBuilder.build(newSigner(), out);
+    byte[] actual = out.toByteArray();
+
+    Assert.assertArrayEquals("CRL", expected, actual);
+    return actual;
+  } // method assertSameCrl
+
+  private static ContentSigner newSigner() throws Exception {
+    return new JcaContentSignerBuilder("SHA256withRSA").build(keypair.getPrivate());
+  }
+
+}
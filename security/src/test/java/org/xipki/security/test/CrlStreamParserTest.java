@@ -0,0 +1,242 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.security.CrlReason;
+import org.xipki.security.CrlStreamParser;
+import org.xipki.security.CrlStreamParser.RevokedCert;
+import org.xipki.security.CrlStreamParser.RevokedCertsIterator;
+import org.xipki.util.PemEncoder;
+import org.xipki.util.PemEncoder.PemLabel;
+
+/**
+ * Test of {@link CrlStreamParser}, the CRLs are generated by BouncyCastle.
+ * @author Lijun Liao
+ * @since 5.3.0
+ */
+
+public class CrlStreamParserTest {
+
+  private static final X500Name ISSUER = new X500Name("CN=test-ca,O=xipki");
+
+  private static final X500Name OTHER_ISSUER = new X500Name("CN=other-ca,O=xipki");
+
+  private static KeyPair keypair;
+
+  private static File tmpDir;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(1024);
+    keypair = kpGen.generateKeyPair();
+    tmpDir = Files.createTempDirectory("crlstreamparser-test").toFile();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    for (File file : tmpDir.listFiles()) {
+      file.delete();
+    }
+    tmpDir.delete();
+  }
+
+  @Test
+  public void parseCrl() throws Exception {
+    Date thisUpdate = new Date(1550000000000L);
+    Date nextUpdate = new Date(1550086400000L);
+    Date revDate = new Date(1540000000000L);
+    Date invalidityDate = new Date(1530000000000L);
+
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+    builder.setNextUpdate(nextUpdate);
+    builder.addCRLEntry(BigInteger.valueOf(1), revDate, 0);
+    builder.addCRLEntry(BigInteger.valueOf(2), revDate, CrlReason.KEY_COMPROMISE.getCode(),
+        invalidityDate);
+    // indirect CRL: the certificateIssuer applies also to the following entries.
+    Extension certIssuer = new Extension(Extension.certificateIssuer, true,
+        new GeneralNames(new GeneralName(OTHER_ISSUER)).getEncoded());
+    builder.addCRLEntry(BigInteger.valueOf(3), revDate, new Extensions(certIssuer));
+    builder.addCRLEntry(BigInteger.valueOf(4), revDate, CrlReason.SUPERSEDED.getCode());
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(10));
+    builder.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(9));
+
+    File crlFile = writeCrl(builder);
+    CrlStreamParser parser = new CrlStreamParser(crlFile);
+
+    Assert.assertEquals("version", 2, parser.getVersion());
+    Assert.assertEquals("issuer", ISSUER, parser.getIssuer());
+    Assert.assertEquals("thisUpdate", thisUpdate, parser.getThisUpdate());
+    Assert.assertEquals("nextUpdate", nextUpdate, parser.getNextUpdate());
+    Assert.assertEquals("crlNumber", BigInteger.valueOf(10), parser.getCrlNumber());
+    Assert.assertEquals("baseCrlNumber", BigInteger.valueOf(9), parser.getBaseCrlNumber());
+    Assert.assertTrue("deltaCrl", parser.isDeltaCrl());
+    Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+
+    try (RevokedCertsIterator it = parser.revokedCertificates()) {
+      RevokedCert rc = it.next();
+      Assert.assertEquals("serial", BigInteger.valueOf(1), rc.getSerialNumber());
+      Assert.assertEquals("revocationDate", revDate, rc.getRevocationDate());
+      Assert.assertEquals("reason", CrlReason.UNSPECIFIED, rc.getReason());
+      Assert.assertNull("invalidityDate", rc.getInvalidityDate());
+      Assert.assertNull("certificateIssuer", rc.getCertificateIssuer());
+
+      rc = it.next();
+      Assert.assertEquals("serial", BigInteger.valueOf(2), rc.getSerialNumber());
+      Assert.assertEquals("reason", CrlReason.KEY_COMPROMISE, rc.getReason());
+      Assert.assertEquals("invalidityDate", invalidityDate, rc.getInvalidityDate());
+
+      rc = it.next();
+      Assert.assertEquals("serial", BigInteger.valueOf(3), rc.getSerialNumber());
+      Assert.assertEquals("certificateIssuer", OTHER_ISSUER, rc.getCertificateIssuer());
+
+      rc = it.next();
+      Assert.assertEquals("serial", BigInteger.valueOf(4), rc.getSerialNumber());
+      Assert.assertEquals("reason", CrlReason.SUPERSEDED, rc.getReason());
+      Assert.assertEquals("certificateIssuer", OTHER_ISSUER, rc.getCertificateIssuer());
+
+      Assert.assertFalse("hasNext", it.hasNext());
+    }
+  } // method parseCrl
+
+  @Test
+  public void parseCrlWithoutRevokedCerts() throws Exception {
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, new Date(1550000000000L));
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(1));
+
+    CrlStreamParser parser = new CrlStreamParser(writeCrl(builder));
+    Assert.assertNull("nextUpdate", parser.getNextUpdate());
+    Assert.assertNull("baseCrlNumber", parser.getBaseCrlNumber());
+    Assert.assertFalse("deltaCrl", parser.isDeltaCrl());
+    Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+    try (RevokedCertsIterator it = parser.revokedCertificates()) {
+      Assert.assertFalse("hasNext", it.hasNext());
+    }
+  } // method parseCrlWithoutRevokedCerts
+
+  @Test
+  public void parseLargeCrl() throws Exception {
+    // more than 64 KB revokedCertificates, the length is encoded in 3 bytes.
+    final int num = 5000;
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, new Date(1550000000000L));
+    Date revDate = new Date(1540000000000L);
+    for (int i = 1; i <= num; i++) {
+      builder.addCRLEntry(BigInteger.valueOf(i).shiftLeft(64), revDate,
+          CrlReason.CESSATION_OF_OPERATION.getCode());
+    }
+
+    CrlStreamParser parser = new CrlStreamParser(writeCrl(builder));
+    Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+    int count = 0;
+    try (RevokedCertsIterator it = parser.revokedCertificates()) {
+      while (it.hasNext()) {
+        RevokedCert rc = it.next();
+        count++;
+        Assert.assertEquals("serial", BigInteger.valueOf(count).shiftLeft(64),
+            rc.getSerialNumber());
+      }
+    }
+    Assert.assertEquals("number of revoked certificates", num, count);
+  } // method parseLargeCrl
+
+  @Test
+  public void detectInvalidSignature() throws Exception {
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, new Date(1550000000000L));
+    builder.addCRLEntry(BigInteger.ONE, new Date(1540000000000L), 0);
+    File crlFile = writeCrl(builder);
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(1024);
+    CrlStreamParser parser = new CrlStreamParser(crlFile);
+    Assert.assertFalse("signature", parser.verifySignature(kpGen.generateKeyPair().getPublic()));
+  } // method detectInvalidSignature
+
+  @Test
+  public void parsePemCrl() throws Exception {
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, new Date(1550000000000L));
+    builder.addCRLEntry(BigInteger.ONE, new Date(1540000000000L), 0);
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(1));
+    ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA")
+        .build(keypair.getPrivate());
+    File crlFile = File.createTempFile("crl-", ".pem", tmpDir);
+    Files.write(crlFile.toPath(),
+        PemEncoder.encode(builder.build(signer).getEncoded(), PemLabel.X509_CRL));
+
+    File sysTmpDir = new File(System.getProperty("java.io.tmpdir"));
+    int numTmpFiles = countDerFiles(sysTmpDir);
+
+    CrlStreamParser parser = new CrlStreamParser(crlFile);
+    try {
+      Assert.assertEquals("crlNumber", BigInteger.ONE, parser.getCrlNumber());
+      Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+      try (RevokedCertsIterator it = parser.revokedCertificates()) {
+        Assert.assertEquals("serial", BigInteger.ONE, it.next().getSerialNumber());
+        Assert.assertFalse("hasNext", it.hasNext());
+      }
+      Assert.assertEquals("temporary DER files", numTmpFiles + 1, countDerFiles(sysTmpDir));
+    } finally {
+      parser.close();
+    }
+
+    Assert.assertEquals("temporary DER files", numTmpFiles, countDerFiles(sysTmpDir));
+  } // method parsePemCrl
+
+  private static int countDerFiles(File dir) {
+    File[] files = dir.listFiles(new FilenameFilter() {
+
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("crl-") && name.endsWith(".der");
+      }
+
+    });
+    return (files == null) ? 0 : files.length;
+  }
+
+  private static File writeCrl(X509v2CRLBuilder builder) throws Exception {
+    ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA")
+        .build(keypair.getPrivate());
+    X509CRLHolder crl = builder.build(signer);
+    File file = File.createTempFile("crl-", ".der", tmpDir);
+    Files.write(file.toPath(), crl.getEncoded());
+    return file;
+  }
+
+}